@@ -0,0 +1,56 @@
+package sinc.benchmark;
+
+import sinc.common.Constant;
+import sinc.common.Predicate;
+import sinc.common.Rule;
+import sinc.impl.cached.MemKB;
+import sinc.util.datagen.FamilyRelationGenerator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 性能测试使用的输入数据，由FamilyRelationGenerator生成(无噪声，因此每次生成的结果相同)
+ */
+public class FamilyData {
+    public static final String FUNCTOR_FATHER = FamilyRelationGenerator.FamilyPredicate.FATHER.getName();
+    public static final String FUNCTOR_MOTHER = FamilyRelationGenerator.FamilyPredicate.MOTHER.getName();
+    public static final String FUNCTOR_PARENT = FamilyRelationGenerator.FamilyPredicate.PARENT.getName();
+    public static final String FUNCTOR_GENDER = FamilyRelationGenerator.OtherPredicate.GENDER.getName();
+
+    /**
+     * @return 由generateMedium生成的facts(按文件中的顺序)
+     */
+    public static List<Predicate> generate(int families) throws IOException {
+        final File file = File.createTempFile("family", ".tsv");
+        try {
+            FamilyRelationGenerator.generateMedium(file.getPath(), families, 0.0);
+            final List<Predicate> facts = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line;
+                while (null != (line = reader.readLine())) {
+                    final String[] components = line.split("\t");
+                    final Predicate predicate = new Predicate(components[0], components.length - 1);
+                    for (int i = 1; i < components.length; i++) {
+                        predicate.args[i - 1] = new Constant(Rule.CONSTANT_ARG_ID, components[i]);
+                    }
+                    facts.add(predicate);
+                }
+            }
+            return facts;
+        } finally {
+            file.delete();
+        }
+    }
+
+    public static <T extends MemKB> T load(T kb, List<Predicate> facts) {
+        for (Predicate fact: facts) {
+            kb.addFact(fact);
+        }
+        return kb;
+    }
+}
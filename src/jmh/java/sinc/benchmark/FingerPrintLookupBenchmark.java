@@ -0,0 +1,70 @@
+package sinc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import sinc.common.Predicate;
+import sinc.common.RuleFingerPrint;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在已搜索fingerprint的HashSet中查询。
+ *
+ * 集合中有size个形如grandParent(X,Y):-parent(X,Z),parent(Z,Y),gender(X,ci)的fingerprint，每次查询一组probes，
+ * 其中missRate比例是集合中不存在的rule，其余是与集合中的rule等价但独立构造的fingerprint。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FingerPrintLookupBenchmark {
+
+    public static final int PROBES = 4096;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"0.67", "0.95"})
+    public double missRate;
+
+    protected Set<RuleFingerPrint> hashSet;
+    protected RuleFingerPrint[] probes;
+
+    static RuleFingerPrint fingerPrint(String constant) {
+        final List<Predicate> structure = new ArrayList<>();
+        structure.add(RuleFingerPrintBenchmark.predicate("grandParent", 0, 1));
+        structure.add(RuleFingerPrintBenchmark.predicate(FamilyData.FUNCTOR_PARENT, 0, 2));
+        structure.add(RuleFingerPrintBenchmark.predicate(FamilyData.FUNCTOR_PARENT, 2, 1));
+        structure.add(RuleFingerPrintBenchmark.predicate(FamilyData.FUNCTOR_GENDER, 0, constant));
+        return new RuleFingerPrint(structure);
+    }
+
+    @Setup
+    public void createSet() {
+        hashSet = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            hashSet.add(fingerPrint("c" + i));
+        }
+
+        final Random random = new Random(0);
+        probes = new RuleFingerPrint[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = (random.nextDouble() < missRate) ?
+                    fingerPrint("m" + i) : fingerPrint("c" + random.nextInt(size));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROBES)
+    public int contains() {
+        int hits = 0;
+        for (RuleFingerPrint probe: probes) {
+            if (hashSet.contains(probe)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,62 @@
+package sinc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import sinc.common.Predicate;
+import sinc.impl.cached.EncodedMemKB;
+import sinc.impl.cached.MemKB;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * KB的加载(addFact)与相似列的计算
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MemKBBenchmark {
+
+    @Param({"mem", "encoded"})
+    public String kbType;
+
+    @Param({"20", "200"})
+    public int families;
+
+    @Param({"0.2"})
+    public double minColumnSimilarity;
+
+    protected List<Predicate> facts;
+    protected MemKB kb;
+
+    protected MemKB createKb() {
+        switch (kbType) {
+            case "mem":
+                return new MemKB();
+            case "encoded":
+                return new EncodedMemKB();
+            default:
+                throw new IllegalArgumentException("Unknown KB type: " + kbType);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        facts = FamilyData.generate(families);
+        kb = FamilyData.load(createKb(), facts);
+    }
+
+    @Benchmark
+    public MemKB addFact() {
+        return FamilyData.load(createKb(), facts);
+    }
+
+    @Benchmark
+    public long calculateSimilarColumnPairs() {
+        kb.calculateSimilarColumnPairs(minColumnSimilarity);
+        return kb.similarColumnPairs();
+    }
+}
@@ -0,0 +1,74 @@
+package sinc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import sinc.common.Rule;
+import sinc.impl.cached.EncodedMemKB;
+import sinc.impl.cached.MemKB;
+import sinc.impl.cached.recal.RecalculateCachedRule;
+import sinc.impl.pruned.tabu.TabuAwareRule;
+import sinc.impl.pruned.tabu.TabuStore;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在parent(X0,?):-father(X0,?)上做一步扩展的耗时(包括cache的更新与评估)。
+ *
+ * 每次调用前重新构造初始rule，使用新的fingerprint cache，否则相同的扩展会被当作重复的rule直接跳过。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RuleExtensionBenchmark {
+
+    @Param({"recal", "tabu"})
+    public String ruleType;
+
+    @Param({"20"})
+    public int families;
+
+    protected MemKB kb;
+    protected Rule rule;
+
+    @Setup(Level.Trial)
+    public void loadKb() throws IOException {
+        kb = FamilyData.load(new EncodedMemKB(), FamilyData.generate(families));
+    }
+
+    @Setup(Level.Invocation)
+    public void createRule() {
+        switch (ruleType) {
+            case "recal":
+                rule = new RecalculateCachedRule(FamilyData.FUNCTOR_PARENT, new HashSet<>(), kb);
+                break;
+            case "tabu":
+                rule = new TabuAwareRule(FamilyData.FUNCTOR_PARENT, new HashSet<>(), kb, new TabuStore());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown rule type: " + ruleType);
+        }
+        rule.boundFreeVars2NewVar(FamilyData.FUNCTOR_FATHER, 2, 0, 0, 0);
+    }
+
+    /* parent(X0,X1):-father(X0,X1) */
+    @Benchmark
+    public Rule.UpdateStatus boundFreeVars2NewVar() {
+        return rule.boundFreeVars2NewVar(0, 1, 1, 1);
+    }
+
+    /* parent(X0,?):-father(X0,?),mother(X0,?) */
+    @Benchmark
+    public Rule.UpdateStatus boundFreeVar2ExistingVar() {
+        return rule.boundFreeVar2ExistingVar(FamilyData.FUNCTOR_MOTHER, 2, 0, 0);
+    }
+
+    /* parent(X0,s_0):-father(X0,?) */
+    @Benchmark
+    public Rule.UpdateStatus boundFreeVar2Constant() {
+        return rule.boundFreeVar2Constant(0, 1, "s_0");
+    }
+}
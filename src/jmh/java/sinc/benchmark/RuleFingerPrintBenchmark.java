@@ -0,0 +1,93 @@
+package sinc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import sinc.common.CanonicalRuleKey;
+import sinc.common.Constant;
+import sinc.common.Predicate;
+import sinc.common.Rule;
+import sinc.common.RuleFingerPrint;
+import sinc.common.Variable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RuleFingerPrint的构造与比较。
+ *
+ * 使用grandParent(X,Y):-parent(X,Z),parent(Z,Y),gender(X,male)以及一个变量编号与body顺序都不同的等价rule。
+ * 增量推导从grandParent(X,Y):-parent(X,Z),parent(Z,Y),gender(X,?)开始绑定常量。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RuleFingerPrintBenchmark {
+
+    protected List<Predicate> structure;
+    protected List<Predicate> equivalentStructure;
+    protected RuleFingerPrint fingerPrint;
+    protected RuleFingerPrint equivalentFingerPrint;
+    protected RuleFingerPrint parentFingerPrint;
+
+    static Predicate predicate(String functor, Object... args) {
+        final Predicate predicate = new Predicate(functor, args.length);
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] instanceof Integer) {
+                predicate.args[i] = new Variable((Integer) args[i]);
+            } else if (null != args[i]) {
+                predicate.args[i] = new Constant(Rule.CONSTANT_ARG_ID, (String) args[i]);
+            }
+        }
+        return predicate;
+    }
+
+    @Setup
+    public void createRules() {
+        structure = new ArrayList<>();
+        structure.add(predicate("grandParent", 0, 1));
+        structure.add(predicate(FamilyData.FUNCTOR_PARENT, 0, 2));
+        structure.add(predicate(FamilyData.FUNCTOR_PARENT, 2, 1));
+        structure.add(predicate(FamilyData.FUNCTOR_GENDER, 0, "male"));
+
+        equivalentStructure = new ArrayList<>();
+        equivalentStructure.add(predicate("grandParent", 2, 0));
+        equivalentStructure.add(predicate(FamilyData.FUNCTOR_GENDER, 2, "male"));
+        equivalentStructure.add(predicate(FamilyData.FUNCTOR_PARENT, 1, 0));
+        equivalentStructure.add(predicate(FamilyData.FUNCTOR_PARENT, 2, 1));
+
+        fingerPrint = new RuleFingerPrint(structure);
+        equivalentFingerPrint = new RuleFingerPrint(equivalentStructure);
+
+        final List<Predicate> parent_structure = new ArrayList<>(structure);
+        parent_structure.set(3, predicate(FamilyData.FUNCTOR_GENDER, 0, null));
+        parentFingerPrint = new RuleFingerPrint(parent_structure);
+    }
+
+    @Benchmark
+    public RuleFingerPrint construct() {
+        return new RuleFingerPrint(structure);
+    }
+
+    @Benchmark
+    public RuleFingerPrint derive() {
+        return parentFingerPrint.deriveBoundFreeVar2Constant(structure, 3, 1, "male");
+    }
+
+    @Benchmark
+    public CanonicalRuleKey canonicalKey() {
+        return CanonicalRuleKey.of(equivalentStructure);
+    }
+
+    @Benchmark
+    public boolean equality() {
+        return fingerPrint.equals(equivalentFingerPrint);
+    }
+
+    @Benchmark
+    public int hash() {
+        return new RuleFingerPrint(equivalentStructure).hashCode();
+    }
+}
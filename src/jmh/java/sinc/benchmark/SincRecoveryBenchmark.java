@@ -0,0 +1,79 @@
+package sinc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import sinc.SincRecovery;
+import sinc.common.BareRule;
+import sinc.common.Predicate;
+import sinc.common.Rule;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从压缩结果恢复KB的耗时。
+ *
+ * hypothesis为：
+ *   parent(X0,X1):-father(X0,X1)
+ *   parent(X0,X1):-mother(X0,X1)
+ *   sibling(X0,X1):-parent(X2,X0),parent(X2,X1)
+ * 其中sibling依赖于由前两条rule推出的parent，因此需要多轮推理才能到达不动点。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SincRecoveryBenchmark {
+
+    static final String FUNCTOR_SIBLING = "sibling";
+
+    @Param({"20", "200"})
+    public int families;
+
+    protected List<Rule> hypothesis;
+    protected Set<Predicate> necessaryFacts;
+    protected SincRecovery recovery;
+
+    static Rule rule(String headFunctor, int[][] args, String... bodyFunctors) {
+        final List<Predicate> structure = new ArrayList<>();
+        structure.add(RuleFingerPrintBenchmark.predicate(headFunctor, args[0][0], args[0][1]));
+        for (int i = 0; i < bodyFunctors.length; i++) {
+            structure.add(RuleFingerPrintBenchmark.predicate(bodyFunctors[i], args[i + 1][0], args[i + 1][1]));
+        }
+        return new BareRule(structure, new HashSet<>());
+    }
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        hypothesis = new ArrayList<>();
+        hypothesis.add(rule(FamilyData.FUNCTOR_PARENT, new int[][]{{0, 1}, {0, 1}}, FamilyData.FUNCTOR_FATHER));
+        hypothesis.add(rule(FamilyData.FUNCTOR_PARENT, new int[][]{{0, 1}, {0, 1}}, FamilyData.FUNCTOR_MOTHER));
+        hypothesis.add(rule(
+                FUNCTOR_SIBLING, new int[][]{{0, 1}, {2, 0}, {2, 1}},
+                FamilyData.FUNCTOR_PARENT, FamilyData.FUNCTOR_PARENT
+        ));
+        necessaryFacts = new HashSet<>();
+        for (Predicate fact: FamilyData.generate(families)) {
+            if (!FamilyData.FUNCTOR_PARENT.equals(fact.functor) && !FUNCTOR_SIBLING.equals(fact.functor)) {
+                necessaryFacts.add(fact);
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createRecovery() {
+        recovery = new SincRecovery(hypothesis, necessaryFacts, new HashSet<>(), new HashSet<>());
+    }
+
+    @Benchmark
+    public Set<Predicate> recover() {
+        return recovery.recover();
+    }
+
+    @Benchmark
+    public Set<Predicate> recoverNaively() {
+        return recovery.recoverNaively();
+    }
+}
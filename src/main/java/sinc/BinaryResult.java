@@ -0,0 +1,318 @@
+package sinc;
+
+import sinc.common.*;
+import sinc.util.NumerationMap;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * 压缩结果的二进制格式，与dumpResult输出的文本格式内容相同。
+ *
+ * 文件结构(多字节整数均为big endian)：
+ *   [magic: int][version: int][section数量: int]
+ *   section表：每项为[type: int][offset: long][length: long]
+ *   各个section的内容
+ *
+ * 所有functor与常量的名字只在DICTIONARY中出现一次，其他section中都以编号(从1开始)引用，整数均以varint编码：
+ *   - DICTIONARY: [名字数量]{[UTF-8字节数][UTF-8字节]}
+ *   - HYPOTHESIS: [rule数量]{[predicate数量]{[functor][arity]{[参数]}}}，参数0表示FV，2*id+1表示变量，2*num表示常量
+ *   - START_SET/COUNTER_EXAMPLES: [relation数量]{[functor][arity][tuple数量]{[常量]...}}
+ *   - SUPPLEMENTARY_CONSTANTS: [常量数量]{[常量]}
+ *
+ * 读取时直接在文件的内存映射上解码，字典中的每个名字只构造一次Constant，所有的fact共享这些对象。
+ */
+public class BinaryResult {
+    public static final String FILE_EXTENSION = ".bin";
+    public static final int MAGIC = 0x53494E43;  // "SINC"
+    public static final int VERSION = 1;
+
+    public static final int SECTION_DICTIONARY = 1;
+    public static final int SECTION_HYPOTHESIS = 2;
+    public static final int SECTION_START_SET = 3;
+    public static final int SECTION_COUNTER_EXAMPLES = 4;
+    public static final int SECTION_SUPPLEMENTARY_CONSTANTS = 5;
+
+    private static final int HEADER_SIZE = Integer.BYTES * 3;
+    private static final int SECTION_ENTRY_SIZE = Integer.BYTES + Long.BYTES * 2;
+
+    public final List<Rule> hypothesis;
+    public final Set<Predicate> startSet;
+    public final Set<Predicate> counterExamples;
+    public final Set<String> supplementaryConstants;
+
+    protected BinaryResult(
+            List<Rule> hypothesis, Set<Predicate> startSet, Set<Predicate> counterExamples,
+            Set<String> supplementaryConstants
+    ) {
+        this.hypothesis = hypothesis;
+        this.startSet = startSet;
+        this.counterExamples = counterExamples;
+        this.supplementaryConstants = supplementaryConstants;
+    }
+
+    public static void write(
+            String path, List<Rule> hypothesis, Set<Predicate> startSet, Set<Predicate> counterExamples,
+            Set<String> supplementaryConstants
+    ) throws IOException {
+        final NumerationMap dictionary = new NumerationMap();
+        final ByteArrayOutputStream hypothesis_section = new ByteArrayOutputStream();
+        writeVarInt(hypothesis_section, hypothesis.size());
+        for (Rule rule: hypothesis) {
+            encodeRule(hypothesis_section, rule, dictionary);
+        }
+        final ByteArrayOutputStream start_set_section = encodeRelations(startSet, dictionary);
+        final ByteArrayOutputStream counter_example_section = encodeRelations(counterExamples, dictionary);
+        final ByteArrayOutputStream supplementary_section = new ByteArrayOutputStream();
+        writeVarInt(supplementary_section, supplementaryConstants.size());
+        for (String constant: supplementaryConstants) {
+            writeVarInt(supplementary_section, dictionary.mapName(constant));
+        }
+
+        /* 字典最后生成，但放在最前面 */
+        final int[] types = new int[]{
+                SECTION_DICTIONARY, SECTION_HYPOTHESIS, SECTION_START_SET, SECTION_COUNTER_EXAMPLES,
+                SECTION_SUPPLEMENTARY_CONSTANTS
+        };
+        final ByteArrayOutputStream[] sections = new ByteArrayOutputStream[]{
+                encodeDictionary(dictionary), hypothesis_section, start_set_section, counter_example_section,
+                supplementary_section
+        };
+        writeSections(path, MAGIC, VERSION, types, sections);
+    }
+
+    static ByteArrayOutputStream encodeDictionary(NumerationMap dictionary) {
+        final ByteArrayOutputStream dictionary_section = new ByteArrayOutputStream();
+        writeVarInt(dictionary_section, dictionary.totalMappings());
+        for (int num = 1; num <= dictionary.totalMappings(); num++) {
+            final byte[] bytes = dictionary.num2Name(num).getBytes(StandardCharsets.UTF_8);
+            writeVarInt(dictionary_section, bytes.length);
+            dictionary_section.write(bytes, 0, bytes.length);
+        }
+        return dictionary_section;
+    }
+
+    static void writeSections(
+            String path, int magic, int version, int[] types, ByteArrayOutputStream[] sections
+    ) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(magic);
+            out.writeInt(version);
+            out.writeInt(sections.length);
+            long offset = HEADER_SIZE + (long) SECTION_ENTRY_SIZE * sections.length;
+            for (int i = 0; i < sections.length; i++) {
+                out.writeInt(types[i]);
+                out.writeLong(offset);
+                out.writeLong(sections[i].size());
+                offset += sections[i].size();
+            }
+            for (ByteArrayOutputStream section: sections) {
+                section.writeTo(out);
+            }
+        }
+    }
+
+    static void encodeRule(ByteArrayOutputStream out, Rule rule, NumerationMap dictionary) {
+        writeVarInt(out, rule.length());
+        for (int pred_idx = 0; pred_idx < rule.length(); pred_idx++) {
+            final Predicate predicate = rule.getPredicate(pred_idx);
+            writeVarInt(out, dictionary.mapName(predicate.functor));
+            writeVarInt(out, predicate.arity());
+            for (Argument argument: predicate.args) {
+                if (null == argument) {
+                    writeVarInt(out, 0);
+                } else if (argument.isVar) {
+                    writeVarInt(out, 2 * argument.id + 1);
+                } else {
+                    writeVarInt(out, 2 * dictionary.mapName(argument.name));
+                }
+            }
+        }
+    }
+
+    static ByteArrayOutputStream encodeRelations(Collection<Predicate> facts, NumerationMap dictionary) {
+        final Map<String, List<Predicate>> functor_2_facts = new LinkedHashMap<>();
+        for (Predicate fact: facts) {
+            functor_2_facts.computeIfAbsent(fact.functor, k -> new ArrayList<>()).add(fact);
+        }
+        final ByteArrayOutputStream section = new ByteArrayOutputStream();
+        writeVarInt(section, functor_2_facts.size());
+        for (Map.Entry<String, List<Predicate>> entry: functor_2_facts.entrySet()) {
+            final List<Predicate> relation = entry.getValue();
+            writeVarInt(section, dictionary.mapName(entry.getKey()));
+            writeVarInt(section, relation.get(0).arity());
+            writeVarInt(section, relation.size());
+            for (Predicate fact: relation) {
+                for (Argument argument: fact.args) {
+                    writeVarInt(section, dictionary.mapName(argument.name));
+                }
+            }
+        }
+        return section;
+    }
+
+    static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while (0 != (value & ~0x7F)) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    public static BinaryResult read(String path) throws IOException {
+        final Map<Integer, ByteBuffer> sections = readSections(path, MAGIC, VERSION, "binary result");
+
+        /* 字典：每个名字只解码一次 */
+        final String[] num_2_name = decodeDictionary(requireSection(sections, SECTION_DICTIONARY));
+        final Constant[] num_2_constant = constantsOf(num_2_name);
+
+        final ByteBuffer hypothesis_section = requireSection(sections, SECTION_HYPOTHESIS);
+        final int rules = readVarInt(hypothesis_section);
+        final List<Rule> hypothesis = new ArrayList<>(rules);
+        for (int i = 0; i < rules; i++) {
+            hypothesis.add(new BareRule(decodeRule(hypothesis_section, num_2_name, num_2_constant), new HashSet<>()));
+        }
+
+        final Set<Predicate> start_set = decodeRelations(
+                requireSection(sections, SECTION_START_SET), num_2_name, num_2_constant
+        );
+        final Set<Predicate> counter_examples = decodeRelations(
+                requireSection(sections, SECTION_COUNTER_EXAMPLES), num_2_name, num_2_constant
+        );
+        final ByteBuffer supplementary_section = requireSection(sections, SECTION_SUPPLEMENTARY_CONSTANTS);
+        final int supplementary_cnt = readVarInt(supplementary_section);
+        final Set<String> supplementary_constants = new HashSet<>();
+        for (int i = 0; i < supplementary_cnt; i++) {
+            supplementary_constants.add(num_2_name[readVarInt(supplementary_section)]);
+        }
+        return new BinaryResult(hypothesis, start_set, counter_examples, supplementary_constants);
+    }
+
+    /**
+     * 检查文件头，然后返回文件的内存映射上各个section的只读视图
+     */
+    static Map<Integer, ByteBuffer> readSections(String path, int magic, int version, String kind) throws IOException {
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (magic != buffer.getInt(0)) {
+            throw new IOException("Not a SInC " + kind + ": " + path);
+        }
+        final int file_version = buffer.getInt(Integer.BYTES);
+        if (version != file_version) {
+            throw new IOException("Unsupported " + kind + " version: " + file_version);
+        }
+        final int section_cnt = buffer.getInt(Integer.BYTES * 2);
+        final Map<Integer, ByteBuffer> sections = new HashMap<>();
+        for (int i = 0; i < section_cnt; i++) {
+            final int entry_offset = HEADER_SIZE + SECTION_ENTRY_SIZE * i;
+            final int type = buffer.getInt(entry_offset);
+            final long offset = buffer.getLong(entry_offset + Integer.BYTES);
+            final long length = buffer.getLong(entry_offset + Integer.BYTES + Long.BYTES);
+            final ByteBuffer section = buffer.duplicate();
+            section.limit((int) (offset + length));
+            section.position((int) offset);
+            sections.put(type, section.slice());
+        }
+        return sections;
+    }
+
+    /**
+     * @return 编号到名字的映射，下标0不使用
+     */
+    static String[] decodeDictionary(ByteBuffer section) {
+        final int names = readVarInt(section);
+        final String[] num_2_name = new String[names + 1];
+        for (int num = 1; num <= names; num++) {
+            final int length = readVarInt(section);
+            final byte[] bytes = new byte[length];
+            section.get(bytes);
+            num_2_name[num] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return num_2_name;
+    }
+
+    static Constant[] constantsOf(String[] num2Name) {
+        final Constant[] num_2_constant = new Constant[num2Name.length];
+        for (int num = 1; num < num2Name.length; num++) {
+            num_2_constant[num] = new Constant(Rule.CONSTANT_ARG_ID, num2Name[num]);
+        }
+        return num_2_constant;
+    }
+
+    static List<Predicate> decodeRule(ByteBuffer section, String[] num2Name, Constant[] num2Constant) {
+        final int length = readVarInt(section);
+        final List<Predicate> structure = new ArrayList<>(length);
+        for (int pred_idx = 0; pred_idx < length; pred_idx++) {
+            final String functor = num2Name[readVarInt(section)];
+            final Predicate predicate = new Predicate(functor, readVarInt(section));
+            for (int arg_idx = 0; arg_idx < predicate.arity(); arg_idx++) {
+                final int code = readVarInt(section);
+                if (0 == code) {
+                    predicate.args[arg_idx] = null;
+                } else if (1 == (code & 1)) {
+                    predicate.args[arg_idx] = new Variable(code >>> 1);
+                } else {
+                    predicate.args[arg_idx] = num2Constant[code >>> 1];
+                }
+            }
+            structure.add(predicate);
+        }
+        return structure;
+    }
+
+    static ByteBuffer requireSection(Map<Integer, ByteBuffer> sections, int type) throws IOException {
+        final ByteBuffer section = sections.get(type);
+        if (null == section) {
+            throw new IOException("Missing section in binary result: " + type);
+        }
+        return section;
+    }
+
+    static Set<Predicate> decodeRelations(ByteBuffer section, String[] num2Name, Constant[] num2Constant) {
+        return decodeRelations(section, num2Name, num2Constant, new HashSet<>());
+    }
+
+    /**
+     * 按写入的顺序把facts放入collection
+     */
+    static <C extends Collection<Predicate>> C decodeRelations(
+            ByteBuffer section, String[] num2Name, Constant[] num2Constant, C facts
+    ) {
+        final int relations = readVarInt(section);
+        for (int i = 0; i < relations; i++) {
+            final String functor = num2Name[readVarInt(section)];
+            final int arity = readVarInt(section);
+            final int tuples = readVarInt(section);
+            for (int j = 0; j < tuples; j++) {
+                final Predicate fact = new Predicate(functor, arity);
+                for (int arg_idx = 0; arg_idx < arity; arg_idx++) {
+                    fact.args[arg_idx] = num2Constant[readVarInt(section)];
+                }
+                facts.add(fact);
+            }
+        }
+        return facts;
+    }
+
+    static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (0 != (b & 0x80));
+        return value;
+    }
+}
@@ -0,0 +1,419 @@
+package sinc;
+
+import sinc.common.*;
+import sinc.util.NumerationMap;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 压缩过程的检查点，记录已经提交的rules及其对KB的影响，中断之后可以从这里继续搜索，而不需要从头开始。
+ *
+ * 文件的header与section表与BinaryResult相同，字典与relation的编码方式也相同：
+ *   - DICTIONARY: [名字数量]{[UTF-8字节数][UTF-8字节]}
+ *   - HYPOTHESIS: [rule数量]{[rule结构(同BinaryResult)][posCnt: 8字节double][allCnt: 8字节double]}
+ *   - COUNTER_EXAMPLES/PROVED_FACTS: [relation数量]{[functor][arity][tuple数量]{[常量]...}}
+ *   - GRAPH_NODES: 格式同relation，点的编号为解码的顺序(从0开始)，公理为0元的"⊥"
+ *   - GRAPH_EDGES: [有依赖的点的数量]{[点][依赖数量]{[点]}}
+ *   - REMAINING_TARGETS: [functor数量]{[functor]}，保持搜索的顺序
+ *   - JOURNAL_ID: [8字节long]，可选，与之匹配的日志文件中的记录在读取时追加到检查点上
+ *
+ * 写入时先写到临时文件，再原子地替换原来的检查点，因此中途被打断时原来的检查点仍然完整。
+ *
+ * 搜索过程中不重写整个检查点，而是把每次提交的增量追加到日志文件(路径加JOURNAL_SUFFIX)中，
+ * 写入量与提交的内容成正比。日志的格式为[magic: int][JOURNAL_ID: long]，之后每条记录为[长度: int][内容]，
+ * 名字直接以[UTF-8字节数][UTF-8字节]写出：
+ *   - RULE: [type][rule结构(常量为2后跟名字)][posCnt][allCnt][counter example数量]{[fact]}[grounding数量]{[fact数量]{[fact]}}
+ *   - TARGET_DONE: [type][functor]
+ * fact为[functor][arity]{[常量]}。最后一条记录不完整(写入时被打断)时忽略之。
+ */
+public class Checkpoint {
+    public static final int MAGIC = 0x53434B50;  // "SCKP"
+    public static final int VERSION = 1;
+
+    public static final int SECTION_DICTIONARY = 1;
+    public static final int SECTION_HYPOTHESIS = 2;
+    public static final int SECTION_COUNTER_EXAMPLES = 3;
+    public static final int SECTION_PROVED_FACTS = 4;
+    public static final int SECTION_GRAPH_NODES = 5;
+    public static final int SECTION_GRAPH_EDGES = 6;
+    public static final int SECTION_REMAINING_TARGETS = 7;
+    public static final int SECTION_JOURNAL_ID = 8;
+
+    public static final String JOURNAL_SUFFIX = ".journal";
+    public static final int JOURNAL_MAGIC = 0x534A524E;  // "SJRN"
+    public static final int RECORD_RULE = 1;
+    public static final int RECORD_TARGET_DONE = 2;
+
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final int JOURNAL_HEADER_SIZE = Integer.BYTES + Long.BYTES;
+
+    public final List<Rule> hypothesis;
+    public final Set<Predicate> counterExamples;
+    public final Set<Predicate> provedFacts;
+    /* 每个被证明的fact所依赖的facts */
+    public final Map<Predicate, Set<Predicate>> dependencies;
+    public final List<String> remainingTargets;
+
+    public Checkpoint(
+            List<Rule> hypothesis, Set<Predicate> counterExamples, Set<Predicate> provedFacts,
+            Map<Predicate, Set<Predicate>> dependencies, List<String> remainingTargets
+    ) {
+        this.hypothesis = hypothesis;
+        this.counterExamples = counterExamples;
+        this.provedFacts = provedFacts;
+        this.dependencies = dependencies;
+        this.remainingTargets = remainingTargets;
+    }
+
+    public void write(String path) throws IOException {
+        write(path, null);
+    }
+
+    /**
+     * 写入检查点并开始一个新的日志，之后的提交通过返回的Journal追加。旧的日志与新的检查点不匹配，读取时被忽略
+     */
+    public Journal writeWithJournal(String path) throws IOException {
+        final long journal_id = ThreadLocalRandom.current().nextLong();
+        write(path, journal_id);
+        return Journal.create(path + JOURNAL_SUFFIX, journal_id);
+    }
+
+    private void write(String path, Long journalId) throws IOException {
+        final NumerationMap dictionary = new NumerationMap();
+
+        final ByteArrayOutputStream hypothesis_section = new ByteArrayOutputStream();
+        BinaryResult.writeVarInt(hypothesis_section, hypothesis.size());
+        for (Rule rule: hypothesis) {
+            BinaryResult.encodeRule(hypothesis_section, rule, dictionary);
+            writeDouble(hypothesis_section, rule.getEval().getPosCnt());
+            writeDouble(hypothesis_section, rule.getEval().getAllCnt());
+        }
+        final ByteArrayOutputStream counter_example_section = BinaryResult.encodeRelations(counterExamples, dictionary);
+        final ByteArrayOutputStream proved_fact_section = BinaryResult.encodeRelations(provedFacts, dictionary);
+
+        /* 点按functor分组之后编号，使得按relation解码的顺序与编号一致 */
+        final Map<String, List<Predicate>> functor_2_nodes = new LinkedHashMap<>();
+        final Map<Predicate, Integer> node_ids = new HashMap<>();
+        for (Map.Entry<Predicate, Set<Predicate>> entry: dependencies.entrySet()) {
+            addNode(entry.getKey(), functor_2_nodes, node_ids);
+            for (Predicate dependency: entry.getValue()) {
+                addNode(dependency, functor_2_nodes, node_ids);
+            }
+        }
+        final List<Predicate> nodes = new ArrayList<>(node_ids.size());
+        for (List<Predicate> relation: functor_2_nodes.values()) {
+            for (Predicate node: relation) {
+                node_ids.put(node, nodes.size());
+                nodes.add(node);
+            }
+        }
+        final ByteArrayOutputStream node_section = BinaryResult.encodeRelations(nodes, dictionary);
+        final ByteArrayOutputStream edge_section = new ByteArrayOutputStream();
+        BinaryResult.writeVarInt(edge_section, dependencies.size());
+        for (Map.Entry<Predicate, Set<Predicate>> entry: dependencies.entrySet()) {
+            BinaryResult.writeVarInt(edge_section, node_ids.get(entry.getKey()));
+            BinaryResult.writeVarInt(edge_section, entry.getValue().size());
+            for (Predicate dependency: entry.getValue()) {
+                BinaryResult.writeVarInt(edge_section, node_ids.get(dependency));
+            }
+        }
+
+        final ByteArrayOutputStream remaining_section = new ByteArrayOutputStream();
+        BinaryResult.writeVarInt(remaining_section, remainingTargets.size());
+        for (String functor: remainingTargets) {
+            BinaryResult.writeVarInt(remaining_section, dictionary.mapName(functor));
+        }
+
+        int[] types = new int[]{
+                SECTION_DICTIONARY, SECTION_HYPOTHESIS, SECTION_COUNTER_EXAMPLES, SECTION_PROVED_FACTS,
+                SECTION_GRAPH_NODES, SECTION_GRAPH_EDGES, SECTION_REMAINING_TARGETS
+        };
+        ByteArrayOutputStream[] sections = new ByteArrayOutputStream[]{
+                BinaryResult.encodeDictionary(dictionary), hypothesis_section, counter_example_section,
+                proved_fact_section, node_section, edge_section, remaining_section
+        };
+        if (null != journalId) {
+            final ByteArrayOutputStream journal_section = new ByteArrayOutputStream();
+            writeLong(journal_section, journalId);
+            types = Arrays.copyOf(types, types.length + 1);
+            types[types.length - 1] = SECTION_JOURNAL_ID;
+            sections = Arrays.copyOf(sections, sections.length + 1);
+            sections[sections.length - 1] = journal_section;
+        }
+        final Path target = Paths.get(path);
+        final Path tmp = Paths.get(path + TMP_SUFFIX);
+        BinaryResult.writeSections(tmp.toString(), MAGIC, VERSION, types, sections);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void addNode(
+            Predicate node, Map<String, List<Predicate>> functor2Nodes, Map<Predicate, Integer> nodeIds
+    ) {
+        if (null == nodeIds.putIfAbsent(node, -1)) {
+            functor2Nodes.computeIfAbsent(node.functor, k -> new ArrayList<>()).add(node);
+        }
+    }
+
+    private static void writeDouble(ByteArrayOutputStream out, double value) {
+        writeLong(out, Double.doubleToLongBits(value));
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    private static void writeName(ByteArrayOutputStream out, String name) {
+        final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        BinaryResult.writeVarInt(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readName(ByteBuffer buffer) {
+        final byte[] bytes = new byte[BinaryResult.readVarInt(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeFact(ByteArrayOutputStream out, Predicate fact) {
+        writeName(out, fact.functor);
+        BinaryResult.writeVarInt(out, fact.arity());
+        for (Argument argument: fact.args) {
+            writeName(out, argument.name);
+        }
+    }
+
+    private static Predicate readFact(ByteBuffer buffer, Map<String, Constant> constants) {
+        final Predicate fact = new Predicate(readName(buffer), BinaryResult.readVarInt(buffer));
+        for (int arg_idx = 0; arg_idx < fact.arity(); arg_idx++) {
+            fact.args[arg_idx] = constants.computeIfAbsent(
+                    readName(buffer), name -> new Constant(Rule.CONSTANT_ARG_ID, name)
+            );
+        }
+        return fact;
+    }
+
+    /**
+     * 只追加写入的日志，由SInC在提交rule与完成head functor时调用。每条记录写完之后立即flush
+     */
+    public static class Journal implements Closeable {
+        private final DataOutputStream out;
+
+        private Journal(DataOutputStream out) {
+            this.out = out;
+        }
+
+        static Journal create(String path, long journalId) throws IOException {
+            final Path target = Paths.get(path);
+            final Path tmp = Paths.get(path + TMP_SUFFIX);
+            try (DataOutputStream header = new DataOutputStream(new FileOutputStream(tmp.toFile()))) {
+                header.writeInt(JOURNAL_MAGIC);
+                header.writeLong(journalId);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new Journal(new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path, true))));
+        }
+
+        /**
+         * @param groundings 与UpdateResult中的相同，head之外没有body的grounding表示公理
+         */
+        public void appendRule(
+                Rule rule, Collection<Predicate> counterExamples, List<Predicate[]> groundings
+        ) throws IOException {
+            final ByteArrayOutputStream record = new ByteArrayOutputStream();
+            record.write(RECORD_RULE);
+            BinaryResult.writeVarInt(record, rule.length());
+            for (int pred_idx = 0; pred_idx < rule.length(); pred_idx++) {
+                final Predicate predicate = rule.getPredicate(pred_idx);
+                writeName(record, predicate.functor);
+                BinaryResult.writeVarInt(record, predicate.arity());
+                for (Argument argument: predicate.args) {
+                    if (null == argument) {
+                        BinaryResult.writeVarInt(record, 0);
+                    } else if (argument.isVar) {
+                        BinaryResult.writeVarInt(record, 2 * argument.id + 1);
+                    } else {
+                        BinaryResult.writeVarInt(record, 2);
+                        writeName(record, argument.name);
+                    }
+                }
+            }
+            writeDouble(record, rule.getEval().getPosCnt());
+            writeDouble(record, rule.getEval().getAllCnt());
+            BinaryResult.writeVarInt(record, counterExamples.size());
+            for (Predicate counter_example: counterExamples) {
+                writeFact(record, counter_example);
+            }
+            BinaryResult.writeVarInt(record, groundings.size());
+            for (Predicate[] grounding: groundings) {
+                BinaryResult.writeVarInt(record, grounding.length);
+                for (Predicate fact: grounding) {
+                    writeFact(record, fact);
+                }
+            }
+            append(record);
+        }
+
+        public void appendTargetDone(String functor) throws IOException {
+            final ByteArrayOutputStream record = new ByteArrayOutputStream();
+            record.write(RECORD_TARGET_DONE);
+            writeName(record, functor);
+            append(record);
+        }
+
+        private void append(ByteArrayOutputStream record) throws IOException {
+            out.writeInt(record.size());
+            record.writeTo(out);
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * 把日志中的记录按顺序追加到检查点上
+     */
+    private void replayJournal(String path, long journalId) throws IOException {
+        final Path journal_path = Paths.get(path);
+        if (!Files.exists(journal_path)) {
+            return;
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(journal_path));
+        if (JOURNAL_HEADER_SIZE > buffer.remaining() || JOURNAL_MAGIC != buffer.getInt()
+                || journalId != buffer.getLong()) {
+            /* 不属于这个检查点的旧日志 */
+            return;
+        }
+        final Map<String, Constant> constants = new HashMap<>();
+        while (Integer.BYTES <= buffer.remaining()) {
+            final int length = buffer.getInt();
+            if (length > buffer.remaining()) {
+                break;
+            }
+            final ByteBuffer record = buffer.slice();
+            record.limit(length);
+            buffer.position(buffer.position() + length);
+            switch (record.get()) {
+                case RECORD_RULE:
+                    replayRule(record, constants);
+                    break;
+                case RECORD_TARGET_DONE:
+                    remainingTargets.remove(readName(record));
+                    break;
+                default:
+                    throw new IOException("Unknown journal record in: " + path);
+            }
+        }
+    }
+
+    private void replayRule(ByteBuffer record, Map<String, Constant> constants) {
+        final int length = BinaryResult.readVarInt(record);
+        final List<Predicate> structure = new ArrayList<>(length);
+        for (int pred_idx = 0; pred_idx < length; pred_idx++) {
+            final Predicate predicate = new Predicate(readName(record), BinaryResult.readVarInt(record));
+            for (int arg_idx = 0; arg_idx < predicate.arity(); arg_idx++) {
+                final int code = BinaryResult.readVarInt(record);
+                if (0 == code) {
+                    predicate.args[arg_idx] = null;
+                } else if (1 == (code & 1)) {
+                    predicate.args[arg_idx] = new Variable(code >>> 1);
+                } else {
+                    predicate.args[arg_idx] = constants.computeIfAbsent(
+                            readName(record), name -> new Constant(Rule.CONSTANT_ARG_ID, name)
+                    );
+                }
+            }
+            structure.add(predicate);
+        }
+        final double pos_cnt = record.getDouble();
+        final double all_cnt = record.getDouble();
+        hypothesis.add(new BareRule(structure, new HashSet<>(), pos_cnt, all_cnt));
+
+        final int counter_examples = BinaryResult.readVarInt(record);
+        for (int i = 0; i < counter_examples; i++) {
+            counterExamples.add(readFact(record, constants));
+        }
+        final int groundings = BinaryResult.readVarInt(record);
+        for (int i = 0; i < groundings; i++) {
+            final int grounding_length = BinaryResult.readVarInt(record);
+            final Predicate head = readFact(record, constants);
+            final Set<Predicate> head_dependencies = dependencies.computeIfAbsent(head, k -> new HashSet<>());
+            if (1 >= grounding_length) {
+                head_dependencies.add(SInC.AXIOM_NODE.content);
+            }
+            for (int pred_idx = Rule.FIRST_BODY_PRED_IDX; pred_idx < grounding_length; pred_idx++) {
+                head_dependencies.add(readFact(record, constants));
+            }
+            provedFacts.add(head);
+        }
+    }
+
+    public static Checkpoint read(String path) throws IOException {
+        final Map<Integer, ByteBuffer> sections = BinaryResult.readSections(path, MAGIC, VERSION, "checkpoint");
+        final String[] num_2_name = BinaryResult.decodeDictionary(
+                BinaryResult.requireSection(sections, SECTION_DICTIONARY)
+        );
+        final Constant[] num_2_constant = BinaryResult.constantsOf(num_2_name);
+
+        final ByteBuffer hypothesis_section = BinaryResult.requireSection(sections, SECTION_HYPOTHESIS);
+        final int rules = BinaryResult.readVarInt(hypothesis_section);
+        final List<Rule> hypothesis = new ArrayList<>(rules);
+        for (int i = 0; i < rules; i++) {
+            final List<Predicate> structure = BinaryResult.decodeRule(hypothesis_section, num_2_name, num_2_constant);
+            final double pos_cnt = hypothesis_section.getDouble();
+            final double all_cnt = hypothesis_section.getDouble();
+            hypothesis.add(new BareRule(structure, new HashSet<>(), pos_cnt, all_cnt));
+        }
+
+        final Set<Predicate> counter_examples = BinaryResult.decodeRelations(
+                BinaryResult.requireSection(sections, SECTION_COUNTER_EXAMPLES), num_2_name, num_2_constant
+        );
+        final Set<Predicate> proved_facts = BinaryResult.decodeRelations(
+                BinaryResult.requireSection(sections, SECTION_PROVED_FACTS), num_2_name, num_2_constant
+        );
+
+        final List<Predicate> nodes = BinaryResult.decodeRelations(
+                BinaryResult.requireSection(sections, SECTION_GRAPH_NODES), num_2_name, num_2_constant,
+                new ArrayList<>()
+        );
+        final ByteBuffer edge_section = BinaryResult.requireSection(sections, SECTION_GRAPH_EDGES);
+        final int heads = BinaryResult.readVarInt(edge_section);
+        final Map<Predicate, Set<Predicate>> dependencies = new HashMap<>();
+        for (int i = 0; i < heads; i++) {
+            final Predicate head = nodes.get(BinaryResult.readVarInt(edge_section));
+            final int dependency_cnt = BinaryResult.readVarInt(edge_section);
+            final Set<Predicate> head_dependencies = new HashSet<>();
+            for (int j = 0; j < dependency_cnt; j++) {
+                head_dependencies.add(nodes.get(BinaryResult.readVarInt(edge_section)));
+            }
+            dependencies.put(head, head_dependencies);
+        }
+
+        final ByteBuffer remaining_section = BinaryResult.requireSection(sections, SECTION_REMAINING_TARGETS);
+        final int remaining_cnt = BinaryResult.readVarInt(remaining_section);
+        final List<String> remaining_targets = new ArrayList<>(remaining_cnt);
+        for (int i = 0; i < remaining_cnt; i++) {
+            remaining_targets.add(num_2_name[BinaryResult.readVarInt(remaining_section)]);
+        }
+        final Checkpoint checkpoint = new Checkpoint(
+                hypothesis, counter_examples, proved_facts, dependencies, remaining_targets
+        );
+        final ByteBuffer journal_section = sections.get(SECTION_JOURNAL_ID);
+        if (null != journal_section) {
+            checkpoint.replayJournal(path + JOURNAL_SUFFIX, journal_section.getLong());
+        }
+        return checkpoint;
+    }
+}
@@ -6,9 +6,12 @@ import sinc.common.Model;
 import sinc.common.Dataset;
 import sinc.common.SincException;
 
+import java.io.IOException;
+
 public class Main {
 
     public static final int DEFAULT_BEAM_WIDTH = 3;
+    public static final int DEFAULT_THREADS = 1;
     public static final double DEFAULT_FACT_COVERAGE = 0.05;
     public static final double DEFAULT_CONSTANT_COVERAGE = 0.25;
     public static final double DEFAULT_COLUMN_SIMILARITY = 0.1;
@@ -29,6 +32,17 @@ public class Main {
     private static final String SHORT_OPT_DATA_PATH = "d";
     private static final String SHORT_OPT_EVAL_METRIC = "e";
     private static final String SHORT_OPT_MODEL = "m";
+    private static final String SHORT_OPT_THREADS = "t";
+    private static final String SHORT_OPT_SAMPLE_RATE = "a";
+    private static final String SHORT_OPT_JOIN_EVAL = "j";
+    private static final String SHORT_OPT_ENCODED_KB = "E";
+    private static final String SHORT_OPT_SKETCH_SIMILARITY = "S";
+    private static final String SHORT_OPT_BOUND_PRUNING = "P";
+    private static final String SHORT_OPT_CHECKPOINT = "k";
+    private static final String SHORT_OPT_RESUME = "R";
+    private static final String SHORT_OPT_TIME_BUDGET = "T";
+    private static final String SHORT_OPT_TARGET_BUDGET = "F";
+    private static final String SHORT_OPT_BINARY_RESULT = "B";
     private static final String LONG_OPT_BEAM_WIDTH = "beam-width";
     private static final String LONG_OPT_VALIDATE = "validate";
     private static final String LONG_OPT_FACT_COVERAGE = "fact-coverage";
@@ -42,9 +56,42 @@ public class Main {
     private static final String LONG_OPT_DATASET = "dataset";
     private static final String LONG_OPT_EVAL_METRIC = "eval-metric";
     private static final String LONG_OPT_MODEL = "model";
+    private static final String LONG_OPT_THREADS = "threads";
+    private static final String LONG_OPT_SAMPLE_RATE = "sample-rate";
+    private static final String LONG_OPT_JOIN_EVAL = "join-eval";
+    private static final String LONG_OPT_ENCODED_KB = "encoded-kb";
+    private static final String LONG_OPT_SKETCH_SIMILARITY = "sketch-similarity";
+    private static final String LONG_OPT_BOUND_PRUNING = "bound-pruning";
+    private static final String LONG_OPT_CHECKPOINT = "checkpoint";
+    private static final String LONG_OPT_RESUME = "resume";
+    private static final String LONG_OPT_TIME_BUDGET = "time-budget";
+    private static final String LONG_OPT_TARGET_BUDGET = "target-budget";
+    private static final String LONG_OPT_BINARY_RESULT = "binary-result";
 
     private static final Option OPTION_BEAM_WIDTH = Option.builder(SHORT_OPT_BEAM_WIDTH).longOpt(LONG_OPT_BEAM_WIDTH)
             .desc(String.format("Bean search width (Default %d)", DEFAULT_BEAM_WIDTH)).argName("b").hasArg().type(Integer.class).build();
+    private static final Option OPTION_THREADS = Option.builder(SHORT_OPT_THREADS).longOpt(LONG_OPT_THREADS)
+            .desc(String.format("Number of threads evaluating candidate rules (Default %d)", DEFAULT_THREADS)).argName("t").hasArg().type(Integer.class).build();
+    private static final Option OPTION_SAMPLE_RATE = Option.builder(SHORT_OPT_SAMPLE_RATE).longOpt(LONG_OPT_SAMPLE_RATE)
+            .desc("Estimate candidate rules on a sample of this rate (in [0, 1)), only top candidates are evaluated exactly (Default no sampling)").argName("sr").hasArg().type(Double.class).build();
+    private static final Option OPTION_JOIN_EVAL = Option.builder(SHORT_OPT_JOIN_EVAL).longOpt(LONG_OPT_JOIN_EVAL)
+            .desc("Evaluate rules by Leapfrog Triejoin on the encoded KB instead of caching groundings (ignores sampling)").build();
+    private static final Option OPTION_ENCODED_KB = Option.builder(SHORT_OPT_ENCODED_KB).longOpt(LONG_OPT_ENCODED_KB)
+            .desc("Load the KB with dictionary encoding and columnar storage (always used with -j)").build();
+    private static final Option OPTION_SKETCH_SIMILARITY = Option.builder(SHORT_OPT_SKETCH_SIMILARITY).longOpt(LONG_OPT_SKETCH_SIMILARITY)
+            .desc("Find similar column pairs by MinHash/LSH candidates instead of comparing all column pairs").build();
+    private static final Option OPTION_BOUND_PRUNING = Option.builder(SHORT_OPT_BOUND_PRUNING).longOpt(LONG_OPT_BOUND_PRUNING)
+            .desc("Skip evaluating extensions whose upper bound cannot enter the beams (ignored with sampling)").build();
+    private static final Option OPTION_CHECKPOINT = Option.builder(SHORT_OPT_CHECKPOINT).longOpt(LONG_OPT_CHECKPOINT)
+            .desc("Write a checkpoint to this path after each accepted rule").argName("path").hasArg().build();
+    private static final Option OPTION_RESUME = Option.builder(SHORT_OPT_RESUME).longOpt(LONG_OPT_RESUME)
+            .desc("Resume from a checkpoint (further checkpoints are written to the same path unless -k is given)").argName("path").hasArg().build();
+    private static final Option OPTION_TIME_BUDGET = Option.builder(SHORT_OPT_TIME_BUDGET).longOpt(LONG_OPT_TIME_BUDGET)
+            .desc("Stop searching after this many seconds and keep the best rules found so far (Default no limit)").argName("sec").hasArg().type(Integer.class).build();
+    private static final Option OPTION_TARGET_BUDGET = Option.builder(SHORT_OPT_TARGET_BUDGET).longOpt(LONG_OPT_TARGET_BUDGET)
+            .desc("Time budget in seconds for searching rules of each head functor (Default no limit)").argName("sec").hasArg().type(Integer.class).build();
+    private static final Option OPTION_BINARY_RESULT = Option.builder(SHORT_OPT_BINARY_RESULT).longOpt(LONG_OPT_BINARY_RESULT)
+            .desc("Also dump the result in binary format to the result path with suffix \".bin\"").build();
     private static final Option OPTION_VALIDATE = Option.builder(SHORT_OPT_VALIDATE).longOpt(LONG_OPT_VALIDATE)
             .desc("Validate result after compression").build();
     private static final Option OPTION_FACT_COVERAGE = Option.builder(SHORT_OPT_FACT_COVERAGE).longOpt(LONG_OPT_FACT_COVERAGE)
@@ -111,6 +158,19 @@ public class Main {
         Options options = buildOptions();
         SInC sinc = parseArgs(options, args);
         if (null != sinc) {
+            /* 在stdin里随便输入点什么就终止运行，已经找到的结果仍然会被记录 */
+            final Thread stdin_watcher = new Thread(() -> {
+                try {
+                    while (System.in.available() <= 0) {
+                        Thread.sleep(1000);
+                    }
+                    sinc.cancel();
+                } catch (IOException | InterruptedException e) {
+                    /* 无法读取stdin时只能等待运行结束 */
+                }
+            });
+            stdin_watcher.setDaemon(true);
+            stdin_watcher.start();
             sinc.run();
         }
     }
@@ -136,6 +196,55 @@ public class Main {
             }
         }
 
+        /* Assign Threads */
+        int threads = DEFAULT_THREADS;
+        if (cmd.hasOption(SHORT_OPT_THREADS)) {
+            String value = cmd.getOptionValue(SHORT_OPT_THREADS);
+            if (null != value) {
+                threads = Integer.parseInt(value);
+                System.out.println("Threads set to: " + threads);
+            }
+        }
+
+        /* Assign Sample Rate (a) */
+        double sample_rate = -1.0;
+        boolean estimation = false;
+        if (cmd.hasOption(SHORT_OPT_SAMPLE_RATE)) {
+            String value = cmd.getOptionValue(SHORT_OPT_SAMPLE_RATE);
+            if (null != value) {
+                sample_rate = Double.parseDouble(value);
+                if (0.0 > sample_rate || 1.0 <= sample_rate) {
+                    throw new SincException("Sample rate should be in [0, 1): " + value);
+                }
+                estimation = true;
+                System.out.println("Sample rate set to: " + sample_rate);
+            }
+        }
+
+        /* Determine Join Evaluation (j) */
+        final boolean join_evaluation = cmd.hasOption(SHORT_OPT_JOIN_EVAL);
+        if (join_evaluation) {
+            System.out.println("Join evaluation enabled");
+        }
+
+        /* Determine Encoded KB (E) */
+        final boolean encoded_kb = cmd.hasOption(SHORT_OPT_ENCODED_KB);
+        if (encoded_kb) {
+            System.out.println("Encoded KB enabled");
+        }
+
+        /* Determine Sketch Similarity (S) */
+        final boolean sketch_similarity = cmd.hasOption(SHORT_OPT_SKETCH_SIMILARITY);
+        if (sketch_similarity) {
+            System.out.println("Sketch column similarity enabled");
+        }
+
+        /* Determine Bound Pruning (P) */
+        final boolean bound_pruning = cmd.hasOption(SHORT_OPT_BOUND_PRUNING);
+        if (bound_pruning) {
+            System.out.println("Bound pruning enabled");
+        }
+
         /* Determine Validation */
         boolean validation = cmd.hasOption(SHORT_OPT_VALIDATE);
 
@@ -226,6 +335,15 @@ public class Main {
             }
         }
 
+        /* Determine Binary Result (B) */
+        final boolean binary_result = cmd.hasOption(SHORT_OPT_BINARY_RESULT);
+        if (binary_result) {
+            if (null == result_path) {
+                throw new SincException("Binary result requires a result path (-r)");
+            }
+            System.out.println("Binary result enabled");
+        }
+
         /* Create Model */
         Model model = DEFAULT_MODEL;
         if (cmd.hasOption(OPTION_MODEL)) {
@@ -237,11 +355,53 @@ public class Main {
             System.out.println("Model set to: " + model.getName());
         }
 
-        SincConfig config = new SincConfig(
-                1, validation, false, beam, false, metric, fc, cc, cs, scr, true,
-                -1.0, false, false
-        );
-        return Model.getModel(model.getName(), config, data_path, result_path, log_path);
+        SincConfig config = new SincConfig.Builder()
+                .threads(threads)
+                .validation(validation)
+                .beamWidth(beam)
+                .evalMetric(metric)
+                .minFactCoverage(fc)
+                .minConstantCoverage(cc)
+                .minColumnSimilarity(cs)
+                .stopCompressionRate(scr)
+                .ruleCache(true)
+                .sampling(sample_rate)
+                .estimation(estimation)
+                .encodedKb(encoded_kb)
+                .boundPruning(bound_pruning)
+                .joinEvaluation(join_evaluation)
+                .sketchColumnSimilarity(sketch_similarity)
+                .binaryResult(binary_result)
+                .build();
+        final SInC sinc = Model.getModel(model.getName(), config, data_path, result_path, log_path);
+
+        /* Checkpoint & Resume (k, R) */
+        String checkpoint_path = cmd.getOptionValue(SHORT_OPT_CHECKPOINT);
+        if (cmd.hasOption(SHORT_OPT_RESUME)) {
+            final String resume_path = cmd.getOptionValue(SHORT_OPT_RESUME);
+            sinc.resumeFrom(resume_path);
+            System.out.println("Resume from: " + resume_path);
+            if (null == checkpoint_path) {
+                checkpoint_path = resume_path;
+            }
+        }
+        if (null != checkpoint_path) {
+            sinc.enableCheckpoint(checkpoint_path);
+            System.out.println("Checkpoint path set to: " + checkpoint_path);
+        }
+
+        /* Assign Time Budgets (T, F) */
+        if (cmd.hasOption(SHORT_OPT_TIME_BUDGET)) {
+            final int seconds = Integer.parseInt(cmd.getOptionValue(SHORT_OPT_TIME_BUDGET));
+            sinc.setTimeBudget(seconds * 1000L);
+            System.out.println("Time budget set to: " + seconds + "s");
+        }
+        if (cmd.hasOption(SHORT_OPT_TARGET_BUDGET)) {
+            final int seconds = Integer.parseInt(cmd.getOptionValue(SHORT_OPT_TARGET_BUDGET));
+            sinc.setTargetTimeBudget(seconds * 1000L);
+            System.out.println("Target time budget set to: " + seconds + "s");
+        }
+        return sinc;
     }
 
     protected static Options buildOptions() {
@@ -253,6 +413,36 @@ public class Main {
         /* Beam Assignment (b) */
         options.addOption(OPTION_BEAM_WIDTH);
 
+        /* Thread Assignment (t) */
+        options.addOption(OPTION_THREADS);
+
+        /* Sample Rate Assignment (a) */
+        options.addOption(OPTION_SAMPLE_RATE);
+
+        /* Join Evaluation (j) */
+        options.addOption(OPTION_JOIN_EVAL);
+
+        /* Encoded KB (E) */
+        options.addOption(OPTION_ENCODED_KB);
+
+        /* Sketch Similarity (S) */
+        options.addOption(OPTION_SKETCH_SIMILARITY);
+
+        /* Bound Pruning (P) */
+        options.addOption(OPTION_BOUND_PRUNING);
+
+        /* Checkpoint (k) */
+        options.addOption(OPTION_CHECKPOINT);
+
+        /* Resume (R) */
+        options.addOption(OPTION_RESUME);
+
+        /* Time Budget (T) */
+        options.addOption(OPTION_TIME_BUDGET);
+
+        /* Target Time Budget (F) */
+        options.addOption(OPTION_TARGET_BUDGET);
+
         /* Validate (v) */
         options.addOption(OPTION_VALIDATE);
 
@@ -277,6 +467,9 @@ public class Main {
         /* Dump Path (r) */
         options.addOption(OPTION_RESULT_PATH);
 
+        /* Binary Result (B) */
+        options.addOption(OPTION_BINARY_RESULT);
+
         /* Log Path (l) */
         options.addOption(OPTION_LOG_PATH);
 
@@ -2,11 +2,19 @@ package sinc;
 
 import sinc.common.*;
 import sinc.util.graph.BaseGraphNode;
+import sinc.util.graph.CsrGraph;
+import sinc.util.graph.CsrTarjan;
 import sinc.util.graph.FeedbackVertexSetSolver;
-import sinc.util.graph.Tarjan;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
 
 public abstract class SInC {
 
@@ -27,7 +35,78 @@ public abstract class SInC {
     protected final PerformanceMonitor performanceMonitor = new PerformanceMonitor();
 
     /* 终止执行的flag */
-    protected boolean interrupted = false;
+    protected volatile boolean interrupted = false;
+
+    /* 整个运行与每个head functor的时间预算(ms)，不大于0时不限制。预算用完时，当前的搜索返回已经找到的最好的rule */
+    protected long timeBudget = 0;
+    protected long targetTimeBudget = 0;
+    private long runDeadline = Long.MAX_VALUE;
+    /* 当前线程中rule搜索的截止时间，以及最近一次搜索是否因预算用完而提前结束 */
+    private final ThreadLocal<Long> searchDeadline = ThreadLocal.withInitial(() -> Long.MAX_VALUE);
+    private final ThreadLocal<Boolean> searchExpired = ThreadLocal.withInitial(() -> false);
+
+    /* 并行评估extension的线程池(threads > 1时启用)，以及当前beam rule中已经prepare但尚未评估的extension */
+    protected ExecutorService evalExecutor = null;
+    private final ThreadLocal<List<PreparedExtension>> pendingExtensions = new ThreadLocal<>();
+
+    /* 当前beam rule的上界剪枝状态，为null时不做上界剪枝 */
+    private final ThreadLocal<BoundState> extensionBound = new ThreadLocal<>();
+
+    /* 多个head functor并行搜索时，提交rule(更新KB、Graph与Hypothesis)的步骤需要串行执行 */
+    protected final Object commitLock = new Object();
+    private int finishedTargets = 0;
+    private int expiredTargets = 0;  // 因时间预算用完而没有搜索完的head functor
+
+    /* run()的结束方式 */
+    public enum ExitStatus {
+        COMPLETED("Exit normally"),
+        BUDGET_EXPIRED("Exit on time budget (some head functors were not searched completely)"),
+        CANCELLED("Exit on cancellation"),
+        FAILED("Exit on error");
+
+        public final String message;
+
+        ExitStatus(String message) {
+            this.message = message;
+        }
+    }
+
+    private ExitStatus exitStatus = null;
+    /* 并行搜索时当前head functor的分支信息，全部完成之后按单线程的顺序合并到performanceMonitor中 */
+    private final ThreadLocal<List<PerformanceMonitor.BranchInfo>> targetBranches = new ThreadLocal<>();
+
+    /*
+     * 检查点：开始搜索时写入checkpointPath，之后每提交一个rule或完成一个head functor就向checkpointJournal追加增量；
+     * resumeCheckpoint不为null时从中恢复之后继续搜索
+     */
+    protected String checkpointPath = null;
+    protected Checkpoint resumeCheckpoint = null;
+    private Checkpoint.Journal checkpointJournal = null;
+    private final List<String> remainingTargets = new ArrayList<>();
+
+    protected static class PreparedExtension {
+        public final Rule rule;
+        public final Rule.UpdateStatus status;
+
+        public PreparedExtension(Rule rule, Rule.UpdateStatus status) {
+            this.rule = rule;
+            this.status = status;
+        }
+    }
+
+    /**
+     * 上界剪枝的状态。上界高于beam rule但低于threshold的extension不会进入beams，但可能优于beam rule，从而决定beam rule是否
+     * 是局部最优，因此evaluate()返回BOUND_DEFERRED之后暂存在deferredExtensions中，只有在beam rule没有其他更优的extension时
+     * 才计算Eval
+     */
+    protected static class BoundState {
+        public final double threshold;
+        public final List<Rule> deferredExtensions = new ArrayList<>();
+
+        public BoundState(double threshold) {
+            this.threshold = threshold;
+        }
+    }
 
     protected static class GraphAnalyseResult {
         public int startSetSize = 0;
@@ -35,6 +114,9 @@ public abstract class SInC {
         public int sccNumber = 0;
         public int sccVertices = 0;
         public int fvsVertices = 0;
+        public long graphBuildTime = 0;
+        public long sccTime = 0;
+        public long fvsTime = 0;
     }
 
     public SInC(SincConfig config, String kbPath, String dumpPath, String logPath) {
@@ -78,57 +160,181 @@ public abstract class SInC {
         );
 
         /* 寻找局部最优（只要进入这个循环，一定有局部最优） */
-        while (true) {
-            /* 根据当前beam遍历下一轮的所有candidates */
-            PriorityQueue<Rule> candidates = new PriorityQueue<>(
-                    Comparator.comparingDouble((Rule r) -> r.getEval().value(eval_metric)).reversed()
-            );
-            for (Rule r: beams) {
-                logger.printf("Extend: %s\n", r);
-                logger.flush();
-
-                /* 遍历r的邻居 */
-                int existing_candidates = candidates.size();
-                findExtension(r, candidates);
-                int extensions_cnt = candidates.size() - existing_candidates;
-                int origins_cnt = 0;
-                if (config.searchOrigins) {
-                    findOrigin(r, candidates);
-                    origins_cnt = candidates.size() - existing_candidates - extensions_cnt;
+        PriorityQueue<Rule> candidates = null;
+        try {
+            while (true) {
+                /* 根据当前beam遍历下一轮的所有candidates */
+                candidates = new PriorityQueue<>(
+                        Comparator.comparingDouble((Rule r) -> r.getEval().value(eval_metric)).reversed()
+                );
+                checkSignals();
+                for (Rule r: beams) {
+                    logger.printf("Extend: %s\n", r);
+                    logger.flush();
+
+                    /* 遍历r的邻居 */
+                    int existing_candidates = candidates.size();
+                    final BoundState bound_state = (config.boundPruning && !config.estimation) ?
+                            new BoundState(beamThreshold(candidates, beam_width, eval_metric)) : null;
+                    extensionBound.set(bound_state);
+                    if (null != evalExecutor) {
+                        pendingExtensions.set(new ArrayList<>());
+                        findExtension(r, candidates);
+                        evaluatePendingExtensions(r, candidates);
+                    } else {
+                        findExtension(r, candidates);
+                    }
+                    extensionBound.remove();
+                    if (null != bound_state) {
+                        evaluateDeferredExtensions(bound_state, r, candidates, existing_candidates);
+                    }
+                    int extensions_cnt = candidates.size() - existing_candidates;
+                    int origins_cnt = 0;
+                    if (config.searchOrigins) {
+                        findOrigin(r, candidates);
+                        origins_cnt = candidates.size() - existing_candidates - extensions_cnt;
+                    }
+
+                    if (0 == (extensions_cnt + origins_cnt)) {
+                        optimals.add(r);
+                    }
+
+                    /* 监测：分支数量信息 */
+                    final PerformanceMonitor.BranchInfo branch_info = new PerformanceMonitor.BranchInfo(
+                            r.size(), extensions_cnt, origins_cnt
+                    );
+                    final List<PerformanceMonitor.BranchInfo> target_branches = targetBranches.get();
+                    if (null != target_branches) {
+                        target_branches.add(branch_info);
+                    } else {
+                        synchronized (performanceMonitor) {
+                            performanceMonitor.branchProgress.add(branch_info);
+                        }
+                    }
                 }
 
-                if (0 == (extensions_cnt + origins_cnt)) {
-                    optimals.add(r);
+                /* 采样估计时，只对可能进入下一轮beams的candidates做精确评估 */
+                if (config.estimation) {
+                    candidates = evaluateCandidatesExactly(candidates, beam_width, eval_metric);
+                    if (candidates.isEmpty()) {
+                        /* 精确评估之后没有比beams更好的extension，beams都是局部最优 */
+                        optimals.addAll(beams);
+                    }
                 }
 
-                /* 监测：分支数量信息 */
-                final PerformanceMonitor.BranchInfo branch_info = new PerformanceMonitor.BranchInfo(
-                        r.size(), extensions_cnt, origins_cnt
-                );
-                performanceMonitor.branchProgress.add(branch_info);
-            }
-
-            /* 如果有多个optimal，选择最优的返回 */
-            final Rule loc_opt = optimals.peek();
-            if (null != loc_opt) {
-                final Rule peek_rule = candidates.peek();
-                if (
-                        null == peek_rule ||
-                        /* 如果local optimal在当前的candidates里面不是最优的，则排除 */
-                        loc_opt.getEval().value(eval_metric) > peek_rule.getEval().value(eval_metric)
-                ) {
-                    return loc_opt;
+                /* 如果有多个optimal，选择最优的返回 */
+                final Rule loc_opt = optimals.peek();
+                if (null != loc_opt) {
+                    final Rule peek_rule = candidates.peek();
+                    if (
+                            null == peek_rule ||
+                            /* 如果local optimal在当前的candidates里面不是最优的，则排除 */
+                            loc_opt.getEval().value(eval_metric) > peek_rule.getEval().value(eval_metric)
+                    ) {
+                        return loc_opt;
+                    }
+                }
+
+                /* 找出下一轮的beams */
+                Set<Rule> new_beams = new HashSet<>();
+                Rule beam_rule;
+                while (new_beams.size() < beam_width && (null != (beam_rule = candidates.poll()))) {
+                    new_beams.add(beam_rule);
                 }
+                beams = new_beams;
+            }
+        } catch (BudgetExpiredSignal e) {
+            /* 时间预算用完，返回已经找到的最好的rule */
+            extensionBound.remove();
+            pendingExtensions.remove();
+            logger.printf("Budget Expired: %s\n", headFunctor);
+            searchExpired.set(true);
+            synchronized (performanceMonitor) {
+                performanceMonitor.budgetExpirations++;
             }
+            return bestRuleSoFar(eval_metric, beams, optimals, candidates);
+        }
+    }
 
-            /* 找出下一轮的beams */
-            Set<Rule> new_beams = new HashSet<>();
-            Rule beam_rule;
-            while (new_beams.size() < beam_width && (null != (beam_rule = candidates.poll()))) {
-                new_beams.add(beam_rule);
+    /**
+     * @return 搜索中已经评估过的最好的rule。采样估计得到的Eval不是精确值，不参与比较
+     */
+    protected static Rule bestRuleSoFar(
+            Eval.EvalMetric evalMetric, Collection<Rule> beams, Collection<Rule> optimals, Collection<Rule> candidates
+    ) {
+        Rule best_rule = null;
+        for (Collection<Rule> rules: Arrays.asList(beams, optimals, candidates)) {
+            if (null == rules) {
+                continue;
+            }
+            for (Rule rule: rules) {
+                if (!rule.isEstimated() && (
+                        null == best_rule ||
+                        rule.getEval().value(evalMetric) > best_rule.getEval().value(evalMetric)
+                )) {
+                    best_rule = rule;
+                }
             }
-            beams = new_beams;
         }
+        return best_rule;
+    }
+
+    /**
+     * @return candidates中第beamWidth好的值，不足beamWidth个时为-∞。之后加入的candidate只会使这个值变大，因此值低于它的
+     *         extension一定不会进入下一轮的beams
+     */
+    protected static double beamThreshold(Collection<Rule> candidates, int beamWidth, Eval.EvalMetric evalMetric) {
+        if (candidates.size() < beamWidth) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        final PriorityQueue<Double> top_values = new PriorityQueue<>();
+        for (Rule rule: candidates) {
+            top_values.add(rule.getEval().value(evalMetric));
+            if (top_values.size() > beamWidth) {
+                top_values.poll();
+            }
+        }
+        return top_values.peek();
+    }
+
+    /**
+     * 采样估计模式下，candidates的Eval是估计值。按估计值从高到低，前beamWidth个candidates需要精确评估；之后的candidate
+     * 如果估计的上界不低于已精确评估的第beamWidth好的值，那么也可能进入beams，同样需要精确评估。
+     * 精确评估之后不再优于扩展之前的rule的candidate会被移除。
+     */
+    protected PriorityQueue<Rule> evaluateCandidatesExactly(
+            PriorityQueue<Rule> candidates, int beamWidth, Eval.EvalMetric evalMetric
+    ) {
+        final PriorityQueue<Rule> refined_candidates = new PriorityQueue<>(candidates.comparator());
+        final PriorityQueue<Double> top_values = new PriorityQueue<>();  // 已精确评估的最好的beamWidth个值
+        int estimated_candidates = 0;
+        int reevaluated_candidates = 0;
+        Rule rule;
+        while (null != (rule = candidates.poll())) {
+            if (rule.isEstimated()) {
+                estimated_candidates++;
+                final EstimatedEval estimated_eval = (EstimatedEval) rule.getEval();
+                if (top_values.size() >= beamWidth && estimated_eval.upperValue(evalMetric) < top_values.peek()) {
+                    refined_candidates.add(rule);
+                    continue;
+                }
+                rule.evaluateExactly();
+                reevaluated_candidates++;
+                if (rule.getEval().value(evalMetric) <= estimated_eval.getPreviousEval().value(evalMetric)) {
+                    continue;
+                }
+            }
+            refined_candidates.add(rule);
+            top_values.add(rule.getEval().value(evalMetric));
+            if (top_values.size() > beamWidth) {
+                top_values.poll();
+            }
+        }
+        synchronized (performanceMonitor) {
+            performanceMonitor.estimatedCandidates += estimated_candidates;
+            performanceMonitor.reevaluatedCandidates += reevaluated_candidates;
+        }
+        return refined_candidates;
     }
 
     /**
@@ -169,11 +375,13 @@ public abstract class SInC {
                 for (VarIndicator var_location: var_locations) {
                     if (columnSimilar(rule.getPredicate(vacant.predIdx).functor, vacant.argIdx, var_location.functor, var_location.idx)) {
                         /* 尝试将已知变量填入空白参数 */
-                        final Rule new_rule = rule.clone();
-                        final Rule.UpdateStatus update_status = new_rule.boundFreeVar2ExistingVar(
-                                vacant.predIdx, vacant.argIdx, var_id
-                        );
-                        checkThenAddRule(update_status, new_rule, rule, candidates);
+                        if (!prunedBeforeClone(rule.precheckBoundFreeVar2ExistingVar(vacant.predIdx, vacant.argIdx, var_id))) {
+                            final Rule new_rule = rule.clone();
+                            final Rule.UpdateStatus update_status = new_rule.prepareBoundFreeVar2ExistingVar(
+                                    vacant.predIdx, vacant.argIdx, var_id
+                            );
+                            evaluateThenAddRule(update_status, new_rule, rule, candidates);
+                        }
                         break;
                     }
                 }
@@ -186,11 +394,14 @@ public abstract class SInC {
                 for (int arg_idx = 0; arg_idx < arity; arg_idx++) {
                     for (VarIndicator var_location: var_locations) {
                         if (columnSimilar(functor, arg_idx, var_location.functor, var_location.idx)) {
+                            if (prunedBeforeClone(rule.precheckBoundFreeVar2ExistingVar(functor, arity, arg_idx, var_id))) {
+                                continue;
+                            }
                             final Rule new_rule = rule.clone();
-                            final Rule.UpdateStatus update_status = new_rule.boundFreeVar2ExistingVar(
+                            final Rule.UpdateStatus update_status = new_rule.prepareBoundFreeVar2ExistingVar(
                                     functor, arity, arg_idx, var_id
                             );
-                            checkThenAddRule(update_status, new_rule, rule, candidates);
+                            evaluateThenAddRule(update_status, new_rule, rule, candidates);
                         }
                     }
                 }
@@ -207,11 +418,16 @@ public abstract class SInC {
             final Predicate predicate = rule.getPredicate(first_vacant.predIdx);
             final List<String> const_list = func_2_promising_const_map.get(predicate.functor)[first_vacant.argIdx];
             for (String const_symbol: const_list) {
+                if (prunedBeforeClone(rule.precheckBoundFreeVar2Constant(
+                        first_vacant.predIdx, first_vacant.argIdx, const_symbol
+                ))) {
+                    continue;
+                }
                 final Rule new_rule = rule.clone();
-                final Rule.UpdateStatus update_status = new_rule.boundFreeVar2Constant(
+                final Rule.UpdateStatus update_status = new_rule.prepareBoundFreeVar2Constant(
                         first_vacant.predIdx, first_vacant.argIdx, const_symbol
                 );
-                checkThenAddRule(update_status, new_rule, rule, candidates);
+                evaluateThenAddRule(update_status, new_rule, rule, candidates);
             }
 
             /* 找到两个位置尝试同一个新变量 */
@@ -219,11 +435,16 @@ public abstract class SInC {
                 /* 新变量的第二个位置可以是当前rule中的其他空位 */
                 final ArgPos second_vacant = vacant_list.get(j);
                 if (columnSimilar(functor1, first_vacant.argIdx,rule.getPredicate(second_vacant.predIdx).functor, second_vacant.argIdx)) {
+                    if (prunedBeforeClone(rule.precheckBoundFreeVars2NewVar(
+                            first_vacant.predIdx, first_vacant.argIdx, second_vacant.predIdx, second_vacant.argIdx
+                    ))) {
+                        continue;
+                    }
                     final Rule new_rule = rule.clone();
-                    final Rule.UpdateStatus update_status = new_rule.boundFreeVars2NewVar(
+                    final Rule.UpdateStatus update_status = new_rule.prepareBoundFreeVars2NewVar(
                             first_vacant.predIdx, first_vacant.argIdx, second_vacant.predIdx, second_vacant.argIdx
                     );
-                    checkThenAddRule(update_status, new_rule, rule, candidates);
+                    evaluateThenAddRule(update_status, new_rule, rule, candidates);
                 }
             }
             for (Map.Entry<String, Integer> entry: func_2_arity_map.entrySet()) {
@@ -232,11 +453,16 @@ public abstract class SInC {
                 final int arity = entry.getValue();
                 for (int arg_idx = 0; arg_idx < arity; arg_idx++) {
                     if (columnSimilar(functor1, first_vacant.argIdx, functor, arg_idx)) {
+                        if (prunedBeforeClone(rule.precheckBoundFreeVars2NewVar(
+                                functor, arity, arg_idx, first_vacant.predIdx, first_vacant.argIdx
+                        ))) {
+                            continue;
+                        }
                         final Rule new_rule = rule.clone();
-                        final Rule.UpdateStatus update_status = new_rule.boundFreeVars2NewVar(
+                        final Rule.UpdateStatus update_status = new_rule.prepareBoundFreeVars2NewVar(
                                 functor, arity, arg_idx, first_vacant.predIdx, first_vacant.argIdx
                         );
-                        checkThenAddRule(update_status, new_rule, rule, candidates);
+                        evaluateThenAddRule(update_status, new_rule, rule, candidates);
                     }
                 }
             }
@@ -254,6 +480,9 @@ public abstract class SInC {
             final Predicate predicate = rule.getPredicate(pred_idx);
             for (int arg_idx = 0; arg_idx < predicate.arity(); arg_idx++) {
                 if (null != predicate.args[arg_idx]) {
+                    if (prunedBeforeClone(rule.precheckRemoveBoundedArg(pred_idx, arg_idx))) {
+                        continue;
+                    }
                     final Rule new_rule = rule.clone();
                     final Rule.UpdateStatus update_status = new_rule.removeBoundedArg(pred_idx, arg_idx);
                     checkThenAddRule(update_status, new_rule, rule, candidates);
@@ -264,6 +493,20 @@ public abstract class SInC {
 
     abstract protected UpdateResult updateKb(Rule rule);
 
+    /**
+     * @return KB中已经被证明的facts，写入检查点。不记录已证明facts的实现返回空集
+     */
+    protected Set<Predicate> getProvedFacts() {
+        return new HashSet<>();
+    }
+
+    /**
+     * 从检查点恢复时，在加载KB之后重新标记已经被证明的facts
+     */
+    protected void restoreProvedFacts(Set<Predicate> provedFacts) {
+        /* 这里什么也不做 */
+    }
+
     protected void updateGraph(List<Predicate[]> groundings) {
         for (Predicate[] grounding: groundings) {
             final Predicate head_pred = grounding[Rule.HEAD_PRED_IDX];
@@ -303,21 +546,51 @@ public abstract class SInC {
 
         /* 找出所有SCC中的覆盖点 */
         result.startSetSizeWithoutFvs = startSet.size();
-        final Tarjan<BaseGraphNode<Predicate>> tarjan = new Tarjan<>(dependencyGraph);
-        final List<Set<BaseGraphNode<Predicate>>> sccs = tarjan.run();
+        final long time_start = System.currentTimeMillis();
+        final List<BaseGraphNode<Predicate>> graph_nodes = new ArrayList<>();
+        final CsrGraph csr_graph = CsrGraph.of(dependencyGraph, graph_nodes);
+        final long time_graph_built = System.currentTimeMillis();
+        final List<int[]> sccs = new CsrTarjan(csr_graph).run();
         result.sccNumber = sccs.size();
+        final long time_scc_found = System.currentTimeMillis();
+
+        /* 各个SCC的FVS互不相关，可以并行求解；较大的SCC先开始，避免最后只剩一个大SCC在计算 */
+        sccs.sort(Comparator.comparingInt((int[] scc) -> scc.length).reversed());
+        final List<Set<BaseGraphNode<Predicate>>> fvs_list;
+        if (1 < config.threads && 1 < sccs.size()) {
+            final ForkJoinPool fvs_pool = new ForkJoinPool(Math.min(config.threads, sccs.size()));
+            try {
+                final List<ForkJoinTask<Set<BaseGraphNode<Predicate>>>> tasks = new ArrayList<>(sccs.size());
+                for (int[] scc: sccs) {
+                    tasks.add(fvs_pool.submit(() -> new FeedbackVertexSetSolver<>(csr_graph, scc, graph_nodes).run()));
+                }
+                fvs_list = new ArrayList<>(sccs.size());
+                for (ForkJoinTask<Set<BaseGraphNode<Predicate>>> task: tasks) {
+                    fvs_list.add(task.join());
+                }
+            } finally {
+                fvs_pool.shutdown();
+            }
+        } else {
+            fvs_list = new ArrayList<>(sccs.size());
+            for (int[] scc: sccs) {
+                fvs_list.add(new FeedbackVertexSetSolver<>(csr_graph, scc, graph_nodes).run());
+            }
+        }
 
-        for (Set<BaseGraphNode<Predicate>> scc: sccs) {
-            /* 找出FVS的一个解，并把之放入start_set */
-            final FeedbackVertexSetSolver<BaseGraphNode<Predicate>> fvs_solver =
-                    new FeedbackVertexSetSolver<>(dependencyGraph, scc);
-            final Set<BaseGraphNode<Predicate>> fvs = fvs_solver.run();
+        /* 把FVS放入start_set */
+        for (int i = 0; i < sccs.size(); i++) {
+            final Set<BaseGraphNode<Predicate>> fvs = fvs_list.get(i);
             for (BaseGraphNode<Predicate> node: fvs) {
                 startSet.add(node.content);
             }
-            result.sccVertices += scc.size();
+            result.sccVertices += sccs.get(i).length;
             result.fvsVertices += fvs.size();
         }
+        final long time_fvs_found = System.currentTimeMillis();
+        result.graphBuildTime = time_graph_built - time_start;
+        result.sccTime = time_scc_found - time_graph_built;
+        result.fvsTime = time_fvs_found - time_scc_found;
 
         result.startSetSize = startSet.size();
         return result;
@@ -414,6 +687,19 @@ public abstract class SInC {
             System.err.println("[ERROR] Dump Failed.");
             e.printStackTrace();
         }
+
+        /* 需要时同时输出二进制格式 */
+        if (config.binaryResult) {
+            try {
+                BinaryResult.write(
+                        dumpPath + BinaryResult.FILE_EXTENSION, hypothesis, startSet, counterExamples,
+                        supplementaryConstants
+                );
+            } catch (IOException e) {
+                System.err.println("[ERROR] Binary Dump Failed.");
+                e.printStackTrace();
+            }
+        }
     }
 
     abstract protected Set<Predicate> getOriginalKb();
@@ -448,12 +734,50 @@ public abstract class SInC {
 
     protected void checkThenAddRule(Rule.UpdateStatus updateStatus, Rule extendedRule, Rule originalRule, Queue<Rule> candidates)
             throws InterruptedSignal {
-        switch (updateStatus) {
-            case NORMAL:
+        synchronized (performanceMonitor) {
+            if (Rule.UpdateStatus.NORMAL == updateStatus) {
                 if (extendedRule.getEval().value(config.evalMetric) > originalRule.getEval().value(config.evalMetric)) {
                     candidates.add(extendedRule);
                 }
-                break;
+            } else {
+                countPrunedRule(updateStatus);
+            }
+        }
+        recordRuleStatus(extendedRule, updateStatus);
+        checkSignals();
+    }
+
+    /**
+     * 处理precheck的结果。被剪枝的extension不会被clone，因此只计数，不调用recordRuleStatus
+     *
+     * @return extension是否已经被剪枝
+     */
+    protected boolean prunedBeforeClone(Rule.UpdateStatus precheckStatus) throws InterruptedSignal {
+        if (Rule.UpdateStatus.NORMAL == precheckStatus) {
+            return false;
+        }
+        synchronized (performanceMonitor) {
+            countPrunedRule(precheckStatus);
+            performanceMonitor.prunedBeforeClone++;
+        }
+        checkSignals();
+        return true;
+    }
+
+    /**
+     * 检查运行是否已被取消，以及当前线程中rule搜索的时间预算是否已经用完
+     */
+    protected void checkSignals() throws InterruptedSignal {
+        if (interrupted) {
+            throw new InterruptedSignal("Interrupted");
+        }
+        if (System.currentTimeMillis() >= searchDeadline.get()) {
+            throw new BudgetExpiredSignal("Budget expired");
+        }
+    }
+
+    private void countPrunedRule(Rule.UpdateStatus updateStatus) {
+        switch (updateStatus) {
             case INVALID:
                 performanceMonitor.invalidSearches++;
                 break;
@@ -466,49 +790,311 @@ public abstract class SInC {
             case TABU_PRUNED:
                 performanceMonitor.tabuPruned++;
                 break;
+            case BOUND_PRUNED:
+                performanceMonitor.boundPruned++;
+                break;
             default:
                 throw new Error("Unknown Update Status of Rule: " + updateStatus.name());
         }
-        recordRuleStatus(extendedRule, updateStatus);
-        if (interrupted) {
-            throw new InterruptedSignal("Interrupted");
+    }
+
+    /**
+     * @return 是否在更新Cache之前只用originalRule的Eval做上界剪枝。这样剪掉的extension不会检查fact coverage，
+     * 需要记录coverage不足的rule的子类应当返回false，此时上界剪枝在evaluate()中检查coverage之后进行
+     */
+    protected boolean boundPruneBeforeEvaluation() {
+        return true;
+    }
+
+    /**
+     * 处理一个已经完成prepare的extension。串行模式下直接评估；并行模式下暂存，由evaluatePendingExtensions统一处理。
+     * 上界达不到进入beams的要求的extension不做评估
+     */
+    protected void evaluateThenAddRule(
+            Rule.UpdateStatus prepareStatus, Rule extendedRule, Rule originalRule, Queue<Rule> candidates
+    ) throws InterruptedSignal {
+        final BoundState bound_state = extensionBound.get();
+        if (Rule.UpdateStatus.NORMAL == prepareStatus && null != bound_state) {
+            final Eval original_eval = originalRule.getEval();
+            final double baseline = original_eval.value(config.evalMetric);
+            if (boundPruneBeforeEvaluation() && original_eval.specializationUpperBound(
+                    config.evalMetric, original_eval.getPosCnt(), extendedRule.size()
+            ) <= baseline) {
+                /* 不需要更新Cache就可以确定一定不优于originalRule */
+                prepareStatus = Rule.UpdateStatus.BOUND_PRUNED;
+            } else {
+                extendedRule.setEvalBound(config.evalMetric, baseline, bound_state.threshold);
+            }
+        }
+        final List<PreparedExtension> pending_extensions = pendingExtensions.get();
+        if (null != pending_extensions) {
+            pending_extensions.add(new PreparedExtension(extendedRule, prepareStatus));
+            return;
+        }
+        final Rule.UpdateStatus status = (Rule.UpdateStatus.NORMAL == prepareStatus) ? extendedRule.evaluate() : prepareStatus;
+        if (Rule.UpdateStatus.BOUND_DEFERRED == status) {
+            bound_state.deferredExtensions.add(extendedRule);
+            return;
+        }
+        checkThenAddRule(status, extendedRule, originalRule, candidates);
+    }
+
+    /**
+     * 如果originalRule没有其他extension进入candidates，那么依次评估暂存的extension，直到有一个进入candidates(此时originalRule不是
+     * 局部最优)为止，剩下的extension不再评估。暂存时的顺序与prepare的顺序相同，因此串行与并行模式的结果一致
+     */
+    protected void evaluateDeferredExtensions(
+            BoundState boundState, Rule originalRule, Queue<Rule> candidates, int existingCandidates
+    ) throws InterruptedSignal {
+        for (Rule extension: boundState.deferredExtensions) {
+            if (candidates.size() > existingCandidates) {
+                checkThenAddRule(Rule.UpdateStatus.BOUND_PRUNED, extension, originalRule, candidates);
+                continue;
+            }
+            extension.evaluateDeferred();
+            checkThenAddRule(Rule.UpdateStatus.NORMAL, extension, originalRule, candidates);
         }
     }
 
+    /**
+     * 在线程池中评估暂存的extension，然后按照prepare的顺序合并结果，保证结果与串行模式完全一致：
+     *   1. prepare阶段已经串行完成了结构修改、重复检查与合法性检查；
+     *   2. 评估阶段只修改各rule自己的Cache，可以并行；
+     *   3. 合并时前面的rule可能产生新的剪枝条件，因此需要重新检查剪枝。
+     */
+    protected void evaluatePendingExtensions(Rule originalRule, Queue<Rule> candidates) throws InterruptedSignal {
+        final List<PreparedExtension> extensions = pendingExtensions.get();
+        pendingExtensions.remove();
+        final List<Future<Rule.UpdateStatus>> futures = new ArrayList<>(extensions.size());
+        for (PreparedExtension extension: extensions) {
+            futures.add(
+                    (Rule.UpdateStatus.NORMAL == extension.status) ? evalExecutor.submit(extension.rule::evaluate) : null
+            );
+        }
+
+        try {
+            for (int i = 0; i < extensions.size(); i++) {
+                final PreparedExtension extension = extensions.get(i);
+                final Future<Rule.UpdateStatus> future = futures.get(i);
+                final Rule.UpdateStatus status = (null != future) ? waitForEvaluation(future) : extension.status;
+                final Rule.UpdateStatus recheck_status = recheckable(status) ?
+                        extension.rule.recheckPruning() : Rule.UpdateStatus.NORMAL;
+                if (Rule.UpdateStatus.NORMAL != recheck_status) {
+                    checkThenAddRule(recheck_status, extension.rule, originalRule, candidates);
+                } else if (Rule.UpdateStatus.BOUND_DEFERRED == status) {
+                    extensionBound.get().deferredExtensions.add(extension.rule);
+                } else {
+                    checkThenAddRule(status, extension.rule, originalRule, candidates);
+                }
+            }
+        } finally {
+            for (Future<Rule.UpdateStatus> future: futures) {
+                if (null != future) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return extension在prepare时没有被剪枝，需要检查并行评估期间新加入的剪枝条件(串行模式下prepare时就已经命中)
+     */
+    private static boolean recheckable(Rule.UpdateStatus status) {
+        switch (status) {
+            case NORMAL:
+            case INSUFFICIENT_COVERAGE:
+            case BOUND_PRUNED:
+            case BOUND_DEFERRED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private Rule.UpdateStatus waitForEvaluation(Future<Rule.UpdateStatus> future) throws InterruptedSignal {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedSignal("Interrupted", e);
+        } catch (ExecutionException e) {
+            rethrow(e.getCause());
+            return null;
+        }
+    }
+
+    private static void rethrow(Throwable throwable) throws InterruptedSignal {
+        if (throwable instanceof InterruptedSignal) {
+            throw (InterruptedSignal) throwable;
+        }
+        if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        }
+        if (throwable instanceof Error) {
+            throw (Error) throwable;
+        }
+        throw new RuntimeException(throwable);
+    }
+
+    private static ExecutorService newDaemonThreadPool(int threads) {
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
     protected abstract void recordRuleStatus(Rule rule, Rule.UpdateStatus updateStatus);
 
     protected void targetDone(String functor) {
         /* 这里什么也不做，给后续处理留空间 */
     }
 
-    public abstract String getModelName();
+    /**
+     * 请求终止运行(可以在其他线程中调用)。搜索会尽快结束，已经找到的rules仍然会被记录
+     */
+    public void cancel() {
+        interrupted = true;
+    }
 
-    protected abstract boolean columnSimilar(String functor1, int idx1, String functor2, int idx2);
+    public boolean isCancelled() {
+        return interrupted;
+    }
 
-    private void runHandler() {
-        final long time_start = System.currentTimeMillis();
+    /**
+     * @param millis 整个运行(包括加载KB)的时间预算，不大于0时不限制
+     */
+    public void setTimeBudget(long millis) {
+        timeBudget = millis;
+    }
+
+    /**
+     * @param millis 每个head functor上搜索rules的时间预算，不大于0时不限制
+     */
+    public void setTargetTimeBudget(long millis) {
+        targetTimeBudget = millis;
+    }
+
+    public void enableCheckpoint(String path) {
+        checkpointPath = path;
+    }
+
+    /**
+     * 读取检查点，run()在加载KB之后恢复其中的结果，只搜索剩余的head functors
+     */
+    public void resumeFrom(String path) throws IOException {
+        resumeCheckpoint = Checkpoint.read(path);
+    }
+
+    /**
+     * @return 剩余的head functors
+     */
+    protected List<String> restoreCheckpoint(Checkpoint checkpoint) {
+        hypothesis.addAll(checkpoint.hypothesis);
+        for (Rule rule: checkpoint.hypothesis) {
+            performanceMonitor.hypothesisSize += rule.size();
+        }
+        counterExamples.addAll(checkpoint.counterExamples);
+        restoreProvedFacts(checkpoint.provedFacts);
+        for (Map.Entry<Predicate, Set<Predicate>> entry: checkpoint.dependencies.entrySet()) {
+            final Predicate head_pred = entry.getKey();
+            final Set<BaseGraphNode<Predicate>> dependencies = new HashSet<>();
+            for (Predicate body_pred: entry.getValue()) {
+                dependencies.add(
+                        AXIOM_NODE.content.equals(body_pred) ? AXIOM_NODE :
+                                predicate2NodeMap.computeIfAbsent(body_pred, k -> new BaseGraphNode<>(body_pred))
+                );
+            }
+            dependencyGraph.put(
+                    predicate2NodeMap.computeIfAbsent(head_pred, k -> new BaseGraphNode<>(head_pred)), dependencies
+            );
+        }
+        logger.printf("Resumed: %d rules, %d targets remaining\n", hypothesis.size(), checkpoint.remainingTargets.size());
+        return checkpoint.remainingTargets;
+    }
+
+    /**
+     * 把当前的结果完整地写入检查点，并开始新的日志。写入失败不影响搜索
+     */
+    protected void startCheckpoint() {
+        if (null == checkpointPath) {
+            return;
+        }
+        final Map<Predicate, Set<Predicate>> dependencies = new HashMap<>();
+        for (Map.Entry<BaseGraphNode<Predicate>, Set<BaseGraphNode<Predicate>>> entry: dependencyGraph.entrySet()) {
+            final Set<Predicate> body_preds = new HashSet<>();
+            for (BaseGraphNode<Predicate> body_node: entry.getValue()) {
+                body_preds.add(body_node.content);
+            }
+            dependencies.put(entry.getKey().content, body_preds);
+        }
         try {
-            /* 加载KB */
-            KbStatistics kb_stat = loadKb();
-            performanceMonitor.kbSize = kb_stat.facts;
-            performanceMonitor.kbFunctors = kb_stat.functors;
-            performanceMonitor.kbConstants = kb_stat.constants;
-            performanceMonitor.totalConstantSubstitutions = kb_stat.totalConstantSubstitutions;
-            performanceMonitor.actualConstantSubstitutions = kb_stat.actualConstantSubstitutions;
-            final long time_kb_loaded = System.currentTimeMillis();
-            performanceMonitor.kbLoadTime = time_kb_loaded - time_start;
+            checkpointJournal = new Checkpoint(
+                    hypothesis, counterExamples, getProvedFacts(), dependencies, remainingTargets
+            ).writeWithJournal(checkpointPath);
+        } catch (IOException e) {
+            logger.printf("[WARNING] Checkpoint not written: %s\n", e.getMessage());
+        }
+    }
 
-            /* 逐个functor找rule */
-            final List<String> target_head_functors = getTargetFunctors();
-            final int total_targets = target_head_functors.size();
-            do {
-                final long time_rule_finding_start = System.currentTimeMillis();
-                final int last_idx = target_head_functors.size() - 1;
-                final String functor = target_head_functors.get(last_idx);
-                final Rule rule = findRule(functor);
-                final long time_rule_found = System.currentTimeMillis();
-                performanceMonitor.hypothesisMiningTime += time_rule_found - time_rule_finding_start;
+    /**
+     * 在commitLock中调用，只向日志追加这次提交的增量。写入失败之后日志可能不完整，因此不再继续追加
+     *
+     * @param rule 为null时表示functor已经完成
+     */
+    protected void appendCheckpoint(String functor, Rule rule, UpdateResult updateResult) {
+        if (null == checkpointJournal) {
+            return;
+        }
+        try {
+            if (null == rule) {
+                checkpointJournal.appendTargetDone(functor);
+            } else {
+                checkpointJournal.appendRule(rule, updateResult.counterExamples, updateResult.groundings);
+            }
+        } catch (IOException e) {
+            logger.printf("[WARNING] Checkpoint journal not written, checkpointing stopped: %s\n", e.getMessage());
+            closeCheckpoint();
+        }
+    }
 
+    protected void closeCheckpoint() {
+        if (null == checkpointJournal) {
+            return;
+        }
+        try {
+            checkpointJournal.close();
+        } catch (IOException e) {
+            logger.printf("[WARNING] Checkpoint journal not closed: %s\n", e.getMessage());
+        }
+        checkpointJournal = null;
+    }
+
+    /**
+     * 针对一个head functor反复寻找rule，直到找不到有用的rule为止。
+     *
+     * 不同functor的搜索只共享只读的KB，因此可以并行；只有提交rule(更新KB、Graph与Hypothesis)的步骤需要串行。
+     * Rule的评估只依赖于其head functor中已被证明的facts，而这些facts只会被同一个functor的rule改变，
+     * 因此其他线程的提交不会使当前的搜索结果过期
+     */
+    protected void mineTarget(String functor, int totalTargets) throws InterruptedSignal {
+        final long target_deadline = (0 < targetTimeBudget) ?
+                Math.min(runDeadline, System.currentTimeMillis() + targetTimeBudget) : runDeadline;
+        while (true) {
+            final long time_rule_finding_start = System.currentTimeMillis();
+            final Rule rule;
+            final boolean expired;
+            searchDeadline.set(target_deadline);
+            try {
+                rule = findRule(functor);
+                expired = searchExpired.get();
+            } finally {
+                searchDeadline.remove();
+                searchExpired.remove();
+            }
+            final long time_rule_found = System.currentTimeMillis();
+
+            synchronized (commitLock) {
+                performanceMonitor.hypothesisMiningTime += time_rule_found - time_rule_finding_start;
                 if (null != rule && rule.getEval().useful(config.evalMetric)) {
                     logger.printf("Found: %s\n", rule);
                     hypothesis.add(rule);
@@ -517,15 +1103,145 @@ public abstract class SInC {
                     /* 更新grpah和counter example */
                     UpdateResult update_result = updateKb(rule);
                     counterExamples.addAll(update_result.counterExamples);
+                    final long time_graph_update_start = System.currentTimeMillis();
                     updateGraph(update_result.groundings);
                     final long time_kb_updated = System.currentTimeMillis();
+                    performanceMonitor.dependencyGraphTime += time_kb_updated - time_graph_update_start;
                     performanceMonitor.dependencyAnalysisTime += time_kb_updated - time_rule_found;
+                    appendCheckpoint(functor, rule, update_result);
+                } else if (expired) {
+                    /* 搜索没有完成，functor保留在remainingTargets中，从检查点恢复时重新搜索 */
+                    expiredTargets++;
+                    logger.printf("Target Expired: %s\n", functor);
+                    return;
                 } else {
-                    target_head_functors.remove(last_idx);
-                    logger.printf("Target Done: %d/%d\n", total_targets - target_head_functors.size(), total_targets);
+                    finishedTargets++;
+                    logger.printf("Target Done: %d/%d\n", finishedTargets, totalTargets);
                     targetDone(functor);
+                    remainingTargets.remove(functor);
+                    appendCheckpoint(functor, null, null);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 每个head functor的搜索作为一个任务，由threads个线程并行执行。任一任务出错时通知其他任务尽快结束。
+     *
+     * 全部完成之后，hypothesis与分支信息按照单线程搜索的顺序重新排列，因此结果与单线程完全一致
+     */
+    protected void mineTargetsConcurrently(List<String> targetFunctors, int totalTargets) throws InterruptedSignal {
+        final ExecutorService target_executor = newDaemonThreadPool(Math.min(config.threads, targetFunctors.size()));
+        final Map<String, List<PerformanceMonitor.BranchInfo>> functor_2_branches = new ConcurrentHashMap<>();
+        try {
+            final List<Future<?>> futures = new ArrayList<>(targetFunctors.size());
+            for (int i = targetFunctors.size() - 1; i >= 0; i--) {
+                final String functor = targetFunctors.get(i);
+                futures.add(target_executor.submit(() -> {
+                    final List<PerformanceMonitor.BranchInfo> branches = new ArrayList<>();
+                    targetBranches.set(branches);
+                    try {
+                        mineTarget(functor, totalTargets);
+                    } finally {
+                        targetBranches.remove();
+                        functor_2_branches.put(functor, branches);
+                    }
+                    return null;
+                }));
+            }
+
+            Throwable failure = null;
+            for (Future<?> future: futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    throw new InterruptedSignal("Interrupted", e);
+                } catch (ExecutionException e) {
+                    interrupted = true;
+                    /* 其他任务因interrupted而抛出的InterruptedSignal不是真正的失败原因 */
+                    if (null == failure || failure instanceof InterruptedSignal) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+            if (null != failure) {
+                rethrow(failure);
+            }
+        } finally {
+            target_executor.shutdownNow();
+            restoreSerialOrder(targetFunctors, functor_2_branches);
+        }
+    }
+
+    /**
+     * 单线程时head functors按照targetFunctors的倒序搜索。同一个functor的rules由同一个线程依次提交，相对顺序不变，
+     * 因此按functor稳定排序即可还原单线程的顺序；不属于targetFunctors的rules(从检查点恢复)保持在最前面
+     */
+    private void restoreSerialOrder(
+            List<String> targetFunctors, Map<String, List<PerformanceMonitor.BranchInfo>> functor2Branches
+    ) {
+        final Map<String, Integer> functor_ranks = new HashMap<>();
+        for (int i = targetFunctors.size() - 1; i >= 0; i--) {
+            functor_ranks.put(targetFunctors.get(i), targetFunctors.size() - i);
+        }
+        synchronized (commitLock) {
+            hypothesis.sort(Comparator.comparingInt(
+                    (Rule r) -> functor_ranks.getOrDefault(r.getPredicate(Rule.HEAD_PRED_IDX).functor, 0)
+            ));
+        }
+        synchronized (performanceMonitor) {
+            for (int i = targetFunctors.size() - 1; i >= 0; i--) {
+                final List<PerformanceMonitor.BranchInfo> branches = functor2Branches.get(targetFunctors.get(i));
+                if (null != branches) {
+                    performanceMonitor.branchProgress.addAll(branches);
+                }
+            }
+        }
+    }
+
+    public abstract String getModelName();
+
+    protected abstract boolean columnSimilar(String functor1, int idx1, String functor2, int idx2);
+
+    /**
+     * @return 运行的结束方式
+     */
+    private ExitStatus runHandler() {
+        final long time_start = System.currentTimeMillis();
+        runDeadline = (0 < timeBudget) ? time_start + timeBudget : Long.MAX_VALUE;
+        if (1 < config.threads) {
+            evalExecutor = newDaemonThreadPool(config.threads);
+        }
+        try {
+            /* 加载KB */
+            KbStatistics kb_stat = loadKb();
+            performanceMonitor.kbSize = kb_stat.facts;
+            performanceMonitor.kbFunctors = kb_stat.functors;
+            performanceMonitor.kbConstants = kb_stat.constants;
+            performanceMonitor.totalConstantSubstitutions = kb_stat.totalConstantSubstitutions;
+            performanceMonitor.actualConstantSubstitutions = kb_stat.actualConstantSubstitutions;
+            final long time_kb_loaded = System.currentTimeMillis();
+            performanceMonitor.kbLoadTime = time_kb_loaded - time_start;
+
+            /* 逐个functor找rule */
+            List<String> target_head_functors = getTargetFunctors();
+            final int total_targets = target_head_functors.size();
+            if (null != resumeCheckpoint) {
+                target_head_functors = restoreCheckpoint(resumeCheckpoint);
+                finishedTargets = total_targets - target_head_functors.size();
+                resumeCheckpoint = null;
+            }
+            remainingTargets.addAll(target_head_functors);
+            startCheckpoint();
+            if (1 < config.threads && 1 < target_head_functors.size()) {
+                mineTargetsConcurrently(target_head_functors, total_targets);
+            } else {
+                for (int i = target_head_functors.size() - 1; i >= 0; i--) {
+                    mineTarget(target_head_functors.get(i), total_targets);
                 }
-            } while (!target_head_functors.isEmpty());
+            }
             performanceMonitor.hypothesisRuleNumber = hypothesis.size();
             performanceMonitor.counterExampleSize = counterExamples.size();
 
@@ -537,6 +1253,9 @@ public abstract class SInC {
             performanceMonitor.sccNumber = graph_analyse_result.sccNumber;
             performanceMonitor.sccVertices = graph_analyse_result.sccVertices;
             performanceMonitor.fvsVertices = graph_analyse_result.fvsVertices;
+            performanceMonitor.dependencyGraphTime += graph_analyse_result.graphBuildTime;
+            performanceMonitor.sccTime = graph_analyse_result.sccTime;
+            performanceMonitor.fvsTime = graph_analyse_result.fvsTime;
             findSupplementaryConstants();
             performanceMonitor.supplementaryConstants = supplementaryConstants.size();
             final long time_start_set_found = System.currentTimeMillis();
@@ -570,8 +1289,9 @@ public abstract class SInC {
                 /* Todo: 图结构上传Neo4j */
                 logger.println("[DEBUG] Upload Graph to Neo4J...");
             }
+            return (0 < expiredTargets) ? ExitStatus.BUDGET_EXPIRED : ExitStatus.COMPLETED;
         } catch (InterruptedSignal e) {
-            /* 处理interruption (stdin里随便输入点什么) */
+            /* 处理interruption (调用了cancel()，例如命令行中在stdin里随便输入点什么) */
             /* 从结束 Rule Finding 开始 */
             performanceMonitor.hypothesisRuleNumber = hypothesis.size();
             performanceMonitor.counterExampleSize = counterExamples.size();
@@ -584,6 +1304,9 @@ public abstract class SInC {
             performanceMonitor.sccNumber = graph_analyse_result.sccNumber;
             performanceMonitor.sccVertices = graph_analyse_result.sccVertices;
             performanceMonitor.fvsVertices = graph_analyse_result.fvsVertices;
+            performanceMonitor.dependencyGraphTime += graph_analyse_result.graphBuildTime;
+            performanceMonitor.sccTime = graph_analyse_result.sccTime;
+            performanceMonitor.fvsTime = graph_analyse_result.fvsTime;
             final long time_start_set_found = System.currentTimeMillis();
             performanceMonitor.dependencyAnalysisTime += time_start_set_found - time_graph_analyse_begin;
 
@@ -603,6 +1326,7 @@ public abstract class SInC {
             showMonitor();
 
             logger.println("!!! The Result is Reserved Before INTERRUPTION !!!");
+            return ExitStatus.CANCELLED;
         } catch (Exception | OutOfMemoryError e) {
             e.printStackTrace();
             System.err.flush();
@@ -619,6 +1343,9 @@ public abstract class SInC {
             performanceMonitor.sccNumber = graph_analyse_result.sccNumber;
             performanceMonitor.sccVertices = graph_analyse_result.sccVertices;
             performanceMonitor.fvsVertices = graph_analyse_result.fvsVertices;
+            performanceMonitor.dependencyGraphTime += graph_analyse_result.graphBuildTime;
+            performanceMonitor.sccTime = graph_analyse_result.sccTime;
+            performanceMonitor.fvsTime = graph_analyse_result.fvsTime;
             final long time_start_set_found = System.currentTimeMillis();
             performanceMonitor.dependencyAnalysisTime += time_start_set_found - time_graph_analyse_begin;
 
@@ -639,29 +1366,29 @@ public abstract class SInC {
             showMonitor();
 
             logger.println("!!! The Result is Reserved Before EXCEPTION !!!");
+            return ExitStatus.FAILED;
+        } finally {
+            if (null != evalExecutor) {
+                evalExecutor.shutdownNow();
+                evalExecutor = null;
+            }
+            closeCheckpoint();
         }
     }
 
+    /**
+     * 在当前线程中运行，直到完成、被cancel()或时间预算用完为止。被终止时已经找到的结果仍然会被记录
+     */
     public final void run() {
-        Thread task = new Thread(this::runHandler);
-        task.start();
+        exitStatus = runHandler();
+        logger.println(exitStatus.message);
+        logger.flush();
+    }
 
-        try {
-            while (task.isAlive() && (System.in.available() <= 0)) {
-                Thread.sleep(1000);
-            }
-            logger.println("Exit normally");
-            logger.flush();
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            interrupted = true;
-            try {
-                task.join();
-                logger.flush();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
+    /**
+     * @return 最近一次run()的结束方式，没有运行过时为null
+     */
+    public ExitStatus getExitStatus() {
+        return exitStatus;
     }
 }
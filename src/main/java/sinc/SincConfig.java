@@ -22,25 +22,206 @@ public class SincConfig {
     public final double sampling;  // 0.0 <= sampling < 1.0, 其他值表示不采样
     public final boolean estimation;
     public final boolean kbBlocking;
+    public final boolean encodedKb;  // 是否使用字典编码、按列存储的EncodedMemKB(joinEvaluation总是使用)，默认使用MemKB
+    public final boolean boundPruning;  // 是否在评估extension之前用上界剪枝(采样估计模式下candidates的值是估计值，不使用)，默认关闭
+    public final boolean joinEvaluation;  // 是否在EncodedMemKB上直接用Leapfrog Triejoin计算Eval，不再维护groundings缓存
+    public final boolean sketchColumnSimilarity;  // 是否用MinHash签名与LSH找出候选的相似列对，不再比较所有的列对
+
+    /* Output Config */
+    public final boolean binaryResult;  // 是否同时把结果以二进制格式输出到dumpPath + BinaryResult.FILE_EXTENSION
 
     public SincConfig(
             int threads, boolean validation, boolean debug, int beamWidth, boolean searchOrigins,
             Eval.EvalMetric evalMetric, double minFactCoverage, double minConstantCoverage, double minColumnSimilarity,
             double stopCompressionRate, boolean ruleCache, double sampling, boolean estimation, boolean kbBlocking
     ) {
-        this.threads = threads;
-        this.validation = validation;
-        this.debug = debug;
-        this.beamWidth = beamWidth;
-        this.searchOrigins = searchOrigins;
-        this.evalMetric = evalMetric;
-        this.minFactCoverage = minFactCoverage;
-        this.minConstantCoverage = minConstantCoverage;
-        this.minColumnSimilarity = minColumnSimilarity;
-        this.stopCompressionRate = stopCompressionRate;
-        this.ruleCache = ruleCache;
-        this.sampling = sampling;
-        this.estimation = estimation;
-        this.kbBlocking = kbBlocking;
+        this(new Builder()
+                .threads(threads)
+                .validation(validation)
+                .debug(debug)
+                .beamWidth(beamWidth)
+                .searchOrigins(searchOrigins)
+                .evalMetric(evalMetric)
+                .minFactCoverage(minFactCoverage)
+                .minConstantCoverage(minConstantCoverage)
+                .minColumnSimilarity(minColumnSimilarity)
+                .stopCompressionRate(stopCompressionRate)
+                .ruleCache(ruleCache)
+                .sampling(sampling)
+                .estimation(estimation)
+                .kbBlocking(kbBlocking)
+        );
+    }
+
+    private SincConfig(Builder builder) {
+        this.threads = builder.threads;
+        this.validation = builder.validation;
+        this.debug = builder.debug;
+        this.beamWidth = builder.beamWidth;
+        this.searchOrigins = builder.searchOrigins;
+        this.evalMetric = builder.evalMetric;
+        this.minFactCoverage = builder.minFactCoverage;
+        this.minConstantCoverage = builder.minConstantCoverage;
+        this.minColumnSimilarity = builder.minColumnSimilarity;
+        this.stopCompressionRate = builder.stopCompressionRate;
+        this.ruleCache = builder.ruleCache;
+        this.sampling = builder.sampling;
+        this.estimation = builder.estimation;
+        this.kbBlocking = builder.kbBlocking;
+        this.encodedKb = builder.encodedKb;
+        this.boundPruning = builder.boundPruning;
+        this.joinEvaluation = builder.joinEvaluation;
+        this.sketchColumnSimilarity = builder.sketchColumnSimilarity;
+        this.binaryResult = builder.binaryResult;
+    }
+
+    /**
+     * 按名字设置各个字段，没有设置的字段取默认值(与Main的默认参数相同，所有优化开关关闭)。
+     * 也可以从已有的config开始，只修改其中的一部分字段
+     */
+    public static class Builder {
+        private int threads = 1;
+        private boolean validation = false;
+        private boolean debug = false;
+        private int beamWidth = 3;
+        private boolean searchOrigins = false;
+        private Eval.EvalMetric evalMetric = Eval.EvalMetric.CompressionCapacity;
+        private double minFactCoverage = 0.05;
+        private double minConstantCoverage = 0.25;
+        private double minColumnSimilarity = 0.1;
+        private double stopCompressionRate = 0.9;
+        private boolean ruleCache = false;
+        private double sampling = -1.0;
+        private boolean estimation = false;
+        private boolean kbBlocking = false;
+        private boolean encodedKb = false;
+        private boolean boundPruning = false;
+        private boolean joinEvaluation = false;
+        private boolean sketchColumnSimilarity = false;
+        private boolean binaryResult = false;
+
+        public Builder() {
+        }
+
+        public Builder(SincConfig config) {
+            this.threads = config.threads;
+            this.validation = config.validation;
+            this.debug = config.debug;
+            this.beamWidth = config.beamWidth;
+            this.searchOrigins = config.searchOrigins;
+            this.evalMetric = config.evalMetric;
+            this.minFactCoverage = config.minFactCoverage;
+            this.minConstantCoverage = config.minConstantCoverage;
+            this.minColumnSimilarity = config.minColumnSimilarity;
+            this.stopCompressionRate = config.stopCompressionRate;
+            this.ruleCache = config.ruleCache;
+            this.sampling = config.sampling;
+            this.estimation = config.estimation;
+            this.kbBlocking = config.kbBlocking;
+            this.encodedKb = config.encodedKb;
+            this.boundPruning = config.boundPruning;
+            this.joinEvaluation = config.joinEvaluation;
+            this.sketchColumnSimilarity = config.sketchColumnSimilarity;
+            this.binaryResult = config.binaryResult;
+        }
+
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public Builder validation(boolean validation) {
+            this.validation = validation;
+            return this;
+        }
+
+        public Builder debug(boolean debug) {
+            this.debug = debug;
+            return this;
+        }
+
+        public Builder beamWidth(int beamWidth) {
+            this.beamWidth = beamWidth;
+            return this;
+        }
+
+        public Builder searchOrigins(boolean searchOrigins) {
+            this.searchOrigins = searchOrigins;
+            return this;
+        }
+
+        public Builder evalMetric(Eval.EvalMetric evalMetric) {
+            this.evalMetric = evalMetric;
+            return this;
+        }
+
+        public Builder minFactCoverage(double minFactCoverage) {
+            this.minFactCoverage = minFactCoverage;
+            return this;
+        }
+
+        public Builder minConstantCoverage(double minConstantCoverage) {
+            this.minConstantCoverage = minConstantCoverage;
+            return this;
+        }
+
+        public Builder minColumnSimilarity(double minColumnSimilarity) {
+            this.minColumnSimilarity = minColumnSimilarity;
+            return this;
+        }
+
+        public Builder stopCompressionRate(double stopCompressionRate) {
+            this.stopCompressionRate = stopCompressionRate;
+            return this;
+        }
+
+        public Builder ruleCache(boolean ruleCache) {
+            this.ruleCache = ruleCache;
+            return this;
+        }
+
+        public Builder sampling(double sampling) {
+            this.sampling = sampling;
+            return this;
+        }
+
+        public Builder estimation(boolean estimation) {
+            this.estimation = estimation;
+            return this;
+        }
+
+        public Builder kbBlocking(boolean kbBlocking) {
+            this.kbBlocking = kbBlocking;
+            return this;
+        }
+
+        public Builder encodedKb(boolean encodedKb) {
+            this.encodedKb = encodedKb;
+            return this;
+        }
+
+        public Builder boundPruning(boolean boundPruning) {
+            this.boundPruning = boundPruning;
+            return this;
+        }
+
+        public Builder joinEvaluation(boolean joinEvaluation) {
+            this.joinEvaluation = joinEvaluation;
+            return this;
+        }
+
+        public Builder sketchColumnSimilarity(boolean sketchColumnSimilarity) {
+            this.sketchColumnSimilarity = sketchColumnSimilarity;
+            return this;
+        }
+
+        public Builder binaryResult(boolean binaryResult) {
+            this.binaryResult = binaryResult;
+            return this;
+        }
+
+        public SincConfig build() {
+            return new SincConfig(this);
+        }
     }
 }
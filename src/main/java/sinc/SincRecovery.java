@@ -7,6 +7,7 @@ import sinc.common.Rule;
 import sinc.impl.cached.MemKB;
 import sinc.util.ComparableArray;
 
+import java.io.IOException;
 import java.util.*;
 
 public class SincRecovery {
@@ -67,7 +68,44 @@ public class SincRecovery {
         constants.addAll(deltaConstantSet);
     }
 
+    /**
+     * 从BinaryResult格式的文件中读取压缩结果
+     */
+    public static SincRecovery loadBinaryResult(String path) throws IOException {
+        final BinaryResult result = BinaryResult.read(path);
+        return new SincRecovery(
+                result.hypothesis, result.startSet, result.counterExamples, result.supplementaryConstants
+        );
+    }
+
+    /**
+     * 半朴素(semi-naive)求不动点：第一轮在所有facts上推理，之后每一轮中，每条rule的body里至少有一个predicate只与上一轮
+     * 新推出的facts(delta)匹配，其他predicate与当前所有的facts匹配。这样每一轮的join只涉及新的facts，不会重复推出之前的结果。
+     */
     public Set<Predicate> recover() {
+        recoveredFacts.addAll(necessaryFacts);
+        Map<String, Set<Predicate>> delta = new HashMap<>();
+        for (Rule r : hypothesis) {
+            inferByRule(r, -1, null, delta);
+        }
+        while (!delta.isEmpty()) {
+            final Map<String, Set<Predicate>> new_delta = new HashMap<>();
+            for (Rule r : hypothesis) {
+                for (int pred_idx = Rule.FIRST_BODY_PRED_IDX; pred_idx < r.length(); pred_idx++) {
+                    if (delta.containsKey(r.getPredicate(pred_idx).functor)) {
+                        inferByRule(r, pred_idx, delta, new_delta);
+                    }
+                }
+            }
+            delta = new_delta;
+        }
+        return recoveredFacts;
+    }
+
+    /**
+     * 朴素求不动点：每一轮都在所有facts上用所有rule重新推理，直到没有新的fact
+     */
+    public Set<Predicate> recoverNaively() {
         recoveredFacts.addAll(necessaryFacts);
         int added_facts = 1;
         while (0 < added_facts) {
@@ -81,6 +119,18 @@ public class SincRecovery {
     }
 
     protected int inferByRule(Rule r) {
+        return inferByRule(r, -1, null, null);
+    }
+
+    /**
+     * @param deltaPredIdx body中只与delta匹配的predicate，-1表示所有predicate都与全部facts匹配
+     * @param delta 上一轮新推出的facts，按functor分组
+     * @param newFacts 如果不为null，新推出的facts会按functor记录在其中
+     * @return 新推出的facts数量
+     */
+    protected int inferByRule(
+            Rule r, int deltaPredIdx, Map<String, Set<Predicate>> delta, Map<String, Set<Predicate>> newFacts
+    ) {
         /* 统计head中的变量信息 */
         final Map<Integer, List<Integer>> head_var_2_loc_map = new HashMap<>();  // Head Only LV Locations
         int uv_id = r.usedBoundedVars();
@@ -159,11 +209,14 @@ public class SincRecovery {
                     const_pos_list.add(new ConstPos(arg_idx, argument.name));
                 }
             }
-            if (const_pos_list.isEmpty()) {
+            final boolean match_delta = deltaPredIdx == pred_idx;
+            if (const_pos_list.isEmpty() && !match_delta) {
                 init_grounding.add(new PredicateCache(body_pred, kb.getAllArgIndices(body_pred.functor)));
             } else {
                 final Set<Predicate> filtered_predicates = new HashSet<>();
-                for (Predicate p: kb.getAllFacts(body_pred.functor)) {
+                final Set<Predicate> candidates = match_delta ?
+                        delta.getOrDefault(body_pred.functor, Collections.emptySet()) : kb.getAllFacts(body_pred.functor);
+                for (Predicate p: candidates) {
                     boolean match_all = true;
                     for (ConstPos pos: const_pos_list) {
                         if (!pos.constant.equals(p.args[pos.argIdx].name)) {
@@ -410,9 +463,7 @@ public class SincRecovery {
             /* 不需要替换变量 */
 //            recoveredFacts.addAll(head_templates);
             for (Predicate fact: head_templates) {
-                if (!counterExamples.contains(fact) && kb.addFact(fact)) {
-                    recoveredFacts.add(fact);
-                }
+                addInferredFact(fact, newFacts);
             }
         } else {
             /* 需要替换head中的变量 */
@@ -421,14 +472,21 @@ public class SincRecovery {
                 iterate4Facts(inferred_facts, head_template, 0, head_ov_poss);
             }
             for (Predicate fact: inferred_facts) {
-                if (!counterExamples.contains(fact) && kb.addFact(fact)) {
-                    recoveredFacts.add(fact);
-                }
+                addInferredFact(fact, newFacts);
             }
         }
         return recoveredFacts.size() - original_size;
     }
 
+    protected void addInferredFact(Predicate fact, Map<String, Set<Predicate>> newFacts) {
+        if (!counterExamples.contains(fact) && kb.addFact(fact)) {
+            recoveredFacts.add(fact);
+            if (null != newFacts) {
+                newFacts.computeIfAbsent(fact.functor, k -> new HashSet<>()).add(fact);
+            }
+        }
+    }
+
     protected Map<String, Set<Predicate>>[] buildArgIndices(Set<Predicate> predicates) {
         final Map<String, Set<Predicate>>[] arg_indices = new Map[predicates.iterator().next().arity()];
         for (int arg_idx = 0; arg_idx < arg_indices.length; arg_idx++) {
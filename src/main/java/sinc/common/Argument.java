@@ -7,16 +7,21 @@ public abstract class Argument {
     public final String name;
     public final boolean isVar;
 
+    /* 所有字段都不可变，hash值只需要计算一次 */
+    private final int hash;
+
     public Argument(int id, String name, boolean isVar) {
         this.id = id;
         this.name = name;
         this.isVar = isVar;
+        this.hash = Objects.hash(id, name, isVar);
     }
 
     public Argument(Argument another) {
         this.id = another.id;
         this.name = another.name;
         this.isVar = another.isVar;
+        this.hash = another.hash;
     }
 
     @Override
@@ -24,11 +29,11 @@ public abstract class Argument {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Argument argument = (Argument) o;
-        return id == argument.id && isVar == argument.isVar && Objects.equals(name, argument.name);
+        return hash == argument.hash && id == argument.id && isVar == argument.isVar && Objects.equals(name, argument.name);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, name, isVar);
+        return hash;
     }
 }
@@ -15,6 +15,14 @@ public class BareRule extends Rule {
         super(structure, searchedFingerprints);
     }
 
+    /**
+     * 从检查点恢复rule时，同时按已保存的正负例数量恢复其Eval
+     */
+    public BareRule(List<Predicate> structure, Set<RuleFingerPrint> searchedFingerprints, double posCnt, double allCnt) {
+        super(structure, searchedFingerprints);
+        this.eval = new Eval(null, posCnt, allCnt, size());
+    }
+
     public BareRule(Rule another) {
         super(another);
     }
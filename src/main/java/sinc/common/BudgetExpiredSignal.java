@@ -0,0 +1,10 @@
+package sinc.common;
+
+/**
+ * 搜索的时间预算已经用完。与InterruptedSignal不同，这个信号只结束当前的rule搜索，已经找到的最好的rule仍然会被返回
+ */
+public class BudgetExpiredSignal extends InterruptedSignal {
+    public BudgetExpiredSignal(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,271 @@
+package sinc.common;
+
+import java.util.*;
+
+/**
+ * Rule的规范编码：变量重命名以及body中predicate的顺序不同的rule(即同构的rule)编码相同，不同构的rule编码一定不同。
+ *
+ * 编码方式为在所有body的排列中选出序列化结果字典序最小的一个，序列化结果为long[]以及符号表String[]：
+ *   head与body中每个predicate依次为：(functor编号 << 16 | arity)，然后是每个参数的编码：
+ *     FV: 0; 变量: (按第一次出现的顺序重新编号 + 1) << 1; 常量: (常量编号 + 1) << 1 | 1
+ *   functor与常量也按第一次出现的顺序编号，符号表按编号记录对应的名字。long[]相同时再比较符号表。
+ * 编号只在一个编码内部有效，因此不需要在rule之间共享全局的符号表。
+ *
+ * 为了避免枚举所有排列，先在predicate与变量组成的图上做colour refinement，每次只在颜色最小的一组predicate中选择下一个
+ * predicate(individualization)，选择之后再次refine；颜色只与rule的结构有关，因此搜索的结果与输入的顺序无关。
+ * 另外，已经放置的部分比当前最优结果大时直接剪枝。
+ */
+public class CanonicalRuleKey implements Comparable<CanonicalRuleKey> {
+
+    private static final long FREE_COLOUR = 0x632BE59BD9B4E019L;
+    private static final long CONST_COLOUR = 0x85157AF5L;
+    private static final long VAR_COLOUR = 0x9E3779B97F4A7C15L;
+    private static final long INDIVIDUAL_COLOUR = 0xC2B2AE3D27D4EB4FL;
+
+    private final long[] key;
+    private final String[] symbols;
+    private final int hash;
+
+    public CanonicalRuleKey(long[] key, String[] symbols) {
+        this.key = key;
+        this.symbols = symbols;
+        this.hash = Arrays.hashCode(key) * 31 + Arrays.hashCode(symbols);
+    }
+
+    public static CanonicalRuleKey of(List<Predicate> rule) {
+        final Canonicalizer canonicalizer = new Canonicalizer(rule);
+        canonicalizer.run();
+        return new CanonicalRuleKey(canonicalizer.best, canonicalizer.bestSymbols);
+    }
+
+    public long[] getKey() {
+        return key;
+    }
+
+    public String[] getSymbols() {
+        return symbols;
+    }
+
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
+    private static class Canonicalizer {
+        final List<Predicate> rule;
+        final int bodyPreds;
+        final int vars;
+        /* 每个参数位置：-1表示FV或常量，否则为变量在本地的编号 */
+        final int[][] argVars;
+        final long[] initialPredColours;
+        final long[] initialVarColours;
+        long[] best = null;
+        String[] bestSymbols = null;
+
+        Canonicalizer(List<Predicate> rule) {
+            this.rule = rule;
+            this.bodyPreds = rule.size() - 1;
+            this.argVars = new int[rule.size()][];
+            final Map<Integer, Integer> var_ids = new HashMap<>();
+            for (int pred_idx = 0; pred_idx < rule.size(); pred_idx++) {
+                final Predicate predicate = rule.get(pred_idx);
+                argVars[pred_idx] = new int[predicate.arity()];
+                for (int arg_idx = 0; arg_idx < predicate.arity(); arg_idx++) {
+                    final Argument argument = predicate.args[arg_idx];
+                    if (null != argument && argument.isVar) {
+                        argVars[pred_idx][arg_idx] = var_ids.computeIfAbsent(argument.id, k -> var_ids.size());
+                    } else {
+                        argVars[pred_idx][arg_idx] = -1;
+                    }
+                }
+            }
+            this.vars = var_ids.size();
+
+            /* 初始颜色：predicate由functor和FV/常量/变量的位置决定，变量由其在head中的位置决定 */
+            initialPredColours = new long[bodyPreds];
+            for (int i = 0; i < bodyPreds; i++) {
+                initialPredColours[i] = predicateColour(rule.get(i + 1));
+            }
+            initialVarColours = new long[vars];
+            Arrays.fill(initialVarColours, VAR_COLOUR);
+            final int[] head_vars = argVars[Rule.HEAD_PRED_IDX];
+            for (int arg_idx = 0; arg_idx < head_vars.length; arg_idx++) {
+                if (0 <= head_vars[arg_idx]) {
+                    initialVarColours[head_vars[arg_idx]] += mix(VAR_COLOUR * (arg_idx + 1));
+                }
+            }
+        }
+
+        static long predicateColour(Predicate predicate) {
+            long colour = mix(predicate.functor.hashCode() * 31L + predicate.arity());
+            for (Argument argument: predicate.args) {
+                if (null == argument) {
+                    colour = mix(colour + FREE_COLOUR);
+                } else if (argument.isVar) {
+                    colour = mix(colour + VAR_COLOUR);
+                } else {
+                    colour = mix(colour + CONST_COLOUR * argument.name.hashCode());
+                }
+            }
+            return colour;
+        }
+
+        void run() {
+            final long[] pred_colours = initialPredColours.clone();
+            final long[] var_colours = initialVarColours.clone();
+            refine(pred_colours, var_colours);
+            search(pred_colours, var_colours, new int[bodyPreds], new boolean[bodyPreds], 0);
+        }
+
+        /**
+         * 交替更新predicate与变量的颜色，直到颜色的种类不再增加
+         */
+        void refine(long[] predColours, long[] varColours) {
+            int classes = colourClasses(predColours, varColours);
+            while (classes < bodyPreds + vars) {
+                final long[] new_var_colours = varColours.clone();
+                for (int i = 0; i < bodyPreds; i++) {
+                    final int[] pred_vars = argVars[i + 1];
+                    long colour = predColours[i];
+                    for (int arg_idx = 0; arg_idx < pred_vars.length; arg_idx++) {
+                        if (0 <= pred_vars[arg_idx]) {
+                            colour = mix(colour + varColours[pred_vars[arg_idx]]);
+                            new_var_colours[pred_vars[arg_idx]] += mix(predColours[i] + arg_idx);
+                        } else {
+                            colour = mix(colour + FREE_COLOUR);
+                        }
+                    }
+                    predColours[i] = colour;
+                }
+                System.arraycopy(new_var_colours, 0, varColours, 0, vars);
+                final int new_classes = colourClasses(predColours, varColours);
+                if (new_classes <= classes) {
+                    return;
+                }
+                classes = new_classes;
+            }
+        }
+
+        static int colourClasses(long[] predColours, long[] varColours) {
+            return distinctValues(predColours) + distinctValues(varColours);
+        }
+
+        static int distinctValues(long[] colours) {
+            final long[] sorted = colours.clone();
+            Arrays.sort(sorted);
+            int cnt = (0 == sorted.length) ? 0 : 1;
+            for (int i = 1; i < sorted.length; i++) {
+                if (sorted[i] != sorted[i - 1]) {
+                    cnt++;
+                }
+            }
+            return cnt;
+        }
+
+        void search(long[] predColours, long[] varColours, int[] order, boolean[] placed, int placedCnt) {
+            final List<String> symbols = new ArrayList<>();
+            final long[] prefix = serialize(order, placedCnt, symbols);
+            final String[] prefix_symbols = symbols.toArray(new String[0]);
+            if (null != best) {
+                int cmp = Arrays.compare(prefix, 0, prefix.length, best, 0, Math.min(prefix.length, best.length));
+                if (0 == cmp && placedCnt == bodyPreds) {
+                    cmp = Arrays.compare(prefix_symbols, bestSymbols);
+                }
+                if (0 < cmp || (0 == cmp && placedCnt == bodyPreds)) {
+                    /* 不会比当前结果更小 */
+                    return;
+                }
+            }
+            if (placedCnt == bodyPreds) {
+                best = prefix;
+                bestSymbols = prefix_symbols;
+                return;
+            }
+
+            /* 颜色最小的一组predicate作为下一个位置的候选 */
+            long min_colour = Long.MAX_VALUE;
+            for (int i = 0; i < bodyPreds; i++) {
+                if (!placed[i] && predColours[i] < min_colour) {
+                    min_colour = predColours[i];
+                }
+            }
+            for (int i = 0; i < bodyPreds; i++) {
+                if (placed[i] || predColours[i] != min_colour) {
+                    continue;
+                }
+                final long[] pred_colours = predColours.clone();
+                final long[] var_colours = varColours.clone();
+                pred_colours[i] = mix(INDIVIDUAL_COLOUR + placedCnt);
+                refine(pred_colours, var_colours);
+                order[placedCnt] = i;
+                placed[i] = true;
+                search(pred_colours, var_colours, order, placed, placedCnt + 1);
+                placed[i] = false;
+            }
+        }
+
+        /**
+         * 序列化head以及order中的前cnt个body predicate
+         *
+         * @param symbols 按编号记录functor与常量的名字
+         */
+        long[] serialize(int[] order, int cnt, List<String> symbols) {
+            int length = 1 + rule.get(Rule.HEAD_PRED_IDX).arity();
+            for (int i = 0; i < cnt; i++) {
+                length += 1 + rule.get(order[i] + 1).arity();
+            }
+            final long[] result = new long[length];
+            final int[] var_numbers = new int[vars];
+            final Map<String, Integer> symbol_ids = new HashMap<>();
+            int next_var_number = 1;
+            int pos = 0;
+            for (int i = -1; i < cnt; i++) {
+                final int pred_idx = (0 > i) ? Rule.HEAD_PRED_IDX : order[i] + 1;
+                final Predicate predicate = rule.get(pred_idx);
+                result[pos++] = ((long) symbolId(predicate.functor, symbol_ids, symbols) << 16) | predicate.arity();
+                for (int arg_idx = 0; arg_idx < predicate.arity(); arg_idx++) {
+                    final Argument argument = predicate.args[arg_idx];
+                    final int var = argVars[pred_idx][arg_idx];
+                    if (null == argument) {
+                        result[pos++] = 0;
+                    } else if (0 <= var) {
+                        if (0 == var_numbers[var]) {
+                            var_numbers[var] = next_var_number++;
+                        }
+                        result[pos++] = (long) var_numbers[var] << 1;
+                    } else {
+                        result[pos++] = ((long) (symbolId(argument.name, symbol_ids, symbols) + 1) << 1) | 1;
+                    }
+                }
+            }
+            return result;
+        }
+
+        static int symbolId(String symbol, Map<String, Integer> symbolIds, List<String> symbols) {
+            return symbolIds.computeIfAbsent(symbol, k -> {
+                symbols.add(k);
+                return symbols.size() - 1;
+            });
+        }
+    }
+
+    @Override
+    public int compareTo(CanonicalRuleKey another) {
+        final int cmp = Arrays.compare(key, another.key);
+        return (0 != cmp) ? cmp : Arrays.compare(symbols, another.symbols);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CanonicalRuleKey that = (CanonicalRuleKey) o;
+        return hash == that.hash && Arrays.equals(key, that.key) && Arrays.equals(symbols, that.symbols);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,56 @@
+package sinc.common;
+
+/**
+ * 采样估计得到的Eval。posCnt与allCnt均为估计值，另外记录二者的置信区间，以及估计值所对应的上下界。
+ *
+ * 各评价指标关于posCnt单调增、关于allCnt单调减，因此下界取(pos下界, all上界)，上界取(pos上界, all下界)。
+ */
+public class EstimatedEval extends Eval {
+    private final Eval previousEval;
+    private final double posMargin;
+    private final double allMargin;
+    private final Eval lowerBound;
+    private final Eval upperBound;
+
+    public EstimatedEval(
+            Eval previousEval, double posCnt, double posMargin, double allCnt, double allMargin, int ruleSize
+    ) {
+        super(previousEval, posCnt, Math.max(posCnt, allCnt), ruleSize);
+        this.previousEval = previousEval;
+        this.posMargin = posMargin;
+        this.allMargin = allMargin;
+
+        final double pos_lower = Math.max(0, posCnt - posMargin);
+        final double pos_upper = posCnt + posMargin;
+        this.lowerBound = new Eval(previousEval, pos_lower, Math.max(pos_lower, allCnt + allMargin), ruleSize);
+        this.upperBound = new Eval(previousEval, pos_upper, Math.max(pos_upper, allCnt - allMargin), ruleSize);
+    }
+
+    /**
+     * @return 估计所基于的上一个Eval，重新精确计算时需要用到
+     */
+    public Eval getPreviousEval() {
+        return previousEval;
+    }
+
+    public double getPosMargin() {
+        return posMargin;
+    }
+
+    public double getAllMargin() {
+        return allMargin;
+    }
+
+    public double lowerValue(EvalMetric type) {
+        return lowerBound.value(type);
+    }
+
+    public double upperValue(EvalMetric type) {
+        return upperBound.value(type);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s; ±(+)%f; ±(all)%f", super.toString(), posMargin, allMargin);
+    }
+}
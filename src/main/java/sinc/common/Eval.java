@@ -52,6 +52,11 @@ public class Eval {
         public boolean useful(EvalMetric type) {
             return false;
         }
+
+        @Override
+        public double specializationUpperBound(EvalMetric type, double maxPosCnt, int specializedRuleSize) {
+            return Double.POSITIVE_INFINITY;
+        }
     }
 
     public static final Eval MIN = new EvalMin();
@@ -114,6 +119,33 @@ public class Eval {
         return compCapacity > COMP_CAPACITY_USEFUL_THRESHOLD;
     }
 
+    /**
+     * 以当前Eval为previousEval的任意specialization(pos' <= q = min(posCnt, maxPosCnt), pos' <= all', 长度为
+     * specializedRuleSize)在type下能达到的最大值：
+     *   τ' = pos'/(all'+|r'|) <= q/(q+|r'|)
+     *   δ' = pos'-neg'-|r'| <= q-|r'|
+     *   h' = pos'*(log(pos'/all')-log(pos/all)) <= q*(0-log(pos/all))
+     *   H' = H + h'
+     * pos'=all'=q时构造函数中log(pos'/all')恰好为0，结果与上界相同(包括pos=all时的+0.0)，因此恰好取到上界的specialization不会因为
+     * 舍入误差而超过上界
+     */
+    public double specializationUpperBound(EvalMetric type, double maxPosCnt, int specializedRuleSize) {
+        final double max_pos = Math.min(posCnt, maxPosCnt);
+        final double max_info_gain = (0 == max_pos) ? 0 : max_pos * (0 - Math.log(posCnt / allCnt));
+        switch (type) {
+            case CompressionRate:
+                return (0 == max_pos) ? 0 : max_pos / (max_pos + specializedRuleSize);
+            case CompressionCapacity:
+                return max_pos - specializedRuleSize;
+            case InfoGain:
+                return max_info_gain;
+            case CumulatedInfo:
+                return cumulatedInfo + max_info_gain;
+            default:
+                return Double.POSITIVE_INFINITY;
+        }
+    }
+
     public double getAllCnt() {
         return allCnt;
     }
@@ -41,6 +41,9 @@ public class PerformanceMonitor {
     public long kbLoadTime = 0;
     public long hypothesisMiningTime = 0;
     public long dependencyAnalysisTime = 0;  // Counter Examples + Necessaries(Dependency Graph)
+    public long dependencyGraphTime = 0;  // 以下为dependencyAnalysisTime中的各个阶段：建立Graph(包括转换为CSR)
+    public long sccTime = 0;  // 求SCC
+    public long fvsTime = 0;  // 求各个SCC的FVS
     public long validationTime = 0;
     public long dumpTime = 0;
     public long totalTime = 0;
@@ -66,6 +69,11 @@ public class PerformanceMonitor {
     public int totalConstantSubstitutions = 0;
     public int actualConstantSubstitutions = 0;
     public int tabuPruned = 0;
+    public int boundPruned = 0;  // 上界不可能被采用或进入beams，因此没有计算Eval的extension
+    public int prunedBeforeClone = 0;  // 在clone之前就被剪枝的extension(已计入上面的几类)
+    public int budgetExpirations = 0;  // 因时间预算用完而提前结束的rule搜索
+    public int estimatedCandidates = 0;  // Eval由采样估计得到的candidate
+    public int reevaluatedCandidates = 0;  // 以上candidate中被精确评估的
     public List<BranchInfo> branchProgress = new ArrayList<>();
 
     public void show(PrintWriter writer) {
@@ -79,6 +87,9 @@ public class PerformanceMonitor {
                 "     %10d %10d %10d %10d %10d %10d\n\n",
                 kbLoadTime, hypothesisMiningTime, dependencyAnalysisTime, validationTime, dumpTime, totalTime
         );
+        writer.println("- Dependency Analysis:");
+        writer.printf("(ms) %10s %10s %10s\n", "Graph", "SCC", "FVS");
+        writer.printf("     %10d %10d %10d\n\n", dependencyGraphTime, sccTime, fvsTime);
 
         writer.println("--- Statistics ---");
         writer.printf(
@@ -131,16 +142,21 @@ public class PerformanceMonitor {
             total_org += branches.orgNum;
         }
         writer.printf(
-                "# %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s\n",
-                "#Tabu", "#Invalid", "#Dup", "#FC", "#Eval", "#+Subs", "#Subs", "max(Brh)", "avg(Brh)",
+                "# %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s\n",
+                "#Tabu", "#Bound", "#Invalid", "#Dup", "#PreCut", "#FC", "#Expired", "#Est", "#ReEval", "#Eval", "#+Subs", "#Subs", "max(Brh)", "avg(Brh)",
                 "max(|r|)", "avg(|r|)", "max(Ext)", "avg(Ext)", "max(Org)", "avg(Org)"
         );
         writer.printf(
-                "  %10d %10d %10d %10d %10d %10d %10d %10d %10.2f %10d %10.2f %10d %10.2f %10d %10.2f\n\n",
+                "  %10d %10d %10d %10d %10d %10d %10d %10d %10d %10d %10d %10d %10d %10.2f %10d %10.2f %10d %10.2f %10d %10.2f\n\n",
                 tabuPruned,
+                boundPruned,
                 invalidSearches,
                 duplications,
+                prunedBeforeClone,
                 fcFilteredRules,
+                budgetExpirations,
+                estimatedCandidates,
+                reevaluatedCandidates,
                 executed_evaluations,
                 actualConstantSubstitutions,
                 totalConstantSubstitutions,
@@ -13,10 +13,10 @@ public abstract class Rule {
     public static RuleMonitor monitor = new RuleMonitor();
 
     public enum UpdateStatus {
-        NORMAL, DUPLICATED, INVALID, INSUFFICIENT_COVERAGE, TABU_PRUNED
+        NORMAL, DUPLICATED, INVALID, INSUFFICIENT_COVERAGE, TABU_PRUNED, BOUND_PRUNED, BOUND_DEFERRED
     }
 
-    protected final List<Predicate> structure;
+    protected List<Predicate> structure;
     protected final List<Variable> boundedVars;  // Bounded vars use non-negative ids(list index)
     protected final List<Integer> boundedVarCnts;
     protected RuleFingerPrint fingerPrint;
@@ -24,6 +24,25 @@ public abstract class Rule {
     protected Eval eval;
     protected final Set<RuleFingerPrint> searchedFingerprints;
 
+    /* Extension被拆分为prepare和evaluate两个阶段，这里暂存prepare之后尚未执行的handler */
+    protected interface ExtensionHandler {
+        UpdateStatus handle();
+    }
+    private interface FingerPrintUpdater {
+        RuleFingerPrint update();
+    }
+    private ExtensionHandler pendingHandler = null;
+
+    /* 试探通过的extension的fingerprint。试探之后的clone会接管这个值，使clone上对应的prepare不再重新计算fingerprint，
+       也不再重复合法性等检查 */
+    private RuleFingerPrint precheckedFingerPrint = null;
+
+    /* evaluate()中计算Eval之前的上界剪枝条件：上界不超过boundBaseline时返回BOUND_PRUNED，低于boundThreshold时返回
+       BOUND_DEFERRED，由evaluateDeferred()在需要时再计算Eval。boundMetric为null时不剪枝 */
+    private Eval.EvalMetric boundMetric = null;
+    private double boundBaseline;
+    private double boundThreshold;
+
     public Rule(String headFunctor, int arity, Set<RuleFingerPrint> searchedFingerprints) {
         structure = new ArrayList<>();
         boundedVars = new ArrayList<>();
@@ -88,6 +107,8 @@ public abstract class Rule {
         this.equivConds = another.equivConds;
         this.eval = another.eval;
         this.searchedFingerprints = another.searchedFingerprints;
+        this.precheckedFingerPrint = another.precheckedFingerPrint;
+        another.precheckedFingerPrint = null;
     }
 
     public abstract Rule clone();
@@ -201,58 +222,306 @@ public abstract class Rule {
     }
 
     /**
-     * 将当前已有的一个FV绑定成一个已有的BV
-     *
-     * @return 绑定合理且新规则未曾计算过，返回true；否则返回false
+     * 检查修改结构之后的rule是否应当被剪枝。这一步会修改共享的searchedFingerprints，因此只能串行执行
      */
-    public UpdateStatus boundFreeVar2ExistingVar(
-            final int predIdx, final int argIdx, final int varId
-    ) {
-        /* 改变Rule结构 */
-        long time_start_nano = System.nanoTime();
-        fingerPrint = boundFreeVar2ExistingVarUpdateStructure(predIdx, argIdx, varId);
-        long time_fp_updated_nano = System.nanoTime();
-        monitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
+    protected UpdateStatus checkPruning() {
+        return checkPruning(false);
+    }
 
+    /**
+     * @param probe 为true时只查询fingerprint是否已经被搜索过，不记录到searchedFingerprints中
+     */
+    protected UpdateStatus checkPruning(boolean probe) {
         /* 检查是否命中Cache */
-        boolean cache_hit = !searchedFingerprints.add(fingerPrint);
+        final RuleMonitor rule_monitor = ruleMonitor();
+        long time_start_nano = System.nanoTime();
+        boolean cache_hit = probe ? isSearched() : isDuplicated();
         long time_cache_checked_nano = System.nanoTime();
-        monitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
         if (cache_hit) {
+            synchronized (rule_monitor) {
+                rule_monitor.dupCheckTimeNano += time_cache_checked_nano - time_start_nano;
+            }
             return UpdateStatus.DUPLICATED;
         }
 
         /* 检查合法性 */
         boolean invalid = isInvalid();
         long time_valid_checked_nano = System.nanoTime();
-        monitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
+        synchronized (rule_monitor) {
+            rule_monitor.dupCheckTimeNano += time_cache_checked_nano - time_start_nano;
+            rule_monitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
+        }
         if (invalid) {
             return UpdateStatus.INVALID;
         }
+        return UpdateStatus.NORMAL;
+    }
+
+    protected boolean isDuplicated() {
+        return !searchedFingerprints.add(fingerPrint);
+    }
+
+    protected boolean isSearched() {
+        return searchedFingerprints.contains(fingerPrint);
+    }
+
+    protected void recordSearched() {
+        searchedFingerprints.add(fingerPrint);
+    }
+
+    /**
+     * Extension的第二阶段：执行handler更新Cache，然后更新Eval。
+     *
+     * 这一阶段只涉及当前rule自己的Cache以及只读的KB，因此不同的rule之间可以并行执行
+     */
+    public UpdateStatus evaluate() {
+        final ExtensionHandler handler = pendingHandler;
+        pendingHandler = null;
 
         /* 执行handler */
-        final UpdateStatus status = boundFreeVar2ExistingVarHandler(predIdx, argIdx, varId);
+        long time_start_nano = System.nanoTime();
+        final UpdateStatus status = handler.handle();
         long time_updated_nano = System.nanoTime();
-        monitor.updateHandlerTimeNano += time_updated_nano - time_valid_checked_nano;
         if (UpdateStatus.NORMAL != status) {
+            recordEvaluationTime(time_updated_nano - time_start_nano, 0);
             return status;
         }
 
+        /* 用Cache中的信息估计上界，决定是否需要计算Eval */
+        if (null != boundMetric) {
+            final double upper_bound = eval.specializationUpperBound(boundMetric, positiveEntailmentBound(), size());
+            if (upper_bound <= boundBaseline || upper_bound < boundThreshold) {
+                recordEvaluationTime(System.nanoTime() - time_start_nano, 0);
+                return (upper_bound <= boundBaseline) ? UpdateStatus.BOUND_PRUNED : UpdateStatus.BOUND_DEFERRED;
+            }
+        }
+
         /* 更新Eval */
         this.eval = calculateEval();
         long time_evaluated_nano = System.nanoTime();
-        monitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
+        recordEvaluationTime(time_updated_nano - time_start_nano, time_evaluated_nano - time_updated_nano);
         return UpdateStatus.NORMAL;
     }
 
+    private void recordEvaluationTime(long handlerTimeNano, long evalTimeNano) {
+        final RuleMonitor rule_monitor = ruleMonitor();
+        synchronized (rule_monitor) {
+            rule_monitor.updateHandlerTimeNano += handlerTimeNano;
+            rule_monitor.evalTimeNano += evalTimeNano;
+        }
+    }
+
+    /**
+     * 设置evaluate()中的上界剪枝条件，只对specialization(也就是extension)有效
+     *
+     * @param baseline 不超过这个值的extension一定不会被采用
+     * @param threshold 低于这个值的extension不会进入beams
+     */
+    public void setEvalBound(Eval.EvalMetric metric, double baseline, double threshold) {
+        this.boundMetric = metric;
+        this.boundBaseline = baseline;
+        this.boundThreshold = threshold;
+    }
+
+    /**
+     * evaluate()返回BOUND_DEFERRED之后，计算Eval
+     */
+    public void evaluateDeferred() {
+        long time_start_nano = System.nanoTime();
+        this.eval = calculateEval();
+        recordEvaluationTime(0, System.nanoTime() - time_start_nano);
+    }
+
+    /**
+     * @return Cache更新之后、计算Eval之前，新的positive entailment数量的上界。默认为更新之前的positive entailment数量
+     */
+    protected double positiveEntailmentBound() {
+        return eval.getPosCnt();
+    }
+
+    /**
+     * 并行评估时，从prepare到合并结果之间，其他rule的结果可能引入了新的剪枝条件(例如tabu)，合并前需要重新检查
+     */
+    public UpdateStatus recheckPruning() {
+        return UpdateStatus.NORMAL;
+    }
+
+    /**
+     * 如果当前的Eval是采样估计的结果，则重新精确计算
+     */
+    public void evaluateExactly() {
+        if (eval instanceof EstimatedEval) {
+            long time_start_nano = System.nanoTime();
+            this.eval = ((EstimatedEval) eval).getPreviousEval();
+            this.eval = calculateExactEval();
+            recordEvaluationTime(0, System.nanoTime() - time_start_nano);
+        }
+    }
+
+    public boolean isEstimated() {
+        return eval instanceof EstimatedEval;
+    }
+
+    protected RuleMonitor ruleMonitor() {
+        return monitor;
+    }
+
+    private void updateFingerPrint(FingerPrintUpdater updater) {
+        long time_start_nano = System.nanoTime();
+        fingerPrint = updater.update();
+        long time_fp_updated_nano = System.nanoTime();
+        final RuleMonitor rule_monitor = ruleMonitor();
+        synchronized (rule_monitor) {
+            rule_monitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
+        }
+    }
+
+    /**
+     * Fingerprint直接引用构造它时的结构。在同一个rule上再次原地修改结构之前，先复制一份结构，使之前的fingerprint保持不变
+     */
+    private void copyStructureOnWrite() {
+        if (fingerPrint.rule == structure) {
+            final List<Predicate> copy = new ArrayList<>(structure.size());
+            for (Predicate predicate: structure) {
+                copy.add(new Predicate(predicate));
+            }
+            structure = copy;
+        }
+    }
+
+    /**
+     * 修改结构并检查剪枝条件。如果当前rule是试探通过之后的clone，直接使用试探时的fingerprint，并且只需要把它记录到
+     * searchedFingerprints中
+     */
+    private UpdateStatus prepare(FingerPrintUpdater updater) {
+        if (null == precheckedFingerPrint) {
+            updateFingerPrint(updater);
+            return checkPruning();
+        }
+        fingerPrint = updater.update();
+        precheckedFingerPrint = null;
+        return isDuplicated() ? UpdateStatus.DUPLICATED : UpdateStatus.NORMAL;
+    }
+
+    /**
+     * 在当前rule上试探一次extension：只修改结构、计算新的fingerprint并检查剪枝条件，不复制也不修改Cache，结束后恢复原有结构。
+     *
+     * 试探通过时不会把fingerprint记录到searchedFingerprints中，因此返回NORMAL时仍需在clone上执行对应的prepare方法。
+     * 紧接着产生的clone会接管试探得到的fingerprint，其prepare方法只修改结构并记录fingerprint
+     */
+    private UpdateStatus precheck(FingerPrintUpdater updater) {
+        precheckedFingerPrint = null;
+        /* 在结构的副本上修改，试探得到的fingerprint引用这个副本 */
+        final List<Predicate> original_structure = structure;
+        structure = new ArrayList<>(original_structure.size());
+        for (Predicate predicate: original_structure) {
+            structure.add(new Predicate(predicate));
+        }
+        final List<Variable> original_bounded_vars = new ArrayList<>(boundedVars);
+        final List<Integer> original_bounded_var_cnts = new ArrayList<>(boundedVarCnts);
+        final RuleFingerPrint original_finger_print = fingerPrint;
+        final int original_equiv_conds = equivConds;
+        try {
+            updateFingerPrint(updater);
+            final UpdateStatus status = checkPruning(true);
+            if (UpdateStatus.INVALID == status || UpdateStatus.TABU_PRUNED == status) {
+                /* 与prepare保持一致：被剪枝的rule也要记录为已搜索，之后等价的rule会被判定为重复 */
+                recordSearched();
+            } else if (UpdateStatus.NORMAL == status) {
+                precheckedFingerPrint = fingerPrint;
+            }
+            return status;
+        } finally {
+            structure = original_structure;
+            boundedVars.clear();
+            boundedVars.addAll(original_bounded_vars);
+            boundedVarCnts.clear();
+            boundedVarCnts.addAll(original_bounded_var_cnts);
+            fingerPrint = original_finger_print;
+            equivConds = original_equiv_conds;
+        }
+    }
+
+    /**
+     * 在clone之前检查boundFreeVar2ExistingVar是否会被剪枝
+     */
+    public UpdateStatus precheckBoundFreeVar2ExistingVar(final int predIdx, final int argIdx, final int varId) {
+        return precheck(() -> boundFreeVar2ExistingVarUpdateStructure(predIdx, argIdx, varId));
+    }
+
+    /**
+     * 在clone之前检查boundFreeVar2ExistingVar(新谓词)是否会被剪枝
+     */
+    public UpdateStatus precheckBoundFreeVar2ExistingVar(
+            final String functor, final int arity, final int argIdx, final int varId
+    ) {
+        return precheck(() -> boundFreeVar2ExistingVarUpdateStructure(functor, arity, argIdx, varId));
+    }
+
+    /**
+     * 在clone之前检查boundFreeVars2NewVar是否会被剪枝
+     */
+    public UpdateStatus precheckBoundFreeVars2NewVar(
+            final int predIdx1, final int argIdx1, final int predIdx2, final int argIdx2
+    ) {
+        return precheck(() -> boundFreeVars2NewVarUpdateStructure(predIdx1, argIdx1, predIdx2, argIdx2));
+    }
+
+    /**
+     * 在clone之前检查boundFreeVars2NewVar(新谓词)是否会被剪枝
+     */
+    public UpdateStatus precheckBoundFreeVars2NewVar(
+            final String functor, final int arity, final int argIdx1, final int predIdx2, final int argIdx2
+    ) {
+        return precheck(() -> boundFreeVars2NewVarUpdateStructure(functor, arity, argIdx1, predIdx2, argIdx2));
+    }
+
+    /**
+     * 在clone之前检查boundFreeVar2Constant是否会被剪枝
+     */
+    public UpdateStatus precheckBoundFreeVar2Constant(final int predIdx, final int argIdx, final String constantSymbol) {
+        return precheck(() -> boundFreeVar2ConstantUpdateStructure(predIdx, argIdx, constantSymbol));
+    }
+
+    /**
+     * 在clone之前检查removeBoundedArg是否会被剪枝
+     */
+    public UpdateStatus precheckRemoveBoundedArg(final int predIdx, final int argIdx) {
+        return precheck(() -> removeBoundedArgUpdateStructure(predIdx, argIdx));
+    }
+
+    /**
+     * 将当前已有的一个FV绑定成一个已有的BV
+     *
+     * @return 绑定合理且新规则未曾计算过，返回true；否则返回false
+     */
+    public UpdateStatus boundFreeVar2ExistingVar(
+            final int predIdx, final int argIdx, final int varId
+    ) {
+        final UpdateStatus status = prepareBoundFreeVar2ExistingVar(predIdx, argIdx, varId);
+        return (UpdateStatus.NORMAL == status) ? evaluate() : status;
+    }
+
+    /**
+     * boundFreeVar2ExistingVar的第一阶段：修改结构并检查剪枝条件，Cache的更新和评估推迟到evaluate()
+     */
+    public UpdateStatus prepareBoundFreeVar2ExistingVar(
+            final int predIdx, final int argIdx, final int varId
+    ) {
+        pendingHandler = () -> boundFreeVar2ExistingVarHandler(predIdx, argIdx, varId);
+        return prepare(() -> boundFreeVar2ExistingVarUpdateStructure(predIdx, argIdx, varId));
+    }
+
     protected RuleFingerPrint boundFreeVar2ExistingVarUpdateStructure(
             final int predIdx, final int argIdx, final int varId
     ) {
+        copyStructureOnWrite();
         final Predicate target_predicate = structure.get(predIdx);
         target_predicate.args[argIdx] = boundedVars.get(varId);
         boundedVarCnts.set(varId, boundedVarCnts.get(varId)+1);
         equivConds++;
-        return new RuleFingerPrint(structure);
+        return (null != precheckedFingerPrint) ? precheckedFingerPrint :
+                fingerPrint.deriveBoundFreeVar2ExistingVar(structure, predIdx, argIdx, varId);
     }
 
     protected UpdateStatus boundFreeVar2ExistingVarHandler(
@@ -272,52 +541,35 @@ public abstract class Rule {
     public UpdateStatus boundFreeVar2ExistingVar(
             final String functor, final int arity, final int argIdx, final int varId
     ) {
-        /* 改变Rule结构 */
-        long time_start_nano = System.nanoTime();
-        fingerPrint = boundFreeVar2ExistingVarUpdateStructure(functor, arity, argIdx, varId);
-        long time_fp_updated_nano = System.nanoTime();
-        monitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
-
-        /* 检查是否命中Cache */
-        boolean cache_hit = !searchedFingerprints.add(fingerPrint);
-        long time_cache_checked_nano = System.nanoTime();
-        monitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
-        if (cache_hit) {
-            return UpdateStatus.DUPLICATED;
-        }
-
-        /* 检查合法性 */
-        boolean invalid = isInvalid();
-        long time_valid_checked_nano = System.nanoTime();
-        monitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
-        if (invalid) {
-            return UpdateStatus.INVALID;
-        }
-
-        /* 执行handler */
-        final UpdateStatus status = boundFreeVar2ExistingVarHandler(structure.get(structure.size() - 1), argIdx, varId);
-        long time_updated_nano = System.nanoTime();
-        monitor.updateHandlerTimeNano += time_updated_nano - time_valid_checked_nano;
-        if (UpdateStatus.NORMAL != status) {
-            return status;
-        }
+        final UpdateStatus status = prepareBoundFreeVar2ExistingVar(functor, arity, argIdx, varId);
+        return (UpdateStatus.NORMAL == status) ? evaluate() : status;
+    }
 
-        /* 更新Eval */
-        this.eval = calculateEval();
-        long time_evaluated_nano = System.nanoTime();
-        monitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
-        return UpdateStatus.NORMAL;
+    /**
+     * boundFreeVar2ExistingVar的第一阶段：修改结构并检查剪枝条件，Cache的更新和评估推迟到evaluate()
+     */
+    public UpdateStatus prepareBoundFreeVar2ExistingVar(
+            final String functor, final int arity, final int argIdx, final int varId
+    ) {
+        final UpdateStatus status = prepare(
+                () -> boundFreeVar2ExistingVarUpdateStructure(functor, arity, argIdx, varId)
+        );
+        final Predicate new_predicate = structure.get(structure.size() - 1);
+        pendingHandler = () -> boundFreeVar2ExistingVarHandler(new_predicate, argIdx, varId);
+        return status;
     }
 
     protected RuleFingerPrint boundFreeVar2ExistingVarUpdateStructure(
             final String functor, final int arity, final int argIdx, final int varId
     ) {
+        copyStructureOnWrite();
         final Predicate target_predicate = new Predicate(functor, arity);
         structure.add(target_predicate);
         target_predicate.args[argIdx] = boundedVars.get(varId);
         boundedVarCnts.set(varId, boundedVarCnts.get(varId)+1);
         equivConds++;
-        return new RuleFingerPrint(structure);
+        return (null != precheckedFingerPrint) ? precheckedFingerPrint :
+                fingerPrint.deriveBoundFreeVar2ExistingVar(structure, functor, arity, argIdx, varId);
     }
 
     protected UpdateStatus boundFreeVar2ExistingVarHandler(
@@ -337,46 +589,24 @@ public abstract class Rule {
     public UpdateStatus boundFreeVars2NewVar(
             final int predIdx1, final int argIdx1, final int predIdx2, final int argIdx2
     ) {
-        /* 改变Rule结构 */
-        long time_start_nano = System.nanoTime();
-        fingerPrint = boundFreeVars2NewVarUpdateStructure(predIdx1, argIdx1, predIdx2, argIdx2);
-        long time_fp_updated_nano = System.nanoTime();
-        monitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
-
-        /* 检查是否命中Cache */
-        boolean cache_hit = !searchedFingerprints.add(fingerPrint);
-        long time_cache_checked_nano = System.nanoTime();
-        monitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
-        if (cache_hit) {
-            return UpdateStatus.DUPLICATED;
-        }
-
-        /* 检查合法性 */
-        boolean invalid = isInvalid();
-        long time_valid_checked_nano = System.nanoTime();
-        monitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
-        if (invalid) {
-            return UpdateStatus.INVALID;
-        }
-
-        /* 执行handler */
-        final UpdateStatus status = boundFreeVars2NewVarHandler(predIdx1, argIdx1, predIdx2, argIdx2);
-        long time_updated_nano = System.nanoTime();
-        monitor.updateHandlerTimeNano += time_updated_nano - time_valid_checked_nano;
-        if (UpdateStatus.NORMAL != status) {
-            return status;
-        }
+        final UpdateStatus status = prepareBoundFreeVars2NewVar(predIdx1, argIdx1, predIdx2, argIdx2);
+        return (UpdateStatus.NORMAL == status) ? evaluate() : status;
+    }
 
-        /* 更新Eval */
-        this.eval = calculateEval();
-        long time_evaluated_nano = System.nanoTime();
-        monitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
-        return UpdateStatus.NORMAL;
+    /**
+     * boundFreeVars2NewVar的第一阶段：修改结构并检查剪枝条件，Cache的更新和评估推迟到evaluate()
+     */
+    public UpdateStatus prepareBoundFreeVars2NewVar(
+            final int predIdx1, final int argIdx1, final int predIdx2, final int argIdx2
+    ) {
+        pendingHandler = () -> boundFreeVars2NewVarHandler(predIdx1, argIdx1, predIdx2, argIdx2);
+        return prepare(() -> boundFreeVars2NewVarUpdateStructure(predIdx1, argIdx1, predIdx2, argIdx2));
     }
 
     protected RuleFingerPrint boundFreeVars2NewVarUpdateStructure(
             final int predIdx1, final int argIdx1, final int predIdx2, final int argIdx2
     ) {
+        copyStructureOnWrite();
         final Predicate target_predicate1 = structure.get(predIdx1);
         final Predicate target_predicate2 = structure.get(predIdx2);
         final Variable new_var = new Variable(boundedVars.size());
@@ -385,7 +615,8 @@ public abstract class Rule {
         boundedVars.add(new_var);
         boundedVarCnts.add(2);
         equivConds++;
-        return new RuleFingerPrint(structure);
+        return (null != precheckedFingerPrint) ? precheckedFingerPrint :
+                fingerPrint.deriveBoundFreeVars2NewVar(structure, predIdx1, argIdx1, predIdx2, argIdx2, new_var.id);
     }
 
     protected UpdateStatus boundFreeVars2NewVarHandler(
@@ -405,48 +636,28 @@ public abstract class Rule {
     public UpdateStatus boundFreeVars2NewVar(
             final String functor, final int arity, final int argIdx1, final int predIdx2, final int argIdx2
     ) {
-        /* 改变Rule结构 */
-        long time_start_nano = System.nanoTime();
-        fingerPrint = boundFreeVars2NewVarUpdateStructure(functor, arity, argIdx1, predIdx2, argIdx2);
-        long time_fp_updated_nano = System.nanoTime();
-        monitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
-
-        /* 检查是否命中Cache */
-        boolean cache_hit = !searchedFingerprints.add(fingerPrint);
-        long time_cache_checked_nano = System.nanoTime();
-        monitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
-        if (cache_hit) {
-            return UpdateStatus.DUPLICATED;
-        }
-
-        /* 检查合法性 */
-        boolean invalid = isInvalid();
-        long time_valid_checked_nano = System.nanoTime();
-        monitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
-        if (invalid) {
-            return UpdateStatus.INVALID;
-        }
+        final UpdateStatus status = prepareBoundFreeVars2NewVar(functor, arity, argIdx1, predIdx2, argIdx2);
+        return (UpdateStatus.NORMAL == status) ? evaluate() : status;
+    }
 
-        /* 执行handler */
-        final UpdateStatus status = boundFreeVars2NewVarHandler(
-                structure.get(structure.size() - 1), argIdx1, predIdx2, argIdx2
+    /**
+     * boundFreeVars2NewVar的第一阶段：修改结构并检查剪枝条件，Cache的更新和评估推迟到evaluate()
+     */
+    public UpdateStatus prepareBoundFreeVars2NewVar(
+            final String functor, final int arity, final int argIdx1, final int predIdx2, final int argIdx2
+    ) {
+        final UpdateStatus status = prepare(
+                () -> boundFreeVars2NewVarUpdateStructure(functor, arity, argIdx1, predIdx2, argIdx2)
         );
-        long time_updated_nano = System.nanoTime();
-        monitor.updateHandlerTimeNano += time_updated_nano - time_valid_checked_nano;
-        if (UpdateStatus.NORMAL != status) {
-            return status;
-        }
-
-        /* 更新Eval */
-        this.eval = calculateEval();
-        long time_evaluated_nano = System.nanoTime();
-        monitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
-        return UpdateStatus.NORMAL;
+        final Predicate new_predicate = structure.get(structure.size() - 1);
+        pendingHandler = () -> boundFreeVars2NewVarHandler(new_predicate, argIdx1, predIdx2, argIdx2);
+        return status;
     }
 
     protected RuleFingerPrint boundFreeVars2NewVarUpdateStructure(
             final String functor, final int arity, final int argIdx1, final int predIdx2, final int argIdx2
     ) {
+        copyStructureOnWrite();
         final Predicate target_predicate1 = new Predicate(functor, arity);
         structure.add(target_predicate1);
         final Predicate target_predicate2 = structure.get(predIdx2);
@@ -456,7 +667,8 @@ public abstract class Rule {
         boundedVars.add(new_var);
         boundedVarCnts.add(2);
         equivConds++;
-        return new RuleFingerPrint(structure);
+        return (null != precheckedFingerPrint) ? precheckedFingerPrint :
+                fingerPrint.deriveBoundFreeVars2NewVar(structure, functor, arity, argIdx1, predIdx2, argIdx2, new_var.id);
     }
 
     protected UpdateStatus boundFreeVars2NewVarHandler(
@@ -474,50 +686,29 @@ public abstract class Rule {
      * @return 绑定合理且新规则未曾计算过，返回true；否则返回false
      */
     public UpdateStatus boundFreeVar2Constant(final int predIdx, final int argIdx, final String constantSymbol) {
-        /* 改变Rule结构 */
-        long time_start_nano = System.nanoTime();
-        fingerPrint = boundFreeVar2ConstantUpdateStructure(predIdx, argIdx, constantSymbol);
-        long time_fp_updated_nano = System.nanoTime();
-        monitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
-
-        /* 检查是否命中Cache */
-        boolean cache_hit = !searchedFingerprints.add(fingerPrint);
-        long time_cache_checked_nano = System.nanoTime();
-        monitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
-        if (cache_hit) {
-            return UpdateStatus.DUPLICATED;
-        }
-
-        /* 检查合法性 */
-        boolean invalid = isInvalid();
-        long time_valid_checked_nano = System.nanoTime();
-        monitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
-        if (invalid) {
-            return UpdateStatus.INVALID;
-        }
-
-        /* 执行handler */
-        final UpdateStatus status = boundFreeVar2ConstantHandler(predIdx, argIdx, constantSymbol);
-        long time_updated_nano = System.nanoTime();
-        monitor.updateHandlerTimeNano += time_updated_nano - time_valid_checked_nano;
-        if (UpdateStatus.NORMAL != status) {
-            return status;
-        }
+        final UpdateStatus status = prepareBoundFreeVar2Constant(predIdx, argIdx, constantSymbol);
+        return (UpdateStatus.NORMAL == status) ? evaluate() : status;
+    }
 
-        /* 更新Eval */
-        this.eval = calculateEval();
-        long time_evaluated_nano = System.nanoTime();
-        monitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
-        return UpdateStatus.NORMAL;
+    /**
+     * boundFreeVar2Constant的第一阶段：修改结构并检查剪枝条件，Cache的更新和评估推迟到evaluate()
+     */
+    public UpdateStatus prepareBoundFreeVar2Constant(
+            final int predIdx, final int argIdx, final String constantSymbol
+    ) {
+        pendingHandler = () -> boundFreeVar2ConstantHandler(predIdx, argIdx, constantSymbol);
+        return prepare(() -> boundFreeVar2ConstantUpdateStructure(predIdx, argIdx, constantSymbol));
     }
 
     protected RuleFingerPrint boundFreeVar2ConstantUpdateStructure(
             final int predIdx, final int argIdx, final String constantSymbol
     ) {
+        copyStructureOnWrite();
         final Predicate predicate = structure.get(predIdx);
         predicate.args[argIdx] = new Constant(CONSTANT_ARG_ID, constantSymbol);
         equivConds++;
-        return new RuleFingerPrint(structure);
+        return (null != precheckedFingerPrint) ? precheckedFingerPrint :
+                fingerPrint.deriveBoundFreeVar2Constant(structure, predIdx, argIdx, constantSymbol);
     }
 
     protected UpdateStatus boundFreeVar2ConstantHandler(final int predIdx, final int argIdx, final String constantSymbol) {
@@ -528,43 +719,13 @@ public abstract class Rule {
     }
 
     public UpdateStatus removeBoundedArg(final int predIdx, final int argIdx) {
-        long time_start_nano = System.nanoTime();
-        fingerPrint = removeBoundedArgUpdateStructure(predIdx, argIdx);
-        long time_fp_updated_nano = System.nanoTime();
-        monitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
-
-        /* 检查是否命中Cache */
-        boolean cache_hit = !searchedFingerprints.add(fingerPrint);
-        long time_cache_checked_nano = System.nanoTime();
-        monitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
-        if (cache_hit) {
-            return UpdateStatus.DUPLICATED;
-        }
-
-        /* 检查合法性 */
-        boolean invalid = isInvalid();
-        long time_valid_checked_nano = System.nanoTime();
-        monitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
-        if (invalid) {
-            return UpdateStatus.INVALID;
-        }
-
-        /* 执行handler */
-        final UpdateStatus status = removeBoundedArgHandler(predIdx, argIdx);
-        long time_updated_nano = System.nanoTime();
-        monitor.updateHandlerTimeNano += time_updated_nano - time_valid_checked_nano;
-        if (UpdateStatus.NORMAL != status) {
-            return status;
-        }
-
-        /* 更新Eval */
-        this.eval = calculateEval();
-        long time_evaluated_nano = System.nanoTime();
-        monitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
-        return UpdateStatus.NORMAL;
+        pendingHandler = () -> removeBoundedArgHandler(predIdx, argIdx);
+        final UpdateStatus status = prepare(() -> removeBoundedArgUpdateStructure(predIdx, argIdx));
+        return (UpdateStatus.NORMAL == status) ? evaluate() : status;
     }
 
     protected RuleFingerPrint removeBoundedArgUpdateStructure(final int predIdx, final int argIdx) {
+        copyStructureOnWrite();
         final Predicate predicate = structure.get(predIdx);
         final Argument argument = predicate.args[argIdx];
         predicate.args[argIdx] = null;
@@ -625,7 +786,7 @@ public abstract class Rule {
                 itr.remove();
             }
         }
-        return new RuleFingerPrint(structure);
+        return (null != precheckedFingerPrint) ? precheckedFingerPrint : new RuleFingerPrint(structure);
     }
 
     protected UpdateStatus removeBoundedArgHandler(final int predIdx, final int argIdx) {
@@ -642,6 +803,13 @@ public abstract class Rule {
      */
     protected abstract Eval calculateEval();
 
+    /**
+     * @return 不采样的Eval，默认与calculateEval相同
+     */
+    protected Eval calculateExactEval() {
+        return calculateEval();
+    }
+
     public RuleFingerPrint getFingerPrint() {
         return fingerPrint;
     }
@@ -5,7 +5,12 @@ import sinc.util.MultiSet;
 import java.util.*;
 
 /**
- * Todo: 当前的fingerprint会有误判，使得本来不同的rule判定为相同，例如：
+ * Rule的fingerprint由两部分组成：
+ *
+ *   1. 等价类：head中每个参数所在的等价类以及body中其他的等价类，用于hash以及判断特化关系(predecessorOf)；
+ *   2. 规范编码(CanonicalRuleKey)：用于精确判断两个rule是否相同。
+ *
+ * 只用等价类判断相同会有误判，使得本来不同的rule判定为相同，例如：
  *
  *   1. p(X,Y) :- f(X,X), f(?,Y)
  *   2. p(X,Y) :- f(X,Y), f(?,X)
@@ -13,13 +18,31 @@ import java.util.*;
  *   3. p(X,Y) :- f(X,?), f(Z,Y), f(?,Z)
  *   4. p(X,Y) :- f(X,Z), f(?,Y), f(Z,?)
  *
- * 上面两组rule在当前Fingerprint框架下会被判定为相同，但是这种情况比较特殊，只会在rule中出现多个相同functor的predicate时出现
+ * 这种情况只会在rule中出现多个相同functor的predicate时出现，因此equals()在hash相同时再比较规范编码。同构的rule等价类一定相同，
+ * 所以hash仍然可以只由等价类决定。
+ *
+ * Fingerprint中的等价类被视为不可修改的对象，extension之后的fingerprint可以由原来的fingerprint增量推导(见derive开头的方法)，
+ * 只复制被修改的部分。每个fingerprint都带有一个预先计算好的64位hash：
+ *   hash = mix(head functor) + Σ mix(head等价类的hash + 位置) + Σ mix(body等价类的hash + OTHER_SALT)
+ *   等价类的hash = Σ mix(参数位置或常量)
+ * 其中求和与顺序无关，所以修改一个等价类时只需要减去旧的项再加上新的项。
+ *
+ * 规范编码没有增量推导，只在equals()遇到hash相同的fingerprint时根据rule计算。rule就是构造时的结构，Rule在原地修改已经被
+ * fingerprint引用的结构之前会先复制，因此这里不需要保存结构的副本。
  */
 public class RuleFingerPrint {
+    private static final long HEAD_SALT = 0x9E3779B97F4A7C15L;
+    private static final long OTHER_SALT = 0xC2B2AE3D27D4EB4FL;
+
     private final String headFunctor;
     private final MultiSet<ArgIndicator>[] headEquivClasses;
     /* 'otherEquivClasses'可以不必是Multiset，可以用Set代替，因为Extension操作中不会引入Independent Fragment */
     private final MultiSet<MultiSet<ArgIndicator>> otherEquivClasses;
+    /* 变量编号到其等价类的映射(与headEquivClasses和otherEquivClasses中是同一个对象)，用于增量推导 */
+    private final MultiSet<ArgIndicator>[] varEquivClasses;
+    private final long hash;
+    /* 规范编码只在hash相同时才需要，因此按需计算 */
+    private CanonicalRuleKey canonicalKey = null;
 
     public final List<Predicate> rule;
 
@@ -99,6 +122,260 @@ public class RuleFingerPrint {
         for (int id : body_bv_ids) {
             otherEquivClasses.add(bounded_equiv_classes.get(id));
         }
+
+        int max_var_id = -1;
+        for (int id: bounded_equiv_classes.keySet()) {
+            max_var_id = Math.max(max_var_id, id);
+        }
+        varEquivClasses = new MultiSet[max_var_id + 1];
+        for (Map.Entry<Integer, MultiSet<ArgIndicator>> entry: bounded_equiv_classes.entrySet()) {
+            varEquivClasses[entry.getKey()] = entry.getValue();
+        }
+
+        long hash = mix(headFunctor.hashCode());
+        for (int arg_idx = 0; arg_idx < headEquivClasses.length; arg_idx++) {
+            hash += headTerm(arg_idx, headEquivClasses[arg_idx]);
+        }
+        for (MultiSet<ArgIndicator> equiv_class: otherEquivClasses.distinctValues()) {
+            hash += otherTerm(equiv_class) * otherEquivClasses.itemCount(equiv_class);
+        }
+        this.hash = hash;
+    }
+
+    private RuleFingerPrint(
+            List<Predicate> rule, String headFunctor, MultiSet<ArgIndicator>[] headEquivClasses,
+            MultiSet<MultiSet<ArgIndicator>> otherEquivClasses, MultiSet<ArgIndicator>[] varEquivClasses, long hash
+    ) {
+        this.rule = rule;
+        this.headFunctor = headFunctor;
+        this.headEquivClasses = headEquivClasses;
+        this.otherEquivClasses = otherEquivClasses;
+        this.varEquivClasses = varEquivClasses;
+        this.hash = hash;
+    }
+
+    /**
+     * 增量推导：(predIdx, argIdx)处的FV绑定为已有的变量varId
+     *
+     * @param rule 修改之后的结构
+     */
+    public RuleFingerPrint deriveBoundFreeVar2ExistingVar(List<Predicate> rule, int predIdx, int argIdx, int varId) {
+        final Derivation derivation = new Derivation(rule);
+        final VarIndicator indicator = new VarIndicator(rule.get(predIdx).functor, argIdx);
+        if (Rule.HEAD_PRED_IDX != predIdx) {
+            derivation.removeOther(singleton(indicator));
+        }
+        derivation.extendVar(varId, indicator, Rule.HEAD_PRED_IDX == predIdx ? argIdx : -1);
+        return derivation.build();
+    }
+
+    /**
+     * 增量推导：添加新的predicate(位于结构的最后)，并将其中argIdx处的FV绑定为已有的变量varId
+     */
+    public RuleFingerPrint deriveBoundFreeVar2ExistingVar(
+            List<Predicate> rule, String functor, int arity, int argIdx, int varId
+    ) {
+        final Derivation derivation = new Derivation(rule);
+        derivation.addFreeVars(functor, arity, argIdx);
+        derivation.extendVar(varId, new VarIndicator(functor, argIdx), -1);
+        return derivation.build();
+    }
+
+    /**
+     * 增量推导：两个FV绑定为同一个新的变量varId
+     */
+    public RuleFingerPrint deriveBoundFreeVars2NewVar(
+            List<Predicate> rule, int predIdx1, int argIdx1, int predIdx2, int argIdx2, int varId
+    ) {
+        final Derivation derivation = new Derivation(rule);
+        final VarIndicator indicator1 = new VarIndicator(rule.get(predIdx1).functor, argIdx1);
+        final VarIndicator indicator2 = new VarIndicator(rule.get(predIdx2).functor, argIdx2);
+        final MultiSet<ArgIndicator> equiv_class = new MultiSet<>();
+        equiv_class.add(indicator1);
+        equiv_class.add(indicator2);
+        derivation.newVar(varId, equiv_class, predIdx1, argIdx1, predIdx2, argIdx2);
+        return derivation.build();
+    }
+
+    /**
+     * 增量推导：添加新的predicate(位于结构的最后)，其中argIdx1处的FV与(predIdx2, argIdx2)处的FV绑定为同一个新的变量varId
+     */
+    public RuleFingerPrint deriveBoundFreeVars2NewVar(
+            List<Predicate> rule, String functor, int arity, int argIdx1, int predIdx2, int argIdx2, int varId
+    ) {
+        final Derivation derivation = new Derivation(rule);
+        derivation.addFreeVars(functor, arity, argIdx1);
+        final MultiSet<ArgIndicator> equiv_class = new MultiSet<>();
+        equiv_class.add(new VarIndicator(functor, argIdx1));
+        equiv_class.add(new VarIndicator(rule.get(predIdx2).functor, argIdx2));
+        derivation.newVar(varId, equiv_class, -1, argIdx1, predIdx2, argIdx2);
+        return derivation.build();
+    }
+
+    /**
+     * 增量推导：(predIdx, argIdx)处的FV绑定为常量
+     */
+    public RuleFingerPrint deriveBoundFreeVar2Constant(List<Predicate> rule, int predIdx, int argIdx, String constantSymbol) {
+        final Derivation derivation = new Derivation(rule);
+        final VarIndicator indicator = new VarIndicator(rule.get(predIdx).functor, argIdx);
+        final MultiSet<ArgIndicator> equiv_class = new MultiSet<>();
+        equiv_class.add(indicator);
+        equiv_class.add(new ConstIndicator(constantSymbol));
+        if (Rule.HEAD_PRED_IDX == predIdx) {
+            derivation.setHead(argIdx, equiv_class);
+        } else {
+            derivation.removeOther(singleton(indicator));
+            derivation.addOther(equiv_class);
+        }
+        return derivation.build();
+    }
+
+    /**
+     * 从当前fingerprint推导新的fingerprint。各部分在第一次修改时才复制(copy on write)，原fingerprint不会被修改
+     */
+    private class Derivation {
+        final List<Predicate> rule;
+        MultiSet<ArgIndicator>[] heads = headEquivClasses;
+        MultiSet<MultiSet<ArgIndicator>> others = otherEquivClasses;
+        MultiSet<ArgIndicator>[] vars = varEquivClasses;
+        long hash = RuleFingerPrint.this.hash;
+
+        Derivation(List<Predicate> rule) {
+            this.rule = rule;
+        }
+
+        void setHead(int argIdx, MultiSet<ArgIndicator> equivClass) {
+            if (heads == headEquivClasses) {
+                heads = headEquivClasses.clone();
+            }
+            hash += headTerm(argIdx, equivClass) - headTerm(argIdx, heads[argIdx]);
+            heads[argIdx] = equivClass;
+        }
+
+        void addOther(MultiSet<ArgIndicator> equivClass) {
+            if (others == otherEquivClasses) {
+                others = new MultiSet<>(otherEquivClasses);
+            }
+            others.add(equivClass);
+            hash += otherTerm(equivClass);
+        }
+
+        void removeOther(MultiSet<ArgIndicator> equivClass) {
+            if (others == otherEquivClasses) {
+                others = new MultiSet<>(otherEquivClasses);
+            }
+            others.remove(equivClass);
+            hash -= otherTerm(equivClass);
+        }
+
+        void setVar(int varId, MultiSet<ArgIndicator> equivClass) {
+            if (vars == varEquivClasses || varId >= vars.length) {
+                vars = Arrays.copyOf(vars, Math.max(vars.length, varId + 1));
+            }
+            vars[varId] = equivClass;
+        }
+
+        /**
+         * 在新predicate(body)中，除了boundArgIdx以外的参数都是FV
+         */
+        void addFreeVars(String functor, int arity, int boundArgIdx) {
+            for (int arg_idx = 0; arg_idx < arity; arg_idx++) {
+                if (boundArgIdx != arg_idx) {
+                    addOther(singleton(new VarIndicator(functor, arg_idx)));
+                }
+            }
+        }
+
+        /**
+         * 向变量的等价类中加入一个参数位置
+         *
+         * @param headArgIdx 新位置在head中时为其参数位置，否则为-1
+         */
+        void extendVar(int varId, ArgIndicator indicator, int headArgIdx) {
+            final MultiSet<ArgIndicator> old_class = vars[varId];
+            final MultiSet<ArgIndicator> new_class = new MultiSet<>(old_class);
+            new_class.add(indicator);
+            boolean in_head = false;
+            for (int arg_idx = 0; arg_idx < heads.length; arg_idx++) {
+                if (old_class == heads[arg_idx]) {
+                    setHead(arg_idx, new_class);
+                    in_head = true;
+                }
+            }
+            if (0 <= headArgIdx) {
+                setHead(headArgIdx, new_class);
+            }
+            if (!in_head) {
+                /* 原来的等价类只出现在body中 */
+                removeOther(old_class);
+                if (0 > headArgIdx) {
+                    addOther(new_class);
+                }
+            }
+            setVar(varId, new_class);
+        }
+
+        /**
+         * 两个FV组成新变量的等价类。predIdx为-1表示新添加的predicate，原来没有对应的FV
+         */
+        void newVar(
+                int varId, MultiSet<ArgIndicator> equivClass, int predIdx1, int argIdx1, int predIdx2, int argIdx2
+        ) {
+            boolean in_head = false;
+            final int[][] positions = new int[][]{{predIdx1, argIdx1}, {predIdx2, argIdx2}};
+            for (int[] position: positions) {
+                if (Rule.HEAD_PRED_IDX == position[0]) {
+                    setHead(position[1], equivClass);
+                    in_head = true;
+                } else if (0 < position[0]) {
+                    removeOther(singleton(new VarIndicator(rule.get(position[0]).functor, position[1])));
+                }
+            }
+            if (!in_head) {
+                addOther(equivClass);
+            }
+            setVar(varId, equivClass);
+        }
+
+        RuleFingerPrint build() {
+            return new RuleFingerPrint(rule, headFunctor, heads, others, vars, hash);
+        }
+    }
+
+    private static MultiSet<ArgIndicator> singleton(ArgIndicator indicator) {
+        final MultiSet<ArgIndicator> equiv_class = new MultiSet<>();
+        equiv_class.add(indicator);
+        return equiv_class;
+    }
+
+    /**
+     * SplitMix64的混合函数
+     */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
+    private static long indicatorHash(ArgIndicator indicator) {
+        final long type = (indicator instanceof ConstIndicator) ? OTHER_SALT : HEAD_SALT;
+        return mix(((long) indicator.functor.hashCode() << 32) ^ (indicator.idx * type));
+    }
+
+    private static long classHash(MultiSet<ArgIndicator> equivClass) {
+        long hash = 0;
+        for (ArgIndicator indicator: equivClass.distinctValues()) {
+            hash += indicatorHash(indicator) * equivClass.itemCount(indicator);
+        }
+        return hash;
+    }
+
+    private static long headTerm(int argIdx, MultiSet<ArgIndicator> equivClass) {
+        return mix(classHash(equivClass) + HEAD_SALT * (argIdx + 1));
+    }
+
+    private static long otherTerm(MultiSet<ArgIndicator> equivClass) {
+        return mix(classHash(equivClass) + OTHER_SALT);
     }
 
     public String getHeadFunctor() {
@@ -113,6 +390,20 @@ public class RuleFingerPrint {
         return otherEquivClasses;
     }
 
+    public long longHashCode() {
+        return hash;
+    }
+
+    public CanonicalRuleKey getCanonicalKey() {
+        /* 重复计算的结果相同，不需要同步 */
+        CanonicalRuleKey key = canonicalKey;
+        if (null == key) {
+            key = CanonicalRuleKey.of(rule);
+            canonicalKey = key;
+        }
+        return key;
+    }
+
     public boolean predecessorOf(RuleFingerPrint another) {
         final Set<MultiSet<ArgIndicator>> this_eqv_classes = new HashSet<>(Arrays.asList(headEquivClasses));
         this_eqv_classes.addAll(otherEquivClasses.distinctValues());
@@ -138,15 +429,12 @@ public class RuleFingerPrint {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         RuleFingerPrint that = (RuleFingerPrint) o;
-        return Objects.equals(headFunctor, that.headFunctor) &&
-                Arrays.equals(headEquivClasses, that.headEquivClasses) &&
-                Objects.equals(otherEquivClasses, that.otherEquivClasses);
+        /* 64位hash不同的fingerprint一定不同，hash相同时再比较规范编码 */
+        return hash == that.hash && getCanonicalKey().equals(that.getCanonicalKey());
     }
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(headFunctor, otherEquivClasses);
-        result = 31 * result + Arrays.hashCode(headEquivClasses);
-        return result;
+        return (int) (hash ^ (hash >>> 32));
     }
 }
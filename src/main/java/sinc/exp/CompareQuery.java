@@ -1,5 +1,6 @@
 package sinc.exp;
 
+import sinc.BinaryResult;
 import sinc.SincRecovery;
 import sinc.common.*;
 import sinc.impl.cached.MemKB;
@@ -77,6 +78,11 @@ public class CompareQuery {
 
     protected static SincRecovery loadMinimizedDB(String filePath) {
         try {
+            /* 格式由文件名决定，不根据哪个文件存在来猜测 */
+            if (filePath.endsWith(BinaryResult.FILE_EXTENSION)) {
+                return SincRecovery.loadBinaryResult(filePath);
+            }
+
             List<Rule> hypothesis = new ArrayList<>();
             Set<Predicate> necessary_facts = new HashSet<>();
             Set<Predicate> counterexamples = new HashSet<>();
@@ -59,9 +59,11 @@ public class CachedQueryMonitor {
         );
 
         writer.println("--- Cache Entry Statistics ---");
-        CacheStat max_head = cacheStats.get(0);
-        CacheStat max_body = cacheStats.get(0);
-        CacheStat max_cart_opt = cacheStats.get(0);
+        /* 时间预算在评估任何rule之前就用完时，没有统计数据 */
+        final CacheStat first_stat = cacheStats.isEmpty() ? new CacheStat(0, 0, 0) : cacheStats.get(0);
+        CacheStat max_head = first_stat;
+        CacheStat max_body = first_stat;
+        CacheStat max_cart_opt = first_stat;
         int[] head_entries = new int[cacheStats.size()];
         int[] body_entries = new int[cacheStats.size()];
         int[] cartesian_operations = new int[cacheStats.size()];
@@ -43,4 +43,10 @@ public abstract class CachedRule extends Rule  {
         /* 这里也是什么都不做 */
         return UpdateStatus.INVALID;
     }
+
+    @Override
+    public final UpdateStatus precheckRemoveBoundedArg(int predIdx, int argIdx) {
+        /* 与removeBoundedArg一致，不修改结构，也不记录fingerprint */
+        return UpdateStatus.INVALID;
+    }
 }
@@ -3,7 +3,6 @@ package sinc.impl.cached;
 import sinc.SInC;
 import sinc.SincConfig;
 import sinc.common.*;
-import sinc.impl.cached.recal.RecalculateCachedRule;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
@@ -14,48 +13,56 @@ import java.util.Set;
 
 public abstract class CachedSinc extends SInC {
 
-    protected final MemKB kb = new MemKB();
+    protected final MemKB kb = createKb();
     protected final CachedQueryMonitor cacheMonitor = new CachedQueryMonitor();
 
     public CachedSinc(SincConfig config, String kbPath, String dumpPath, String logPath) {
         super(
-                new SincConfig(
-                        config.threads,
-                        config.validation,
-                        config.debug,
-                        config.beamWidth,
-                        false,  // Rule Cache 的优化方案不支持向前搜索
-                        config.evalMetric,
-                        config.minFactCoverage,
-                        config.minConstantCoverage,
-                        config.minColumnSimilarity,
-                        config.stopCompressionRate,
-                        true,
-                        -1.0,
-                        false,
-                        false
-                ),
+                new SincConfig.Builder(config)
+                        .searchOrigins(false)  // Rule Cache 的优化方案不支持向前搜索
+                        .ruleCache(true)
+                        .kbBlocking(false)
+                        .build(),
                 kbPath,
                 dumpPath,
                 logPath
         );
     }
 
+    /**
+     * @return 传给rule的采样比例，不开启估计时为-1.0
+     */
+    protected double sampleRate() {
+        return config.estimation ? config.sampling : -1.0;
+    }
+
+    /**
+     * 默认使用MemKB。开启encodedKb或joinEvaluation时使用字典编码的KB，所有facts共享functor与constant对象
+     */
+    protected MemKB createKb() {
+        return (config.encodedKb || config.joinEvaluation) ? new EncodedMemKB() : new MemKB();
+    }
+
     @Override
     protected KbStatistics loadKb() {
         try {
-            BufferedReader reader = new BufferedReader(new FileReader(kbPath));
-            String line;
-            while (null != (line = reader.readLine())) {
-                final String[] components = line.split("\t");
-                final Predicate predicate = new Predicate(components[0], components.length - 1);
-                for (int i = 1; i < components.length; i++) {
-                    predicate.args[i - 1] = new Constant(CONST_ID, components[i]);
+            if (kb instanceof EncodedMemKB) {
+                /* 字典编码的KB直接在文件的内存映射上分词并加载 */
+                MappedKbLoader.load((EncodedMemKB) kb, kbPath, config.threads);
+            } else {
+                BufferedReader reader = new BufferedReader(new FileReader(kbPath));
+                String line;
+                while (null != (line = reader.readLine())) {
+                    final String[] components = line.split("\t");
+                    final Predicate predicate = new Predicate(components[0], components.length - 1);
+                    for (int i = 1; i < components.length; i++) {
+                        predicate.args[i - 1] = new Constant(CONST_ID, components[i]);
+                    }
+                    kb.addFact(predicate);
                 }
-                kb.addFact(predicate);
             }
             kb.calculatePromisingConstants(config.minConstantCoverage);
-            kb.calculateSimilarColumnPairs(config.minColumnSimilarity);
+            kb.calculateSimilarColumnPairs(config.minColumnSimilarity, config.sketchColumnSimilarity);
 
             return new KbStatistics(
                     kb.totalFacts(),
@@ -105,23 +112,25 @@ public abstract class CachedSinc extends SInC {
     @Override
     protected void recordRuleStatus(Rule rule, Rule.UpdateStatus updateStatus) {
         CachedRule r = (CachedRule) rule;
-        cacheMonitor.totalClones++;
-        cacheMonitor.cloneCostInNano += r.cacheMonitor.cloneCostInNano;
+        synchronized (cacheMonitor) {
+            cacheMonitor.totalClones++;
+            cacheMonitor.cloneCostInNano += r.cacheMonitor.cloneCostInNano;
 
-        /* 下列参数只在正常Update的Rule中记录 */
-        if (Rule.UpdateStatus.NORMAL != updateStatus) {
-            return;
+            /* 下列参数只在正常Update的Rule中记录 */
+            if (Rule.UpdateStatus.NORMAL != updateStatus) {
+                return;
+            }
+            cacheMonitor.preComputingCostInNano += r.cacheMonitor.preComputingCostInNano;
+            cacheMonitor.allEntailQueryCostInNano += r.cacheMonitor.allEntailQueryCostInNano;
+            cacheMonitor.posEntailQueryCostInNano += r.cacheMonitor.posEntailQueryCostInNano;
+            cacheMonitor.boundExistVarCostInNano += r.cacheMonitor.boundExistVarCostInNano;
+            cacheMonitor.boundExistVarInNewPredCostInNano += r.cacheMonitor.boundExistVarInNewPredCostInNano;
+            cacheMonitor.boundNewVarCostInNano += r.cacheMonitor.boundNewVarCostInNano;
+            cacheMonitor.boundNewVarInNewPredCostInNano += r.cacheMonitor.boundNewVarInNewPredCostInNano;
+            cacheMonitor.boundConstCostInNano += r.cacheMonitor.boundConstCostInNano;
+            cacheMonitor.cacheStats.addAll(r.cacheMonitor.cacheStats);
+            cacheMonitor.evalStats.addAll(r.cacheMonitor.evalStats);
         }
-        cacheMonitor.preComputingCostInNano += r.cacheMonitor.preComputingCostInNano;
-        cacheMonitor.allEntailQueryCostInNano += r.cacheMonitor.allEntailQueryCostInNano;
-        cacheMonitor.posEntailQueryCostInNano += r.cacheMonitor.posEntailQueryCostInNano;
-        cacheMonitor.boundExistVarCostInNano += r.cacheMonitor.boundExistVarCostInNano;
-        cacheMonitor.boundExistVarInNewPredCostInNano += r.cacheMonitor.boundExistVarInNewPredCostInNano;
-        cacheMonitor.boundNewVarCostInNano += r.cacheMonitor.boundNewVarCostInNano;
-        cacheMonitor.boundNewVarInNewPredCostInNano += r.cacheMonitor.boundNewVarInNewPredCostInNano;
-        cacheMonitor.boundConstCostInNano += r.cacheMonitor.boundConstCostInNano;
-        cacheMonitor.cacheStats.addAll(r.cacheMonitor.cacheStats);
-        cacheMonitor.evalStats.addAll(r.cacheMonitor.evalStats);
     }
 
     @Override
@@ -130,6 +139,18 @@ public abstract class CachedSinc extends SInC {
         return forward_cached_rule.updateInKb();
     }
 
+    @Override
+    protected Set<Predicate> getProvedFacts() {
+        return kb.getProvedFacts();
+    }
+
+    @Override
+    protected void restoreProvedFacts(Set<Predicate> provedFacts) {
+        for (Predicate fact: provedFacts) {
+            kb.proveFact(fact);
+        }
+    }
+
     @Override
     protected void showMonitor() {
         super.showMonitor();
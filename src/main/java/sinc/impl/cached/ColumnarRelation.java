@@ -0,0 +1,361 @@
+package sinc.impl.cached;
+
+import sinc.common.Constant;
+import sinc.common.Predicate;
+import sinc.util.NumerationMap;
+
+import java.util.*;
+
+/**
+ * 按列存储的relation：每个参数一列int编码，以及每一列按值排序之后的行号排列。
+ *
+ * 某一列上等于某个值的所有行在排列中是连续的一段，因此按参数值查找只需二分，并且可以直接以Set<Predicate>视图的形式
+ * 交给cached rule使用，而不需要为每个值建立HashSet。所有视图都是只读的，其中的Predicate在被访问时才从列中解码，
+ * 判断是否包含某个fact也直接在列上查找。
+ */
+public class ColumnarRelation {
+
+    protected final String functor;
+    protected final int arity;
+    protected final int rows;
+    protected final int[][] columns;  // columns[col][row]，只使用前rows个位置
+    protected final int[][] sortedRows;  // sortedRows[col]: 按该列的值排序之后的行号
+    protected final int[] distinctValues;
+    protected final NumerationMap numerationMap;
+    protected final List<Constant> num2Constant;  // 下标为constant的编号，解码的facts共享其中的Constant对象
+
+    /**
+     * @param columns 各列的编码，只读取前rows个位置，之后不能再修改
+     */
+    public ColumnarRelation(
+            String functor, int arity, int rows, int[][] columns, NumerationMap numerationMap,
+            List<Constant> num2Constant
+    ) {
+        this.functor = functor;
+        this.arity = arity;
+        this.rows = rows;
+        this.columns = columns;
+        this.numerationMap = numerationMap;
+        this.num2Constant = num2Constant;
+
+        /* 编号与行号都不是负数，把(值, 行号)拼成一个long之后排序，不需要装箱 */
+        this.sortedRows = new int[arity][];
+        this.distinctValues = new int[arity];
+        final long[] keys = new long[rows];
+        for (int col = 0; col < arity; col++) {
+            final int[] column = columns[col];
+            for (int row = 0; row < rows; row++) {
+                keys[row] = (((long) column[row]) << Integer.SIZE) | row;
+            }
+            Arrays.sort(keys);
+            final int[] sorted_rows = new int[rows];
+            int distinct_values = 0;
+            for (int i = 0; i < rows; i++) {
+                sorted_rows[i] = (int) keys[i];
+                if (0 == i || (keys[i - 1] >>> Integer.SIZE) != (keys[i] >>> Integer.SIZE)) {
+                    distinct_values++;
+                }
+            }
+            sortedRows[col] = sorted_rows;
+            distinctValues[col] = distinct_values;
+        }
+    }
+
+    public String functor() {
+        return functor;
+    }
+
+    public int arity() {
+        return arity;
+    }
+
+    public int totalRows() {
+        return rows;
+    }
+
+    /**
+     * @return 从列中解码的fact
+     */
+    public Predicate fact(int row) {
+        final Predicate predicate = new Predicate(functor, arity);
+        for (int col = 0; col < arity; col++) {
+            predicate.args[col] = num2Constant.get(columns[col][row]);
+        }
+        return predicate;
+    }
+
+    public int value(int row, int col) {
+        return columns[col][row];
+    }
+
+    /**
+     * @return 按第col列排序之后的第idx行
+     */
+    public int sortedRow(int col, int idx) {
+        return sortedRows[col][idx];
+    }
+
+    public int distinctValues(int col) {
+        return distinctValues[col];
+    }
+
+    /**
+     * @return sortedRows[col]中第一个值不小于value的位置
+     */
+    public int lowerBound(int col, int value) {
+        final int[] column = columns[col];
+        final int[] sorted_rows = sortedRows[col];
+        int low = 0;
+        int high = sorted_rows.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (column[sorted_rows[mid]] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return sortedRows[col]中第一个值大于value的位置
+     */
+    public int upperBound(int col, int value) {
+        final int[] column = columns[col];
+        final int[] sorted_rows = sortedRows[col];
+        int low = 0;
+        int high = sorted_rows.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (column[sorted_rows[mid]] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public int count(int col, int value) {
+        return upperBound(col, value) - lowerBound(col, value);
+    }
+
+    /**
+     * @return 与fact相同的行号，不存在时返回-1
+     */
+    public int findRow(Object o) {
+        final int idx = find(o, 0, 0, rows);
+        if (0 > idx) {
+            return -1;
+        }
+        return (0 == arity) ? idx : sortedRows[0][idx];
+    }
+
+    public Set<Predicate> allFacts() {
+        return new AllFactsView();
+    }
+
+    /**
+     * @return 第col列等于value的facts，如果没有则返回null
+     */
+    public Set<Predicate> factsWithValue(int col, int value) {
+        final int start = lowerBound(col, value);
+        final int end = upperBound(col, value);
+        return (start < end) ? new RangeView(col, start, end) : null;
+    }
+
+    /**
+     * @return 与MemKB中参数索引相同的只读Map视图：key为常量，value为该列等于此常量的facts
+     */
+    public Map<String, Set<Predicate>> argIndices(int col) {
+        return new ArgIndexView(col);
+    }
+
+    /**
+     * @return 与fact相同的行在sortedRows[col]中[start, end)区间内的位置，不存在时返回-1
+     */
+    protected int find(Object o, int col, int start, int end) {
+        if (!(o instanceof Predicate)) {
+            return -1;
+        }
+        final Predicate predicate = (Predicate) o;
+        if (!functor.equals(predicate.functor) || arity != predicate.arity()) {
+            return -1;
+        }
+        final int[] row_values = new int[arity];
+        for (int i = 0; i < arity; i++) {
+            if (null == predicate.args[i] || predicate.args[i].isVar) {
+                return -1;
+            }
+            row_values[i] = numerationMap.name2Num(predicate.args[i].name);
+            if (NumerationMap.NULL_NUM == row_values[i]) {
+                return -1;
+            }
+        }
+        if (0 == arity) {
+            return (start < end) ? start : -1;
+        }
+
+        /* 先二分到第col列的值所在的一段，再逐行比较其他列 */
+        final int low = Math.max(start, lowerBound(col, row_values[col]));
+        final int high = Math.min(end, upperBound(col, row_values[col]));
+        final int[] sorted_rows = sortedRows[col];
+        for (int idx = low; idx < high; idx++) {
+            final int row = sorted_rows[idx];
+            boolean matched = true;
+            for (int i = 0; i < arity && matched; i++) {
+                matched = columns[i][row] == row_values[i];
+            }
+            if (matched) {
+                return idx;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * relation中的所有facts，按行号顺序遍历
+     */
+    protected class AllFactsView extends AbstractSet<Predicate> {
+        @Override
+        public Iterator<Predicate> iterator() {
+            return new Iterator<Predicate>() {
+                int row = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return row < rows;
+                }
+
+                @Override
+                public Predicate next() {
+                    if (row >= rows) {
+                        throw new NoSuchElementException();
+                    }
+                    return fact(row++);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return rows;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return 0 <= find(o, 0, 0, rows);
+        }
+    }
+
+    /**
+     * sortedRows[col]中[start, end)区间内的facts，这些facts在第col列上的值相同
+     */
+    protected class RangeView extends AbstractSet<Predicate> {
+        final int col;
+        final int start;
+        final int end;
+
+        RangeView(int col, int start, int end) {
+            this.col = col;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Iterator<Predicate> iterator() {
+            return new Iterator<Predicate>() {
+                int idx = start;
+
+                @Override
+                public boolean hasNext() {
+                    return idx < end;
+                }
+
+                @Override
+                public Predicate next() {
+                    if (idx >= end) {
+                        throw new NoSuchElementException();
+                    }
+                    return fact(sortedRows[col][idx++]);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return 0 <= find(o, col, start, end);
+        }
+    }
+
+    /**
+     * 一列的参数索引视图
+     */
+    protected class ArgIndexView extends AbstractMap<String, Set<Predicate>> {
+        final int col;
+
+        ArgIndexView(int col) {
+            this.col = col;
+        }
+
+        @Override
+        public Set<Predicate> get(Object key) {
+            if (!(key instanceof String)) {
+                return null;
+            }
+            final int num = numerationMap.name2Num((String) key);
+            return (NumerationMap.NULL_NUM == num) ? null : factsWithValue(col, num);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return null != get(key);
+        }
+
+        @Override
+        public int size() {
+            return distinctValues[col];
+        }
+
+        @Override
+        public Set<Entry<String, Set<Predicate>>> entrySet() {
+            return new AbstractSet<Entry<String, Set<Predicate>>>() {
+                @Override
+                public Iterator<Entry<String, Set<Predicate>>> iterator() {
+                    return new Iterator<Entry<String, Set<Predicate>>>() {
+                        int idx = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return idx < rows;
+                        }
+
+                        @Override
+                        public Entry<String, Set<Predicate>> next() {
+                            if (idx >= rows) {
+                                throw new NoSuchElementException();
+                            }
+                            final int value = columns[col][sortedRows[col][idx]];
+                            final int start = idx;
+                            idx = upperBound(col, value);
+                            return new SimpleImmutableEntry<>(
+                                    numerationMap.num2Name(value), new RangeView(col, start, idx)
+                            );
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return distinctValues[col];
+                }
+            };
+        }
+    }
+}
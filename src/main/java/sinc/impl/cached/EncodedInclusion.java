@@ -0,0 +1,174 @@
+package sinc.impl.cached;
+
+import sinc.common.Predicate;
+import sinc.util.NumerationMap;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * ColumnarRelation上的IndexedInclusion，只保存行号。
+ *
+ * 集合中的行号为rowArray[start, end)，按升序排列；rowArray为null时表示relation中的全部行。按参数值筛选时只比较
+ * 列中的int编码：全部行直接二分relation中sortedRows该值对应的一段，子集则在按列排序的行号上二分，这一排列按需建立
+ * 并在clone之间共享。筛选得到的子集引用排列中的一段，不需要复制行号，也不需要解码Predicate。只有遍历集合时才从列中
+ * 解码facts。
+ */
+public class EncodedInclusion extends IndexedInclusion {
+
+    protected final ColumnarRelation relation;
+    protected final int[] rowArray;
+    protected final int start;
+    protected final int end;
+    protected final AtomicReferenceArray<int[]> columnSortedRows;
+
+    /**
+     * relation中全部行组成的集合
+     */
+    public EncodedInclusion(ColumnarRelation relation) {
+        this(relation, null, 0, relation.totalRows());
+    }
+
+    /**
+     * @param rowArray [start, end)中的行号需要按升序排列，之后不能再修改
+     */
+    protected EncodedInclusion(ColumnarRelation relation, int[] rowArray, int start, int end) {
+        super(relation.arity());
+        this.relation = relation;
+        this.rowArray = rowArray;
+        this.start = start;
+        this.end = end;
+        this.columnSortedRows = new AtomicReferenceArray<>(relation.arity());
+    }
+
+    protected int row(int idx) {
+        return (null == rowArray) ? idx : rowArray[idx];
+    }
+
+    @Override
+    public IndexedInclusion select(int col, String constantSymbol) {
+        if (start == end) {
+            return EMPTY;
+        }
+        final int num = relation.numerationMap.name2Num(constantSymbol);
+        return (NumerationMap.NULL_NUM == num) ? EMPTY : select(col, num);
+    }
+
+    /**
+     * @return 第col列的编码为constantNum的子集，没有时返回EMPTY
+     */
+    public IndexedInclusion select(int col, int constantNum) {
+        final int[] sorted_rows = sortedRows(col);
+        final int[] column = relation.columns[col];
+        final int low = bound(column, sorted_rows, constantNum, false);
+        final int high = bound(column, sorted_rows, constantNum, true);
+        if (low == high) {
+            return EMPTY;
+        }
+        return (high - low == size()) ? this : new EncodedInclusion(relation, sorted_rows, low, high);
+    }
+
+    /**
+     * @return 按第col列的值排序之后的size()个行号，同一个值的行号仍然是升序的。全部行直接使用relation中的排列，
+     * 子集上按需建立并在clone之间共享
+     */
+    protected int[] sortedRows(int col) {
+        if (null == rowArray) {
+            return relation.sortedRows[col];
+        }
+        int[] sorted_rows = columnSortedRows.get(col);
+        if (null == sorted_rows) {
+            /* 编号与行号都不是负数，把(值, 行号)拼成一个long之后排序，不需要装箱 */
+            final int[] column = relation.columns[col];
+            final long[] keys = new long[end - start];
+            for (int idx = start; idx < end; idx++) {
+                final int row = rowArray[idx];
+                keys[idx - start] = (((long) column[row]) << Integer.SIZE) | row;
+            }
+            Arrays.sort(keys);
+            sorted_rows = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                sorted_rows[i] = (int) keys[i];
+            }
+            if (!columnSortedRows.compareAndSet(col, null, sorted_rows)) {
+                sorted_rows = columnSortedRows.get(col);
+            }
+        }
+        return sorted_rows;
+    }
+
+    /**
+     * @return sortedRows中第一个值不小于(upper为true时大于)value的位置
+     */
+    protected static int bound(int[] column, int[] sortedRows, int value, boolean upper) {
+        int low = 0;
+        int high = sortedRows.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            final int mid_value = column[sortedRows[mid]];
+            if (mid_value < value || (upper && mid_value == value)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    protected Map<String, IndexedInclusion> buildIndex(int col) {
+        final int[] sorted_rows = sortedRows(col);
+        final int[] column = relation.columns[col];
+        final int size = sorted_rows.length;
+        if (0 < size && column[sorted_rows[0]] == column[sorted_rows[size - 1]]) {
+            /* 所有facts在这一列上取值相同，子集就是自身 */
+            return Collections.singletonMap(relation.numerationMap.num2Name(column[sorted_rows[0]]), this);
+        }
+        final Map<String, IndexedInclusion> index = new HashMap<>();
+        int group_start = 0;
+        for (int idx = 1; idx <= size; idx++) {
+            if (idx == size || column[sorted_rows[idx]] != column[sorted_rows[group_start]]) {
+                index.put(
+                        relation.numerationMap.num2Name(column[sorted_rows[group_start]]),
+                        new EncodedInclusion(relation, sorted_rows, group_start, idx)
+                );
+                group_start = idx;
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public Iterator<Predicate> iterator() {
+        return new Iterator<Predicate>() {
+            int idx = start;
+
+            @Override
+            public boolean hasNext() {
+                return idx < end;
+            }
+
+            @Override
+            public Predicate next() {
+                if (idx >= end) {
+                    throw new NoSuchElementException();
+                }
+                return relation.fact(row(idx++));
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return end - start;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        final int row = relation.findRow(o);
+        if (0 > row) {
+            return false;
+        }
+        return null == rowArray || 0 <= Arrays.binarySearch(rowArray, start, end, row);
+    }
+}
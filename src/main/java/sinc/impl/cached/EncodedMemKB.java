@@ -0,0 +1,456 @@
+package sinc.impl.cached;
+
+import sinc.common.Argument;
+import sinc.common.Constant;
+import sinc.common.Predicate;
+import sinc.common.Rule;
+import sinc.impl.cached.join.AtomTrie;
+import sinc.util.ComparableArray;
+import sinc.util.MultiSet;
+import sinc.util.NumerationMap;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 对functor与constant做字典编码的MemKB。
+ *
+ * 加载时为每个constant分配连续的整数编号，每个relation只保存各列的int编码(EncodedRelation)，KB中不再保存任何
+ * Predicate对象，也不再有originalKB与每个参数取值的HashSet索引。去重、contains与已证明的facts都直接在int编码上完成，
+ * 需要Predicate时再从列中解码，解码得到的facts共享同一组functor字符串与Constant对象。
+ *
+ * getAllFacts与getArgIndices返回的都是ColumnarRelation上的只读视图，getIndexedFacts返回其上的EncodedInclusion。
+ * 列存储在第一次被访问时才建立，之后如果再有新的facts加入则重新建立。
+ *
+ * 对外的Predicate接口与MemKB完全一致，因此cached rules可以直接在其上运行。
+ */
+public class EncodedMemKB extends MemKB {
+
+    /**
+     * 一个relation的int编码。新的facts追加在各列的最后，因此行号不会改变；用开放寻址的行号表去重，已证明的facts
+     * 记录为行号上的bitmap。
+     *
+     * 一个functor的facts只会被以其为head的rule证明，而同一个head functor只由一个线程搜索并在commitLock中提交，
+     * 因此proved不需要额外的同步
+     */
+    protected static class EncodedRelation {
+        private static final int INITIAL_CAPACITY = 8;
+
+        final int arity;
+        int rows = 0;
+        int capacity = INITIAL_CAPACITY;
+        int[][] columns;  // columns[col][row]
+        int[] slots;  // 行号+1，0为空
+        int mask;
+        final BitSet proved = new BitSet();
+
+        EncodedRelation(int arity) {
+            this.arity = arity;
+            this.columns = new int[arity][INITIAL_CAPACITY];
+            this.slots = new int[INITIAL_CAPACITY * 2];
+            this.mask = slots.length - 1;
+        }
+
+        /**
+         * @return 与values相同的行，不存在时返回-1
+         */
+        int find(int[] values) {
+            int slot = hash(values) & mask;
+            while (0 != slots[slot]) {
+                final int row = slots[slot] - 1;
+                if (rowEquals(row, values)) {
+                    return row;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * @return 是否是新的一行
+         */
+        boolean add(int[] values) {
+            if (0 <= find(values)) {
+                return false;
+            }
+            if (rows == capacity) {
+                capacity *= 2;
+                for (int col = 0; col < arity; col++) {
+                    columns[col] = Arrays.copyOf(columns[col], capacity);
+                }
+            }
+            for (int col = 0; col < arity; col++) {
+                columns[col][rows] = values[col];
+            }
+            rows++;
+            if (rows * 2 > slots.length) {
+                slots = new int[slots.length * 2];
+                mask = slots.length - 1;
+                for (int row = 0; row < rows; row++) {
+                    insert(row);
+                }
+            } else {
+                insert(rows - 1);
+            }
+            return true;
+        }
+
+        private void insert(int row) {
+            int h = 1;
+            for (int col = 0; col < arity; col++) {
+                h = 31 * h + columns[col][row];
+            }
+            int slot = spread(h) & mask;
+            while (0 != slots[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = row + 1;
+        }
+
+        private boolean rowEquals(int row, int[] values) {
+            for (int col = 0; col < arity; col++) {
+                if (columns[col][row] != values[col]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int hash(int[] values) {
+            int h = 1;
+            for (int value: values) {
+                h = 31 * h + value;
+            }
+            return spread(h);
+        }
+
+        private static int spread(int h) {
+            h *= 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    protected final NumerationMap numerationMap = new NumerationMap();
+
+    /* 下标为constant的编号 */
+    protected final List<Constant> num2Constant = new ArrayList<>();
+
+    /* key为functor，value为共享的functor字符串以及该relation的int编码 */
+    protected final Map<String, String> functorSymbols = new HashMap<>();
+    protected final Map<String, EncodedRelation> functor2Encoded = new HashMap<>();
+    private int totalFacts = 0;
+
+    /* 按需建立的列存储，多个线程可能同时访问 */
+    protected final Map<String, ColumnarRelation> functor2Relation = new ConcurrentHashMap<>();
+
+    /* join查询使用的AtomTrie，按functor以及atom的模式缓存，只缓存不含常量的模式 */
+    protected final Map<String, Map<ComparableArray<Integer>, AtomTrie>> functor2Tries = new ConcurrentHashMap<>();
+
+    public EncodedMemKB() {
+        num2Constant.add(null);
+    }
+
+    @Override
+    public void declareFunctor(String functor, int arity) {
+        final String symbol = mapFunctor(functor);
+        encodedRelation(symbol, arity);
+        functor2ArgSetsMap.computeIfAbsent(symbol, k -> newArgSets(arity));
+        functor2PromisingConstMap.computeIfAbsent(symbol, k -> {
+            List<String>[] _const_lists = new List[arity];
+            for (int i = 0; i < _const_lists.length; i++) {
+                _const_lists[i] = new ArrayList<>();
+            }
+            return _const_lists;
+        });
+    }
+
+    @Override
+    public boolean addFact(Predicate predicate) {
+        final int[] row = new int[predicate.arity()];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = mapConstant(predicate.args[i]);
+        }
+        return addEncodedFact(predicate.functor, row);
+    }
+
+    /**
+     * 加入一条已经编码的fact，参数为mapConstant返回的编号
+     */
+    public boolean addEncodedFact(String functor, int[] row) {
+        final String symbol = mapFunctor(functor);
+        if (!encodedRelation(symbol, row.length).add(row)) {
+            return false;
+        }
+        totalFacts++;
+        functor2Relation.remove(symbol);
+        functor2Tries.remove(symbol);
+        functor2Inclusion.remove(symbol);
+
+        /* 统计各参数的取值 */
+        final MultiSet<String>[] arg_sets = functor2ArgSetsMap.computeIfAbsent(symbol, k -> newArgSets(row.length));
+        for (int i = 0; i < row.length; i++) {
+            final String constant_symbol = numerationMap.num2Name(row[i]);
+            arg_sets[i].add(constant_symbol);
+            constants.add(constant_symbol);
+        }
+        return true;
+    }
+
+    private EncodedRelation encodedRelation(String symbol, int arity) {
+        functor2ArityMap.putIfAbsent(symbol, arity);
+        return functor2Encoded.computeIfAbsent(symbol, k -> new EncodedRelation(arity));
+    }
+
+    private static MultiSet<String>[] newArgSets(int arity) {
+        final MultiSet<String>[] _arg_set_list = new MultiSet[arity];
+        for (int i = 0; i < _arg_set_list.length; i++) {
+            _arg_set_list[i] = new MultiSet<>();
+        }
+        return _arg_set_list;
+    }
+
+    protected String mapFunctor(String functor) {
+        return functorSymbols.computeIfAbsent(functor, k -> k);
+    }
+
+    protected int mapConstant(Argument argument) {
+        final int num = numerationMap.mapName(argument.name);
+        if (num2Constant.size() == num) {
+            num2Constant.add(new Constant(argument.id, numerationMap.num2Name(num)));
+        }
+        return num;
+    }
+
+    /**
+     * @return 常量在字典中的编号，不存在时新分配一个
+     */
+    public int mapConstant(String constantSymbol) {
+        final int num = numerationMap.mapName(constantSymbol);
+        if (num2Constant.size() == num) {
+            num2Constant.add(new Constant(Rule.CONSTANT_ARG_ID, numerationMap.num2Name(num)));
+        }
+        return num;
+    }
+
+    public NumerationMap getNumerationMap() {
+        return numerationMap;
+    }
+
+    /**
+     * @return 参数的编号，未绑定的参数与变量编码为NULL_NUM
+     */
+    public int[] encode(Predicate predicate) {
+        final int[] row = new int[predicate.arity()];
+        for (int i = 0; i < row.length; i++) {
+            final Argument argument = predicate.args[i];
+            row[i] = (null == argument || argument.isVar) ?
+                    NumerationMap.NULL_NUM : numerationMap.name2Num(argument.name);
+        }
+        return row;
+    }
+
+    public Predicate decode(String functor, int[] row) {
+        final Predicate predicate = new Predicate(functorSymbols.getOrDefault(functor, functor), row.length);
+        for (int i = 0; i < row.length; i++) {
+            predicate.args[i] = (NumerationMap.NULL_NUM == row[i]) ? null : num2Constant.get(row[i]);
+        }
+        return predicate;
+    }
+
+    /**
+     * @return relation中与row相同的行号，不存在时返回-1
+     */
+    public int findRow(String functor, int[] row) {
+        final EncodedRelation relation = functor2Encoded.get(functor);
+        if (null == relation || relation.arity != row.length) {
+            return -1;
+        }
+        for (int num: row) {
+            if (NumerationMap.NULL_NUM == num) {
+                return -1;
+            }
+        }
+        return relation.find(row);
+    }
+
+    private int findRow(Predicate predicate) {
+        return findRow(predicate.functor, encode(predicate));
+    }
+
+    public boolean hasProvedRow(String functor, int row) {
+        return functor2Encoded.get(functor).proved.get(row);
+    }
+
+    public void proveRow(String functor, int row) {
+        functor2Encoded.get(functor).proved.set(row);
+    }
+
+    /**
+     * @return 某个relation的列存储，如果functor不存在则返回null
+     */
+    public ColumnarRelation getRelation(String functor) {
+        final EncodedRelation encoded = functor2Encoded.get(functor);
+        if (null == encoded) {
+            return null;
+        }
+        return functor2Relation.computeIfAbsent(functor, k -> new ColumnarRelation(
+                k, encoded.arity, encoded.rows, encoded.columns, numerationMap, num2Constant
+        ));
+    }
+
+    /**
+     * 不含常量的模式只对应relation的列顺序与重复变量，数量有限，因此缓存起来在查询之间共享。含常量的模式每次重新建立：
+     * 挖掘过程中会尝试大量不同的常量，缓存它们会让每个常量过滤出的relation副本一直留在内存中。含常量的trie只扫描
+     * 该常量在排序索引中对应的一段，建立的代价较小。
+     *
+     * @param pattern 见AtomTrie
+     */
+    public AtomTrie getAtomTrie(String functor, int[] pattern) {
+        final Integer[] key = new Integer[pattern.length];
+        for (int i = 0; i < pattern.length; i++) {
+            if (0 < pattern[i]) {
+                return new AtomTrie(getRelation(functor), pattern);
+            }
+            key[i] = pattern[i];
+        }
+        return functor2Tries.computeIfAbsent(functor, k -> new ConcurrentHashMap<>()).computeIfAbsent(
+                new ComparableArray<>(key), k -> new AtomTrie(getRelation(functor), pattern)
+        );
+    }
+
+    public Constant getConstant(int num) {
+        return num2Constant.get(num);
+    }
+
+    @Override
+    public int totalFacts() {
+        return totalFacts;
+    }
+
+    @Override
+    public Set<Predicate> getAllFacts(String functor) {
+        final ColumnarRelation relation = getRelation(functor);
+        return (null == relation) ? null : relation.allFacts();
+    }
+
+    @Override
+    public Set<String> getValueSet(String functor, int argIdx) {
+        return getArgIndices(functor, argIdx).keySet();
+    }
+
+    @Override
+    public Map<String, Set<Predicate>> getArgIndices(String functor, int argIdx) {
+        return getRelation(functor).argIndices(argIdx);
+    }
+
+    /**
+     * @return 列存储上只保存行号的EncodedInclusion，cached rules按参数值筛选时只比较int编码
+     */
+    @Override
+    public IndexedInclusion getIndexedFacts(String functor) {
+        return functor2Inclusion.computeIfAbsent(functor, k -> new EncodedInclusion(getRelation(k)));
+    }
+
+    @Override
+    public Map<String, Set<Predicate>>[] getAllArgIndices(String functor) {
+        final ColumnarRelation relation = getRelation(functor);
+        final Map<String, Set<Predicate>>[] arg_indices = new Map[relation.arity()];
+        for (int i = 0; i < arg_indices.length; i++) {
+            arg_indices[i] = relation.argIndices(i);
+        }
+        return arg_indices;
+    }
+
+    @Override
+    public void proveFact(Predicate fact) {
+        final int row = findRow(fact);
+        if (0 <= row) {
+            proveRow(fact.functor, row);
+        } else {
+            super.proveFact(fact);
+        }
+    }
+
+    @Override
+    public boolean hasProved(Predicate predicate) {
+        final int row = findRow(predicate);
+        return (0 <= row) ? hasProvedRow(predicate.functor, row) : super.hasProved(predicate);
+    }
+
+    @Override
+    public Set<Predicate> getProvedFacts() {
+        final Set<Predicate> proved_facts = new HashSet<>(super.getProvedFacts());
+        for (Map.Entry<String, EncodedRelation> entry: functor2Encoded.entrySet()) {
+            final BitSet proved = entry.getValue().proved;
+            for (int row = proved.nextSetBit(0); 0 <= row; row = proved.nextSetBit(row + 1)) {
+                proved_facts.add(decodeRow(entry.getKey(), entry.getValue(), row));
+            }
+        }
+        return proved_facts;
+    }
+
+    @Override
+    public boolean containsFact(Predicate predicate) {
+        return 0 <= findRow(predicate);
+    }
+
+    @Override
+    public Iterator<Predicate> factIterator() {
+        final Iterator<Map.Entry<String, EncodedRelation>> relation_itr = functor2Encoded.entrySet().iterator();
+        return new Iterator<Predicate>() {
+            Map.Entry<String, EncodedRelation> relation = null;
+            int row = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (null == relation || row >= relation.getValue().rows) {
+                    if (!relation_itr.hasNext()) {
+                        return false;
+                    }
+                    relation = relation_itr.next();
+                    row = 0;
+                }
+                return true;
+            }
+
+            @Override
+            public Predicate next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return decodeRow(relation.getKey(), relation.getValue(), row++);
+            }
+        };
+    }
+
+    /**
+     * @return 所有facts的只读视图
+     */
+    @Override
+    public Set<Predicate> getOriginalKB() {
+        return new AbstractSet<Predicate>() {
+            @Override
+            public Iterator<Predicate> iterator() {
+                return factIterator();
+            }
+
+            @Override
+            public int size() {
+                return totalFacts;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return (o instanceof Predicate) && containsFact((Predicate) o);
+            }
+        };
+    }
+
+    private Predicate decodeRow(String functor, EncodedRelation relation, int row) {
+        final Predicate predicate = new Predicate(functor, relation.arity);
+        for (int col = 0; col < relation.arity; col++) {
+            predicate.args[col] = num2Constant.get(relation.columns[col][row]);
+        }
+        return predicate;
+    }
+}
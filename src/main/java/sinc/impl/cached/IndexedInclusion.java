@@ -0,0 +1,105 @@
+package sinc.impl.cached;
+
+import sinc.common.Predicate;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 只读的facts集合，并且可以按参数的取值索引。
+ *
+ * 每一列的索引在第一次被访问时才建立，索引中的每个子集也是IndexedInclusion，因此子集上的索引同样按需建立并被共享。
+ * 集合本身不会被修改，所以可以在rule的clone之间直接共享(copy on write：需要修改时替换为另一个IndexedInclusion)。
+ * 多个线程同时建立同一列的索引时，结果相同，只会保留其中一个。
+ */
+public class IndexedInclusion extends AbstractSet<Predicate> {
+    public static final IndexedInclusion EMPTY = new IndexedInclusion(Collections.emptySet(), 0);
+
+    protected final Set<Predicate> facts;
+    protected final Map<String, Set<Predicate>>[] sourceIndices;  // KB中已有的参数索引，没有时为null
+    protected final AtomicReferenceArray<Map<String, IndexedInclusion>> columnIndices;
+
+    public IndexedInclusion(Set<Predicate> facts, int arity) {
+        this(facts, arity, null);
+    }
+
+    /**
+     * @param sourceIndices facts在各列上已有的索引(例如KB中整个relation的参数索引)，建立列索引时直接使用
+     */
+    public IndexedInclusion(Set<Predicate> facts, int arity, Map<String, Set<Predicate>>[] sourceIndices) {
+        this.facts = facts;
+        this.sourceIndices = sourceIndices;
+        this.columnIndices = new AtomicReferenceArray<>(arity);
+    }
+
+    /**
+     * 给不直接保存facts的子类使用，子类需要重写iterator、size、contains、select与buildIndex
+     */
+    protected IndexedInclusion(int arity) {
+        this(null, arity, null);
+    }
+
+    /**
+     * @return 第col列的取值到对应子集的索引
+     */
+    public Map<String, IndexedInclusion> index(int col) {
+        Map<String, IndexedInclusion> index = columnIndices.get(col);
+        if (null == index) {
+            index = buildIndex(col);
+            if (!columnIndices.compareAndSet(col, null, index)) {
+                index = columnIndices.get(col);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return 第col列取值为constantSymbol的子集，没有时返回EMPTY
+     */
+    public IndexedInclusion select(int col, String constantSymbol) {
+        if (facts.isEmpty()) {
+            return EMPTY;
+        }
+        final IndexedInclusion inclusion = index(col).get(constantSymbol);
+        return (null == inclusion) ? EMPTY : inclusion;
+    }
+
+    protected Map<String, IndexedInclusion> buildIndex(int col) {
+        final int arity = columnIndices.length();
+        if (null != sourceIndices) {
+            final Map<String, IndexedInclusion> index = new HashMap<>();
+            for (Map.Entry<String, Set<Predicate>> entry: sourceIndices[col].entrySet()) {
+                index.put(entry.getKey(), new IndexedInclusion(entry.getValue(), arity));
+            }
+            return index;
+        }
+        final Map<String, Set<Predicate>> groups = new HashMap<>();
+        for (Predicate predicate: facts) {
+            groups.computeIfAbsent(predicate.args[col].name, k -> new HashSet<>()).add(predicate);
+        }
+        if (1 == groups.size()) {
+            /* 所有facts在这一列上取值相同，子集就是自身 */
+            return Collections.singletonMap(groups.keySet().iterator().next(), this);
+        }
+        final Map<String, IndexedInclusion> index = new HashMap<>();
+        for (Map.Entry<String, Set<Predicate>> entry: groups.entrySet()) {
+            index.put(entry.getKey(), new IndexedInclusion(entry.getValue(), arity));
+        }
+        return index;
+    }
+
+    @Override
+    public Iterator<Predicate> iterator() {
+        return Collections.unmodifiableSet(facts).iterator();
+    }
+
+    @Override
+    public int size() {
+        return facts.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return facts.contains(o);
+    }
+}
@@ -0,0 +1,261 @@
+package sinc.impl.cached;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 通过内存映射加载TSV格式的KB(每行为[pred]\t[arg1]\t...\t[argn])。
+ *
+ * 文件按换行符切分为若干段，每段由一个线程直接在映射的字节上分词：相同的token(按字节比较)在一段中只会被解码为一个
+ * String，每行只记录token的编号。所有段解析完成后按文件中的顺序把facts加入EncodedMemKB，每个段中的token只需要在KB
+ * 的字典中查询一次，加入KB的facts直接共享字典中的Constant对象。
+ */
+public class MappedKbLoader {
+    /* 每段最多映射的字节数(单次映射不能超过2GB) */
+    protected static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    /* 一段中解析出的结果：token编号到字符串的映射，以及每行的token编号(第一个为functor) */
+    protected static class ParsedChunk {
+        String[] tokens;
+        final List<int[]> rows = new ArrayList<>();
+    }
+
+    /**
+     * 在一段字节中按字节内容为token分配编号的开放寻址哈希表
+     */
+    protected static class TokenDictionary {
+        private final ByteBuffer buffer;
+        private int[] table = new int[1024];  // 存放编号+1，0表示空位
+        private int[] offsets = new int[512];
+        private int[] lengths = new int[512];
+        private int[] hashes = new int[512];
+        private int size = 0;
+
+        TokenDictionary(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int intern(int offset, int length) {
+            int hash = 1;
+            for (int i = offset; i < offset + length; i++) {
+                hash = 31 * hash + buffer.get(i);
+            }
+            hash ^= hash >>> 16;
+            int mask = table.length - 1;
+            int slot = hash & mask;
+            while (0 != table[slot]) {
+                final int id = table[slot] - 1;
+                if (hashes[id] == hash && equalBytes(offsets[id], lengths[id], offset, length)) {
+                    return id;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+                hashes = Arrays.copyOf(hashes, size * 2);
+            }
+            offsets[size] = offset;
+            lengths[size] = length;
+            hashes[size] = hash;
+            table[slot] = size + 1;
+            size++;
+            if (size * 2 > table.length) {
+                rehash();
+            }
+            return size - 1;
+        }
+
+        private boolean equalBytes(int offset1, int length1, int offset2, int length2) {
+            if (length1 != length2) {
+                return false;
+            }
+            for (int i = 0; i < length1; i++) {
+                if (buffer.get(offset1 + i) != buffer.get(offset2 + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            final int mask = table.length - 1;
+            for (int id = 0; id < size; id++) {
+                int slot = hashes[id] & mask;
+                while (0 != table[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = id + 1;
+            }
+        }
+
+        String[] decode() {
+            final String[] tokens = new String[size];
+            for (int id = 0; id < size; id++) {
+                final byte[] bytes = new byte[lengths[id]];
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = buffer.get(offsets[id] + i);
+                }
+                tokens[id] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return tokens;
+        }
+    }
+
+    /**
+     * @param threads 并行解析的线程数
+     * @return 新加入KB的facts数量
+     */
+    public static int load(EncodedMemKB kb, String path, int threads) throws IOException {
+        final List<ParsedChunk> chunks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            final long[] boundaries = splitChunks(channel, Math.max(1, threads));
+            final int chunk_cnt = boundaries.length - 1;
+            if (1 >= threads || 1 == chunk_cnt) {
+                for (int i = 0; i < chunk_cnt; i++) {
+                    chunks.add(parseChunk(channel, boundaries[i], boundaries[i + 1]));
+                }
+            } else {
+                final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, chunk_cnt));
+                try {
+                    final List<Future<ParsedChunk>> futures = new ArrayList<>();
+                    for (int i = 0; i < chunk_cnt; i++) {
+                        final long start = boundaries[i];
+                        final long end = boundaries[i + 1];
+                        futures.add(executor.submit(() -> parseChunk(channel, start, end)));
+                    }
+                    for (Future<ParsedChunk> future: futures) {
+                        chunks.add(future.get());
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new IOException("Failed to parse KB: " + path, e);
+                } finally {
+                    executor.shutdown();
+                }
+            }
+        }
+
+        /* 按文件中的顺序加入KB */
+        int added = 0;
+        for (ParsedChunk chunk: chunks) {
+            final int[] token_2_num = new int[chunk.tokens.length];
+            Arrays.fill(token_2_num, -1);
+            for (int[] row: chunk.rows) {
+                final int[] args = new int[row.length - 1];
+                for (int i = 1; i < row.length; i++) {
+                    int num = token_2_num[row[i]];
+                    if (-1 == num) {
+                        num = kb.mapConstant(chunk.tokens[row[i]]);
+                        token_2_num[row[i]] = num;
+                    }
+                    args[i - 1] = num;
+                }
+                if (kb.addEncodedFact(chunk.tokens[row[0]], args)) {
+                    added++;
+                }
+            }
+        }
+        return added;
+    }
+
+    /**
+     * 把文件切分为不少于parts段，每段的结尾都在换行符之后(或文件末尾)，且每段不超过MAX_CHUNK_BYTES
+     */
+    protected static long[] splitChunks(FileChannel channel, int parts) throws IOException {
+        final long size = channel.size();
+        final int chunk_cnt = (int) Math.max(parts, (size + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+        final long chunk_size = Math.max(1, (size + chunk_cnt - 1) / chunk_cnt);
+        final List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        final ByteBuffer probe = ByteBuffer.allocate(4096);
+        long position = 0;
+        while (position < size) {
+            long next = Math.min(size, position + chunk_size);
+            /* 向后找到换行符 */
+            boolean found = next >= size;
+            while (!found) {
+                probe.clear();
+                final int read = channel.read(probe, next);
+                if (0 >= read) {
+                    next = size;
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if ('\n' == probe.get(i)) {
+                        next += i + 1;
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    next += read;
+                }
+            }
+            if (next - position > MAX_CHUNK_BYTES) {
+                throw new IOException("Line too long near offset " + position);
+            }
+            boundaries.add(next);
+            position = next;
+        }
+        final long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * 与String.split("\t")一致，行尾的空字段会被忽略；空行被跳过
+     */
+    protected static ParsedChunk parseChunk(FileChannel channel, long start, long end) throws IOException {
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        final TokenDictionary dictionary = new TokenDictionary(buffer);
+        final ParsedChunk chunk = new ParsedChunk();
+        final int limit = buffer.limit();
+        int[] row = new int[16];
+        int fields = 0;
+        int non_empty_fields = 0;
+        int token_start = 0;
+        for (int i = 0; i <= limit; i++) {
+            final byte b = (i < limit) ? buffer.get(i) : (byte) '\n';
+            if ('\t' != b && '\n' != b) {
+                continue;
+            }
+            int token_end = i;
+            if ('\n' == b && token_end > token_start && '\r' == buffer.get(token_end - 1)) {
+                token_end--;
+            }
+            if (fields == row.length) {
+                row = Arrays.copyOf(row, row.length * 2);
+            }
+            row[fields] = dictionary.intern(token_start, token_end - token_start);
+            fields++;
+            if (token_end > token_start) {
+                non_empty_fields = fields;
+            }
+            if ('\n' == b) {
+                if (0 < non_empty_fields) {
+                    chunk.rows.add(Arrays.copyOf(row, non_empty_fields));
+                }
+                fields = 0;
+                non_empty_fields = 0;
+            }
+            token_start = i + 1;
+        }
+        chunk.tokens = dictionary.decode();
+        return chunk;
+    }
+}
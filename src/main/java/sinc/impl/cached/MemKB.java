@@ -1,11 +1,15 @@
 package sinc.impl.cached;
 
 import sinc.common.Predicate;
+import sinc.util.MinHash;
 import sinc.util.MultiSet;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MemKB {
+    public static final int MIN_HASH_SIZE = 128;
+
     static class ColumnPairInfo {
         final String functor1;
         final int idx1;
@@ -38,10 +42,13 @@ public class MemKB {
     protected final Map<String, Integer> functor2ArityMap = new HashMap<>();
     protected final Map<String, Map<String, Set<Predicate>>[]> functor2ArgIdx = new HashMap<>();
     protected final Set<String> constants = new HashSet<>();
-    protected final Set<Predicate> provedFacts = new HashSet<>();
+    /* 多个head functor并行搜索时，已证明的facts会在搜索的同时被其他线程更新 */
+    protected final Set<Predicate> provedFacts = ConcurrentHashMap.newKeySet();
     protected final Map<String, MultiSet<String>[]> functor2ArgSetsMap = new HashMap<>();
     protected final Map<String, List<String>[]> functor2PromisingConstMap = new HashMap<>();
     protected final Set<ColumnPairInfo> similarColumnPairs = new HashSet<>();
+    /* 按需建立的relation索引，加入新的facts后失效 */
+    protected final Map<String, IndexedInclusion> functor2Inclusion = new ConcurrentHashMap<>();
 
     public void declareFunctor(String functor, int arity) {
         functor2Facts.computeIfAbsent(functor, k -> new HashSet<>());
@@ -70,10 +77,35 @@ public class MemKB {
     }
 
     public boolean addFact(Predicate predicate) {
-        /* 添加到functor索引 */
         if (!originalKB.add(predicate)) {
             return false;
         }
+        indexFact(predicate);
+        functor2Inclusion.remove(predicate.functor);
+
+        /* 统计各参数的取值 */
+        final MultiSet<String>[] arg_sets =  functor2ArgSetsMap.computeIfAbsent(
+                predicate.functor, k -> {
+                    MultiSet<String>[] _arg_set_list = new MultiSet[predicate.arity()];
+                    for (int i = 0; i < _arg_set_list.length; i++) {
+                        _arg_set_list[i] = new MultiSet<>();
+                    }
+                    return _arg_set_list;
+                }
+        );
+        for (int i = 0; i < predicate.arity(); i++) {
+            final String constant_symbol = predicate.args[i].name;
+            arg_sets[i].add(constant_symbol);
+            constants.add(constant_symbol);
+        }
+        return true;
+    }
+
+    /**
+     * 将一条新的fact加入functor索引与argument索引
+     */
+    protected void indexFact(Predicate predicate) {
+        /* 添加到functor索引 */
         functor2Facts.compute(predicate.functor, (func, set) -> {
             if (null == set) {
                 set = new HashSet<>();
@@ -93,28 +125,15 @@ public class MemKB {
                     return _arg_indices;
                 }
         );
-        final MultiSet<String>[] arg_sets =  functor2ArgSetsMap.computeIfAbsent(
-                predicate.functor, k -> {
-                    MultiSet<String>[] _arg_set_list = new MultiSet[predicate.arity()];
-                    for (int i = 0; i < _arg_set_list.length; i++) {
-                        _arg_set_list[i] = new MultiSet<>();
-                    }
-                    return _arg_set_list;
-                }
-        );
         for (int i = 0; i < predicate.arity(); i++) {
-            final String constant_symbol = predicate.args[i].name;
-            arg_indices[i].compute(constant_symbol, (const_sym, set) -> {
+            arg_indices[i].compute(predicate.args[i].name, (const_sym, set) -> {
                 if (null == set) {
                     set = new HashSet<>();
                 }
                 set.add(predicate);
                 return set;
             });
-            arg_sets[i].add(constant_symbol);
-            constants.add(constant_symbol);
         }
-        return true;
     }
 
     public void calculatePromisingConstants(double threshold) {
@@ -130,7 +149,18 @@ public class MemKB {
     }
 
     public void calculateSimilarColumnPairs(double threshold) {
+        calculateSimilarColumnPairs(threshold, false);
+    }
+
+    /**
+     * @param sketch 为true时用MinHash签名与LSH找出候选的相似列对，不再比较所有的列对
+     */
+    public void calculateSimilarColumnPairs(double threshold, boolean sketch) {
         similarColumnPairs.clear();
+        if (sketch) {
+            sketchSimilarColumnPairs(threshold);
+            return;
+        }
         Map.Entry<String, MultiSet<String>[]>[] entries = functor2ArgSetsMap.entrySet().toArray(new Map.Entry[0]);
 
         for (int i = 0; i < entries.length; i++) {
@@ -152,6 +182,39 @@ public class MemKB {
         }
     }
 
+    /**
+     * 先用每一列的MinHash签名通过LSH找出候选的列对，只对候选计算精确的相似度。相似度不低于阈值的列对以很高的概率(见MinHash.MIN_RECALL)
+     * 成为候选，结果中不会有相似度低于阈值的列对
+     */
+    protected void sketchSimilarColumnPairs(double threshold) {
+        final List<String> column_functors = new ArrayList<>();
+        final List<Integer> column_indices = new ArrayList<>();
+        final List<MultiSet<String>> columns = new ArrayList<>();
+        for (Map.Entry<String, MultiSet<String>[]> entry: functor2ArgSetsMap.entrySet()) {
+            for (int arg_idx = 0; arg_idx < entry.getValue().length; arg_idx++) {
+                column_functors.add(entry.getKey());
+                column_indices.add(arg_idx);
+                columns.add(entry.getValue()[arg_idx]);
+            }
+        }
+        final long[][] signatures = new long[columns.size()][];
+        for (int i = 0; i < columns.size(); i++) {
+            signatures[i] = MinHash.signature(columns.get(i), MIN_HASH_SIZE);
+        }
+        for (int[] pair: MinHash.candidatePairs(signatures, threshold)) {
+            final int i = pair[0];
+            final int j = pair[1];
+            if (columns.get(i).jaccardSimilarity(columns.get(j)) >= threshold) {
+                final String functor1 = column_functors.get(i);
+                final int idx1 = column_indices.get(i);
+                final String functor2 = column_functors.get(j);
+                final int idx2 = column_indices.get(j);
+                similarColumnPairs.add(new ColumnPairInfo(functor1, idx1, functor2, idx2));
+                similarColumnPairs.add(new ColumnPairInfo(functor2, idx2, functor1, idx1));
+            }
+        }
+    }
+
     public boolean columnsSimilar(String functor1, int idx1, String functor2, int idx2) {
         return similarColumnPairs.contains(new ColumnPairInfo(functor1, idx1, functor2, idx2));
     }
@@ -186,6 +249,16 @@ public class MemKB {
         return functor2Facts.get(functor);
     }
 
+    /**
+     * @return functor对应relation中的所有facts，各列的索引直接使用KB中的参数索引
+     */
+    public IndexedInclusion getIndexedFacts(String functor) {
+        /* 这里不做错误处理，有问题直接抛异常 */
+        return functor2Inclusion.computeIfAbsent(
+                functor, k -> new IndexedInclusion(getAllFacts(k), getArity(k), getAllArgIndices(k))
+        );
+    }
+
     public Set<String> getValueSet(String functor, int argIdx) {
         return functor2ArgIdx.get(functor)[argIdx].keySet();
     }
@@ -222,6 +295,10 @@ public class MemKB {
         return originalKB;
     }
 
+    public Set<Predicate> getProvedFacts() {
+        return provedFacts;
+    }
+
     public Map<String, List<String>[]> getFunctor2PromisingConstantMap() {
         return functor2PromisingConstMap;
     }
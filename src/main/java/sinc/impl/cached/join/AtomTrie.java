@@ -0,0 +1,151 @@
+package sinc.impl.cached.join;
+
+import sinc.impl.cached.ColumnarRelation;
+import sinc.util.NumerationMap;
+
+import java.util.Arrays;
+
+/**
+ * 一个atom在Leapfrog Triejoin中使用的trie。
+ *
+ * 构造时先按照atom中的常量与重复变量过滤relation，再投影到atom中的变量上(变量按照在查询中的顺序排列)，最后按字典序
+ * 排序并去重。trie的第d层即为所有tuple的第d列，同一前缀的tuple在数组中是连续的一段。FV位置被投影掉，每个tuple
+ * 记录relation中的一行作为见证。
+ *
+ * AtomTrie构造之后不再修改，可以在多个查询与多个线程之间共享。
+ */
+public class AtomTrie {
+
+    /**
+     * atom中每个参数的模式：正数为常量的编号，NULL_NUM为FV，负数-(r+1)表示atom中按查询顺序排第r的变量
+     */
+    public static int variablePattern(int rank) {
+        return -(rank + 1);
+    }
+
+    protected final int[][] tuples;
+    protected final int[] witnessRows;
+    protected final int depth;
+
+    public AtomTrie(ColumnarRelation relation, int[] pattern) {
+        /* 统计变量在atom中的位置：每个变量只取第一次出现的位置，其他位置用来过滤 */
+        int vars = 0;
+        for (int p: pattern) {
+            if (0 > p) {
+                vars = Math.max(vars, -p);
+            }
+        }
+        this.depth = vars;
+        final int[] var_cols = new int[vars];
+        Arrays.fill(var_cols, -1);
+        int constant_col = -1;
+        int constant_cnt = Integer.MAX_VALUE;
+        for (int col = 0; col < pattern.length; col++) {
+            final int p = pattern[col];
+            if (0 > p) {
+                if (-1 == var_cols[-p - 1]) {
+                    var_cols[-p - 1] = col;
+                }
+            } else if (NumerationMap.NULL_NUM != p) {
+                final int cnt = relation.count(col, p);
+                if (cnt < constant_cnt) {
+                    constant_col = col;
+                    constant_cnt = cnt;
+                }
+            }
+        }
+
+        /* 过滤：有常量时只需检查该常量对应的一段 */
+        final int start = (-1 == constant_col) ? 0 : relation.lowerBound(constant_col, pattern[constant_col]);
+        final int end = (-1 == constant_col) ? relation.totalRows() : relation.upperBound(constant_col, pattern[constant_col]);
+        final int[] rows = new int[end - start];
+        int matched = 0;
+        for (int idx = start; idx < end; idx++) {
+            final int row = (-1 == constant_col) ? idx : relation.sortedRow(constant_col, idx);
+            if (matches(relation, row, pattern, var_cols)) {
+                rows[matched] = row;
+                matched++;
+            }
+        }
+
+        /* 投影、排序并去重 */
+        final int[][] projected = new int[matched][];
+        for (int i = 0; i < matched; i++) {
+            final int[] tuple = new int[vars + 1];
+            for (int d = 0; d < vars; d++) {
+                tuple[d] = relation.value(rows[i], var_cols[d]);
+            }
+            tuple[vars] = rows[i];
+            projected[i] = tuple;
+        }
+        Arrays.sort(projected, (t1, t2) -> {
+            for (int d = 0; d < t1.length; d++) {
+                final int diff = Integer.compare(t1[d], t2[d]);
+                if (0 != diff) {
+                    return diff;
+                }
+            }
+            return 0;
+        });
+        int distinct = 0;
+        for (int i = 0; i < matched; i++) {
+            if (0 == distinct || !samePrefix(projected[distinct - 1], projected[i], vars)) {
+                projected[distinct] = projected[i];
+                distinct++;
+            }
+        }
+        this.tuples = new int[distinct][];
+        this.witnessRows = new int[distinct];
+        for (int i = 0; i < distinct; i++) {
+            tuples[i] = projected[i];
+            witnessRows[i] = projected[i][vars];
+        }
+    }
+
+    private static boolean matches(ColumnarRelation relation, int row, int[] pattern, int[] varCols) {
+        for (int col = 0; col < pattern.length; col++) {
+            final int p = pattern[col];
+            final int value = relation.value(row, col);
+            if (0 > p) {
+                if (value != relation.value(row, varCols[-p - 1])) {
+                    return false;
+                }
+            } else if (NumerationMap.NULL_NUM != p && value != p) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean samePrefix(int[] t1, int[] t2, int length) {
+        for (int d = 0; d < length; d++) {
+            if (t1[d] != t2[d]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return trie的层数，即atom中不同变量的数量
+     */
+    public int depth() {
+        return depth;
+    }
+
+    public int size() {
+        return tuples.length;
+    }
+
+    public boolean isEmpty() {
+        return 0 == tuples.length;
+    }
+
+    public int witnessRow(int idx) {
+        return witnessRows[idx];
+    }
+
+    public TrieIterator iterator() {
+        return new TrieIterator(this);
+    }
+}
@@ -0,0 +1,128 @@
+package sinc.impl.cached.join;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Leapfrog Triejoin：一种worst-case optimal的多路join算法。
+ *
+ * 查询中的变量按照固定的顺序逐个绑定：对于第d个变量，所有包含该变量的atom的trie迭代器在这一层上做leapfrog求交，每得到
+ * 一个公共的取值就进入下一个变量。整个过程不产生任何中间结果，运行时间受输出规模的上界约束，因此对于三角形等环状的
+ * body也不会出现中间结果膨胀的问题。
+ *
+ * 每个atom的变量必须按照查询中的变量顺序排列(见AtomTrie)，并且查询中的每个变量都至少出现在一个atom中。
+ */
+public class LeapfrogTriejoin {
+
+    public interface ResultHandler {
+        /**
+         * @param binding 查询中各变量的取值
+         * @param iterators 各atom的迭代器，可以通过witnessRow()取得该atom匹配的行
+         */
+        void handle(int[] binding, TrieIterator[] iterators);
+    }
+
+    private final int totalVars;
+    private final AtomTrie[] atoms;
+    private final int[][] atomVars;
+
+    /**
+     * @param atomVars 每个atom中的变量(按升序排列)
+     */
+    public LeapfrogTriejoin(int totalVars, AtomTrie[] atoms, int[][] atomVars) {
+        this.totalVars = totalVars;
+        this.atoms = atoms;
+        this.atomVars = atomVars;
+    }
+
+    /**
+     * 枚举join的结果在前projectionDepth个变量上的投影：每个不同的投影只回调一次，同时给出一个完整的结果作为见证。
+     * 投影中的变量绑定之后，只需要找到一个完整的结果就可以回溯。
+     */
+    public void enumerate(int projectionDepth, ResultHandler handler) {
+        for (AtomTrie atom: atoms) {
+            if (atom.isEmpty()) {
+                return;
+            }
+        }
+        final TrieIterator[] iterators = new TrieIterator[atoms.length];
+        final List<List<TrieIterator>> participants = new ArrayList<>(totalVars);
+        for (int d = 0; d < totalVars; d++) {
+            participants.add(new ArrayList<>());
+        }
+        for (int i = 0; i < atoms.length; i++) {
+            iterators[i] = atoms[i].iterator();
+            for (int var: atomVars[i]) {
+                participants.get(var).add(iterators[i]);
+            }
+        }
+        final TrieIterator[][] level_iterators = new TrieIterator[totalVars][];
+        for (int d = 0; d < totalVars; d++) {
+            level_iterators[d] = participants.get(d).toArray(new TrieIterator[0]);
+            if (0 == level_iterators[d].length) {
+                throw new IllegalArgumentException("Variable not covered by any atom: " + d);
+            }
+        }
+        join(0, projectionDepth, new int[totalVars], level_iterators, iterators, handler);
+    }
+
+    /**
+     * @return join的结果在前projectionDepth个变量上的投影的数量
+     */
+    public long count(int projectionDepth) {
+        final long[] cnt = new long[]{0};
+        enumerate(projectionDepth, (binding, iterators) -> cnt[0]++);
+        return cnt[0];
+    }
+
+    private boolean join(
+            int depth, int projectionDepth, int[] binding, TrieIterator[][] levelIterators, TrieIterator[] iterators,
+            ResultHandler handler
+    ) {
+        if (totalVars == depth) {
+            handler.handle(binding, iterators);
+            return true;
+        }
+
+        final TrieIterator[] iters = levelIterators[depth];
+        final int k = iters.length;
+        boolean at_end = false;
+        for (TrieIterator iterator: iters) {
+            iterator.open();
+            at_end |= iterator.atEnd();
+        }
+        boolean found = false;
+        if (!at_end) {
+            /* leapfrog：iters[p]总是当前最小的key，iters[p-1]为当前最大的key */
+            Arrays.sort(iters, Comparator.comparingInt(TrieIterator::key));
+            int p = 0;
+            int max_key = iters[k - 1].key();
+            while (true) {
+                final TrieIterator iterator = iters[p];
+                if (iterator.key() == max_key) {
+                    binding[depth] = max_key;
+                    if (join(depth + 1, projectionDepth, binding, levelIterators, iterators, handler)) {
+                        found = true;
+                        if (depth >= projectionDepth) {
+                            break;
+                        }
+                    }
+                    iterator.next();
+                } else {
+                    iterator.seek(max_key);
+                }
+                if (iterator.atEnd()) {
+                    break;
+                }
+                max_key = iterator.key();
+                p = (p + 1) % k;
+            }
+        }
+        for (TrieIterator iterator: iters) {
+            iterator.up();
+        }
+        return found;
+    }
+}
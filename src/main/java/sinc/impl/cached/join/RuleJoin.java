@@ -0,0 +1,176 @@
+package sinc.impl.cached.join;
+
+import sinc.common.Argument;
+import sinc.common.Predicate;
+import sinc.impl.cached.EncodedMemKB;
+import sinc.util.NumerationMap;
+
+import java.util.*;
+
+/**
+ * 将rule的结构编译为EncodedMemKB上的Leapfrog Triejoin查询。
+ *
+ * 查询的变量为rule中的BV，body中的FV在各自的atom中被投影掉。需要投影的变量排在变量顺序的最前面：
+ *   - body查询：只有body参与join，投影到head中同时出现在body里的变量上，结果即为body所entail的不同head取值组合；
+ *   - rule查询：head也作为一个atom参与join，head中的每个FV也作为一个变量，投影到head的所有变量上，每个结果对应
+ *     一个被entail并且存在于KB中的head。
+ */
+public class RuleJoin {
+    protected final EncodedMemKB kb;
+    protected final Predicate[] atoms;
+    protected final LeapfrogTriejoin join;
+    protected final int totalVars;
+    protected final int projectionDepth;
+    protected final int[] headArgVars;  // head中各参数对应的查询变量，不是变量时为-1
+    protected final boolean empty;  // 某个atom中的常量不在KB中时，查询结果一定为空
+
+    protected RuleJoin(List<Predicate> structure, EncodedMemKB kb, boolean withHead) {
+        this.kb = kb;
+        final int first_atom_idx = withHead ? 0 : 1;
+        this.atoms = structure.subList(first_atom_idx, structure.size()).toArray(new Predicate[0]);
+
+        /* 变量排序：先是需要投影的head变量，再是body中的其他变量 */
+        final Set<Integer> body_var_ids = new HashSet<>();
+        for (int pred_idx = 1; pred_idx < structure.size(); pred_idx++) {
+            for (Argument argument: structure.get(pred_idx).args) {
+                if (null != argument && argument.isVar) {
+                    body_var_ids.add(argument.id);
+                }
+            }
+        }
+        final Map<Integer, Integer> var_id_2_query_var = new HashMap<>();
+        final Predicate head = structure.get(0);
+        this.headArgVars = new int[head.arity()];
+        final int[] head_fv_vars = new int[head.arity()];
+        Arrays.fill(head_fv_vars, -1);
+        int query_vars = 0;
+        for (int arg_idx = 0; arg_idx < head.arity(); arg_idx++) {
+            final Argument argument = head.args[arg_idx];
+            headArgVars[arg_idx] = -1;
+            if (null == argument) {
+                if (withHead) {
+                    head_fv_vars[arg_idx] = query_vars;
+                    headArgVars[arg_idx] = query_vars;
+                    query_vars++;
+                }
+            } else if (argument.isVar && (withHead || body_var_ids.contains(argument.id))) {
+                Integer query_var = var_id_2_query_var.get(argument.id);
+                if (null == query_var) {
+                    query_var = query_vars;
+                    var_id_2_query_var.put(argument.id, query_var);
+                    query_vars++;
+                }
+                headArgVars[arg_idx] = query_var;
+            }
+        }
+        this.projectionDepth = query_vars;
+        for (int pred_idx = 1; pred_idx < structure.size(); pred_idx++) {
+            for (Argument argument: structure.get(pred_idx).args) {
+                if (null != argument && argument.isVar && !var_id_2_query_var.containsKey(argument.id)) {
+                    var_id_2_query_var.put(argument.id, query_vars);
+                    query_vars++;
+                }
+            }
+        }
+        this.totalVars = query_vars;
+
+        /* 构造每个atom的trie */
+        final NumerationMap numeration_map = kb.getNumerationMap();
+        final AtomTrie[] tries = new AtomTrie[atoms.length];
+        final int[][] atom_vars = new int[atoms.length][];
+        boolean empty = false;
+        for (int atom_idx = 0; atom_idx < atoms.length && !empty; atom_idx++) {
+            final Predicate atom = atoms[atom_idx];
+            final boolean is_head = withHead && 0 == atom_idx;
+            final int[] col_vars = new int[atom.arity()];
+            final SortedSet<Integer> vars = new TreeSet<>();
+            final int[] pattern = new int[atom.arity()];
+            for (int col = 0; col < atom.arity(); col++) {
+                final Argument argument = atom.args[col];
+                col_vars[col] = -1;
+                if (null == argument) {
+                    if (is_head) {
+                        col_vars[col] = head_fv_vars[col];
+                    }
+                } else if (argument.isVar) {
+                    col_vars[col] = var_id_2_query_var.get(argument.id);
+                } else {
+                    pattern[col] = numeration_map.name2Num(argument.name);
+                    if (NumerationMap.NULL_NUM == pattern[col]) {
+                        empty = true;
+                    }
+                }
+                if (-1 != col_vars[col]) {
+                    vars.add(col_vars[col]);
+                }
+            }
+            final int[] sorted_vars = new int[vars.size()];
+            int rank = 0;
+            for (int var: vars) {
+                sorted_vars[rank] = var;
+                rank++;
+            }
+            for (int col = 0; col < atom.arity(); col++) {
+                if (-1 != col_vars[col]) {
+                    pattern[col] = AtomTrie.variablePattern(Arrays.binarySearch(sorted_vars, col_vars[col]));
+                }
+            }
+            atom_vars[atom_idx] = sorted_vars;
+            if (!empty) {
+                tries[atom_idx] = kb.getAtomTrie(atom.functor, pattern);
+                empty = tries[atom_idx].isEmpty();
+            }
+        }
+        this.empty = empty;
+        this.join = empty ? null : new LeapfrogTriejoin(totalVars, tries, atom_vars);
+    }
+
+    /**
+     * @return 只有body参与的查询，投影到head中同时出现在body里的变量上
+     */
+    public static RuleJoin bodyQuery(List<Predicate> structure, EncodedMemKB kb) {
+        return new RuleJoin(structure, kb, false);
+    }
+
+    /**
+     * @return head与body一起参与的查询，投影到head中的所有变量上，第0个atom为head
+     */
+    public static RuleJoin ruleQuery(List<Predicate> structure, EncodedMemKB kb) {
+        return new RuleJoin(structure, kb, true);
+    }
+
+    public int projectionDepth() {
+        return projectionDepth;
+    }
+
+    /**
+     * @return head中第argIdx个参数对应的查询变量，如果不是查询中的变量则返回-1
+     */
+    public int headArgVar(int argIdx) {
+        return headArgVars[argIdx];
+    }
+
+    public long countProjections() {
+        return empty ? 0 : join.count(projectionDepth);
+    }
+
+    public void forEachProjection(LeapfrogTriejoin.ResultHandler handler) {
+        if (!empty) {
+            join.enumerate(projectionDepth, handler);
+        }
+    }
+
+    /**
+     * @return 第atomIdx个atom在当前结果中匹配的fact，从列存储中解码
+     */
+    public Predicate witness(TrieIterator[] iterators, int atomIdx) {
+        return kb.getRelation(atoms[atomIdx].functor).fact(iterators[atomIdx].witnessRow());
+    }
+
+    /**
+     * @return 第atomIdx个atom在当前结果中匹配的fact在relation中的行号
+     */
+    public int witnessRow(TrieIterator[] iterators, int atomIdx) {
+        return iterators[atomIdx].witnessRow();
+    }
+}
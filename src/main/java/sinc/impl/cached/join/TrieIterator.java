@@ -0,0 +1,92 @@
+package sinc.impl.cached.join;
+
+/**
+ * AtomTrie上的trie迭代器(Leapfrog Triejoin中的TrieIterator接口)。
+ *
+ * 第d层上的迭代范围为与当前前缀相同的一段tuple，key为这些tuple第d列的值，open()进入下一层，up()回到上一层。
+ * seek与next都通过二分查找实现，因此单次操作的代价为O(log N)。
+ */
+public class TrieIterator {
+    private final AtomTrie trie;
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] positions;
+    private int level = -1;
+
+    public TrieIterator(AtomTrie trie) {
+        this.trie = trie;
+        this.starts = new int[trie.depth + 1];
+        this.ends = new int[trie.depth + 1];
+        this.positions = new int[trie.depth + 1];
+    }
+
+    public void open() {
+        final int start;
+        final int end;
+        if (-1 == level) {
+            start = 0;
+            end = trie.tuples.length;
+        } else {
+            start = positions[level];
+            end = upperBound(level, start, ends[level], key());
+        }
+        level++;
+        starts[level] = start;
+        ends[level] = end;
+        positions[level] = start;
+    }
+
+    public void up() {
+        level--;
+    }
+
+    public int key() {
+        return trie.tuples[positions[level]][level];
+    }
+
+    public boolean atEnd() {
+        return positions[level] >= ends[level];
+    }
+
+    public void next() {
+        positions[level] = upperBound(level, positions[level], ends[level], key());
+    }
+
+    /**
+     * 移动到第一个不小于target的key
+     */
+    public void seek(int target) {
+        final int[][] tuples = trie.tuples;
+        int low = positions[level];
+        int high = ends[level];
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (tuples[mid][level] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        positions[level] = low;
+    }
+
+    /**
+     * @return 当前位置在relation中对应的一行，只在所有变量都已绑定时有意义
+     */
+    public int witnessRow() {
+        return trie.witnessRow((-1 == level) ? 0 : positions[level]);
+    }
+
+    private int upperBound(int lvl, int low, int high, int value) {
+        final int[][] tuples = trie.tuples;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (tuples[mid][lvl] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -3,31 +3,34 @@ package sinc.impl.cached.recal;
 import sinc.common.*;
 import sinc.impl.cached.CachedQueryMonitor;
 import sinc.impl.cached.CachedRule;
+import sinc.impl.cached.EncodedMemKB;
+import sinc.impl.cached.IndexedInclusion;
 import sinc.impl.cached.MemKB;
+import sinc.impl.cached.join.RuleJoin;
 import sinc.util.ComparableArray;
 
 import java.util.*;
+import java.util.function.Function;
 
 public class RecalculateCachedRule extends CachedRule {
-    /* 记录符合条件的grounding的中间结果 */
+    /* 记录符合条件的grounding的中间结果。PredicateCache与grounding都可能在多个rule之间共享，创建之后不再修改，
+       需要修改时创建新的对象替换(copy on write) */
     private static class PredicateCache {
         public final Predicate predicate;
-        public Set<Predicate> inclusion;  /* 对这个Set的操作仅限于读取以及替换，不要向其中添加或删除元素，
-                                             这样可以做到copy on write */ // Todo: 这里可以改为map，按arg值索引
+        public final IndexedInclusion inclusion;  // 按参数值的索引在IndexedInclusion中按需建立，并在clone之间共享
 
-        public PredicateCache(Predicate predicate) {
-            this.predicate = predicate;
-            this.inclusion = new HashSet<>();
-        }
-
-        public PredicateCache(Predicate predicate, Set<Predicate> inclusion) {
+        public PredicateCache(Predicate predicate, IndexedInclusion inclusion) {
             this.predicate = predicate;
             this.inclusion = inclusion;
         }
 
-        public PredicateCache(PredicateCache another) {
-            this.predicate = new Predicate(another.predicate);
-            this.inclusion = another.inclusion;  // copy on write
+        /**
+         * @return 第argIdx个参数绑定为argument，并且inclusion替换为新值的PredicateCache
+         */
+        public PredicateCache bind(int argIdx, Argument argument, IndexedInclusion newInclusion) {
+            final Predicate new_predicate = new Predicate(predicate);
+            new_predicate.args[argIdx] = argument;
+            return new PredicateCache(new_predicate, newInclusion);
         }
     }
 
@@ -44,40 +47,108 @@ public class RecalculateCachedRule extends CachedRule {
         }
     }
 
+    public static final int MIN_SAMPLE_SIZE = 64;
+    public static final double CONFIDENCE_Z = 1.96;  // 95%置信区间
+
+    /* 无放回均匀采样的统计：根据样本中每一项的贡献估计总体的贡献之和，以及其置信区间。
+       要估计的是不同head(或body binding)的数量，而多个grounding可能对应同一个值，如果以grounding为单位采样，重复的值
+       只在样本中计一次却被按比例放大，会高估总数。因此采样的单位是按值分好的组(见sampleGroups)：不同组的值互不相同，
+       总数就是各组贡献之和，total()是它的无偏估计 */
+    private static class SampleStat {
+        final int population;
+        int size = 0;
+        double sum = 0;
+        double sumSq = 0;
+
+        SampleStat(int population) {
+            this.population = population;
+        }
+
+        void add(double contribution) {
+            size++;
+            sum += contribution;
+            sumSq += contribution * contribution;
+        }
+
+        double total() {
+            return (0 == size) ? 0 : sum * population / size;
+        }
+
+        double margin() {
+            if (size >= population || 1 >= size) {
+                return 0;
+            }
+            final double mean = sum / size;
+            final double variance = Math.max(0, (sumSq - size * mean * mean) / (size - 1));
+            return CONFIDENCE_Z * population * Math.sqrt(variance / size * (1 - (double) size / population));
+        }
+    }
+
     private final MemKB kb;
-    private List<List<PredicateCache>> groundings = new LinkedList<>();
-    private List<List<PredicateCache>> groundingsBody = new LinkedList<>();
+    private final EncodedMemKB joinKb;  // 不使用join时为null
+    /* 采样估计的比例：0.0 <= sampleRate < 1.0 时按比例对groundings采样来估计Eval，其他值表示不采样 */
+    private final double sampleRate;
+    /* 两个grounding列表在clone时直接共享，只在共享之后的第一次更新时复制列表本身(见groundingsForUpdate)，其中的
+       grounding也只在被修改时才复制，因此clone的代价与groundings的数量无关 */
+    private List<List<PredicateCache>> groundings;
+    private List<List<PredicateCache>> groundingsBody;
+    /* 列表是否只被当前rule使用，为true时可以直接修改 */
+    private boolean ownsGroundings;
+    private boolean ownsGroundingsBody;
     private final Map<Integer, BodyFvPos> bodyFreeVars;  // 排除head时，在body中变成FV的BV及其位置
+    /* 最近一次不采样地计算fact coverage时得到的newly proved head的数量，也就是当前结构下的positive entailment数量，
+       未计算时为-1 */
+    private int entailedHeads = -1;
 
     public RecalculateCachedRule(String headFunctor, Set<RuleFingerPrint> cache, MemKB kb) {
+        this(headFunctor, cache, kb, false, -1.0);
+    }
+
+    /**
+     * @param joinEvaluation 为true且kb为EncodedMemKB时，直接用Leapfrog Triejoin计算Eval、Counter Example与Grounding，
+     *                       不再维护groundings缓存
+     * @param sampleRate 0.0 <= sampleRate < 1.0 时先在采样的groundings上估计Eval，其他值表示不采样
+     */
+    public RecalculateCachedRule(
+            String headFunctor, Set<RuleFingerPrint> cache, MemKB kb, boolean joinEvaluation, double sampleRate
+    ) {
         super(headFunctor, kb.getArity(headFunctor), cache);
         this.kb = kb;
+        this.joinKb = (joinEvaluation && kb instanceof EncodedMemKB) ? (EncodedMemKB) kb : null;
+        this.sampleRate = sampleRate;
 
         /* 把无BV的head加入 */
-        final PredicateCache head_cache = new PredicateCache(new Predicate(headFunctor, getHead().arity()));
-        head_cache.inclusion = kb.getAllFacts(headFunctor);
+        final PredicateCache head_cache = new PredicateCache(
+                new Predicate(headFunctor, getHead().arity()), kb.getIndexedFacts(headFunctor)
+        );
         final List<PredicateCache> grounding = new ArrayList<>();
         grounding.add(head_cache);
+        groundings = new LinkedList<>();
         groundings.add(grounding);
 
         final List<PredicateCache> grounding_body = new ArrayList<>();
         grounding_body.add(null);  // 保持两种cache的index一致
+        groundingsBody = new LinkedList<>();
         groundingsBody.add(grounding_body);
+        ownsGroundings = true;
+        ownsGroundingsBody = true;
 
         bodyFreeVars = new HashMap<>();
 
-        this.eval = calculateEval();
+        this.eval = calculateEval(false);
     }
 
     public RecalculateCachedRule(RecalculateCachedRule another) {
         super(another);
         this.kb = another.kb;
-        for (final List<PredicateCache> grounding: another.groundings) {
-            this.groundings.add(dupGrounding(grounding, false));
-        }
-        for (final List<PredicateCache> grounding_body: another.groundingsBody) {
-            this.groundingsBody.add(dupGrounding(grounding_body, true));
-        }
+        this.joinKb = another.joinKb;
+        this.sampleRate = another.sampleRate;
+        this.groundings = another.groundings;  // copy on write
+        this.groundingsBody = another.groundingsBody;  // copy on write
+        this.ownsGroundings = false;
+        this.ownsGroundingsBody = false;
+        another.ownsGroundings = false;
+        another.ownsGroundingsBody = false;
         this.bodyFreeVars = new HashMap<>(another.bodyFreeVars);
     }
 
@@ -115,6 +186,9 @@ public class RecalculateCachedRule extends CachedRule {
     private void boundFreeVar2ExistingVarUpdateCache(
             final int predIdx, final int argIdx, final int varId, boolean bodyOnly
     ) {
+        if (null != joinKb) {
+            return;
+        }
         final int pred_idx_start;
         final List<List<PredicateCache>> grounding_list;
         if (bodyOnly) {
@@ -123,10 +197,10 @@ public class RecalculateCachedRule extends CachedRule {
                 return;
             }
             pred_idx_start = FIRST_BODY_PRED_IDX;
-            grounding_list = groundingsBody;
+            grounding_list = groundingsForUpdate(true);
         } else {
             pred_idx_start = HEAD_PRED_IDX;
-            grounding_list = groundings;
+            grounding_list = groundingsForUpdate(false);
         }
 
         if (bodyOnly && bodyFreeVars.containsKey(varId)) {
@@ -153,21 +227,19 @@ public class RecalculateCachedRule extends CachedRule {
                             final PredicateCache compared_pred_cache = grounding.get(pred_idx);
                             final Argument compared_argument = compared_pred_cache.predicate.args[arg_idx];
                             final PredicateCache target_pred_cache = grounding.get(predIdx);
-                            final Set<Predicate> filtered_predicates = new HashSet<>();
-                            for (Predicate fv_pred: target_pred_cache.inclusion) {
-                                final Argument fv_arg = fv_pred.args[argIdx];
-                                if (compared_argument.name.equals(fv_arg.name)) {
-                                    filtered_predicates.add(fv_pred);
-                                }
-                            }
+                            final IndexedInclusion filtered_predicates = target_pred_cache.inclusion.select(
+                                    argIdx, compared_argument.name
+                            );
 
                             if (filtered_predicates.isEmpty()) {
                                 /* 如果过滤之后FV集合为空，那么说明当前的grounding不能用 */
                                 grounding_itr.remove();
                             } else {
                                 /* 如果当前grounding仍然满足要求，则更新对应参数 */
-                                target_pred_cache.predicate.args[argIdx] = compared_argument;
-                                target_pred_cache.inclusion = filtered_predicates;  // copy on write
+                                grounding_itr.set(replaceInGrounding(
+                                        grounding, predIdx,
+                                        target_pred_cache.bind(argIdx, compared_argument, filtered_predicates)
+                                ));
                             }
                         }
                         break;
@@ -214,15 +286,18 @@ public class RecalculateCachedRule extends CachedRule {
     private void boundFreeVar2ExistingVarUpdateCache(
             final Predicate newPredicate, final int argIdx, final int varId, boolean bodyOnly
     ) {
+        if (null != joinKb) {
+            return;
+        }
         final int pred_idx_start;
         final List<List<PredicateCache>> grounding_list;
         if (bodyOnly) {
             /* 修改肯定在body内，不需要额外判断 */
             pred_idx_start = FIRST_BODY_PRED_IDX;
-            grounding_list = groundingsBody;
+            grounding_list = groundingsForUpdate(true);
         } else {
             pred_idx_start = HEAD_PRED_IDX;
-            grounding_list = groundings;
+            grounding_list = groundingsForUpdate(false);
         }
 
         if (bodyOnly && bodyFreeVars.containsKey(varId)) {
@@ -230,7 +305,8 @@ public class RecalculateCachedRule extends CachedRule {
             final BodyFvPos arg_pos = bodyFreeVars.remove(varId);
             boundFreeVars2NewVarUpdateCache(newPredicate, argIdx, arg_pos.bodyPredIdx, arg_pos.bodyArgIdx, true);
         } else {
-            final Map<String, Set<Predicate>> arg_indices_map = kb.getArgIndices(newPredicate.functor, argIdx);
+            final Map<String, IndexedInclusion> arg_indices_map =
+                    kb.getIndexedFacts(newPredicate.functor).index(argIdx);
             boolean found = false;
             final ListIterator<List<PredicateCache>> grounding_itr = grounding_list.listIterator();
             for (int pred_idx = pred_idx_start; pred_idx < structure.size() - 1 && !found; pred_idx++) {  // 不要和刚设置的变量比较
@@ -247,19 +323,19 @@ public class RecalculateCachedRule extends CachedRule {
                             final List<PredicateCache> grounding = grounding_itr.next();
                             final PredicateCache compared_pred_cache = grounding.get(pred_idx);
                             final Argument compared_argument = compared_pred_cache.predicate.args[arg_idx];
-                            final Set<Predicate> inclusion = arg_indices_map.get(compared_argument.name);
+                            final IndexedInclusion inclusion = arg_indices_map.get(compared_argument.name);
 
                             if (null == inclusion) {
                                 /* 对应变量在新参数中没有，删除grounding */
                                 grounding_itr.remove();
                             } else {
                                 /* 将对应的值添加在grounding末尾 */
-                                final PredicateCache new_pred_cache = new PredicateCache(
-                                        new Predicate(newPredicate.functor, newPredicate.arity())
-                                );
-                                new_pred_cache.predicate.args[argIdx] = compared_argument;
-                                new_pred_cache.inclusion = inclusion;  // copy on write
-                                grounding.add(new_pred_cache);
+                                final Predicate new_predicate =
+                                        new Predicate(newPredicate.functor, newPredicate.arity());
+                                new_predicate.args[argIdx] = compared_argument;
+                                grounding_itr.set(appendToGrounding(
+                                        grounding, new PredicateCache(new_predicate, inclusion)
+                                ));
                             }
                         }
                         break;
@@ -279,12 +355,13 @@ public class RecalculateCachedRule extends CachedRule {
                 }
 
                 /* Cache中增加新的谓词 */
-                final Set<Predicate> new_inclusion = kb.getAllFacts(newPredicate.functor);
-                for (List<PredicateCache> grounding: grounding_list) {
-                    grounding.add(new PredicateCache(
+                final IndexedInclusion new_inclusion = kb.getIndexedFacts(newPredicate.functor);
+                final ListIterator<List<PredicateCache>> append_itr = grounding_list.listIterator();
+                while (append_itr.hasNext()) {
+                    append_itr.set(appendToGrounding(append_itr.next(), new PredicateCache(
                             new Predicate(newPredicate.functor, newPredicate.arity()),
                             new_inclusion
-                    ));
+                    )));
                 }
             }
         }
@@ -315,15 +392,18 @@ public class RecalculateCachedRule extends CachedRule {
     private void boundFreeVars2NewVarUpdateCache(
             final int predIdx1, final int argIdx1, final int predIdx2, final int argIdx2, final boolean bodyOnly
     ) {
+        if (null != joinKb) {
+            return;
+        }
         final List<List<PredicateCache>> grounding_list;
         if (bodyOnly) {
             if (HEAD_PRED_IDX == predIdx1 && HEAD_PRED_IDX == predIdx2) {
                 /* 修改不涉及body的时候，body的cache不需要更新 */
                 return;
             }
-            grounding_list = groundingsBody;
+            grounding_list = groundingsForUpdate(true);
         } else {
-            grounding_list = groundings;
+            grounding_list = groundingsForUpdate(false);
         }
 
         ListIterator<List<PredicateCache>> grounding_itr = grounding_list.listIterator();
@@ -332,31 +412,21 @@ public class RecalculateCachedRule extends CachedRule {
             while (grounding_itr.hasNext()) {
                 final List<PredicateCache> grounding = grounding_itr.next();
                 final PredicateCache target_pred_cache = grounding.get(predIdx1);
-                final Map<String, Set<Predicate>> inclusion_map = new HashMap<>();
-                for (Predicate predicate: target_pred_cache.inclusion) {
-                    final Argument argument1 = predicate.args[argIdx1];
-                    final Argument argument2 = predicate.args[argIdx2];
-                    if (argument1.name.equals(argument2.name)) {
-                        inclusion_map.compute(argument1.name, (constant, set) -> {
-                            if (null == set) {
-                                set = new HashSet<>();
-                            }
-                            set.add(predicate);
-                            return set;
-                        });
-                    }
-                }
 
-                /* 展开原有grounding */
+                /* 展开原有grounding：在第一列的索引中，找出第二列取值相同的子集 */
                 grounding_itr.remove();
-                for (Map.Entry<String, Set<Predicate>> entry: inclusion_map.entrySet()) {
-                    final List<PredicateCache> new_grounding = dupGrounding(grounding, bodyOnly);
-                    final PredicateCache new_target_pred_cache = new_grounding.get(predIdx1);
+                for (Map.Entry<String, IndexedInclusion> entry: target_pred_cache.inclusion.index(argIdx1).entrySet()) {
+                    final IndexedInclusion inclusion = entry.getValue().select(argIdx2, entry.getKey());
+                    if (inclusion.isEmpty()) {
+                        continue;
+                    }
                     final Constant constant = new Constant(CONSTANT_ARG_ID, entry.getKey());
-                    new_target_pred_cache.predicate.args[argIdx1] = constant;
-                    new_target_pred_cache.predicate.args[argIdx2] = constant;
-                    new_target_pred_cache.inclusion = entry.getValue();
-                    grounding_itr.add(new_grounding);
+                    final Predicate new_predicate = new Predicate(target_pred_cache.predicate);
+                    new_predicate.args[argIdx1] = constant;
+                    new_predicate.args[argIdx2] = constant;
+                    grounding_itr.add(replaceInGrounding(
+                            grounding, predIdx1, new PredicateCache(new_predicate, inclusion)
+                    ));
                 }
             }
         } else {
@@ -366,39 +436,18 @@ public class RecalculateCachedRule extends CachedRule {
                     final List<PredicateCache> grounding = grounding_itr.next();
 
                     /* 分别找出参数常量值范围 */
-                    final PredicateCache target_pred_cache1 = grounding.get(predIdx1);
-                    final Map<String, Set<Predicate>> inclusion_map1 = new HashMap<>();
-                    for (Predicate predicate : target_pred_cache1.inclusion) {
-                        final Argument argument1 = predicate.args[argIdx1];
-                        inclusion_map1.compute(argument1.name, (constant, set) -> {
-                            if (null == set) {
-                                set = new HashSet<>();
-                            }
-                            set.add(predicate);
-                            return set;
-                        });
-                    }
-
-                    final PredicateCache target_pred_cache2 = grounding.get(predIdx2);
-                    final Map<String, Set<Predicate>> inclusion_map2 = new HashMap<>();
-                    for (Predicate predicate : target_pred_cache2.inclusion) {
-                        final Argument argument2 = predicate.args[argIdx2];
-                        inclusion_map2.compute(argument2.name, (constant, set) -> {
-                            if (null == set) {
-                                set = new HashSet<>();
-                            }
-                            set.add(predicate);
-                            return set;
-                        });
-                    }
+                    final Map<String, IndexedInclusion> inclusion_map1 =
+                            grounding.get(predIdx1).inclusion.index(argIdx1);
+                    final Map<String, IndexedInclusion> inclusion_map2 =
+                            grounding.get(predIdx2).inclusion.index(argIdx2);
 
                     /* 做交叉 */
                     final int comparing_pred_idx;
                     final int comparing_arg_idx;
-                    final Map<String, Set<Predicate>> comparing_map;
+                    final Map<String, IndexedInclusion> comparing_map;
                     final int compared_pred_idx;
                     final int compared_arg_idx;
-                    final Map<String, Set<Predicate>> compared_map;
+                    final Map<String, IndexedInclusion> compared_map;
                     if (inclusion_map1.size() <= inclusion_map2.size()) {
                         comparing_pred_idx = predIdx1;
                         comparing_arg_idx = argIdx1;
@@ -415,22 +464,20 @@ public class RecalculateCachedRule extends CachedRule {
                         compared_map = inclusion_map1;
                     }
                     grounding_itr.remove();
-                    for (Map.Entry<String, Set<Predicate>> entry : comparing_map.entrySet()) {
+                    for (Map.Entry<String, IndexedInclusion> entry : comparing_map.entrySet()) {
                         final String constant_symbol = entry.getKey();
-                        final Set<Predicate> compared_inclusion = compared_map.get(constant_symbol);
+                        final IndexedInclusion compared_inclusion = compared_map.get(constant_symbol);
                         if (null != compared_inclusion) {
-                            final Set<Predicate> comparing_inclusion = entry.getValue();
+                            final IndexedInclusion comparing_inclusion = entry.getValue();
                             final Constant constant = new Constant(CONSTANT_ARG_ID, constant_symbol);
 
-                            final List<PredicateCache> new_grounding = dupGrounding(grounding, bodyOnly);
-                            final PredicateCache comparing_pred_cache = new_grounding.get(comparing_pred_idx);
-                            comparing_pred_cache.predicate.args[comparing_arg_idx] = constant;
-                            comparing_pred_cache.inclusion = comparing_inclusion;
-
-                            final PredicateCache compared_pred_cache = new_grounding.get(compared_pred_idx);
-                            compared_pred_cache.predicate.args[compared_arg_idx] = constant;
-                            compared_pred_cache.inclusion = compared_inclusion;
-
+                            final List<PredicateCache> new_grounding = new ArrayList<>(grounding);
+                            new_grounding.set(comparing_pred_idx, grounding.get(comparing_pred_idx).bind(
+                                    comparing_arg_idx, constant, comparing_inclusion
+                            ));
+                            new_grounding.set(compared_pred_idx, grounding.get(compared_pred_idx).bind(
+                                    compared_arg_idx, constant, compared_inclusion
+                            ));
                             grounding_itr.add(new_grounding);
                         }
                     }
@@ -480,29 +527,33 @@ public class RecalculateCachedRule extends CachedRule {
     private void boundFreeVars2NewVarUpdateCache(
             final Predicate newPredicate, final int argIdx1, final int predIdx2, final int argIdx2, final boolean bodyOnly
     ) {
+        if (null != joinKb) {
+            return;
+        }
         final int predIdx1 = structure.size() - 1;
         final List<List<PredicateCache>> grounding_list;
         if (bodyOnly) {
             /* 修改一定涉及body，predIdx1一定是在body里 */
-            grounding_list = groundingsBody;
+            grounding_list = groundingsForUpdate(true);
         } else {
-            grounding_list = groundings;
+            grounding_list = groundingsForUpdate(false);
         }
 
         /* 而且在这种情况下，predIdx1 != predIdx2 */
         final ListIterator<List<PredicateCache>> grounding_itr = grounding_list.listIterator();
-        final Map<String, Set<Predicate>> inclusion_map1 = kb.getArgIndices(newPredicate.functor, argIdx1);
+        final Map<String, IndexedInclusion> inclusion_map1 =
+                kb.getIndexedFacts(newPredicate.functor).index(argIdx1);
         if (bodyOnly && HEAD_PRED_IDX == predIdx2) {
             /* body中没有相同的BV，记录一个Body FV */
             bodyFreeVars.put(boundedVars.size() - 1, new BodyFvPos(structure.size() - 1, argIdx1, argIdx2));
 
             /* Cache中增加新的谓词 */
-            final Set<Predicate> new_inclusion = kb.getAllFacts(newPredicate.functor);
-            for (List<PredicateCache> grounding: grounding_list) {
-                grounding.add(new PredicateCache(
+            final IndexedInclusion new_inclusion = kb.getIndexedFacts(newPredicate.functor);
+            while (grounding_itr.hasNext()) {
+                grounding_itr.set(appendToGrounding(grounding_itr.next(), new PredicateCache(
                         new Predicate(newPredicate.functor, newPredicate.arity()),
                         new_inclusion
-                ));
+                )));
             }
         } else {
             /* 两张表一起过滤 */
@@ -510,26 +561,15 @@ public class RecalculateCachedRule extends CachedRule {
                 final List<PredicateCache> grounding = grounding_itr.next();
 
                 /* 找出参数常量值范围 */
-                final PredicateCache target_pred_cache2 = grounding.get(predIdx2);
-                final Map<String, Set<Predicate>> inclusion_map2 = new HashMap<>();
-                for (Predicate predicate : target_pred_cache2.inclusion) {
-                    final Argument argument2 = predicate.args[argIdx2];
-                    inclusion_map2.compute(argument2.name, (constant, set) -> {
-                        if (null == set) {
-                            set = new HashSet<>();
-                        }
-                        set.add(predicate);
-                        return set;
-                    });
-                }
+                final Map<String, IndexedInclusion> inclusion_map2 = grounding.get(predIdx2).inclusion.index(argIdx2);
 
                 /* 做交叉 */
                 final int comparing_pred_idx;
                 final int comparing_arg_idx;
-                final Map<String, Set<Predicate>> comparing_map;
+                final Map<String, IndexedInclusion> comparing_map;
                 final int compared_pred_idx;
                 final int compared_arg_idx;
-                final Map<String, Set<Predicate>> compared_map;
+                final Map<String, IndexedInclusion> compared_map;
                 if (inclusion_map1.size() <= inclusion_map2.size()) {
                     comparing_pred_idx = predIdx1;
                     comparing_arg_idx = argIdx1;
@@ -546,26 +586,22 @@ public class RecalculateCachedRule extends CachedRule {
                     compared_map = inclusion_map1;
                 }
                 grounding_itr.remove();
-                for (Map.Entry<String, Set<Predicate>> entry : comparing_map.entrySet()) {
+                for (Map.Entry<String, IndexedInclusion> entry : comparing_map.entrySet()) {
                     final String constant_symbol = entry.getKey();
-                    final Set<Predicate> compared_inclusion = compared_map.get(constant_symbol);
+                    final IndexedInclusion compared_inclusion = compared_map.get(constant_symbol);
                     if (null != compared_inclusion) {
-                        final Set<Predicate> comparing_inclusion = entry.getValue();
+                        final IndexedInclusion comparing_inclusion = entry.getValue();
                         final Constant constant = new Constant(CONSTANT_ARG_ID, constant_symbol);
 
-                        final List<PredicateCache> new_grounding = dupGrounding(grounding, bodyOnly);
-                        new_grounding.add(new PredicateCache(
-                                new Predicate(newPredicate.functor, newPredicate.arity())
+                        final List<PredicateCache> new_grounding = appendToGrounding(grounding, new PredicateCache(
+                                new Predicate(newPredicate.functor, newPredicate.arity()), IndexedInclusion.EMPTY
+                        ));
+                        new_grounding.set(comparing_pred_idx, new_grounding.get(comparing_pred_idx).bind(
+                                comparing_arg_idx, constant, comparing_inclusion
+                        ));
+                        new_grounding.set(compared_pred_idx, new_grounding.get(compared_pred_idx).bind(
+                                compared_arg_idx, constant, compared_inclusion
                         ));
-
-                        final PredicateCache comparing_pred_cache = new_grounding.get(comparing_pred_idx);
-                        comparing_pred_cache.predicate.args[comparing_arg_idx] = constant;
-                        comparing_pred_cache.inclusion = comparing_inclusion;
-
-                        final PredicateCache compared_pred_cache = new_grounding.get(compared_pred_idx);
-                        compared_pred_cache.predicate.args[compared_arg_idx] = constant;
-                        compared_pred_cache.inclusion = compared_inclusion;
-
                         grounding_itr.add(new_grounding);
                     }
                 }
@@ -598,56 +634,154 @@ public class RecalculateCachedRule extends CachedRule {
     private void boundFreeVar2ConstantUpdateCache(
             final int predIdx, final int argIdx, final String constantSymbol, boolean bodyOnly
     ) {
+        if (null != joinKb) {
+            return;
+        }
         final List<List<PredicateCache>> grounding_list;
         if (bodyOnly) {
             if (HEAD_PRED_IDX == predIdx) {
                 /* 修改不涉及body的时候，body的cache不需要更新 */
                 return;
             }
-            grounding_list = groundingsBody;
+            grounding_list = groundingsForUpdate(true);
         } else {
-            grounding_list = groundings;
+            grounding_list = groundingsForUpdate(false);
         }
 
         /* 过滤所有grounding */
         final Constant constant = new Constant(CONSTANT_ARG_ID, constantSymbol);
-        final Iterator<List<PredicateCache>> grounding_itr = grounding_list.iterator();
+        final ListIterator<List<PredicateCache>> grounding_itr = grounding_list.listIterator();
         while (grounding_itr.hasNext()) {
             final List<PredicateCache> grounding = grounding_itr.next();
             final PredicateCache target_pred_cache = grounding.get(predIdx);
-            final Set<Predicate> filtered_inclusion = new HashSet<>();
-            for (Predicate predicate: target_pred_cache.inclusion) {
-                final Argument argument = predicate.args[argIdx];
-                if (constantSymbol.equals(argument.name)) {
-                    filtered_inclusion.add(predicate);
-                }
-            }
+            final IndexedInclusion filtered_inclusion = target_pred_cache.inclusion.select(argIdx, constantSymbol);
             if (filtered_inclusion.isEmpty()) {
                 grounding_itr.remove();
             } else {
-                target_pred_cache.predicate.args[argIdx] = constant;
-                target_pred_cache.inclusion = filtered_inclusion;  // copy on write
+                grounding_itr.set(replaceInGrounding(
+                        grounding, predIdx, target_pred_cache.bind(argIdx, constant, filtered_inclusion)
+                ));
             }
         }
     }
 
+    private int sampleSize(int population) {
+        if (0.0 > sampleRate || 1.0 <= sampleRate) {
+            return population;
+        }
+        return Math.min(population, Math.max(MIN_SAMPLE_SIZE, (int) Math.ceil(population * sampleRate)));
+    }
+
+    /* 采样的结果：groups是被选中的组，population是总体中组的数量 */
+    private static class SampledGroups {
+        final List<List<List<PredicateCache>>> groups;
+        final int population;
+
+        SampledGroups(List<List<List<PredicateCache>>> groups, int population) {
+            this.groups = groups;
+            this.population = population;
+        }
+
+        boolean sampled() {
+            return groups.size() < population;
+        }
+    }
+
+    /**
+     * 把groundings按key分组，key相同的grounding贡献的值相同，key不同的grounding贡献的值互不相同，然后对组做无放回的
+     * 均匀采样(selection sampling)。不需要采样时把所有groundings作为唯一的一组返回
+     */
+    private <K> SampledGroups sampleGroups(
+            List<List<PredicateCache>> groundingList, Function<List<PredicateCache>, K> key, Random random
+    ) {
+        if (sampleSize(groundingList.size()) >= groundingList.size()) {
+            return new SampledGroups(Collections.singletonList(groundingList), 1);
+        }
+        final Map<K, List<List<PredicateCache>>> key_2_group = new LinkedHashMap<>();
+        for (List<PredicateCache> grounding: groundingList) {
+            key_2_group.computeIfAbsent(key.apply(grounding), k -> new ArrayList<>()).add(grounding);
+        }
+        final int population = key_2_group.size();
+        final int sample_size = sampleSize(population);
+        if (sample_size >= population) {
+            return new SampledGroups(new ArrayList<>(key_2_group.values()), population);
+        }
+        final List<List<List<PredicateCache>>> samples = new ArrayList<>(sample_size);
+        int remaining = population;
+        for (List<List<PredicateCache>> group: key_2_group.values()) {
+            if (random.nextInt(remaining) < sample_size - samples.size()) {
+                samples.add(group);
+                if (samples.size() >= sample_size) {
+                    break;
+                }
+            }
+            remaining--;
+        }
+        return new SampledGroups(samples, population);
+    }
+
+    private SampledGroups sampleHeadGroups(boolean estimate, Random random) {
+        if (!estimate) {
+            return new SampledGroups(Collections.singletonList(groundings), 1);
+        }
+        return sampleGroups(groundings, grounding -> grounding.get(HEAD_PRED_IDX).predicate, random);
+    }
+
+    /**
+     * 同一个rule的采样结果是确定的
+     */
+    private Random newSampleRandom() {
+        return new Random(fingerPrint.hashCode());
+    }
+
     @Override
     protected double factCoverage() {
+        return factCoverage(true);
+    }
+
+    private double factCoverage(boolean estimate) {
+        if (null != joinKb) {
+            return joinFactCoverage();
+        }
+        final SampledGroups head_groups = sampleHeadGroups(estimate, newSampleRandom());
+        final SampleStat head_stat = new SampleStat(head_groups.population);
         final Set<Predicate> entailed_head = new HashSet<>();
-        for (final List<PredicateCache> grounding_cache: groundings) {
-            final PredicateCache head_pred_cache = grounding_cache.get(HEAD_PRED_IDX);
-            for (Predicate head_pred: head_pred_cache.inclusion) {
-                if (!kb.hasProved(head_pred)) {
-                    entailed_head.add(head_pred);
+        for (final List<List<PredicateCache>> group: head_groups.groups) {
+            final int entailed_before = entailed_head.size();
+            for (final List<PredicateCache> grounding_cache: group) {
+                final PredicateCache head_pred_cache = grounding_cache.get(HEAD_PRED_IDX);
+                for (Predicate head_pred: head_pred_cache.inclusion) {
+                    if (!kb.hasProved(head_pred)) {
+                        entailed_head.add(head_pred);
+                    }
                 }
             }
+            head_stat.add(entailed_head.size() - entailed_before);
         }
-        return ((double) entailed_head.size()) /
+        entailedHeads = head_groups.sampled() ? -1 : entailed_head.size();
+
+        /* 采样估计时取置信区间的上界，只剪掉有把握覆盖不足的rule */
+        return (head_stat.total() + head_stat.margin()) /
                 kb.getAllFacts(structure.get(HEAD_PRED_IDX).functor).size();
     }
 
     @Override
     protected Eval calculateEval() {
+        return calculateEval(true);
+    }
+
+    @Override
+    protected Eval calculateExactEval() {
+        return calculateEval(false);
+    }
+
+    /**
+     * @param estimate 如果为true且开启了采样，则只在采样的head groundings与body groundings的组上计算，并估计置信区间
+     */
+    private Eval calculateEval(boolean estimate) {
+        if (null != joinKb) {
+            return joinEval();
+        }
         /* 统计head中的变量信息 */
         final long time_query_begin = System.nanoTime();
         final Set<Integer> head_vars = new HashSet<>();  // 统计Head only BV
@@ -686,26 +820,37 @@ public class RecalculateCachedRule extends CachedRule {
                 }
             }
         }
+        final Function<List<PredicateCache>, ComparableArray<String>> gv_binding_of = grounding_body -> {
+            final ComparableArray<String> binding = new ComparableArray<>(new String[body_gv_pos.size()]);
+            for (int i = 0; i < body_gv_pos.size(); i++) {
+                final PredArgPos pos = body_gv_pos.get(i);
+                final Predicate body_pred = grounding_body.get(pos.predIdx).predicate;
+                final Argument argument = body_pred.args[pos.argIdx];
+                binding.arr[i] = argument.name;
+            }
+            return binding;
+        };
+        final Random random = newSampleRandom();
+        final SampledGroups head_groups = sampleHeadGroups(estimate, random);
+        final SampledGroups body_groups = estimate ?
+                sampleGroups(groundingsBody, gv_binding_of, random) :
+                new SampledGroups(Collections.singletonList(groundingsBody), 1);
+        final SampleStat body_stat = new SampleStat(body_groups.population);
         final long time_pre_done = System.nanoTime();
         cacheMonitor.preComputingCostInNano += time_pre_done - time_query_begin;
 
         /* 计算all entail的数量 */
-        int body_gv_fv_bindings_cnt = 0;
         int cartesian_operations = 0;
         if (bodyFreeVars.isEmpty()) {
             /* 只需要统计Body GV的binding组合 */
             final Set<ComparableArray<String>> body_gv_bindings = new HashSet<>();
-            for (final List<PredicateCache> grounding_body: groundingsBody) {
-                final ComparableArray<String> binding = new ComparableArray<>(new String[body_gv_pos.size()]);
-                for (int i = 0; i < body_gv_pos.size(); i++) {
-                    final PredArgPos pos = body_gv_pos.get(i);
-                    final Predicate body_pred = grounding_body.get(pos.predIdx).predicate;
-                    final Argument argument = body_pred.args[pos.argIdx];
-                    binding.arr[i] = argument.name;
+            for (final List<List<PredicateCache>> group: body_groups.groups) {
+                final int bindings_before = body_gv_bindings.size();
+                for (final List<PredicateCache> grounding_body: group) {
+                    body_gv_bindings.add(gv_binding_of.apply(grounding_body));
                 }
-                body_gv_bindings.add(binding);
+                body_stat.add(body_gv_bindings.size() - bindings_before);
             }
-            body_gv_fv_bindings_cnt = body_gv_bindings.size();
         } else {
             /* 按predicate组合Body FV */
             final Map<Integer, List<Integer>> pred_idx_2_arg_idxs_of_bfv = new HashMap<>();
@@ -719,99 +864,112 @@ public class RecalculateCachedRule extends CachedRule {
             /* 统计Body FV与GV一起组合的数量 */
             final Map<ComparableArray<String>, Set<ComparableArray<ComparableArray<String>>>>
                     body_gv_bindings_2_fv_bindings = new HashMap<>();
-            for (final List<PredicateCache> grounding_body: groundingsBody) {
-                /* 给Body GV赋值 */
-                final ComparableArray<String> gv_binding = new ComparableArray<>(new String[body_gv_pos.size()]);
-                for (int i = 0; i < body_gv_pos.size(); i++) {
-                    final PredArgPos pos = body_gv_pos.get(i);
-                    final Predicate body_pred = grounding_body.get(pos.predIdx).predicate;
-                    final Argument argument = body_pred.args[pos.argIdx];
-                    gv_binding.arr[i] = argument.name;
-                }
-
-                /* Body FV 的取值范围不是全部constant，且要按照pred进行组合 */
-                final Set<ComparableArray<String>>[] fv_within_pred_bindings = new Set[pred_idx_2_arg_idxs_of_bfv.size()];
-                {
-                    int i = 0;
-                    for (Map.Entry<Integer, List<Integer>> entry: pred_idx_2_arg_idxs_of_bfv.entrySet()) {
-                        final int body_pred_idx = entry.getKey();
-                        final List<Integer> body_arg_idxs = entry.getValue();
-                        final Set<ComparableArray<String>> values = new HashSet<>();
-                        final PredicateCache pred_cache = grounding_body.get(body_pred_idx);
-                        for (Predicate included_pred : pred_cache.inclusion) {
-                            final String[] fv_within_pred_binding = new String[body_arg_idxs.size()];
-                            for (int j = 0; j < fv_within_pred_binding.length; j++) {
-                                fv_within_pred_binding[j] = included_pred.args[body_arg_idxs.get(j)].name;
+            for (final List<List<PredicateCache>> group: body_groups.groups) {
+                int group_fv_bindings = 0;
+                for (final List<PredicateCache> grounding_body: group) {
+                    /* 给Body GV赋值 */
+                    final ComparableArray<String> gv_binding = gv_binding_of.apply(grounding_body);
+
+                    /* Body FV 的取值范围不是全部constant，且要按照pred进行组合 */
+                    final Set<ComparableArray<String>>[] fv_within_pred_bindings = new Set[pred_idx_2_arg_idxs_of_bfv.size()];
+                    {
+                        int i = 0;
+                        for (Map.Entry<Integer, List<Integer>> entry: pred_idx_2_arg_idxs_of_bfv.entrySet()) {
+                            final int body_pred_idx = entry.getKey();
+                            final List<Integer> body_arg_idxs = entry.getValue();
+                            final Set<ComparableArray<String>> values = new HashSet<>();
+                            final PredicateCache pred_cache = grounding_body.get(body_pred_idx);
+                            for (Predicate included_pred : pred_cache.inclusion) {
+                                final String[] fv_within_pred_binding = new String[body_arg_idxs.size()];
+                                for (int j = 0; j < fv_within_pred_binding.length; j++) {
+                                    fv_within_pred_binding[j] = included_pred.args[body_arg_idxs.get(j)].name;
+                                }
+                                values.add(new ComparableArray<>(fv_within_pred_binding));
                             }
-                            values.add(new ComparableArray<>(fv_within_pred_binding));
+                            fv_within_pred_bindings[i] = values;
+                            i++;
                         }
-                        fv_within_pred_bindings[i] = values;
-                        i++;
                     }
+                    final Set<ComparableArray<ComparableArray<String>>> fv_bindings =
+                            body_gv_bindings_2_fv_bindings.computeIfAbsent(
+                                    gv_binding, k -> new HashSet<>()
+                            );
+                    final int fv_bindings_before = fv_bindings.size();
+                    addBodyFvBindings(fv_bindings, fv_within_pred_bindings);
+                    group_fv_bindings += fv_bindings.size() - fv_bindings_before;
+                    int delta_cartesian_operations = 1;
+                    for (Set<ComparableArray<String>> fv_within_pred_values: fv_within_pred_bindings) {
+                        delta_cartesian_operations *= fv_within_pred_values.size();
+                    }
+                    cartesian_operations += delta_cartesian_operations;
                 }
-                final Set<ComparableArray<ComparableArray<String>>> fv_bindings =
-                        body_gv_bindings_2_fv_bindings.computeIfAbsent(
-                                gv_binding, k -> new HashSet<>()
-                        );
-                addBodyFvBindings(fv_bindings, fv_within_pred_bindings);
-                int delta_cartesian_operations = 1;
-                for (Set<ComparableArray<String>> fv_within_pred_values: fv_within_pred_bindings) {
-                    delta_cartesian_operations *= fv_within_pred_values.size();
-                }
-                cartesian_operations += delta_cartesian_operations;
-            }
-            for (Set<ComparableArray<ComparableArray<String>>> fv_bindings: body_gv_bindings_2_fv_bindings.values()) {
-                body_gv_fv_bindings_cnt += fv_bindings.size();
+                body_stat.add(group_fv_bindings);
             }
         }
-        final double all_entails = body_gv_fv_bindings_cnt * Math.pow(
-                kb.totalConstants(), head_fv_cnt + head_vars.size()
-        );
+        final double head_only_combinations = Math.pow(kb.totalConstants(), head_fv_cnt + head_vars.size());
+        final double all_entails = body_stat.total() * head_only_combinations;
         final long time_all_entail_done = System.nanoTime();
         cacheMonitor.allEntailQueryCostInNano += time_all_entail_done - time_pre_done;
 
         /* 计算new pos entail的数量 */
         final Set<Predicate> newly_proved = new HashSet<>();
         final Set<Predicate> already_proved = new HashSet<>();
-        if (0 == head_fv_cnt) {
-            for (final List<PredicateCache> grounding : groundings) {
-                final Predicate predicate = grounding.get(HEAD_PRED_IDX).predicate;
-                if (!kb.hasProved(predicate)) {
-                    newly_proved.add(predicate);
-                } else {
-                    already_proved.add(predicate);
-                }
-            }
-        } else {
-            for (final List<PredicateCache> grounding: groundings) {
-                for (Predicate predicate: grounding.get(HEAD_PRED_IDX).inclusion) {
+        final SampleStat newly_proved_stat = new SampleStat(head_groups.population);
+        final SampleStat already_proved_stat = new SampleStat(head_groups.population);
+        for (final List<List<PredicateCache>> group: head_groups.groups) {
+            final int newly_proved_before = newly_proved.size();
+            final int already_proved_before = already_proved.size();
+            for (final List<PredicateCache> grounding: group) {
+                if (0 == head_fv_cnt) {
+                    final Predicate predicate = grounding.get(HEAD_PRED_IDX).predicate;
                     if (!kb.hasProved(predicate)) {
                         newly_proved.add(predicate);
                     } else {
                         already_proved.add(predicate);
                     }
+                } else {
+                    for (Predicate predicate: grounding.get(HEAD_PRED_IDX).inclusion) {
+                        if (!kb.hasProved(predicate)) {
+                            newly_proved.add(predicate);
+                        } else {
+                            already_proved.add(predicate);
+                        }
+                    }
                 }
             }
+            newly_proved_stat.add(newly_proved.size() - newly_proved_before);
+            already_proved_stat.add(already_proved.size() - already_proved_before);
         }
         final long time_pos_entail_done = System.nanoTime();
         cacheMonitor.posEntailQueryCostInNano += time_pos_entail_done - time_all_entail_done;
 
+        /* 更新eval */
+        /* all entailments中需要刨除已经被证明的，否则这些默认被算作了counter examples的数量 */
+        final Eval new_eval;
+        if (!head_groups.sampled() && !body_groups.sampled()) {
+            new_eval = new Eval(eval, newly_proved.size(), all_entails - already_proved.size(), size());
+        } else {
+            final double all_margin = Math.sqrt(
+                    Math.pow(body_stat.margin() * head_only_combinations, 2) + Math.pow(already_proved_stat.margin(), 2)
+            );
+            new_eval = new EstimatedEval(
+                    eval, newly_proved_stat.total(), newly_proved_stat.margin(),
+                    all_entails - already_proved_stat.total(), all_margin, size()
+            );
+        }
+
         /* 先记录当前的cache信息 */
         cacheMonitor.cacheStats.add(new CachedQueryMonitor.CacheStat(
                 groundings.size(), groundingsBody.size(), cartesian_operations
         ));
-        cacheMonitor.evalStats.add(new Eval(
-                eval, newly_proved.size(), all_entails - already_proved.size(), size()
-        ));
-
-        /* 更新eval */
-        /* all entailments中需要刨除已经被证明的，否则这些默认被算作了counter examples的数量 */
-        return new Eval(
-                eval, newly_proved.size(), all_entails - already_proved.size(), size()
-        );
+        cacheMonitor.evalStats.add(new_eval);
+        return new_eval;
     }
 
     protected Set<Predicate> findCounterExamples() {
+        if (null != joinKb) {
+            return joinCounterExamples();
+        }
         final Set<Predicate> counter_example_set = new HashSet<>();
 
         /* 统计head中的变量信息 */
@@ -1015,6 +1173,9 @@ public class RecalculateCachedRule extends CachedRule {
     }
 
     protected List<Predicate[]> findGroundings() {
+        if (null != joinKb) {
+            return joinGroundings();
+        }
         final long pos_entail_begin = System.nanoTime();
         final List<Predicate[]> grounding_list = new ArrayList<>();
         final Set<Predicate> entailed_head = new HashSet<>();
@@ -1042,24 +1203,205 @@ public class RecalculateCachedRule extends CachedRule {
         return grounding_list;
     }
 
+    private double joinFactCoverage() {
+        final RuleJoin rule_join = RuleJoin.ruleQuery(structure, joinKb);
+        final String head_functor = structure.get(HEAD_PRED_IDX).functor;
+        final int[] newly_proved = new int[]{0};
+        rule_join.forEachProjection((binding, iterators) -> {
+            if (!joinKb.hasProvedRow(head_functor, rule_join.witnessRow(iterators, HEAD_PRED_IDX))) {
+                newly_proved[0]++;
+            }
+        });
+        entailedHeads = newly_proved[0];
+        return ((double) newly_proved[0]) / kb.getAllFacts(structure.get(HEAD_PRED_IDX).functor).size();
+    }
+
+    /**
+     * Extension的handler在更新Cache之后会计算fact coverage，其中newly proved head的数量就是positive entailment的数量
+     */
+    @Override
+    protected double positiveEntailmentBound() {
+        return (0 <= entailedHeads) ? entailedHeads : super.positiveEntailmentBound();
+    }
+
+    /**
+     * all entail的数量为body在head GV上投影的数量乘以head中其他变量(FV以及只出现在head中的BV)的所有取值组合，
+     * positive entail为rule查询在head上投影得到的所有head。join模式下不采样。
+     */
+    private Eval joinEval() {
+        final long time_query_begin = System.nanoTime();
+        final Set<Integer> head_vars = new HashSet<>();
+        int head_fv_cnt = 0;
+        for (Argument argument: getHead().args) {
+            if (null == argument) {
+                head_fv_cnt++;
+            } else if (argument.isVar) {
+                head_vars.add(argument.id);
+            }
+        }
+        for (int pred_idx = FIRST_BODY_PRED_IDX; pred_idx < structure.size(); pred_idx++) {
+            for (Argument argument: structure.get(pred_idx).args) {
+                if (null != argument && argument.isVar) {
+                    head_vars.remove(argument.id);
+                }
+            }
+        }
+        final RuleJoin body_join = RuleJoin.bodyQuery(structure, joinKb);
+        final RuleJoin rule_join = RuleJoin.ruleQuery(structure, joinKb);
+        final long time_pre_done = System.nanoTime();
+        cacheMonitor.preComputingCostInNano += time_pre_done - time_query_begin;
+
+        /* 计算all entail的数量 */
+        final long body_entails = body_join.countProjections();
+        final double all_entails = body_entails * Math.pow(kb.totalConstants(), head_fv_cnt + head_vars.size());
+        final long time_all_entail_done = System.nanoTime();
+        cacheMonitor.allEntailQueryCostInNano += time_all_entail_done - time_pre_done;
+
+        /* 计算new pos entail的数量 */
+        final String head_functor = structure.get(HEAD_PRED_IDX).functor;
+        final int[] proved_cnts = new int[]{0, 0};  // newly proved, already proved
+        rule_join.forEachProjection((binding, iterators) -> {
+            proved_cnts[joinKb.hasProvedRow(head_functor, rule_join.witnessRow(iterators, HEAD_PRED_IDX)) ? 1 : 0]++;
+        });
+        final long time_pos_entail_done = System.nanoTime();
+        cacheMonitor.posEntailQueryCostInNano += time_pos_entail_done - time_all_entail_done;
+
+        final Eval new_eval = new Eval(eval, proved_cnts[0], all_entails - proved_cnts[1], size());
+
+        /* join模式下没有缓存，记录两个查询的结果数量 */
+        cacheMonitor.cacheStats.add(new CachedQueryMonitor.CacheStat(
+                proved_cnts[0] + proved_cnts[1], (int) body_entails, 0
+        ));
+        cacheMonitor.evalStats.add(new_eval);
+        return new_eval;
+    }
+
+    private Set<Predicate> joinCounterExamples() {
+        final long time_query_start = System.nanoTime();
+        final RuleJoin body_join = RuleJoin.bodyQuery(structure, joinKb);
+
+        /* head中没有被body约束的变量(FV以及只出现在head中的BV)需要遍历所有常量 */
+        final Predicate head_pred = new Predicate(getHead());
+        final Map<Integer, List<Integer>> head_ov_2_locs = new HashMap<>();
+        final List<List<Integer>> head_ov_pos_list = new ArrayList<>();
+        for (int arg_idx = 0; arg_idx < head_pred.arity(); arg_idx++) {
+            final Argument argument = head_pred.args[arg_idx];
+            if (null == argument) {
+                head_ov_pos_list.add(new ArrayList<>(Collections.singleton(arg_idx)));
+            } else if (argument.isVar && -1 == body_join.headArgVar(arg_idx)) {
+                final List<Integer> locs = head_ov_2_locs.computeIfAbsent(argument.id, k -> {
+                    final List<Integer> new_locs = new ArrayList<>();
+                    head_ov_pos_list.add(new_locs);
+                    return new_locs;
+                });
+                locs.add(arg_idx);
+            }
+        }
+        final Integer[][] head_ov_poss = new Integer[head_ov_pos_list.size()][];
+        for (int i = 0; i < head_ov_pos_list.size(); i++) {
+            head_ov_poss[i] = head_ov_pos_list.get(i).toArray(new Integer[0]);
+        }
+        final long time_pre_done = System.nanoTime();
+        cacheMonitor.preComputingCostInNano += time_pre_done - time_query_start;
+
+        /* 将body的投影代入head，并对其他变量进行迭代。head中没有其他变量时，直接用编码判断head是否在KB中 */
+        final int[] head_row = joinKb.encode(head_pred);
+        final Set<Predicate> head_templates = new HashSet<>();
+        final Set<Predicate> counter_example_set = new HashSet<>();
+        body_join.forEachProjection((binding, iterators) -> {
+            for (int arg_idx = 0; arg_idx < head_row.length; arg_idx++) {
+                final int query_var = body_join.headArgVar(arg_idx);
+                if (-1 != query_var) {
+                    head_row[arg_idx] = binding[query_var];
+                }
+            }
+            if (0 == head_ov_poss.length) {
+                if (0 > joinKb.findRow(head_pred.functor, head_row)) {
+                    counter_example_set.add(joinKb.decode(head_pred.functor, head_row));
+                }
+            } else {
+                final Predicate head_template = new Predicate(head_pred);
+                for (int arg_idx = 0; arg_idx < head_template.arity(); arg_idx++) {
+                    if (-1 != body_join.headArgVar(arg_idx)) {
+                        head_template.args[arg_idx] = joinKb.getConstant(head_row[arg_idx]);
+                    }
+                }
+                head_templates.add(head_template);
+            }
+        });
+        for (Predicate head_template: head_templates) {
+            iterate4CounterExamples(counter_example_set, head_template, 0, head_ov_poss);
+        }
+        final long time_all_entail_done = System.nanoTime();
+        cacheMonitor.allEntailQueryCostInNano += time_all_entail_done - time_pre_done;
+        return counter_example_set;
+    }
+
+    private List<Predicate[]> joinGroundings() {
+        final long pos_entail_begin = System.nanoTime();
+        final RuleJoin rule_join = RuleJoin.ruleQuery(structure, joinKb);
+        final List<Predicate[]> grounding_list = new ArrayList<>();
+        final String head_functor = structure.get(HEAD_PRED_IDX).functor;
+        rule_join.forEachProjection((binding, iterators) -> {
+            final int head_row = rule_join.witnessRow(iterators, HEAD_PRED_IDX);
+            if (!joinKb.hasProvedRow(head_functor, head_row)) {
+                /* 只有新证明的head才需要解码出grounding */
+                final Predicate[] grounding = new Predicate[structure.size()];
+                for (int pred_idx = HEAD_PRED_IDX; pred_idx < structure.size(); pred_idx++) {
+                    grounding[pred_idx] = rule_join.witness(iterators, pred_idx);
+                }
+                grounding_list.add(grounding);
+                joinKb.proveRow(head_functor, head_row);
+            }
+        });
+        final long pos_entail_done = System.nanoTime();
+        cacheMonitor.posEntailQueryCostInNano += pos_entail_done - pos_entail_begin;
+        return grounding_list;
+    }
+
     @Override
     protected void releaseCache() {
         groundings = null;
         groundingsBody = null;
     }
 
-    private List<PredicateCache> dupGrounding(List<PredicateCache> grounding, boolean bodyOnly) {
-        List<PredicateCache> new_grounding = new ArrayList<>(grounding.size());
+    /**
+     * 列表与其他rule共享时，更新之前复制grounding列表本身(其他rule可能仍在使用原来的列表)，列表中的grounding仍然共享；
+     * 复制之后列表只属于当前rule，之后的更新直接在其上进行
+     */
+    private List<List<PredicateCache>> groundingsForUpdate(boolean bodyOnly) {
         if (bodyOnly) {
-            new_grounding.add(null);
-            for (int i = FIRST_BODY_PRED_IDX; i < grounding.size(); i++) {
-                new_grounding.add(new PredicateCache(grounding.get(i)));
-            }
-        } else {
-            for (PredicateCache pred_cache: grounding) {
-                new_grounding.add(new PredicateCache(pred_cache));
+            if (!ownsGroundingsBody) {
+                groundingsBody = new LinkedList<>(groundingsBody);
+                ownsGroundingsBody = true;
             }
+            return groundingsBody;
+        }
+        if (!ownsGroundings) {
+            groundings = new LinkedList<>(groundings);
+            ownsGroundings = true;
         }
+        return groundings;
+    }
+
+    /**
+     * @return 把第predIdx项替换为predCache之后的grounding，原grounding不变
+     */
+    private static List<PredicateCache> replaceInGrounding(
+            List<PredicateCache> grounding, int predIdx, PredicateCache predCache
+    ) {
+        final List<PredicateCache> new_grounding = new ArrayList<>(grounding);
+        new_grounding.set(predIdx, predCache);
+        return new_grounding;
+    }
+
+    /**
+     * @return 在末尾添加predCache之后的grounding，原grounding不变
+     */
+    private static List<PredicateCache> appendToGrounding(List<PredicateCache> grounding, PredicateCache predCache) {
+        final List<PredicateCache> new_grounding = new ArrayList<>(grounding.size() + 1);
+        new_grounding.addAll(grounding);
+        new_grounding.add(predCache);
         return new_grounding;
     }
 
@@ -1,11 +1,12 @@
 package sinc.impl.pruned.observed;
 
+import sinc.common.BareRule;
 import sinc.common.Predicate;
 import sinc.common.Rule;
 import sinc.common.RuleFingerPrint;
 import sinc.impl.cached.MemKB;
 import sinc.impl.pruned.tabu.TabuAwareRule;
-import sinc.util.MultiSet;
+import sinc.impl.pruned.tabu.TabuStore;
 
 import java.io.PrintWriter;
 import java.util.HashSet;
@@ -22,10 +23,10 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
     protected PrintWriter specRuleWriter;
 
     public RuleWithDupSpecObservation(
-            String headFunctor, Map<RuleFingerPrint, Rule> cache, MemKB kb, Map<MultiSet<String>,
-            Set<RuleFingerPrint>> category2TabuSetMap, PrintWriter dupRuleWriter, PrintWriter specRuleWriter
+            String headFunctor, Map<RuleFingerPrint, Rule> cache, MemKB kb, TabuStore tabuStore,
+            PrintWriter dupRuleWriter, PrintWriter specRuleWriter, boolean joinEvaluation, double sampleRate
     ) {
-        super(headFunctor, uselessCache, kb, category2TabuSetMap);
+        super(headFunctor, uselessCache, kb, tabuStore, joinEvaluation, sampleRate);
         this.searchedFingerprints = cache;
         this.dupRuleWriter = dupRuleWriter;
         this.specRuleWriter = specRuleWriter;
@@ -47,295 +48,44 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         return r;
     }
 
-    public UpdateStatus boundFreeVar2ExistingVar(
-            final int predIdx, final int argIdx, final int varId
-    ) {
-        /* 改变Rule结构 */
-        long time_start_nano = System.nanoTime();
-        fingerPrint = boundFreeVar2ExistingVarUpdateStructure(predIdx, argIdx, varId);
-        long time_fp_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
-
-        /* 检查是否命中Cache */
-        Rule dup_rule = searchedFingerprints.get(fingerPrint);
-        if (null != dup_rule) {
-            dupRuleWriter.println(this.toDumpString());
-            dupRuleWriter.println(dup_rule.toDumpString());
-        } else {
-            searchedFingerprints.put(fingerPrint, this);
-        }
-        long time_cache_checked_nano = System.nanoTime();
-        tabuAwareMonitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
-        if (null != dup_rule) {
-            return UpdateStatus.DUPLICATED;
-        }
-
-        /* 检查合法性 */
-        boolean invalid = isInvalid();
-        long time_valid_checked_nano = System.nanoTime();
-        tabuAwareMonitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
-        if (invalid) {
-            return UpdateStatus.INVALID;
-        }
-
-        /* 检查是否被tabu剪枝 */
-        boolean tabu_hit = tabuHit();
-        long time_tabu_checked_nano = System.nanoTime();
-        tabuAwareMonitor.tabuCheckCostInNano += time_tabu_checked_nano - time_valid_checked_nano;
-        if (tabu_hit) {
-            return UpdateStatus.TABU_PRUNED;
-        }
-
-        /* 执行handler */
-        final UpdateStatus status = boundFreeVar2ExistingVarHandler(predIdx, argIdx, varId);
-        long time_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateHandlerTimeNano += time_updated_nano - time_tabu_checked_nano;
-        if (UpdateStatus.NORMAL != status) {
-            return status;
-        }
-
-        /* 更新Eval */
-        this.eval = calculateEval();
-        long time_evaluated_nano = System.nanoTime();
-        tabuAwareMonitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
-        return UpdateStatus.NORMAL;
-    }
-
-    public UpdateStatus boundFreeVar2ExistingVar(
-            final String functor, final int arity, final int argIdx, final int varId
-    ) {
-        /* 改变Rule结构 */
-        long time_start_nano = System.nanoTime();
-        fingerPrint = boundFreeVar2ExistingVarUpdateStructure(functor, arity, argIdx, varId);
-        long time_fp_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
-
-        /* 检查是否命中Cache */
-        Rule dup_rule = searchedFingerprints.get(fingerPrint);
-        if (null != dup_rule) {
-            dupRuleWriter.println(this.toDumpString());
-            dupRuleWriter.println(dup_rule.toDumpString());
-        } else {
-            searchedFingerprints.put(fingerPrint, this);
-        }
-        long time_cache_checked_nano = System.nanoTime();
-        tabuAwareMonitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
-        if (null != dup_rule) {
-            return UpdateStatus.DUPLICATED;
-        }
-
-        /* 检查合法性 */
-        boolean invalid = isInvalid();
-        long time_valid_checked_nano = System.nanoTime();
-        tabuAwareMonitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
-        if (invalid) {
-            return UpdateStatus.INVALID;
-        }
-
-        /* 检查是否被tabu剪枝 */
-        boolean tabu_hit = tabuHit();
-        long time_tabu_checked_nano = System.nanoTime();
-        tabuAwareMonitor.tabuCheckCostInNano += time_tabu_checked_nano - time_valid_checked_nano;
-        if (tabu_hit) {
-            return UpdateStatus.TABU_PRUNED;
-        }
-
-        /* 执行handler */
-        final UpdateStatus status = boundFreeVar2ExistingVarHandler(structure.get(structure.size() - 1), argIdx, varId);
-        long time_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateHandlerTimeNano += time_updated_nano - time_tabu_checked_nano;
-        if (UpdateStatus.NORMAL != status) {
-            return status;
-        }
-
-        /* 更新Eval */
-        this.eval = calculateEval();
-        long time_evaluated_nano = System.nanoTime();
-        tabuAwareMonitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
-        return UpdateStatus.NORMAL;
-    }
-
-    public UpdateStatus boundFreeVars2NewVar(
-            final int predIdx1, final int argIdx1, final int predIdx2, final int argIdx2
-    ) {
-        /* 改变Rule结构 */
-        long time_start_nano = System.nanoTime();
-        fingerPrint = boundFreeVars2NewVarUpdateStructure(predIdx1, argIdx1, predIdx2, argIdx2);
-        long time_fp_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
-
-        /* 检查是否命中Cache */
+    @Override
+    protected boolean isDuplicated() {
         Rule dup_rule = searchedFingerprints.get(fingerPrint);
         if (null != dup_rule) {
             dupRuleWriter.println(this.toDumpString());
             dupRuleWriter.println(dup_rule.toDumpString());
-        } else {
-            searchedFingerprints.put(fingerPrint, this);
+            return true;
         }
-        long time_cache_checked_nano = System.nanoTime();
-        tabuAwareMonitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
-        if (null != dup_rule) {
-            return UpdateStatus.DUPLICATED;
-        }
-
-        /* 检查合法性 */
-        boolean invalid = isInvalid();
-        long time_valid_checked_nano = System.nanoTime();
-        tabuAwareMonitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
-        if (invalid) {
-            return UpdateStatus.INVALID;
-        }
-
-        /* 检查是否被tabu剪枝 */
-        boolean tabu_hit = tabuHit();
-        long time_tabu_checked_nano = System.nanoTime();
-        tabuAwareMonitor.tabuCheckCostInNano += time_tabu_checked_nano - time_valid_checked_nano;
-        if (tabu_hit) {
-            return UpdateStatus.TABU_PRUNED;
-        }
-
-        /* 执行handler */
-        final UpdateStatus status = boundFreeVars2NewVarHandler(predIdx1, argIdx1, predIdx2, argIdx2);
-        long time_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateHandlerTimeNano += time_updated_nano - time_tabu_checked_nano;
-        if (UpdateStatus.NORMAL != status) {
-            return status;
-        }
-
-        /* 更新Eval */
-        this.eval = calculateEval();
-        long time_evaluated_nano = System.nanoTime();
-        tabuAwareMonitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
-        return UpdateStatus.NORMAL;
+        searchedFingerprints.put(fingerPrint, this);
+        return false;
     }
 
-    public UpdateStatus boundFreeVars2NewVar(
-            final String functor, final int arity, final int argIdx1, final int predIdx2, final int argIdx2
-    ) {
-        /* 改变Rule结构 */
-        long time_start_nano = System.nanoTime();
-        fingerPrint = boundFreeVars2NewVarUpdateStructure(functor, arity, argIdx1, predIdx2, argIdx2);
-        long time_fp_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
-
-        /* 检查是否命中Cache */
+    @Override
+    protected boolean isSearched() {
         Rule dup_rule = searchedFingerprints.get(fingerPrint);
         if (null != dup_rule) {
             dupRuleWriter.println(this.toDumpString());
             dupRuleWriter.println(dup_rule.toDumpString());
-        } else {
-            searchedFingerprints.put(fingerPrint, this);
-        }
-        long time_cache_checked_nano = System.nanoTime();
-        tabuAwareMonitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
-        if (null != dup_rule) {
-            return UpdateStatus.DUPLICATED;
-        }
-
-        /* 检查合法性 */
-        boolean invalid = isInvalid();
-        long time_valid_checked_nano = System.nanoTime();
-        tabuAwareMonitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
-        if (invalid) {
-            return UpdateStatus.INVALID;
-        }
-
-        /* 检查是否被tabu剪枝 */
-        boolean tabu_hit = tabuHit();
-        long time_tabu_checked_nano = System.nanoTime();
-        tabuAwareMonitor.tabuCheckCostInNano += time_tabu_checked_nano - time_valid_checked_nano;
-        if (tabu_hit) {
-            return UpdateStatus.TABU_PRUNED;
-        }
-
-        /* 执行handler */
-        final UpdateStatus status = boundFreeVars2NewVarHandler(
-                structure.get(structure.size() - 1), argIdx1, predIdx2, argIdx2
-        );
-        long time_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateHandlerTimeNano += time_updated_nano - time_tabu_checked_nano;
-        if (UpdateStatus.NORMAL != status) {
-            return status;
+            return true;
         }
-
-        /* 更新Eval */
-        this.eval = calculateEval();
-        long time_evaluated_nano = System.nanoTime();
-        tabuAwareMonitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
-        return UpdateStatus.NORMAL;
+        return false;
     }
 
-    public UpdateStatus boundFreeVar2Constant(final int predIdx, final int argIdx, final String constantSymbol) {
-        /* 改变Rule结构 */
-        long time_start_nano = System.nanoTime();
-        fingerPrint = boundFreeVar2ConstantUpdateStructure(predIdx, argIdx, constantSymbol);
-        long time_fp_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
-
-        /* 检查是否命中Cache */
-        Rule dup_rule = searchedFingerprints.get(fingerPrint);
-        if (null != dup_rule) {
-            dupRuleWriter.println(this.toDumpString());
-            dupRuleWriter.println(dup_rule.toDumpString());
-        } else {
-            searchedFingerprints.put(fingerPrint, this);
-        }
-        long time_cache_checked_nano = System.nanoTime();
-        tabuAwareMonitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
-        if (null != dup_rule) {
-            return UpdateStatus.DUPLICATED;
-        }
-
-        /* 检查合法性 */
-        boolean invalid = isInvalid();
-        long time_valid_checked_nano = System.nanoTime();
-        tabuAwareMonitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
-        if (invalid) {
-            return UpdateStatus.INVALID;
-        }
-
-        /* 检查是否被tabu剪枝 */
-        boolean tabu_hit = tabuHit();
-        long time_tabu_checked_nano = System.nanoTime();
-        tabuAwareMonitor.tabuCheckCostInNano += time_tabu_checked_nano - time_valid_checked_nano;
-        if (tabu_hit) {
-            return UpdateStatus.TABU_PRUNED;
-        }
-
-        /* 执行handler */
-        final UpdateStatus status = boundFreeVar2ConstantHandler(predIdx, argIdx, constantSymbol);
-        long time_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateHandlerTimeNano += time_updated_nano - time_tabu_checked_nano;
-        if (UpdateStatus.NORMAL != status) {
-            return status;
-        }
-
-        /* 更新Eval */
-        this.eval = calculateEval();
-        long time_evaluated_nano = System.nanoTime();
-        tabuAwareMonitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
-        return UpdateStatus.NORMAL;
+    @Override
+    protected void recordSearched() {
+        /* 试探时当前rule的结构稍后会被恢复，因此记录结构的副本 */
+        searchedFingerprints.put(fingerPrint, new BareRule(this));
     }
 
+    @Override
     protected boolean tabuHit() {
-        boolean hit = false;
-        for (int subset_size = 0; subset_size < structure.size(); subset_size++) {
-            for (MultiSet<String> category_subset : categorySubsets(subset_size)) {
-                final Set<RuleFingerPrint> tabu_set = category2TabuSetMap.get(category_subset);
-                if (null == tabu_set) continue;
-                for (RuleFingerPrint rfp : tabu_set) {
-                    tabuAwareMonitor.tabuCompares++;
-                    if (rfp.predecessorOf(this.fingerPrint)) {
-                        specRuleWriter.println(this.toDumpString());
-                        specRuleWriter.println(toDumpString(rfp.rule));
-                        hit = true;
-                        break;
-                    }
-                }
-                if (hit) break;
-            }
+        final RuleFingerPrint predecessor = findTabuPredecessor();
+        if (null != predecessor) {
+            specRuleWriter.println(this.toDumpString());
+            specRuleWriter.println(toDumpString(predecessor.rule));
+            return true;
         }
-        return hit;
+        return false;
     }
 
     public String toDumpString(List<Predicate> structure) {
@@ -37,7 +37,10 @@ public class SincWithFingerprintObservation extends SincWithTabuPruning {
     }
 
     protected Rule getStartRule(String headFunctor, Set<RuleFingerPrint> cache) {
-        return new RuleWithDupSpecObservation(headFunctor, new HashMap<>(), kb, category2TabuSetMap, dupRuleWriter, specRuleWriter);
+        return new RuleWithDupSpecObservation(
+                headFunctor, new HashMap<>(), kb, tabuStore(headFunctor), dupRuleWriter, specRuleWriter,
+                config.joinEvaluation, sampleRate()
+        );
     }
 
     @Override
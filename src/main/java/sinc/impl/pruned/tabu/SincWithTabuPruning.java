@@ -4,14 +4,14 @@ import sinc.SincConfig;
 import sinc.common.Rule;
 import sinc.common.RuleFingerPrint;
 import sinc.impl.cached.recal.SincWithRecalculateCache;
-import sinc.util.MultiSet;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SincWithTabuPruning extends SincWithRecalculateCache {
 
-    /* 每次迭代只保留下次生成的长度的tabu rules */
-    protected Map<MultiSet<String>, Set<RuleFingerPrint>> category2TabuSetMap = new HashMap<>();
+    /* 每个head functor各自维护tabu rules，多个head functor可以并行搜索 */
+    protected final Map<String, TabuStore> functor2TabuStores = new ConcurrentHashMap<>();
     protected final TabuMonitor tabuMonitor = new TabuMonitor();
 
     public SincWithTabuPruning(SincConfig config, String kbPath, String dumpPath, String logPath) {
@@ -21,38 +21,38 @@ public class SincWithTabuPruning extends SincWithRecalculateCache {
 
     @Override
     protected Rule getStartRule(String headFunctor, Set<RuleFingerPrint> cache) {
-        return new TabuAwareRule(headFunctor, cache, kb, category2TabuSetMap);
+        return new TabuAwareRule(headFunctor, cache, kb, tabuStore(headFunctor), config.joinEvaluation, sampleRate());
+    }
+
+    protected TabuStore tabuStore(String headFunctor) {
+        return functor2TabuStores.computeIfAbsent(headFunctor, k -> new TabuStore());
     }
 
     @Override
     protected void targetDone(String functor) {
         /* 在每个Head变换之后都需要Change Tabu set */
-        int total_tabus = 0;
-        for (Set<RuleFingerPrint> tabu_set: category2TabuSetMap.values()) {
-            total_tabus += tabu_set.size();
-        }
-        tabuMonitor.tabusInDiffHeadFunctor.add(total_tabus);
-        tabuMonitor.totalTabus += total_tabus;
-        tabuMonitor.categoriesInDiffHeadFunctor.add(category2TabuSetMap.size());
-        tabuMonitor.totalCategories += category2TabuSetMap.size();
-        category2TabuSetMap = new HashMap<>();
+        final TabuStore tabu_store = tabuStore(functor);
+        functor2TabuStores.remove(functor);
+        tabuMonitor.tabusInDiffHeadFunctor.add(tabu_store.size());
+        tabuMonitor.totalTabus += tabu_store.size();
+        tabuMonitor.categoriesInDiffHeadFunctor.add(tabu_store.categories());
+        tabuMonitor.totalCategories += tabu_store.categories();
     }
 
     @Override
     protected void recordRuleStatus(Rule rule, Rule.UpdateStatus updateStatus) {
         super.recordRuleStatus(rule, updateStatus);
         if (updateStatus == Rule.UpdateStatus.INSUFFICIENT_COVERAGE) {
-            final MultiSet<String> functor_mset = new MultiSet<>();
-            for (int pred_idx = Rule.FIRST_BODY_PRED_IDX; pred_idx < rule.length(); pred_idx++) {
-                functor_mset.add(rule.getPredicate(pred_idx).functor);
-            }
-            final Set<RuleFingerPrint> tabu_set = category2TabuSetMap.computeIfAbsent(
-                    functor_mset, k -> new HashSet<>()
-            );
-            tabu_set.add(rule.getFingerPrint());
+            tabuStore(rule.getHead().functor).add(rule);
         }
     }
 
+    @Override
+    protected boolean boundPruneBeforeEvaluation() {
+        /* coverage不足的extension要加入tabu，因此先由handler检查coverage，再在evaluate()中做上界剪枝 */
+        return false;
+    }
+
     @Override
     protected void showMonitor() {
         super.showMonitor();
@@ -1,22 +1,20 @@
 package sinc.impl.pruned.tabu;
 
+import sinc.common.RuleMonitor;
+
 import java.io.PrintWriter;
 
-public class TabuAwareRuleMonitor {
+public class TabuAwareRuleMonitor extends RuleMonitor {
 
     private static final int NANOS_PER_MILLI = 1000000;
 
     /* Rule Update Cost */
-    public long updateFingerPrintTimeNano = 0;
-    public long dupCheckTimeNano = 0;
-    public long validCheckTimeNano = 0;
     public long tabuCheckCostInNano = 0;
-    public long updateHandlerTimeNano = 0;
-    public long evalTimeNano = 0;
 
     /* Statistics */
     public int tabuCompares = 0;
 
+    @Override
     public void show(PrintWriter writer) {
         writer.println("### Monitored Tabu Aware Rule Info ###\n");
         writer.println("--- Time Cost ---");
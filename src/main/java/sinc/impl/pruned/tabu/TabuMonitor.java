@@ -16,7 +16,9 @@ public class TabuMonitor {
         writer.println("### Tabu Performance Info ###\n");
         writer.println("--- Statistics ---");
         writer.printf(" %10s %10s %10s\n", "#Total", "#/Head", "#Cat/Head");
-        writer.printf(" %10d %10d %10d\n\n", totalTabus, totalTabus / tabusInDiffHeadFunctor.size(), totalCategories / categoriesInDiffHeadFunctor.size());
+        /* 没有完成任何head functor(例如KB加载失败)时，平均值记为0 */
+        final int heads = Math.max(1, tabusInDiffHeadFunctor.size());
+        writer.printf(" %10d %10d %10d\n\n", totalTabus, totalTabus / heads, totalCategories / heads);
         writer.print("- #Tabu In Different Head Functors: ");
         writer.println(Arrays.toString(tabusInDiffHeadFunctor.toArray(new Integer[0])));
         writer.print("- #Category In Different Head Functors: ");
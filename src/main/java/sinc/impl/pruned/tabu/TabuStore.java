@@ -0,0 +1,160 @@
+package sinc.impl.pruned.tabu;
+
+import sinc.common.ArgIndicator;
+import sinc.common.Rule;
+import sinc.common.RuleFingerPrint;
+import sinc.util.MultiSet;
+
+import java.util.*;
+
+/**
+ * 某个head functor下的tabu rules，用于查找是否有tabu rule是当前rule的一般化形式(predecessorOf)。
+ *
+ * Tabu rule按body中functor的multiset(category)组织成一棵trie：每条边是一个functor，从根到某个结点的路径是排好序的category，
+ * 结点上保存category相同的tabu rules。查询时只沿着当前rule的category的子multiset往下走，因此只会访问trie中实际存在的、
+ * 可能成为一般化形式的category，不需要枚举所有的子multiset。
+ *
+ * 结点上每个tabu rule还带有一个64位的签名：等价类中每一对参数(包括重复出现的参数)的hash对应的位。A是B的一般化形式时，A的每个
+ * 等价类都是B中某个等价类的子集，所以A的签名一定是B的签名的子集，不满足时可以跳过predecessorOf的比较。每个结点还记录子树中所有
+ * 签名的交集，交集不是查询签名的子集时，整棵子树都不需要访问。
+ */
+public class TabuStore {
+
+    public static class Lookup {
+        /* 找到的一般化形式，没有时为null */
+        public final RuleFingerPrint predecessor;
+        /* 调用predecessorOf的次数 */
+        public final int compares;
+
+        Lookup(RuleFingerPrint predecessor, int compares) {
+            this.predecessor = predecessor;
+            this.compares = compares;
+        }
+    }
+
+    protected static class Node {
+        final Map<String, Node> children = new HashMap<>();
+        final Map<RuleFingerPrint, Long> tabus = new HashMap<>();
+        /* 子树中所有签名的交集 */
+        long commonSignature = -1L;
+    }
+
+    protected final Node root = new Node();
+    protected int categories = 0;
+    protected int size = 0;
+
+    public void add(Rule rule) {
+        final RuleFingerPrint fingerPrint = rule.getFingerPrint();
+        final long signature = signature(fingerPrint);
+        Node node = root;
+        node.commonSignature &= signature;
+        for (String functor: sortedBodyFunctors(rule)) {
+            node = node.children.computeIfAbsent(functor, k -> new Node());
+            node.commonSignature &= signature;
+        }
+        if (node.tabus.isEmpty()) {
+            categories++;
+        }
+        if (null == node.tabus.putIfAbsent(fingerPrint, signature)) {
+            size++;
+        }
+    }
+
+    public Lookup findPredecessor(Rule rule) {
+        final RuleFingerPrint fingerPrint = rule.getFingerPrint();
+        final String[] functors = sortedBodyFunctors(rule);
+        final int[] compares = new int[]{0};
+        final RuleFingerPrint predecessor = search(root, functors, 0, fingerPrint, signature(fingerPrint), compares);
+        return new Lookup(predecessor, compares[0]);
+    }
+
+    protected RuleFingerPrint search(
+            Node node, String[] functors, int startIdx, RuleFingerPrint fingerPrint, long signature, int[] compares
+    ) {
+        if (0 != (node.commonSignature & ~signature)) {
+            return null;
+        }
+        for (Map.Entry<RuleFingerPrint, Long> entry: node.tabus.entrySet()) {
+            if (entry.getValue() != (entry.getValue() & signature)) {
+                continue;
+            }
+            compares[0]++;
+            if (entry.getKey().predecessorOf(fingerPrint)) {
+                return entry.getKey();
+            }
+        }
+        for (int i = startIdx; i < functors.length; i++) {
+            if (i > startIdx && functors[i].equals(functors[i - 1])) {
+                /* 相同的functor只需要从第一个位置往下走 */
+                continue;
+            }
+            final Node child = node.children.get(functors[i]);
+            if (null != child) {
+                final RuleFingerPrint predecessor = search(child, functors, i + 1, fingerPrint, signature, compares);
+                if (null != predecessor) {
+                    return predecessor;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 不同category的数量
+     */
+    public int categories() {
+        return categories;
+    }
+
+    /**
+     * @return tabu rules的数量
+     */
+    public int size() {
+        return size;
+    }
+
+    protected static String[] sortedBodyFunctors(Rule rule) {
+        final String[] functors = new String[rule.length() - Rule.FIRST_BODY_PRED_IDX];
+        for (int pred_idx = Rule.FIRST_BODY_PRED_IDX; pred_idx < rule.length(); pred_idx++) {
+            functors[pred_idx - Rule.FIRST_BODY_PRED_IDX] = rule.getPredicate(pred_idx).functor;
+        }
+        Arrays.sort(functors);
+        return functors;
+    }
+
+    protected static long signature(RuleFingerPrint fingerPrint) {
+        long signature = 0;
+        for (MultiSet<ArgIndicator> equiv_class: fingerPrint.getHeadEquivClasses()) {
+            signature |= classSignature(equiv_class);
+        }
+        for (MultiSet<ArgIndicator> equiv_class: fingerPrint.getOtherEquivClasses().distinctValues()) {
+            signature |= classSignature(equiv_class);
+        }
+        return signature;
+    }
+
+    protected static long classSignature(MultiSet<ArgIndicator> equivClass) {
+        if (2 > equivClass.size()) {
+            return 0;
+        }
+        final List<ArgIndicator> indicators = new ArrayList<>(equivClass.distinctValues());
+        long signature = 0;
+        for (int i = 0; i < indicators.size(); i++) {
+            final int hash_i = indicators.get(i).hashCode();
+            if (1 < equivClass.itemCount(indicators.get(i))) {
+                signature |= pairBit(hash_i, hash_i);
+            }
+            for (int j = i + 1; j < indicators.size(); j++) {
+                signature |= pairBit(hash_i, indicators.get(j).hashCode());
+            }
+        }
+        return signature;
+    }
+
+    private static long pairBit(int hash1, int hash2) {
+        long x = ((long) Math.min(hash1, hash2) << 32) ^ (Math.max(hash1, hash2) & 0xFFFFFFFFL);
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return 1L << ((x ^ (x >>> 31)) & 63);
+    }
+}
@@ -0,0 +1,93 @@
+package sinc.util;
+
+import java.util.*;
+
+/**
+ * MultiSet的MinHash签名以及基于LSH banding的相似对查找。
+ *
+ * MultiSet的Jaccard相似度(Σmin/Σmax)等于把每个出现c次的元素v展开为(v,1)...(v,c)之后的集合的Jaccard相似度，因此签名在展开后的集合上计算：
+ * 第i个位置为所有展开元素在第i个hash函数下的最小值，两个签名在同一位置相等的概率即为Jaccard相似度。
+ *
+ * 查找相似对时，签名被分为bands个长度为rows的band，至少有一个band完全相同的两个签名成为候选。rows按阈值选取，使得相似度恰好等于
+ * 阈值的一对成为候选的概率不低于MIN_RECALL。
+ */
+public class MinHash {
+    public static final double MIN_RECALL = 0.99;
+
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    public static <T> long[] signature(MultiSet<T> multiSet, int size) {
+        final long[] signature = new long[size];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (T element: multiSet.distinctValues()) {
+            final int cnt = multiSet.itemCount(element);
+            for (int k = 1; k <= cnt; k++) {
+                final long element_hash = mix(element.hashCode() * GOLDEN + k);
+                for (int i = 0; i < size; i++) {
+                    final long h = mix(element_hash + i * GOLDEN);
+                    if (h < signature[i]) {
+                        signature[i] = h;
+                    }
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * @return 每个band的行数
+     */
+    public static int bandRows(int size, double threshold) {
+        int best_rows = 1;
+        for (int rows = 1; rows <= size; rows++) {
+            if (0 != size % rows) {
+                continue;
+            }
+            final int bands = size / rows;
+            final double recall = 1 - Math.pow(1 - Math.pow(threshold, rows), bands);
+            if (recall >= MIN_RECALL) {
+                best_rows = rows;
+            }
+        }
+        return best_rows;
+    }
+
+    /**
+     * @return 签名在某个band上完全相同的所有下标对(i < j)，以及每个签名与自身
+     */
+    public static List<int[]> candidatePairs(long[][] signatures, double threshold) {
+        if (0 == signatures.length) {
+            return new ArrayList<>();
+        }
+        final int size = signatures[0].length;
+        final int rows = bandRows(size, threshold);
+        final Set<Long> pair_codes = new HashSet<>();
+        final List<int[]> pairs = new ArrayList<>();
+        for (int i = 0; i < signatures.length; i++) {
+            pairs.add(new int[]{i, i});
+        }
+        for (int band_start = 0; band_start < size; band_start += rows) {
+            final Map<Long, List<Integer>> buckets = new HashMap<>();
+            for (int i = 0; i < signatures.length; i++) {
+                long band_hash = 0;
+                for (int r = band_start; r < band_start + rows; r++) {
+                    band_hash = mix(band_hash + signatures[i][r]);
+                }
+                final List<Integer> bucket = buckets.computeIfAbsent(band_hash, k -> new ArrayList<>());
+                for (int j: bucket) {
+                    if (pair_codes.add((long) j * signatures.length + i)) {
+                        pairs.add(new int[]{j, i});
+                    }
+                }
+                bucket.add(i);
+            }
+        }
+        return pairs;
+    }
+
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+}
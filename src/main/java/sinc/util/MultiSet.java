@@ -2,107 +2,127 @@ package sinc.util;
 
 import java.util.*;
 
+/**
+ * 元素的计数保存在开放寻址(线性探测)的哈希表中：keys与counts是两个平行数组，计数不需要装箱为Integer，删除时后移之后的元素而不使用墓碑。
+ *
+ * 交集、并集与Jaccard相似度只需要大小时，使用intersectionSize()与unionSize()，不会创建新的MultiSet。hashCode在修改时增量维护。
+ */
 public class MultiSet<T> {
-    private final Map<T, Integer> cntMap;
+    private static final int INITIAL_CAPACITY = 8;
+
+    private Object[] keys;
+    private int[] counts;
+    private int mask;
+    /* 不同元素的个数 */
+    private int distinct = 0;
     private int size = 0;
+    /* 所有元素的hash乘以计数之和 */
+    private int hash = 0;
 
     public MultiSet() {
-        cntMap = new HashMap<>();
+        keys = new Object[INITIAL_CAPACITY];
+        counts = new int[INITIAL_CAPACITY];
+        mask = INITIAL_CAPACITY - 1;
     }
 
     public MultiSet(MultiSet<T> another) {
-        this.cntMap = new HashMap<>(another.cntMap);
+        this.keys = another.keys.clone();
+        this.counts = another.counts.clone();
+        this.mask = another.mask;
+        this.distinct = another.distinct;
         this.size = another.size;
+        this.hash = another.hash;
     }
 
     public MultiSet(T[] elements) {
-        cntMap = new HashMap<>();
-        size = elements.length;
+        this();
         for (T t: elements) {
-            cntMap.compute(t, (k, v) -> (null == v) ? 1 : v + 1);
+            add(t);
         }
     }
 
     public void add(T element) {
-        cntMap.compute(element, (k, v) -> (null == v) ? 1 : v + 1);
-        size++;
+        addCount(element, 1);
     }
 
     public void addAll(MultiSet<T> another) {
-        for (Map.Entry<T, Integer> entry: another.cntMap.entrySet()) {
-            this.cntMap.compute(entry.getKey(), (k, v) -> (null == v) ? entry.getValue() : v + entry.getValue());
-            this.size += entry.getValue();
+        for (int i = 0; i < another.keys.length; i++) {
+            if (null != another.keys[i]) {
+                addCount((T) another.keys[i], another.counts[i]);
+            }
         }
     }
 
     public void remove(T element) {
-        cntMap.computeIfPresent(element, (k, v) -> {
-            if (1 <= v) {
-                size--;
-            }
-            return (1 < v) ? v - 1 : null;
-        });
+        final int slot = slotOf(element);
+        if (0 > slot) {
+            return;
+        }
+        counts[slot]--;
+        size--;
+        hash -= spread(element.hashCode());
+        if (0 == counts[slot]) {
+            removeSlot(slot);
+        }
     }
 
     public int size() {
         return size;
     }
 
+    /**
+     * @return |A ∩ B|，即所有元素在两边计数的较小值之和
+     */
+    public int intersectionSize(MultiSet<T> another) {
+        final MultiSet<T> smaller = (this.distinct <= another.distinct) ? this : another;
+        final MultiSet<T> larger = (smaller == this) ? another : this;
+        int intersection_size = 0;
+        for (int i = 0; i < smaller.keys.length; i++) {
+            if (null != smaller.keys[i]) {
+                intersection_size += Math.min(smaller.counts[i], larger.itemCount((T) smaller.keys[i]));
+            }
+        }
+        return intersection_size;
+    }
+
+    /**
+     * @return |A ∪ B| = |A| + |B| - |A ∩ B|
+     */
+    public int unionSize(MultiSet<T> another) {
+        return this.size + another.size - intersectionSize(another);
+    }
+
     public double jaccardSimilarity(MultiSet<T> another) {
-        MultiSet<T> intersection = this.intersection(another);
-        MultiSet<T> union = this.union(another);
-        double intersection_size = intersection.size();
-        double union_sieze = union.size();
-        return intersection_size / union_sieze;
+        final int intersection_size = intersectionSize(another);
+        double union_size = this.size + another.size - intersection_size;
+        return intersection_size / union_size;
     }
 
     public MultiSet<T> intersection(MultiSet<T> another) {
-        Set<Map.Entry<T, Integer>> entry_set;
-        Map<T, Integer> compared_map;
-        if (this.cntMap.keySet().size() <= another.cntMap.keySet().size()) {
-            entry_set = this.cntMap.entrySet();
-            compared_map = another.cntMap;
-        } else {
-            entry_set = another.cntMap.entrySet();
-            compared_map = this.cntMap;
-        }
-
+        final MultiSet<T> smaller = (this.distinct <= another.distinct) ? this : another;
+        final MultiSet<T> larger = (smaller == this) ? another : this;
         MultiSet<T> intersection = new MultiSet<>();
-        for (Map.Entry<T, Integer> entry: entry_set) {
-            Integer compared_cnt = compared_map.get(entry.getKey());
-            if (null != compared_cnt) {
-                int i = Math.min(entry.getValue(), compared_cnt);
-                intersection.cntMap.put(entry.getKey(), i);
-                intersection.size += i;
+        for (int i = 0; i < smaller.keys.length; i++) {
+            if (null != smaller.keys[i]) {
+                final int cnt = Math.min(smaller.counts[i], larger.itemCount((T) smaller.keys[i]));
+                if (0 < cnt) {
+                    intersection.addCount((T) smaller.keys[i], cnt);
+                }
             }
         }
         return intersection;
     }
 
     public MultiSet<T> union(MultiSet<T> another) {
-        Set<Map.Entry<T, Integer>> entry_set;
-        MultiSet<T> union;
-        if (this.cntMap.keySet().size() <= another.cntMap.keySet().size()) {
-            entry_set = this.cntMap.entrySet();
-            union = new MultiSet<>(another);
-        } else {
-            entry_set = another.cntMap.entrySet();
-            union = new MultiSet<>(this);
-        }
-
-        for (Map.Entry<T, Integer> entry: entry_set) {
-            union.cntMap.compute(entry.getKey(), (k, v) -> {
-                if (null != v) {
-                    if (entry.getValue() > v) {
-                        union.size += entry.getValue() - v;
-                        return entry.getValue();
-                    }
-                    return v;
-                } else {
-                    union.size += entry.getValue();
-                    return entry.getValue();
+        final MultiSet<T> smaller = (this.distinct <= another.distinct) ? this : another;
+        MultiSet<T> union = new MultiSet<>((smaller == this) ? another : this);
+        for (int i = 0; i < smaller.keys.length; i++) {
+            if (null != smaller.keys[i]) {
+                final int diff = smaller.counts[i] - union.itemCount((T) smaller.keys[i]);
+                if (0 < diff) {
+                    union.addCount((T) smaller.keys[i], diff);
                 }
-            });
+            }
         }
         return union;
     }
@@ -110,45 +130,175 @@ public class MultiSet<T> {
     public List<T> elementsAboveProportion(double proportion) {
         List<T> result = new ArrayList<>();
         int threshold = (int)(this.size * proportion);
-        for (Map.Entry<T, Integer> entry: cntMap.entrySet()) {
-            if (entry.getValue() > threshold) {
-                result.add(entry.getKey());
+        for (int i = 0; i < keys.length; i++) {
+            if (null != keys[i] && counts[i] > threshold) {
+                result.add((T) keys[i]);
             }
         }
         return result;
     }
 
+    public int itemCount(T element) {
+        final int slot = slotOf(element);
+        return (0 > slot) ? 0 : counts[slot];
+    }
+
     public int differentValues() {
-        return cntMap.size();
+        return distinct;
     }
 
+    /**
+     * @return 所有不同元素的只读视图，遍历时不能修改这个MultiSet
+     */
     public Set<T> distinctValues() {
-        return cntMap.keySet();
+        return new AbstractSet<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return new Iterator<T>() {
+                    private int next = advance(0);
+
+                    private int advance(int from) {
+                        while (from < keys.length && null == keys[from]) {
+                            from++;
+                        }
+                        return from;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < keys.length;
+                    }
+
+                    @Override
+                    public T next() {
+                        if (next >= keys.length) {
+                            throw new NoSuchElementException();
+                        }
+                        final T key = (T) keys[next];
+                        next = advance(next + 1);
+                        return key;
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return null != o && 0 <= slotOf(o);
+            }
+
+            @Override
+            public int size() {
+                return distinct;
+            }
+        };
     }
 
     public boolean subsetOf(MultiSet<T> another) {
-        if (this.cntMap.size() > another.cntMap.size() || this.size > another.size) {
+        if (this.distinct > another.distinct || this.size > another.size) {
             return false;
         }
-        for (Map.Entry<T, Integer> entry: this.cntMap.entrySet()) {
-            final Integer another_cnt = another.cntMap.get(entry.getKey());
-            if (null == another_cnt || another_cnt < entry.getValue()) {
+        for (int i = 0; i < keys.length; i++) {
+            if (null != keys[i] && another.itemCount((T) keys[i]) < counts[i]) {
                 return false;
             }
         }
         return true;
     }
 
+    private void addCount(T element, int cnt) {
+        int slot = spread(element.hashCode()) & mask;
+        while (null != keys[slot]) {
+            if (keys[slot].equals(element)) {
+                counts[slot] += cnt;
+                size += cnt;
+                hash += spread(element.hashCode()) * cnt;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = element;
+        counts[slot] = cnt;
+        distinct++;
+        size += cnt;
+        hash += spread(element.hashCode()) * cnt;
+        if (distinct * 4 > keys.length * 3) {
+            resize(keys.length * 2);
+        }
+    }
+
+    private int slotOf(Object element) {
+        int slot = spread(element.hashCode()) & mask;
+        while (null != keys[slot]) {
+            if (keys[slot].equals(element)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 删除slot上的元素，并把之后探测链上的元素前移，使得查找不会被空位截断
+     */
+    private void removeSlot(int slot) {
+        distinct--;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (null != keys[next]) {
+            final int home = spread(keys[next].hashCode()) & mask;
+            /* next的初始位置不在(hole, next]中时，可以移动到hole */
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                counts[hole] = counts[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = null;
+        counts[hole] = 0;
+    }
+
+    private void resize(int capacity) {
+        final Object[] old_keys = keys;
+        final int[] old_counts = counts;
+        keys = new Object[capacity];
+        counts = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < old_keys.length; i++) {
+            if (null != old_keys[i]) {
+                int slot = spread(old_keys[i].hashCode()) & mask;
+                while (null != keys[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = old_keys[i];
+                counts[slot] = old_counts[i];
+            }
+        }
+    }
+
+    private static int spread(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
-        MultiSet<?> multiSet = (MultiSet<?>) o;
-        return size == multiSet.size && Objects.equals(cntMap, multiSet.cntMap);
+        MultiSet<T> multiSet = (MultiSet<T>) o;
+        if (size != multiSet.size || distinct != multiSet.distinct || hash != multiSet.hash) {
+            return false;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (null != keys[i] && multiSet.itemCount((T) keys[i]) != counts[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(cntMap, size);
+        return hash;
     }
 }
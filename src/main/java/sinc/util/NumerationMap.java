@@ -0,0 +1,51 @@
+package sinc.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 将字符串编码为连续的整数。编号从1开始，0(NULL_NUM)表示空，例如尚未绑定的参数
+ */
+public class NumerationMap {
+    public static final int NULL_NUM = 0;
+
+    private final Map<String, Integer> name2NumMap = new HashMap<>();
+    private final List<String> num2NameMap = new ArrayList<>();
+
+    public NumerationMap() {
+        num2NameMap.add(null);
+    }
+
+    /**
+     * @return name对应的编号，如果name尚未编码，则分配一个新的编号
+     */
+    public int mapName(String name) {
+        Integer num = name2NumMap.get(name);
+        if (null == num) {
+            num = num2NameMap.size();
+            name2NumMap.put(name, num);
+            num2NameMap.add(name);
+        }
+        return num;
+    }
+
+    /**
+     * @return name对应的编号，如果name尚未编码，返回NULL_NUM
+     */
+    public int name2Num(String name) {
+        return name2NumMap.getOrDefault(name, NULL_NUM);
+    }
+
+    /**
+     * @return 编号对应的字符串。所有编号相同的字符串都返回同一个对象
+     */
+    public String num2Name(int num) {
+        return (0 < num && num < num2NameMap.size()) ? num2NameMap.get(num) : null;
+    }
+
+    public int totalMappings() {
+        return num2NameMap.size() - 1;
+    }
+}
@@ -0,0 +1,99 @@
+package sinc.util.graph;
+
+import java.util.*;
+
+/**
+ * 以CSR(compressed sparse row)形式保存的有向图，点的编号为0..nodes-1：点v的后继为targets[offsets[v]..offsets[v+1])。
+ *
+ * 整张图只占用两个int数组，不需要为每个点创建对象，适合点数很多的依赖图。
+ */
+public class CsrGraph {
+    protected final int[] offsets;
+    protected final int[] targets;
+
+    public CsrGraph(int[] offsets, int[] targets) {
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    /**
+     * 由边的列表建立CSR，同一个点的后继按边出现的顺序排列
+     */
+    public static CsrGraph fromEdges(int nodes, int[] sources, int[] targets) {
+        final int[] offsets = new int[nodes + 1];
+        for (int source: sources) {
+            offsets[source + 1]++;
+        }
+        for (int v = 0; v < nodes; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        final int[] positions = Arrays.copyOf(offsets, nodes);
+        final int[] csr_targets = new int[targets.length];
+        for (int i = 0; i < sources.length; i++) {
+            csr_targets[positions[sources[i]]++] = targets[i];
+        }
+        return new CsrGraph(offsets, csr_targets);
+    }
+
+    /**
+     * 把Map形式的图转换为CSR。graph中的key依次编号为0..graph.size()-1，只作为后继出现的点排在之后。
+     *
+     * @param nodeList 按编号顺序填入对应的点
+     */
+    public static <T> CsrGraph of(Map<T, Set<T>> graph, List<T> nodeList) {
+        final Map<T, Integer> node_ids = new HashMap<>();
+        int edges = 0;
+        for (Map.Entry<T, Set<T>> entry: graph.entrySet()) {
+            node_ids.put(entry.getKey(), nodeList.size());
+            nodeList.add(entry.getKey());
+            edges += entry.getValue().size();
+        }
+        for (Set<T> successors: graph.values()) {
+            for (T successor: successors) {
+                if (null == node_ids.putIfAbsent(successor, nodeList.size())) {
+                    nodeList.add(successor);
+                }
+            }
+        }
+
+        final int[] offsets = new int[nodeList.size() + 1];
+        final int[] targets = new int[edges];
+        int pos = 0;
+        for (int v = 0; v < graph.size(); v++) {
+            offsets[v] = pos;
+            for (T successor: graph.get(nodeList.get(v))) {
+                targets[pos++] = node_ids.get(successor);
+            }
+        }
+        Arrays.fill(offsets, graph.size(), offsets.length, pos);
+        return new CsrGraph(offsets, targets);
+    }
+
+    public int nodes() {
+        return offsets.length - 1;
+    }
+
+    public int edges() {
+        return targets.length;
+    }
+
+    public int outDegree(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+
+    /**
+     * @return v的第i个后继
+     */
+    public int successor(int v, int i) {
+        return targets[offsets[v] + i];
+    }
+
+    public boolean hasEdge(int source, int target) {
+        for (int i = offsets[source]; i < offsets[source + 1]; i++) {
+            if (target == targets[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,101 @@
+package sinc.util.graph;
+
+import java.util.*;
+
+/**
+ * 在CsrGraph上求强连通分量的Tarjan算法。
+ *
+ * 与Tarjan不同，这里用显式的栈代替递归，因此很长的依赖链也不会导致StackOverflowError；算法的状态都保存在按点编号的int数组中，
+ * 不会修改图中的点。与Tarjan相同，只返回非平凡的强连通分量(多于一个点，或者只有一个点但有自环)。
+ */
+public class CsrTarjan {
+    private static final int UNVISITED = -1;
+    /* 已经属于某个强连通分量的点的lowLink，用于区分是否还在栈中 */
+    private static final int ASSIGNED = Integer.MAX_VALUE;
+
+    private final CsrGraph graph;
+
+    public CsrTarjan(CsrGraph graph) {
+        this.graph = graph;
+    }
+
+    public List<int[]> run() {
+        final int nodes = graph.nodes();
+        final int[] index = new int[nodes];
+        final int[] low_link = new int[nodes];
+        final int[] next_edge = new int[nodes];
+        final int[] scc_stack = new int[nodes];
+        final int[] call_stack = new int[nodes];
+        Arrays.fill(index, UNVISITED);
+        int next_index = 0;
+        int scc_top = 0;
+        final List<int[]> result = new ArrayList<>();
+
+        for (int root = 0; root < nodes; root++) {
+            if (UNVISITED != index[root]) {
+                continue;
+            }
+            int call_top = 0;
+            call_stack[call_top++] = root;
+            index[root] = low_link[root] = next_index++;
+            next_edge[root] = graph.offsets[root];
+            scc_stack[scc_top++] = root;
+
+            while (0 < call_top) {
+                final int v = call_stack[call_top - 1];
+                if (next_edge[v] < graph.offsets[v + 1]) {
+                    final int w = graph.targets[next_edge[v]++];
+                    if (UNVISITED == index[w]) {
+                        /* 相当于递归调用strongConnect(w) */
+                        index[w] = low_link[w] = next_index++;
+                        next_edge[w] = graph.offsets[w];
+                        scc_stack[scc_top++] = w;
+                        call_stack[call_top++] = w;
+                    } else if (ASSIGNED != low_link[w]) {
+                        /* w还在栈中 */
+                        low_link[v] = Math.min(low_link[v], index[w]);
+                    }
+                    continue;
+                }
+
+                /* v的所有后继都已处理，相当于从strongConnect(v)返回 */
+                call_top--;
+                if (low_link[v] == index[v]) {
+                    int scc_bottom = scc_top - 1;
+                    while (v != scc_stack[scc_bottom]) {
+                        scc_bottom--;
+                    }
+                    final int scc_size = scc_top - scc_bottom;
+                    if (1 < scc_size || graph.hasEdge(v, v)) {
+                        result.add(Arrays.copyOfRange(scc_stack, scc_bottom, scc_top));
+                    }
+                    for (int i = scc_bottom; i < scc_top; i++) {
+                        low_link[scc_stack[i]] = ASSIGNED;
+                    }
+                    scc_top = scc_bottom;
+                }
+                if (0 < call_top) {
+                    final int parent = call_stack[call_top - 1];
+                    low_link[parent] = Math.min(low_link[parent], low_link[v]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 对Map形式的图求强连通分量，结果与Tarjan.run()相同
+     */
+    public static <T> List<Set<T>> run(Map<T, Set<T>> graph) {
+        final List<T> nodes = new ArrayList<>();
+        final List<Set<T>> result = new ArrayList<>();
+        for (int[] scc: new CsrTarjan(CsrGraph.of(graph, nodes)).run()) {
+            final Set<T> scc_nodes = new HashSet<>();
+            for (int v: scc) {
+                scc_nodes.add(nodes.get(v));
+            }
+            result.add(scc_nodes);
+        }
+        return result;
+    }
+}
@@ -2,70 +2,143 @@ package sinc.util.graph;
 
 import java.util.*;
 
-public class FeedbackVertexSetSolver<T extends BaseGraphNode<?>> {
+/**
+ * 用贪心算法求一个SCC的Feedback Vertex Set：每次取|in|x|out|最大的点(相同时取编号最小的点)放入结果并删除，然后不断删除入度或出度为0的点，
+ * 直到没有边为止。
+ *
+ * SCC以邻接表(CSR形式的出边与入边)保存，点的|in|x|out|保存在按点编号索引的堆中，删除点时只更新相邻点的度数与在堆中的位置，
+ * 因此内存与边数成正比，每一步的代价与被删除的边数相关，而不需要扫描所有的点。
+ */
+public class FeedbackVertexSetSolver<T> {
 
     protected final List<T> nodes;
-    protected final int[][] matrix;
     protected final int size;
+    protected final int[] outOffsets;
+    protected final int[] outTargets;
+    protected final int[] inOffsets;
+    protected final int[] inTargets;
 
     public FeedbackVertexSetSolver(Map<T, Set<T>> graph, Set<T> scc) {
-        /* 在这里把SCC转成邻接矩阵的形式 */
-        size = scc.size();
-        matrix = new int[size+1][size+1];
-
         /* 先把每个点编号 */
-        nodes = new ArrayList<>(size);
-        for (T node: scc) {
-            node.fvsIdx = nodes.size();
-            nodes.add(node);
+        size = scc.size();
+        nodes = new ArrayList<>(scc);
+        final Map<T, Integer> local_ids = new HashMap<>();
+        for (T node: nodes) {
+            local_ids.put(node, local_ids.size());
         }
 
         /* 截取graph中属于SCC的部分 */
-        for (T node: nodes) {
-            Set<T> successors = graph.get(node);
+        final List<int[]> edges = new ArrayList<>();
+        for (int v = 0; v < size; v++) {
+            final Set<T> successors = graph.get(nodes.get(v));
+            if (null == successors) {
+                continue;
+            }
             for (T successor: successors) {
-                if (T.NO_FVS_INDEX != successor.fvsIdx) {
-                    matrix[node.fvsIdx][successor.fvsIdx] = 1;
-                    matrix[node.fvsIdx][size]++;
-                    matrix[size][successor.fvsIdx]++;
+                final Integer w = local_ids.get(successor);
+                if (null != w) {
+                    edges.add(new int[]{v, w});
                 }
             }
         }
+        final int[] sources = new int[edges.size()];
+        final int[] targets = new int[edges.size()];
+        for (int i = 0; i < edges.size(); i++) {
+            sources[i] = edges.get(i)[0];
+            targets[i] = edges.get(i)[1];
+        }
+        final CsrGraph out_graph = CsrGraph.fromEdges(size, sources, targets);
+        final CsrGraph in_graph = CsrGraph.fromEdges(size, targets, sources);
+        outOffsets = out_graph.offsets;
+        outTargets = out_graph.targets;
+        inOffsets = in_graph.offsets;
+        inTargets = in_graph.targets;
+    }
 
-        /* 将节点的编号取消，否则处理同一张图的其他scc时可能会引起混乱 */
-        for (T node: nodes) {
-            node.fvsIdx = T.NO_FVS_INDEX;
+    /**
+     * @param graph 整张图
+     * @param scc SCC中的点在graph中的编号
+     * @param nodeList graph中编号对应的点
+     */
+    public FeedbackVertexSetSolver(CsrGraph graph, int[] scc, List<T> nodeList) {
+        /* SCC中的点按在graph中的编号排序之后的位置编号，查找时二分即可 */
+        size = scc.length;
+        final int[] sorted_scc = scc.clone();
+        Arrays.sort(sorted_scc);
+        nodes = new ArrayList<>(size);
+        int edges = 0;
+        for (int v: sorted_scc) {
+            nodes.add(nodeList.get(v));
+            for (int i = graph.offsets[v]; i < graph.offsets[v + 1]; i++) {
+                if (0 <= Arrays.binarySearch(sorted_scc, graph.targets[i])) {
+                    edges++;
+                }
+            }
         }
+        final int[] sources = new int[edges];
+        final int[] targets = new int[edges];
+        int edge_idx = 0;
+        for (int v = 0; v < size; v++) {
+            final int global_v = sorted_scc[v];
+            for (int i = graph.offsets[global_v]; i < graph.offsets[global_v + 1]; i++) {
+                final int w = Arrays.binarySearch(sorted_scc, graph.targets[i]);
+                if (0 <= w) {
+                    sources[edge_idx] = v;
+                    targets[edge_idx] = w;
+                    edge_idx++;
+                }
+            }
+        }
+        final CsrGraph out_graph = CsrGraph.fromEdges(size, sources, targets);
+        final CsrGraph in_graph = CsrGraph.fromEdges(size, targets, sources);
+        outOffsets = out_graph.offsets;
+        outTargets = out_graph.targets;
+        inOffsets = in_graph.offsets;
+        inTargets = in_graph.targets;
     }
 
     public Set<T> run() {
-        int edges = 0;
-        for (int i: matrix[size]) {
-            edges += i;
+        final int[] in_degrees = new int[size];
+        final int[] out_degrees = new int[size];
+        for (int v = 0; v < size; v++) {
+            out_degrees[v] = outOffsets[v + 1] - outOffsets[v];
+            in_degrees[v] = inOffsets[v + 1] - inOffsets[v];
         }
+        final ScoreHeap heap = new ScoreHeap(size);
+        for (int v = 0; v < size; v++) {
+            heap.push(v, (long) in_degrees[v] * out_degrees[v]);
+        }
+        final boolean[] removed = new boolean[size];
+        final boolean[] queued = new boolean[size];
+        final int[] peel_queue = new int[size];
+
         Set<T> result = new HashSet<>();
-        while (0 < edges) {
+        while (!heap.isEmpty() && 0 < heap.topScore()) {
             /* 每次取|in|x|out|最大的点，然后把相关的环删掉，直到最后没有环 */
-            int max_score = 0;
-            int max_idx = -1;
-            for (int i = 0; i < size; i++) {
-                int score = matrix[i][size] * matrix[size][i];
-                if (score > max_score) {
-                    max_score = score;
-                    max_idx = i;
-                }
-            }
+            final int max_idx = heap.top();
             result.add(nodes.get(max_idx));
 
-            /* 从SCC中删除这个点以及相关的环 */
-            edges -= removeNode(max_idx);
-            boolean updated = true;
-            while (updated) {
-                updated = false;
-                for (int i = 0; i < size; i++) {
-                    if (0 == matrix[i][size] ^ 0 == matrix[size][i]) {
-                        edges -= removeNode(i);
-                        updated = true;
+            /* 从SCC中删除这个点，之后入度或出度为0的点也依次删除 */
+            int head = 0;
+            int tail = 0;
+            peel_queue[tail++] = max_idx;
+            queued[max_idx] = true;
+            while (head < tail) {
+                final int v = peel_queue[head++];
+                removed[v] = true;
+                heap.remove(v);
+                for (int i = outOffsets[v]; i < outOffsets[v + 1]; i++) {
+                    final int w = outTargets[i];
+                    if (!removed[w] && w != v) {
+                        in_degrees[w]--;
+                        tail = updateNode(w, in_degrees, out_degrees, heap, queued, peel_queue, tail);
+                    }
+                }
+                for (int i = inOffsets[v]; i < inOffsets[v + 1]; i++) {
+                    final int u = inTargets[i];
+                    if (!removed[u] && u != v) {
+                        out_degrees[u]--;
+                        tail = updateNode(u, in_degrees, out_degrees, heap, queued, peel_queue, tail);
                     }
                 }
             }
@@ -73,20 +146,118 @@ public class FeedbackVertexSetSolver<T extends BaseGraphNode<?>> {
         return result;
     }
 
-    protected int removeNode(int idx) {
-        int removed_edges = matrix[idx][size] + matrix[size][idx] - matrix[idx][idx];
-        for (int i = 0; i < size; i++) {
-            if (1 == matrix[idx][i]) {
-                matrix[idx][i] = 0;
-                matrix[size][i]--;
+    private int updateNode(
+            int v, int[] inDegrees, int[] outDegrees, ScoreHeap heap, boolean[] queued, int[] peelQueue, int tail
+    ) {
+        if (queued[v]) {
+            return tail;
+        }
+        if (0 == inDegrees[v] || 0 == outDegrees[v]) {
+            queued[v] = true;
+            peelQueue[tail++] = v;
+        } else {
+            heap.decrease(v, (long) inDegrees[v] * outDegrees[v]);
+        }
+        return tail;
+    }
+
+    /**
+     * 按点编号索引的二叉堆，堆顶是score最大的点，score相同时是编号最小的点。
+     */
+    static class ScoreHeap {
+        private final int[] heap;
+        private final int[] positions;
+        private final long[] scores;
+        private int heapSize = 0;
+
+        ScoreHeap(int capacity) {
+            heap = new int[capacity];
+            positions = new int[capacity];
+            scores = new long[capacity];
+            Arrays.fill(positions, -1);
+        }
+
+        boolean isEmpty() {
+            return 0 == heapSize;
+        }
+
+        int top() {
+            return heap[0];
+        }
+
+        long topScore() {
+            return scores[heap[0]];
+        }
+
+        void push(int v, long score) {
+            scores[v] = score;
+            heap[heapSize] = v;
+            positions[v] = heapSize;
+            heapSize++;
+            siftUp(positions[v]);
+        }
+
+        /**
+         * 降低v的score
+         */
+        void decrease(int v, long score) {
+            scores[v] = score;
+            siftDown(positions[v]);
+        }
+
+        void remove(int v) {
+            final int pos = positions[v];
+            if (0 > pos) {
+                return;
+            }
+            heapSize--;
+            positions[v] = -1;
+            if (pos < heapSize) {
+                heap[pos] = heap[heapSize];
+                positions[heap[pos]] = pos;
+                siftDown(pos);
+                siftUp(pos);
             }
-            if (1 == matrix[i][idx]) {
-                matrix[i][idx] = 0;
-                matrix[i][size]--;
+        }
+
+        private boolean before(int v1, int v2) {
+            return scores[v1] > scores[v2] || (scores[v1] == scores[v2] && v1 < v2);
+        }
+
+        private void siftUp(int pos) {
+            final int v = heap[pos];
+            while (0 < pos) {
+                final int parent = (pos - 1) >>> 1;
+                if (!before(v, heap[parent])) {
+                    break;
+                }
+                heap[pos] = heap[parent];
+                positions[heap[pos]] = pos;
+                pos = parent;
+            }
+            heap[pos] = v;
+            positions[v] = pos;
+        }
+
+        private void siftDown(int pos) {
+            final int v = heap[pos];
+            while (true) {
+                int child = pos * 2 + 1;
+                if (child >= heapSize) {
+                    break;
+                }
+                if (child + 1 < heapSize && before(heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!before(heap[child], v)) {
+                    break;
+                }
+                heap[pos] = heap[child];
+                positions[heap[pos]] = pos;
+                pos = child;
             }
+            heap[pos] = v;
+            positions[v] = pos;
         }
-        matrix[idx][size] = 0;
-        matrix[size][idx] = 0;
-        return removed_edges;
     }
 }
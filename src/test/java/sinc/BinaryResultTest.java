@@ -0,0 +1,97 @@
+package sinc;
+
+import org.junit.jupiter.api.Test;
+import sinc.common.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryResultTest {
+
+    static Predicate fact(String functor, String... constants) {
+        final Predicate predicate = new Predicate(functor, constants.length);
+        for (int i = 0; i < constants.length; i++) {
+            predicate.args[i] = new Constant(Rule.CONSTANT_ARG_ID, constants[i]);
+        }
+        return predicate;
+    }
+
+    @Test
+    void testWriteAndRead() throws IOException {
+        /* h(X, c) :- p(X, ?), q(X) */
+        final Rule rule = new SincRecoveryTest.RuleImpl("h", 2, new HashSet<>());
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVars2NewVar("p", 2, 0, 0, 0));
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVar2ExistingVar("q", 1, 0, 0));
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVar2Constant(0, 1, "c"));
+        assertTrue(rule.toDumpString().contains("h(X0,c):-p(X0,?),q(X0)"));
+        final List<Rule> hypothesis = new ArrayList<>(Collections.singletonList(rule));
+
+        /* 超过128个常量，编号需要多个字节的varint */
+        final Set<Predicate> start_set = new HashSet<>();
+        for (int i = 0; i < 300; i++) {
+            start_set.add(fact("p", "e" + i, "e" + (i * 7 % 300)));
+            if (0 == i % 3) {
+                start_set.add(fact("q", "e" + i));
+            }
+        }
+        start_set.add(fact("h", "中文", "c"));
+        final Set<Predicate> counter_examples = new HashSet<>(Arrays.asList(fact("h", "e1", "c"), fact("h", "e2", "c")));
+        final Set<String> supplementary_constants = new HashSet<>(Arrays.asList("s1", "s2"));
+
+        final File file = File.createTempFile("sinc", BinaryResult.FILE_EXTENSION);
+        file.deleteOnExit();
+        BinaryResult.write(file.getPath(), hypothesis, start_set, counter_examples, supplementary_constants);
+        final BinaryResult result = BinaryResult.read(file.getPath());
+
+        assertEquals(1, result.hypothesis.size());
+        assertEquals(rule.toDumpString(), result.hypothesis.get(0).toDumpString());
+        assertEquals(start_set, result.startSet);
+        assertEquals(counter_examples, result.counterExamples);
+        assertEquals(supplementary_constants, result.supplementaryConstants);
+
+        /* 相同的常量共享同一个对象 */
+        final Map<String, Argument> name_2_constant = new HashMap<>();
+        for (Predicate predicate: result.startSet) {
+            for (Argument argument: predicate.args) {
+                assertSame(name_2_constant.computeIfAbsent(argument.name, k -> argument), argument);
+            }
+        }
+    }
+
+    @Test
+    void testRecovery() throws IOException {
+        /* h(X) :- p(X, X) */
+        final Rule rule = new SincRecoveryTest.RuleImpl("h", 1, new HashSet<>());
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVars2NewVar("p", 2, 0, 0, 0));
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVar2ExistingVar(1, 1, 0));
+        final Set<Predicate> start_set = new HashSet<>(Arrays.asList(
+                fact("p", "a", "a"), fact("p", "b", "b"), fact("p", "a", "b")
+        ));
+        final Set<Predicate> counter_examples = new HashSet<>(Collections.singletonList(fact("h", "b")));
+
+        final File file = File.createTempFile("sinc", BinaryResult.FILE_EXTENSION);
+        file.deleteOnExit();
+        BinaryResult.write(
+                file.getPath(), new ArrayList<>(Collections.singletonList(rule)), start_set, counter_examples,
+                new HashSet<>()
+        );
+        final SincRecovery recovery = SincRecovery.loadBinaryResult(file.getPath());
+        final Set<Predicate> expected_recovery = new HashSet<>(start_set);
+        expected_recovery.add(fact("h", "a"));
+        assertEquals(expected_recovery, recovery.recover());
+    }
+
+    @Test
+    void testInvalidFile() throws IOException {
+        final File file = File.createTempFile("sinc", BinaryResult.FILE_EXTENSION);
+        file.deleteOnExit();
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("h\ta\tb\n");
+        }
+        assertThrows(IOException.class, () -> BinaryResult.read(file.getPath()));
+    }
+}
@@ -0,0 +1,129 @@
+package sinc;
+
+import org.junit.jupiter.api.Test;
+import sinc.common.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static sinc.BinaryResultTest.fact;
+
+class CheckpointTest {
+
+    @Test
+    void testWriteAndRead() throws IOException {
+        /* h(X, c) :- p(X, ?) */
+        final Rule rule = new SincRecoveryTest.RuleImpl("h", 2, new HashSet<>());
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVars2NewVar("p", 2, 0, 0, 0));
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVar2Constant(0, 1, "c"));
+        final List<Predicate> structure = new ArrayList<>();
+        for (int pred_idx = 0; pred_idx < rule.length(); pred_idx++) {
+            structure.add(rule.getPredicate(pred_idx));
+        }
+        final Rule evaluated_rule = new BareRule(structure, new HashSet<>(), 5, 8);
+        final List<Rule> hypothesis = new ArrayList<>(Collections.singletonList(evaluated_rule));
+
+        final Set<Predicate> counter_examples = new HashSet<>(Arrays.asList(fact("h", "e1", "c"), fact("h", "e2", "c")));
+        final Set<Predicate> proved_facts = new HashSet<>();
+        final Map<Predicate, Set<Predicate>> dependencies = new HashMap<>();
+        for (int i = 0; i < 200; i++) {
+            final Predicate head = fact("h", "e" + i, "c");
+            proved_facts.add(head);
+            dependencies.put(head, new HashSet<>(Collections.singletonList(fact("p", "e" + i, "e" + (i + 1)))));
+        }
+        dependencies.put(fact("q", "中文"), new HashSet<>(Collections.singletonList(new Predicate("⊥", 0))));
+        final List<String> remaining_targets = Arrays.asList("q", "h", "p");
+
+        final File file = File.createTempFile("sinc", ".ckpt");
+        file.deleteOnExit();
+        new Checkpoint(hypothesis, counter_examples, proved_facts, dependencies, remaining_targets).write(file.getPath());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+        final Checkpoint checkpoint = Checkpoint.read(file.getPath());
+
+        assertEquals(1, checkpoint.hypothesis.size());
+        final Rule restored_rule = checkpoint.hypothesis.get(0);
+        assertEquals(evaluated_rule.toDumpString(), restored_rule.toDumpString());
+        assertEquals(evaluated_rule.size(), restored_rule.size());
+        assertEquals(5, restored_rule.getEval().getPosCnt());
+        assertEquals(8, restored_rule.getEval().getAllCnt());
+        assertEquals(
+                evaluated_rule.getEval().value(Eval.EvalMetric.CompressionCapacity),
+                restored_rule.getEval().value(Eval.EvalMetric.CompressionCapacity)
+        );
+        assertEquals(counter_examples, checkpoint.counterExamples);
+        assertEquals(proved_facts, checkpoint.provedFacts);
+        assertEquals(dependencies, checkpoint.dependencies);
+        assertEquals(remaining_targets, checkpoint.remainingTargets);
+    }
+
+    @Test
+    void testJournal() throws IOException {
+        /* h(X, c) :- p(X, ?) */
+        final Rule rule = new SincRecoveryTest.RuleImpl("h", 2, new HashSet<>());
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVars2NewVar("p", 2, 0, 0, 0));
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVar2Constant(0, 1, "c"));
+        final List<Predicate> structure = new ArrayList<>();
+        for (int pred_idx = 0; pred_idx < rule.length(); pred_idx++) {
+            structure.add(rule.getPredicate(pred_idx));
+        }
+        final Rule evaluated_rule = new BareRule(structure, new HashSet<>(), 2, 3);
+
+        final File file = File.createTempFile("sinc", ".ckpt");
+        file.deleteOnExit();
+        final File journal_file = new File(file.getPath() + Checkpoint.JOURNAL_SUFFIX);
+        journal_file.deleteOnExit();
+        final Checkpoint base = new Checkpoint(
+                new ArrayList<>(), new HashSet<>(), new HashSet<>(), new HashMap<>(), Arrays.asList("h", "p")
+        );
+        try (Checkpoint.Journal journal = base.writeWithJournal(file.getPath())) {
+            journal.appendRule(
+                    evaluated_rule, Collections.singletonList(fact("h", "e3", "c")), Arrays.asList(
+                            new Predicate[]{fact("h", "e1", "c"), fact("p", "e1", "e2")},
+                            new Predicate[]{fact("h", "e2", "c")}
+                    )
+            );
+            journal.appendTargetDone("h");
+        }
+        final Checkpoint checkpoint = Checkpoint.read(file.getPath());
+        assertEquals(1, checkpoint.hypothesis.size());
+        assertEquals(evaluated_rule.toDumpString(), checkpoint.hypothesis.get(0).toDumpString());
+        assertEquals(2, checkpoint.hypothesis.get(0).getEval().getPosCnt());
+        assertEquals(3, checkpoint.hypothesis.get(0).getEval().getAllCnt());
+        assertEquals(new HashSet<>(Collections.singletonList(fact("h", "e3", "c"))), checkpoint.counterExamples);
+        assertEquals(
+                new HashSet<>(Arrays.asList(fact("h", "e1", "c"), fact("h", "e2", "c"))), checkpoint.provedFacts
+        );
+        final Map<Predicate, Set<Predicate>> expected_dependencies = new HashMap<>();
+        expected_dependencies.put(fact("h", "e1", "c"), new HashSet<>(Collections.singletonList(fact("p", "e1", "e2"))));
+        expected_dependencies.put(fact("h", "e2", "c"), new HashSet<>(Collections.singletonList(new Predicate("⊥", 0))));
+        assertEquals(expected_dependencies, checkpoint.dependencies);
+        assertEquals(Collections.singletonList("p"), checkpoint.remainingTargets);
+
+        /* 写入时被打断的最后一条记录被忽略 */
+        try (FileOutputStream out = new FileOutputStream(journal_file, true)) {
+            out.write(new byte[]{0, 0, 0, 9, Checkpoint.RECORD_TARGET_DONE});
+        }
+        assertEquals(Collections.singletonList("p"), Checkpoint.read(file.getPath()).remainingTargets);
+
+        /* 新的检查点不读取旧的日志 */
+        final File stale_journal = File.createTempFile("sinc", Checkpoint.JOURNAL_SUFFIX);
+        stale_journal.deleteOnExit();
+        Files.copy(journal_file.toPath(), stale_journal.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        base.writeWithJournal(file.getPath()).close();
+        Files.copy(stale_journal.toPath(), journal_file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        assertTrue(Checkpoint.read(file.getPath()).hypothesis.isEmpty());
+    }
+
+    @Test
+    void testNotCheckpoint() throws IOException {
+        final File file = File.createTempFile("sinc", BinaryResult.FILE_EXTENSION);
+        file.deleteOnExit();
+        BinaryResult.write(file.getPath(), new ArrayList<>(), new HashSet<>(), new HashSet<>(), new HashSet<>());
+        assertThrows(IOException.class, () -> Checkpoint.read(file.getPath()));
+    }
+}
@@ -499,4 +499,63 @@ class SincRecoveryTest {
         );
         assertEquals(expected_recovery, recovery.recover());
     }
+
+    @Test
+    void testSemiNaive() {
+        /*
+         * a(X, Y) :- p(X, Y)
+         * a(X, Y) :- p(X, Z), b(Z, Y)
+         * b(X, Y) :- a(X, Y)
+         * s(X) :- b(X, n0)
+         * p: n0 -> n1 -> ... -> n29 -> n0
+         */
+        final int nodes = 30;
+        final Set<Predicate> reduced_facts = new HashSet<>();
+        for (int i = 0; i < nodes; i++) {
+            final Predicate p = new Predicate("p", 2);
+            p.args[0] = new Constant(Rule.CONSTANT_ARG_ID, "n" + i);
+            p.args[1] = new Constant(Rule.CONSTANT_ARG_ID, "n" + ((i + 1) % nodes));
+            reduced_facts.add(p);
+        }
+
+        final Rule r1 = new RuleImpl("a", 2, new HashSet<>());
+        assertEquals(Rule.UpdateStatus.NORMAL, r1.boundFreeVars2NewVar("p", 2, 0, 0, 0));
+        assertEquals(Rule.UpdateStatus.NORMAL, r1.boundFreeVars2NewVar(0, 1, 1, 1));
+        assertTrue(r1.toString().contains("a(X0,X1):-p(X0,X1)"));
+        final Rule r2 = new RuleImpl("a", 2, new HashSet<>());
+        assertEquals(Rule.UpdateStatus.NORMAL, r2.boundFreeVars2NewVar("p", 2, 0, 0, 0));
+        assertEquals(Rule.UpdateStatus.NORMAL, r2.boundFreeVars2NewVar("b", 2, 1, 0, 1));
+        assertEquals(Rule.UpdateStatus.NORMAL, r2.boundFreeVars2NewVar(1, 1, 2, 0));
+        assertTrue(r2.toString().contains("a(X0,X1):-p(X0,X2),b(X2,X1)"));
+        final Rule r3 = new RuleImpl("b", 2, new HashSet<>());
+        assertEquals(Rule.UpdateStatus.NORMAL, r3.boundFreeVars2NewVar("a", 2, 0, 0, 0));
+        assertEquals(Rule.UpdateStatus.NORMAL, r3.boundFreeVars2NewVar(0, 1, 1, 1));
+        assertTrue(r3.toString().contains("b(X0,X1):-a(X0,X1)"));
+        final Rule r4 = new RuleImpl("s", 1, new HashSet<>());
+        assertEquals(Rule.UpdateStatus.NORMAL, r4.boundFreeVars2NewVar("b", 2, 0, 0, 0));
+        assertEquals(Rule.UpdateStatus.NORMAL, r4.boundFreeVar2Constant(1, 1, "n0"));
+        assertTrue(r4.toString().contains("s(X0):-b(X0,n0)"));
+
+        final Set<Predicate> expected_recovery = new HashSet<>(reduced_facts);
+        for (int i = 0; i < nodes; i++) {
+            for (int j = 0; j < nodes; j++) {
+                for (String functor: new String[]{"a", "b"}) {
+                    final Predicate closure = new Predicate(functor, 2);
+                    closure.args[0] = new Constant(Rule.CONSTANT_ARG_ID, "n" + i);
+                    closure.args[1] = new Constant(Rule.CONSTANT_ARG_ID, "n" + j);
+                    expected_recovery.add(closure);
+                }
+            }
+            final Predicate s = new Predicate("s", 1);
+            s.args[0] = new Constant(Rule.CONSTANT_ARG_ID, "n" + i);
+            expected_recovery.add(s);
+        }
+
+        /* 半朴素与朴素求值的结果相同 */
+        final List<Rule> hypothesis = new ArrayList<>(Arrays.asList(r4, r3, r2, r1));
+        final SincRecovery semi_naive = new SincRecovery(hypothesis, reduced_facts, new HashSet<>(), new HashSet<>());
+        assertEquals(expected_recovery, semi_naive.recover());
+        final SincRecovery naive = new SincRecovery(hypothesis, reduced_facts, new HashSet<>(), new HashSet<>());
+        assertEquals(expected_recovery, naive.recoverNaively());
+    }
 }
\ No newline at end of file
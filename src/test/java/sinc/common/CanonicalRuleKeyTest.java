@@ -0,0 +1,177 @@
+package sinc.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CanonicalRuleKeyTest {
+
+    static final int CONST_ID = -1;
+
+    static Predicate predicate(String functor, Object... args) {
+        final Predicate predicate = new Predicate(functor, args.length);
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] instanceof Integer) {
+                predicate.args[i] = new Variable((Integer) args[i]);
+            } else if (null != args[i]) {
+                predicate.args[i] = new Constant(CONST_ID, (String) args[i]);
+            }
+        }
+        return predicate;
+    }
+
+    @Test
+    void testFalseDuplicates() {
+        /* 只用等价类判断时会被误判为相同的两组rule */
+        final List<Predicate> rule1 = Arrays.asList(
+                predicate("p", 0, 1), predicate("f", 0, 0), predicate("f", null, 1)
+        );
+        final List<Predicate> rule2 = Arrays.asList(
+                predicate("p", 0, 1), predicate("f", 0, 1), predicate("f", null, 0)
+        );
+        assertNotEquals(CanonicalRuleKey.of(rule1), CanonicalRuleKey.of(rule2));
+        assertNotEquals(new RuleFingerPrint(rule1), new RuleFingerPrint(rule2));
+
+        final List<Predicate> rule3 = Arrays.asList(
+                predicate("p", 0, 1), predicate("f", 0, null), predicate("f", 2, 1), predicate("f", null, 2)
+        );
+        final List<Predicate> rule4 = Arrays.asList(
+                predicate("p", 0, 1), predicate("f", 0, 2), predicate("f", null, 1), predicate("f", 2, null)
+        );
+        assertNotEquals(CanonicalRuleKey.of(rule3), CanonicalRuleKey.of(rule4));
+        assertNotEquals(new RuleFingerPrint(rule3), new RuleFingerPrint(rule4));
+
+        /* 变量重命名以及body的顺序不影响编码 */
+        final List<Predicate> rule5 = Arrays.asList(
+                predicate("p", 5, 1), predicate("f", null, 5), predicate("f", 5, 1)
+        );
+        assertEquals(CanonicalRuleKey.of(rule2), CanonicalRuleKey.of(rule5));
+        assertEquals(new RuleFingerPrint(rule2), new RuleFingerPrint(rule5));
+    }
+
+    @Test
+    void testRandomRules() {
+        final Random random = new Random(0);
+        int isomorphic_pairs = 0;
+        for (int round = 0; round < 2000; round++) {
+            final List<Predicate> rule1 = randomRule(random);
+            List<Predicate> rule2 = shuffleAndRename(rule1, random);
+            assertEquals(CanonicalRuleKey.of(rule1), CanonicalRuleKey.of(rule2));
+
+            /* 随机修改一个参数之后可能同构也可能不同构，与暴力匹配的结果比较 */
+            final Predicate target = rule2.get(random.nextInt(rule2.size()));
+            target.args[random.nextInt(target.arity())] = randomArgument(random);
+            final boolean isomorphic = isomorphic(rule1, rule2);
+            assertEquals(isomorphic, CanonicalRuleKey.of(rule1).equals(CanonicalRuleKey.of(rule2)));
+            if (isomorphic) {
+                isomorphic_pairs++;
+            }
+        }
+        assertTrue(0 < isomorphic_pairs);
+    }
+
+    static Argument randomArgument(Random random) {
+        switch (random.nextInt(6)) {
+            case 0:
+                return null;
+            case 1:
+                return new Constant(CONST_ID, "c");
+            default:
+                return new Variable(random.nextInt(4));
+        }
+    }
+
+    static List<Predicate> randomRule(Random random) {
+        final List<Predicate> rule = new ArrayList<>();
+        rule.add(new Predicate("h", 2));
+        final int body_preds = 1 + random.nextInt(4);
+        for (int i = 0; i < body_preds; i++) {
+            rule.add(random.nextBoolean() ? new Predicate("f", 2) : new Predicate("g", 1));
+        }
+        for (Predicate predicate: rule) {
+            for (int arg_idx = 0; arg_idx < predicate.arity(); arg_idx++) {
+                predicate.args[arg_idx] = randomArgument(random);
+            }
+        }
+        return rule;
+    }
+
+    static List<Predicate> shuffleAndRename(List<Predicate> rule, Random random) {
+        final List<Integer> renaming = new ArrayList<>(Arrays.asList(10, 11, 12, 13));
+        Collections.shuffle(renaming, random);
+        final List<Predicate> body = new ArrayList<>();
+        for (Predicate predicate: rule) {
+            final Predicate copy = new Predicate(predicate);
+            for (int arg_idx = 0; arg_idx < copy.arity(); arg_idx++) {
+                final Argument argument = copy.args[arg_idx];
+                if (null != argument && argument.isVar) {
+                    copy.args[arg_idx] = new Variable(renaming.get(argument.id));
+                }
+            }
+            body.add(copy);
+        }
+        final Predicate head = body.remove(Rule.HEAD_PRED_IDX);
+        Collections.shuffle(body, random);
+        body.add(Rule.HEAD_PRED_IDX, head);
+        return body;
+    }
+
+    /**
+     * 暴力判断同构：枚举body的排列，检查是否存在变量之间的双射
+     */
+    static boolean isomorphic(List<Predicate> rule1, List<Predicate> rule2) {
+        if (rule1.size() != rule2.size()) {
+            return false;
+        }
+        final List<Predicate> body2 = new ArrayList<>(rule2.subList(1, rule2.size()));
+        return permute(rule1, body2, 0, rule2.get(Rule.HEAD_PRED_IDX));
+    }
+
+    static boolean permute(List<Predicate> rule1, List<Predicate> body2, int startIdx, Predicate head2) {
+        if (startIdx == body2.size()) {
+            final List<Predicate> rule2 = new ArrayList<>();
+            rule2.add(head2);
+            rule2.addAll(body2);
+            return matches(rule1, rule2);
+        }
+        for (int i = startIdx; i < body2.size(); i++) {
+            Collections.swap(body2, startIdx, i);
+            if (permute(rule1, body2, startIdx + 1, head2)) {
+                return true;
+            }
+            Collections.swap(body2, startIdx, i);
+        }
+        return false;
+    }
+
+    static boolean matches(List<Predicate> rule1, List<Predicate> rule2) {
+        final Map<Integer, Integer> map12 = new HashMap<>();
+        final Map<Integer, Integer> map21 = new HashMap<>();
+        for (int pred_idx = 0; pred_idx < rule1.size(); pred_idx++) {
+            final Predicate predicate1 = rule1.get(pred_idx);
+            final Predicate predicate2 = rule2.get(pred_idx);
+            if (!predicate1.functor.equals(predicate2.functor) || predicate1.arity() != predicate2.arity()) {
+                return false;
+            }
+            for (int arg_idx = 0; arg_idx < predicate1.arity(); arg_idx++) {
+                final Argument argument1 = predicate1.args[arg_idx];
+                final Argument argument2 = predicate2.args[arg_idx];
+                if (null == argument1 || null == argument2) {
+                    if (argument1 != argument2) {
+                        return false;
+                    }
+                } else if (argument1.isVar && argument2.isVar) {
+                    if (argument2.id != map12.computeIfAbsent(argument1.id, k -> argument2.id) ||
+                            argument1.id != map21.computeIfAbsent(argument2.id, k -> argument1.id)) {
+                        return false;
+                    }
+                } else if (argument1.isVar || argument2.isVar || !argument1.name.equals(argument2.name)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -2,6 +2,9 @@ package sinc.common;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -34,4 +37,34 @@ class EvalTest {
             assertTrue(evs[2].useful(type));
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSpecializationUpperBound() {
+        /* 任意pos' <= q且pos' <= all'的specialization都不超过上界，pos' = all' = q时恰好取到上界 */
+        final Random random = new Random(0);
+        for (int round = 0; round < 1000; round++) {
+            final int pos = random.nextInt(100);
+            final int all = pos + random.nextInt(100);
+            final int size = random.nextInt(5);
+            final Eval previous = new Eval(null, random.nextInt(200), 200 + random.nextInt(100), size);
+            final Eval eval = new Eval(previous, pos, all, size);
+            final int max_pos = random.nextInt(pos + 1);
+            final int specialized_pos = random.nextInt(max_pos + 1);
+            final int specialized_all = specialized_pos + random.nextInt(all + 1);
+            final Eval specialized = new Eval(eval, specialized_pos, specialized_all, size + 1);
+            final Eval tightest = new Eval(eval, max_pos, max_pos, size + 1);
+            for (Eval.EvalMetric type: Eval.EvalMetric.values()) {
+                final double upper_bound = eval.specializationUpperBound(type, max_pos, size + 1);
+                assertEquals(
+                        eval.specializationUpperBound(type, pos, size + 1),
+                        eval.specializationUpperBound(type, pos + 1, size + 1)
+                );
+                assertTrue(specialized.value(type) <= upper_bound);
+                assertEquals(tightest.value(type), upper_bound);
+            }
+        }
+        for (Eval.EvalMetric type: Eval.EvalMetric.values()) {
+            assertEquals(Double.POSITIVE_INFINITY, Eval.MIN.specializationUpperBound(type, 0, 1));
+        }
+    }
+}
@@ -3,9 +3,7 @@ package sinc.common;
 import org.junit.jupiter.api.Test;
 import sinc.util.MultiSet;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -237,6 +235,68 @@ class RuleFingerPrintTest {
         assertNotEquals(finger_print3, finger_print4);
     }
 
+    @Test
+    public void testIncrementalDerivation() {
+        /* 随机extension，增量推导的fingerprint应当与重新构造的完全相同 */
+        final String[] functors = new String[]{"p", "q", "h"};
+        final int[] arities = new int[]{2, 1, 3};
+        final Random random = new Random(0);
+        for (int round = 0; round < 200; round++) {
+            final BareRule rule = new BareRule("h", 3, new HashSet<>());
+            for (int step = 0; step < 8 && rule.length() <= 4; step++) {
+                final List<int[]> vacant_list = new ArrayList<>();
+                for (int pred_idx = 0; pred_idx < rule.length(); pred_idx++) {
+                    final Predicate predicate = rule.getPredicate(pred_idx);
+                    for (int arg_idx = 0; arg_idx < predicate.arity(); arg_idx++) {
+                        if (null == predicate.args[arg_idx]) {
+                            vacant_list.add(new int[]{pred_idx, arg_idx});
+                        }
+                    }
+                }
+                if (vacant_list.isEmpty()) {
+                    break;
+                }
+                final int[] vacant = vacant_list.get(random.nextInt(vacant_list.size()));
+                final int functor_idx = random.nextInt(functors.length);
+                final int new_arg_idx = random.nextInt(arities[functor_idx]);
+                switch (random.nextInt(5)) {
+                    case 0:
+                        if (0 < rule.usedBoundedVars()) {
+                            rule.boundFreeVar2ExistingVar(vacant[0], vacant[1], random.nextInt(rule.usedBoundedVars()));
+                        }
+                        break;
+                    case 1:
+                        if (0 < rule.usedBoundedVars()) {
+                            rule.boundFreeVar2ExistingVar(
+                                    functors[functor_idx], arities[functor_idx], new_arg_idx,
+                                    random.nextInt(rule.usedBoundedVars())
+                            );
+                        }
+                        break;
+                    case 2:
+                        final int[] vacant2 = vacant_list.get(random.nextInt(vacant_list.size()));
+                        if (vacant != vacant2) {
+                            rule.boundFreeVars2NewVar(vacant[0], vacant[1], vacant2[0], vacant2[1]);
+                        }
+                        break;
+                    case 3:
+                        rule.boundFreeVars2NewVar(
+                                functors[functor_idx], arities[functor_idx], new_arg_idx, vacant[0], vacant[1]
+                        );
+                        break;
+                    default:
+                        rule.boundFreeVar2Constant(vacant[0], vacant[1], "c" + random.nextInt(2));
+                }
+                final RuleFingerPrint expected = new RuleFingerPrint(rule.structure);
+                final RuleFingerPrint actual = rule.getFingerPrint();
+                assertEquals(expected, actual, rule.toDumpString());
+                assertEquals(expected.longHashCode(), actual.longHashCode(), rule.toDumpString());
+                assertArrayEquals(expected.getHeadEquivClasses(), actual.getHeadEquivClasses());
+                assertEquals(expected.getOtherEquivClasses(), actual.getOtherEquivClasses());
+            }
+        }
+    }
+
     private String rule2String(List<Predicate> rule) {
         StringBuilder builder = new StringBuilder();
         builder.append(rule.get(0).toString()).append(":-");
@@ -1,6 +1,8 @@
 package sinc.common;
 
 import org.junit.jupiter.api.Test;
+import sinc.impl.cached.MemKB;
+import sinc.impl.cached.recal.RecalculateCachedRule;
 
 import java.util.HashSet;
 import java.util.List;
@@ -247,6 +249,110 @@ public class RuleTest {
         assertEquals(6, cache.size());
     }
 
+    @Test
+    void testPrecheck() {
+        /* h(X0,X1,?):-p(X0),q(?,X1),q(?,X0) */
+        final Set<RuleFingerPrint> cache = new HashSet<>();
+        Rule r = new RuleImpl("h", 3, cache);
+        assertEquals(Rule.UpdateStatus.NORMAL, r.boundFreeVars2NewVar("p", 1, 0, 0, 0));
+        assertEquals(Rule.UpdateStatus.NORMAL, r.boundFreeVars2NewVar("q", 2, 1, 0, 1));
+        assertEquals(Rule.UpdateStatus.NORMAL, r.boundFreeVar2ExistingVar("q", 2, 1, 0));
+        final String rule_str = r.toDumpString();
+        final RuleFingerPrint finger_print = r.getFingerPrint();
+        assertEquals(4, cache.size());
+
+        /* 试探不修改rule的结构，也不记录fingerprint */
+        assertEquals(Rule.UpdateStatus.NORMAL, r.precheckBoundFreeVar2ExistingVar(0, 2, 1));
+        assertEquals(Rule.UpdateStatus.NORMAL, r.precheckBoundFreeVar2ExistingVar("p", 1, 0, 1));
+        assertEquals(Rule.UpdateStatus.NORMAL, r.precheckBoundFreeVars2NewVar(2, 0, 3, 0));
+        assertEquals(Rule.UpdateStatus.NORMAL, r.precheckBoundFreeVars2NewVar("p", 1, 0, 0, 2));
+        assertEquals(Rule.UpdateStatus.NORMAL, r.precheckBoundFreeVar2Constant(0, 2, "c"));
+        assertEquals(Rule.UpdateStatus.NORMAL, r.precheckRemoveBoundedArg(1, 0));
+        assertEquals(rule_str, r.toDumpString());
+        assertSame(finger_print, r.getFingerPrint());
+        assertEquals(3, r.size());
+        assertEquals(4, r.length());
+        assertEquals(2, r.usedBoundedVars());
+        assertEquals(4, cache.size());
+
+        /* 重复：结构等价于已经搜索过的rule */
+        assertEquals(Rule.UpdateStatus.DUPLICATED, r.precheckRemoveBoundedArg(3, 1));
+        Rule r2 = r.clone();
+        assertEquals(Rule.UpdateStatus.NORMAL, r2.boundFreeVars2NewVar(2, 0, 3, 0));
+        assertEquals(Rule.UpdateStatus.DUPLICATED, r.precheckBoundFreeVars2NewVar(2, 0, 3, 0));
+        assertEquals(Rule.UpdateStatus.DUPLICATED, r.precheckBoundFreeVars2NewVar(3, 0, 2, 0));
+
+        /* 非法：出现Independent Fragment */
+        assertEquals(Rule.UpdateStatus.INVALID, r.precheckRemoveBoundedArg(0, 0));
+
+        /* 通过试探的extension在clone上仍然正常执行 */
+        Rule r3 = r.clone();
+        assertEquals(Rule.UpdateStatus.NORMAL, r.precheckBoundFreeVar2Constant(0, 2, "c"));
+        assertEquals(Rule.UpdateStatus.NORMAL, r3.boundFreeVar2Constant(0, 2, "c"));
+        assertEquals(Rule.UpdateStatus.DUPLICATED, r.precheckBoundFreeVar2Constant(0, 2, "c"));
+        assertEquals(rule_str, r.toDumpString());
+
+        /* 试探之后的clone直接使用试探得到的fingerprint */
+        final int searched = cache.size();
+        assertEquals(Rule.UpdateStatus.NORMAL, r.precheckBoundFreeVar2ExistingVar("p", 1, 0, 1));
+        Rule r4 = r.clone();
+        assertEquals(Rule.UpdateStatus.NORMAL, r4.boundFreeVar2ExistingVar("p", 1, 0, 1));
+        assertEquals(new RuleFingerPrint(r4.structure), r4.getFingerPrint());
+        assertEquals(searched + 1, cache.size());
+        Rule r5 = r.clone();
+        assertEquals(Rule.UpdateStatus.DUPLICATED, r5.boundFreeVar2ExistingVar("p", 1, 0, 1));
+    }
+
+    @Test
+    void testPrecheckCachedRule() {
+        /* Cached Rule不支持删除参数，试探时不修改结构，也不记录fingerprint */
+        final MemKB kb = new MemKB();
+        final Predicate father = new Predicate("father", 2);
+        father.args[0] = new Constant(-1, "f1");
+        father.args[1] = new Constant(-1, "s1");
+        kb.addFact(father);
+        final Predicate parent = new Predicate("parent", 2);
+        parent.args[0] = new Constant(-1, "f1");
+        parent.args[1] = new Constant(-1, "s1");
+        kb.addFact(parent);
+
+        /* father(X0,X1):-parent(X0,X1) */
+        final Set<RuleFingerPrint> cache = new HashSet<>();
+        Rule r = new RecalculateCachedRule("father", cache, kb);
+        assertEquals(Rule.UpdateStatus.NORMAL, r.boundFreeVars2NewVar("parent", 2, 0, 0, 0));
+        assertEquals(Rule.UpdateStatus.NORMAL, r.boundFreeVars2NewVar(0, 1, 1, 1));
+        final String rule_str = r.toDumpString();
+        final RuleFingerPrint finger_print = r.getFingerPrint();
+        final int searched = cache.size();
+
+        assertEquals(Rule.UpdateStatus.INVALID, r.precheckRemoveBoundedArg(1, 0));
+        assertEquals(Rule.UpdateStatus.INVALID, r.precheckRemoveBoundedArg(0, 1));
+        assertEquals(rule_str, r.toDumpString());
+        assertSame(finger_print, r.getFingerPrint());
+        assertEquals(searched, cache.size());
+        assertEquals(Rule.UpdateStatus.INVALID, r.clone().removeBoundedArg(1, 0));
+    }
+
+    @Test
+    void testFingerPrintAfterInPlaceUpdate() {
+        /* 原地修改结构之后，之前的fingerprint仍然对应修改之前的rule */
+        final Set<RuleFingerPrint> cache = new HashSet<>();
+        Rule r = new RuleImpl("h", 2, cache);
+        assertEquals(Rule.UpdateStatus.NORMAL, r.boundFreeVars2NewVar("f", 2, 0, 0, 0));
+        final RuleFingerPrint finger_print = r.getFingerPrint();
+        final String rule_str = r.toDumpString();
+        assertEquals(Rule.UpdateStatus.NORMAL, r.boundFreeVars2NewVar("f", 2, 0, 0, 1));
+        assertNotSame(finger_print.rule, r.getFingerPrint().rule);
+        assertEquals(2, finger_print.rule.size());
+        assertNotEquals(finger_print, r.getFingerPrint());
+
+        Rule r2 = new RuleImpl("h", 2, new HashSet<>());
+        assertEquals(Rule.UpdateStatus.NORMAL, r2.boundFreeVars2NewVar("f", 2, 0, 0, 0));
+        assertEquals(rule_str, r2.toDumpString());
+        assertEquals(finger_print, r2.getFingerPrint());
+        assertTrue(cache.contains(r2.getFingerPrint()));
+    }
+
     @Test
     void testStructureConstructor1() {
         /* h(?,?,?) :- */
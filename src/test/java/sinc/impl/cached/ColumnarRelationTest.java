@@ -0,0 +1,83 @@
+package sinc.impl.cached;
+
+import org.junit.jupiter.api.Test;
+import sinc.common.Constant;
+import sinc.common.Predicate;
+import sinc.util.NumerationMap;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarRelationTest {
+
+    static final String FUNCTOR = "p";
+    static final int CONST_ID = -1;
+
+    static Predicate fact(String... constants) {
+        final Predicate predicate = new Predicate(FUNCTOR, constants.length);
+        for (int i = 0; i < constants.length; i++) {
+            predicate.args[i] = new Constant(CONST_ID, constants[i]);
+        }
+        return predicate;
+    }
+
+    @Test
+    void testIndices() {
+        final NumerationMap map = new NumerationMap();
+        final List<Predicate> facts = Arrays.asList(
+                fact("c", "a"), fact("a", "b"), fact("b", "b"), fact("a", "c"), fact("a", "a")
+        );
+        final List<Constant> num_2_constant = new ArrayList<>(Collections.singletonList(null));
+        final int[][] columns = new int[2][facts.size()];
+        for (int row = 0; row < facts.size(); row++) {
+            final Predicate predicate = facts.get(row);
+            for (int col = 0; col < predicate.arity(); col++) {
+                final int num = map.mapName(predicate.args[col].name);
+                if (num_2_constant.size() == num) {
+                    num_2_constant.add((Constant) predicate.args[col]);
+                }
+                columns[col][row] = num;
+            }
+        }
+        final ColumnarRelation relation = new ColumnarRelation(FUNCTOR, 2, facts.size(), columns, map, num_2_constant);
+        final int a = map.name2Num("a");
+        final int b = map.name2Num("b");
+        final int c = map.name2Num("c");
+
+        assertEquals(5, relation.totalRows());
+        assertEquals(3, relation.count(0, a));
+        assertEquals(1, relation.count(0, b));
+        assertEquals(2, relation.count(1, b));
+        assertEquals(0, relation.count(1, map.mapName("d")));
+        assertEquals(3, relation.distinctValues(0));
+        assertEquals(3, relation.distinctValues(1));
+        assertEquals(relation.lowerBound(0, b), relation.upperBound(0, a));
+        assertEquals(c, relation.value(0, 0));
+        assertEquals(fact("c", "a"), relation.fact(0));
+        assertTrue(relation.allFacts().contains(fact("b", "b")));
+        assertFalse(relation.allFacts().contains(fact("b", "c")));
+        assertFalse(relation.allFacts().contains(fact("b", "e")));
+        assertEquals(0, relation.findRow(fact("c", "a")));
+        assertEquals(fact("b", "b"), relation.fact(relation.findRow(fact("b", "b"))));
+        assertEquals(-1, relation.findRow(fact("b", "c")));
+
+        final Set<Predicate> a_facts = relation.factsWithValue(0, a);
+        assertEquals(new HashSet<>(Arrays.asList(fact("a", "b"), fact("a", "c"), fact("a", "a"))), a_facts);
+        assertTrue(a_facts.contains(fact("a", "c")));
+        assertFalse(a_facts.contains(fact("b", "b")));
+        assertFalse(a_facts.contains(fact("a", "d")));
+        assertNull(relation.factsWithValue(1, map.name2Num("d")));
+
+        final Map<String, Set<Predicate>> arg_indices = relation.argIndices(1);
+        final Map<String, Set<Predicate>> expected_indices = new HashMap<>();
+        expected_indices.put("a", new HashSet<>(Arrays.asList(fact("c", "a"), fact("a", "a"))));
+        expected_indices.put("b", new HashSet<>(Arrays.asList(fact("a", "b"), fact("b", "b"))));
+        expected_indices.put("c", new HashSet<>(Collections.singletonList(fact("a", "c"))));
+        assertEquals(expected_indices, arg_indices);
+        assertEquals(expected_indices.keySet(), arg_indices.keySet());
+        assertTrue(arg_indices.containsKey("c"));
+        assertFalse(arg_indices.containsKey("d"));
+        assertFalse(arg_indices.containsKey("e"));
+    }
+}
@@ -0,0 +1,116 @@
+package sinc.impl.cached;
+
+import org.junit.jupiter.api.Test;
+import sinc.common.Constant;
+import sinc.common.Predicate;
+import sinc.common.Variable;
+import sinc.util.NumerationMap;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncodedMemKBTest {
+
+    static final String FUNCTOR_FATHER = "father";
+    static final String FUNCTOR_PARENT = "parent";
+    static final int CONST_ID = -1;
+
+    static Predicate fact(String functor, String... constants) {
+        final Predicate predicate = new Predicate(new String(functor), constants.length);
+        for (int i = 0; i < constants.length; i++) {
+            predicate.args[i] = new Constant(CONST_ID, new String(constants[i]));
+        }
+        return predicate;
+    }
+
+    @Test
+    void testEncoding() {
+        final EncodedMemKB kb = new EncodedMemKB();
+        assertTrue(kb.addFact(fact(FUNCTOR_FATHER, "f1", "s1")));
+        assertTrue(kb.addFact(fact(FUNCTOR_FATHER, "f1", "d1")));
+        assertTrue(kb.addFact(fact(FUNCTOR_PARENT, "f1", "s1")));
+        assertFalse(kb.addFact(fact(FUNCTOR_FATHER, "f1", "s1")));
+        assertEquals(3, kb.totalFacts());
+        assertEquals(3, kb.totalConstants());
+        assertEquals(3, kb.getNumerationMap().totalMappings());
+
+        /* 所有facts共享Constant与functor对象 */
+        final Map<String, Set<Predicate>> father_a1_indices = kb.getArgIndices(FUNCTOR_FATHER, 0);
+        final List<Predicate> father_facts = new ArrayList<>(father_a1_indices.get("f1"));
+        assertEquals(2, father_facts.size());
+        assertSame(father_facts.get(0).args[0], father_facts.get(1).args[0]);
+        assertSame(father_facts.get(0).functor, father_facts.get(1).functor);
+        for (Predicate parent_fact: kb.getAllFacts(FUNCTOR_PARENT)) {
+            assertSame(father_facts.get(0).args[0], parent_fact.args[0]);
+        }
+
+        /* 编码与解码 */
+        final int f1 = kb.getNumerationMap().name2Num("f1");
+        final int s1 = kb.getNumerationMap().name2Num("s1");
+        final int d1 = kb.getNumerationMap().name2Num("d1");
+        final ColumnarRelation father_relation = kb.getRelation(FUNCTOR_FATHER);
+        final Set<List<Integer>> father_rows = new HashSet<>();
+        for (int row = 0; row < father_relation.totalRows(); row++) {
+            father_rows.add(Arrays.asList(father_relation.value(row, 0), father_relation.value(row, 1)));
+        }
+        assertEquals(new HashSet<>(Arrays.asList(Arrays.asList(f1, s1), Arrays.asList(f1, d1))), father_rows);
+        assertEquals(1, kb.getRelation(FUNCTOR_PARENT).totalRows());
+        assertNull(kb.getRelation("unknown"));
+
+        final Predicate partial = new Predicate(FUNCTOR_FATHER, 2);
+        partial.args[0] = new Variable(0);
+        partial.args[1] = new Constant(CONST_ID, "d1");
+        assertArrayEquals(new int[]{NumerationMap.NULL_NUM, d1}, kb.encode(partial));
+
+        final Predicate decoded = kb.decode(FUNCTOR_FATHER, new int[]{f1, d1});
+        assertEquals(fact(FUNCTOR_FATHER, "f1", "d1"), decoded);
+        assertTrue(kb.containsFact(decoded));
+        final Predicate decoded_partial = kb.decode(FUNCTOR_FATHER, new int[]{NumerationMap.NULL_NUM, d1});
+        assertNull(decoded_partial.args[0]);
+        assertSame(decoded.args[1], decoded_partial.args[1]);
+
+        /* KB中只有int编码，contains与已证明的facts都在编码上完成 */
+        assertEquals(new HashSet<>(Arrays.asList(
+                fact(FUNCTOR_FATHER, "f1", "s1"), fact(FUNCTOR_FATHER, "f1", "d1"), fact(FUNCTOR_PARENT, "f1", "s1")
+        )), kb.getOriginalKB());
+        assertFalse(kb.containsFact(fact(FUNCTOR_PARENT, "f1", "d1")));
+        assertEquals(-1, kb.findRow(FUNCTOR_FATHER, new int[]{NumerationMap.NULL_NUM, d1}));
+        final int d1_row = kb.findRow(FUNCTOR_FATHER, new int[]{f1, d1});
+        assertFalse(kb.hasProvedRow(FUNCTOR_FATHER, d1_row));
+        kb.proveFact(fact(FUNCTOR_FATHER, "f1", "d1"));
+        assertTrue(kb.hasProvedRow(FUNCTOR_FATHER, d1_row));
+        assertTrue(kb.hasProved(fact(FUNCTOR_FATHER, "f1", "d1")));
+        assertFalse(kb.hasProved(fact(FUNCTOR_FATHER, "f1", "s1")));
+        assertEquals(new HashSet<>(Collections.singletonList(fact(FUNCTOR_FATHER, "f1", "d1"))), kb.getProvedFacts());
+    }
+
+    @Test
+    void testColumnarViews() {
+        final EncodedMemKB kb = new EncodedMemKB();
+        kb.declareFunctor(FUNCTOR_PARENT, 2);
+        assertTrue(kb.getAllFacts(FUNCTOR_PARENT).isEmpty());
+        kb.addFact(fact(FUNCTOR_FATHER, "f1", "s1"));
+        kb.addFact(fact(FUNCTOR_FATHER, "f1", "d1"));
+        kb.addFact(fact(FUNCTOR_FATHER, "f2", "s2"));
+
+        final Set<Predicate> all_facts = kb.getAllFacts(FUNCTOR_FATHER);
+        assertEquals(new HashSet<>(Arrays.asList(
+                fact(FUNCTOR_FATHER, "f1", "s1"), fact(FUNCTOR_FATHER, "f1", "d1"), fact(FUNCTOR_FATHER, "f2", "s2")
+        )), all_facts);
+        assertTrue(all_facts.contains(fact(FUNCTOR_FATHER, "f2", "s2")));
+        assertFalse(all_facts.contains(fact(FUNCTOR_FATHER, "f2", "s1")));
+        assertEquals(new HashSet<>(Arrays.asList("f1", "f2")), kb.getValueSet(FUNCTOR_FATHER, 0));
+
+        assertEquals(
+                new HashSet<>(Arrays.asList(fact(FUNCTOR_FATHER, "f1", "s1"), fact(FUNCTOR_FATHER, "f1", "d1"))),
+                kb.getArgIndices(FUNCTOR_FATHER, 0).get("f1")
+        );
+        assertNull(kb.getArgIndices(FUNCTOR_FATHER, 1).get("f1"));
+
+        /* 加入新的facts之后重新建立列存储 */
+        kb.addFact(fact(FUNCTOR_FATHER, "f2", "d2"));
+        assertEquals(4, kb.getAllFacts(FUNCTOR_FATHER).size());
+        assertEquals(2, kb.getArgIndices(FUNCTOR_FATHER, 0).get("f2").size());
+    }
+}
@@ -0,0 +1,128 @@
+package sinc.impl.cached;
+
+import org.junit.jupiter.api.Test;
+import sinc.common.Constant;
+import sinc.common.Predicate;
+import sinc.util.NumerationMap;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexedInclusionTest {
+
+    static final String FUNCTOR_PARENT = "parent";
+    static final int CONST_ID = -1;
+
+    static Predicate fact(String functor, String... constants) {
+        final Predicate predicate = new Predicate(functor, constants.length);
+        for (int i = 0; i < constants.length; i++) {
+            predicate.args[i] = new Constant(CONST_ID, constants[i]);
+        }
+        return predicate;
+    }
+
+    static Set<Predicate> parentFacts() {
+        return new HashSet<>(Arrays.asList(
+                fact(FUNCTOR_PARENT, "f1", "s1"),
+                fact(FUNCTOR_PARENT, "f1", "d1"),
+                fact(FUNCTOR_PARENT, "f2", "s2"),
+                fact(FUNCTOR_PARENT, "m2", "s2"),
+                fact(FUNCTOR_PARENT, "g1", "g1")
+        ));
+    }
+
+    @Test
+    void testIndex() {
+        final Set<Predicate> facts = parentFacts();
+        final IndexedInclusion inclusion = new IndexedInclusion(facts, 2);
+        assertEquals(facts, inclusion);
+        assertEquals(5, inclusion.size());
+
+        final Map<String, IndexedInclusion> index0 = inclusion.index(0);
+        assertSame(index0, inclusion.index(0));
+        assertEquals(new HashSet<>(Arrays.asList("f1", "f2", "m2", "g1")), index0.keySet());
+        assertEquals(
+                new HashSet<>(Arrays.asList(fact(FUNCTOR_PARENT, "f1", "s1"), fact(FUNCTOR_PARENT, "f1", "d1"))),
+                index0.get("f1")
+        );
+
+        /* 子集上的索引；所有facts取值相同时子集就是自身 */
+        final IndexedInclusion f1_inclusion = inclusion.select(0, "f1");
+        assertSame(f1_inclusion, f1_inclusion.select(0, "f1"));
+        assertEquals(Collections.singleton(fact(FUNCTOR_PARENT, "f1", "d1")), f1_inclusion.select(1, "d1"));
+        assertTrue(f1_inclusion.select(1, "s2").isEmpty());
+        assertSame(IndexedInclusion.EMPTY, inclusion.select(1, "unknown"));
+        assertEquals(Collections.singleton(fact(FUNCTOR_PARENT, "g1", "g1")), inclusion.select(0, "g1").select(1, "g1"));
+
+        assertThrows(UnsupportedOperationException.class, () -> inclusion.iterator().remove());
+    }
+
+    @Test
+    void testEncodedInclusion() {
+        final EncodedMemKB kb = new EncodedMemKB();
+        for (Predicate fact: parentFacts()) {
+            kb.addFact(fact);
+        }
+        kb.addFact(fact(FUNCTOR_PARENT, "m2", "d2"));
+        final IndexedInclusion inclusion = kb.getIndexedFacts(FUNCTOR_PARENT);
+        assertTrue(inclusion instanceof EncodedInclusion);
+
+        /* 按int编码筛选，子集仍然是EncodedInclusion */
+        final EncodedInclusion encoded = (EncodedInclusion) inclusion;
+        final NumerationMap numeration_map = kb.getNumerationMap();
+        final IndexedInclusion s2_inclusion = encoded.select(1, numeration_map.name2Num("s2"));
+        assertTrue(s2_inclusion instanceof EncodedInclusion);
+        assertEquals(
+                new HashSet<>(Arrays.asList(fact(FUNCTOR_PARENT, "f2", "s2"), fact(FUNCTOR_PARENT, "m2", "s2"))),
+                s2_inclusion
+        );
+        final IndexedInclusion m2_inclusion = inclusion.select(0, "m2");
+        assertEquals(
+                new HashSet<>(Arrays.asList(fact(FUNCTOR_PARENT, "m2", "s2"), fact(FUNCTOR_PARENT, "m2", "d2"))),
+                m2_inclusion
+        );
+        assertSame(m2_inclusion, m2_inclusion.select(0, "m2"));
+        assertEquals(Collections.singleton(fact(FUNCTOR_PARENT, "m2", "d2")), m2_inclusion.select(1, "d2"));
+        assertSame(IndexedInclusion.EMPTY, m2_inclusion.select(1, "s1"));
+        assertSame(IndexedInclusion.EMPTY, m2_inclusion.select(0, "f1"));
+
+        /* 子集上的索引与筛选结果一致 */
+        final Map<String, IndexedInclusion> index1 = m2_inclusion.index(1);
+        assertEquals(new HashSet<>(Arrays.asList("s2", "d2")), index1.keySet());
+        assertEquals(m2_inclusion.select(1, "s2"), index1.get("s2"));
+        assertEquals(parentFacts().size() + 1, inclusion.index(0).values().stream().mapToInt(Set::size).sum());
+        assertTrue(m2_inclusion.contains(fact(FUNCTOR_PARENT, "m2", "d2")));
+        assertFalse(m2_inclusion.contains(fact(FUNCTOR_PARENT, "f2", "s2")));
+        assertFalse(m2_inclusion.contains(fact(FUNCTOR_PARENT, "m2", "nobody")));
+    }
+
+    @Test
+    void testKbInclusion() {
+        for (MemKB kb: new MemKB[]{new MemKB(), new EncodedMemKB()}) {
+            for (Predicate fact: parentFacts()) {
+                kb.addFact(fact);
+            }
+            final IndexedInclusion inclusion = kb.getIndexedFacts(FUNCTOR_PARENT);
+            assertSame(inclusion, kb.getIndexedFacts(FUNCTOR_PARENT));
+            assertEquals(parentFacts(), inclusion);
+            assertEquals(
+                    new HashSet<>(Arrays.asList(fact(FUNCTOR_PARENT, "f2", "s2"), fact(FUNCTOR_PARENT, "m2", "s2"))),
+                    inclusion.select(1, "s2")
+            );
+            assertEquals(Collections.singleton(fact(FUNCTOR_PARENT, "m2", "s2")), inclusion.select(1, "s2").select(0, "m2"));
+
+            assertEquals(parentFacts().size(), inclusion.select(0, "f1").size() + inclusion.select(0, "f2").size()
+                    + inclusion.select(0, "m2").size() + inclusion.select(0, "g1").size());
+            assertTrue(inclusion.select(1, "s2").contains(fact(FUNCTOR_PARENT, "f2", "s2")));
+            assertFalse(inclusion.select(1, "s2").contains(fact(FUNCTOR_PARENT, "f1", "s1")));
+            assertSame(IndexedInclusion.EMPTY, inclusion.select(1, "unknown"));
+
+            /* 加入新的facts后重新建立 */
+            kb.addFact(fact(FUNCTOR_PARENT, "m2", "d2"));
+            final IndexedInclusion new_inclusion = kb.getIndexedFacts(FUNCTOR_PARENT);
+            assertNotSame(inclusion, new_inclusion);
+            assertEquals(2, new_inclusion.select(0, "m2").size());
+        }
+    }
+}
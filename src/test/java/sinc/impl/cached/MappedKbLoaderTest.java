@@ -0,0 +1,127 @@
+package sinc.impl.cached;
+
+import org.junit.jupiter.api.Test;
+import sinc.common.Constant;
+import sinc.common.Predicate;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedKbLoaderTest {
+
+    static final int CONST_ID = -1;
+
+    static File writeKb(String content) throws IOException {
+        final File file = File.createTempFile("sinc", ".tsv");
+        file.deleteOnExit();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(content);
+        }
+        return file;
+    }
+
+    /* 原来逐行split的加载方式 */
+    static EncodedMemKB loadByLines(File file) throws IOException {
+        final EncodedMemKB kb = new EncodedMemKB();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)
+        )) {
+            String line;
+            while (null != (line = reader.readLine())) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                final String[] components = line.split("\t");
+                final Predicate predicate = new Predicate(components[0], components.length - 1);
+                for (int i = 1; i < components.length; i++) {
+                    predicate.args[i - 1] = new Constant(CONST_ID, components[i]);
+                }
+                kb.addFact(predicate);
+            }
+        }
+        return kb;
+    }
+
+    static void assertSameKb(EncodedMemKB expected, EncodedMemKB actual) {
+        assertEquals(expected.totalFacts(), actual.totalFacts());
+        assertEquals(expected.totalConstants(), actual.totalConstants());
+        assertEquals(expected.getFunctor2ArityMap(), actual.getFunctor2ArityMap());
+        for (String functor: expected.getAllFunctors()) {
+            assertEquals(new HashSet<>(expected.getAllFacts(functor)), new HashSet<>(actual.getAllFacts(functor)));
+        }
+    }
+
+    @Test
+    void testLoad() throws IOException {
+        final File file = writeKb(
+                "father\tf1\ts1\r\n" +
+                "father\tf1\td1\n" +
+                "\n" +
+                "parent\tf1\ts1\n" +
+                "father\tf1\ts1\n" +
+                "gender\t中文\n" +
+                "gender\ts1\t\n" +
+                "rel\tf1\td1\ts1"
+        );
+        final EncodedMemKB kb = new EncodedMemKB();
+        assertEquals(6, MappedKbLoader.load(kb, file.getPath(), 1));
+        assertSameKb(loadByLines(file), kb);
+        assertEquals(6, kb.totalFacts());
+        assertEquals(4, kb.totalConstants());
+        assertEquals(3, kb.getFunctor2ArityMap().get("rel"));
+        assertEquals(1, kb.getFunctor2ArityMap().get("gender"));
+        final Predicate gender_fact = new Predicate("gender", 1);
+        gender_fact.args[0] = new Constant(CONST_ID, "中文");
+        assertTrue(kb.getAllFacts("gender").contains(gender_fact));
+
+        /* 所有facts共享Constant对象 */
+        final Map<String, Constant> name_2_constant = new HashMap<>();
+        for (String functor: kb.getAllFunctors()) {
+            for (Predicate predicate: kb.getAllFacts(functor)) {
+                for (int i = 0; i < predicate.arity(); i++) {
+                    final Constant constant = (Constant) predicate.args[i];
+                    assertSame(name_2_constant.computeIfAbsent(constant.name, k -> constant), constant);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testParallelChunks() throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            builder.append("edge\te").append(i).append("\te").append(i * 31 % 997).append('\n');
+            if (0 == i % 7) {
+                builder.append("label\te").append(i).append("\tl").append(i % 13).append("\r\n");
+            }
+        }
+        final File file = writeKb(builder.toString());
+        final EncodedMemKB expected = loadByLines(file);
+        for (int threads: new int[]{1, 3, 8}) {
+            final EncodedMemKB kb = new EncodedMemKB();
+            MappedKbLoader.load(kb, file.getPath(), threads);
+            assertSameKb(expected, kb);
+        }
+    }
+
+    @Test
+    void testSplitChunks() throws IOException {
+        final File file = writeKb("p\ta\nq\tbbbbbbbbbb\nr\tc\n");
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            final long[] boundaries = MappedKbLoader.splitChunks(channel, 4);
+            assertEquals(0, boundaries[0]);
+            assertEquals(channel.size(), boundaries[boundaries.length - 1]);
+            for (int i = 1; i < boundaries.length - 1; i++) {
+                assertTrue(boundaries[i] > boundaries[i - 1]);
+                final ByteBuffer probe = ByteBuffer.allocate(1);
+                channel.read(probe, boundaries[i] - 1);
+                assertEquals('\n', probe.get(0));
+            }
+        }
+    }
+}
@@ -262,4 +262,27 @@ class MemKBTest {
             assertFalse(kb.hasProved(p));
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSketchSimilarColumnPairs() {
+        /* 各个relation的参数取自相互重叠的常量区间，与比较所有列对的结果相同 */
+        final Random random = new Random(0);
+        final MemKB kb = new MemKB();
+        for (int functor_idx = 0; functor_idx < 30; functor_idx++) {
+            final int offset = random.nextInt(100);
+            for (int i = 0; i < 50; i++) {
+                final Predicate predicate = new Predicate("r" + functor_idx, 2);
+                predicate.args[0] = new Constant(CONST_ID, "c" + (offset + random.nextInt(40)));
+                predicate.args[1] = new Constant(CONST_ID, "c" + random.nextInt(200));
+                kb.addFact(predicate);
+            }
+        }
+        for (double threshold: new double[]{0.1, 0.3, 0.6}) {
+            kb.calculateSimilarColumnPairs(threshold);
+            final Set<MemKB.ColumnPairInfo> expected = new HashSet<>(kb.similarColumnPairs);
+            kb.calculateSimilarColumnPairs(threshold, true);
+            assertEquals(expected, kb.similarColumnPairs);
+            assertTrue(60 <= expected.size());
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package sinc.impl.cached.join;
+
+import org.junit.jupiter.api.Test;
+import sinc.common.Constant;
+import sinc.common.Predicate;
+import sinc.common.Variable;
+import sinc.impl.cached.ColumnarRelation;
+import sinc.impl.cached.EncodedMemKB;
+import sinc.util.NumerationMap;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeapfrogTriejoinTest {
+
+    static final String FUNCTOR_EDGE = "edge";
+    static final int CONST_ID = -1;
+
+    static Predicate fact(String functor, String... constants) {
+        final Predicate predicate = new Predicate(functor, constants.length);
+        for (int i = 0; i < constants.length; i++) {
+            predicate.args[i] = new Constant(CONST_ID, constants[i]);
+        }
+        return predicate;
+    }
+
+    static EncodedMemKB kbGraph() {
+        /* edge: a->b, b->c, a->c, c->a, c->d, d->d */
+        final EncodedMemKB kb = new EncodedMemKB();
+        kb.addFact(fact(FUNCTOR_EDGE, "a", "b"));
+        kb.addFact(fact(FUNCTOR_EDGE, "b", "c"));
+        kb.addFact(fact(FUNCTOR_EDGE, "a", "c"));
+        kb.addFact(fact(FUNCTOR_EDGE, "c", "a"));
+        kb.addFact(fact(FUNCTOR_EDGE, "c", "d"));
+        kb.addFact(fact(FUNCTOR_EDGE, "d", "d"));
+        return kb;
+    }
+
+    @Test
+    void testAtomTrie() {
+        final EncodedMemKB kb = kbGraph();
+        final NumerationMap numeration_map = kb.getNumerationMap();
+        final ColumnarRelation relation = kb.getRelation(FUNCTOR_EDGE);
+
+        /* edge(X, Y) */
+        AtomTrie trie = new AtomTrie(relation, new int[]{AtomTrie.variablePattern(0), AtomTrie.variablePattern(1)});
+        assertEquals(2, trie.depth());
+        assertEquals(6, trie.size());
+
+        /* edge(X, ?) */
+        trie = new AtomTrie(relation, new int[]{AtomTrie.variablePattern(0), NumerationMap.NULL_NUM});
+        assertEquals(1, trie.depth());
+        assertEquals(4, trie.size());
+
+        /* edge(c, X) */
+        trie = new AtomTrie(relation, new int[]{numeration_map.name2Num("c"), AtomTrie.variablePattern(0)});
+        assertEquals(2, trie.size());
+        final Set<Predicate> witnesses = new HashSet<>();
+        for (int i = 0; i < trie.size(); i++) {
+            witnesses.add(relation.fact(trie.witnessRow(i)));
+        }
+        assertEquals(new HashSet<>(Arrays.asList(fact(FUNCTOR_EDGE, "c", "a"), fact(FUNCTOR_EDGE, "c", "d"))), witnesses);
+
+        /* edge(X, X) */
+        trie = new AtomTrie(relation, new int[]{AtomTrie.variablePattern(0), AtomTrie.variablePattern(0)});
+        assertEquals(1, trie.size());
+        assertEquals(fact(FUNCTOR_EDGE, "d", "d"), relation.fact(trie.witnessRow(0)));
+
+        /* edge(b, a) */
+        trie = new AtomTrie(relation, new int[]{numeration_map.name2Num("b"), numeration_map.name2Num("a")});
+        assertTrue(trie.isEmpty());
+    }
+
+    @Test
+    void testTriangle() {
+        /* edge(X, Y), edge(Y, Z), edge(X, Z) */
+        final EncodedMemKB kb = kbGraph();
+        final NumerationMap numeration_map = kb.getNumerationMap();
+        final int[] pattern = new int[]{AtomTrie.variablePattern(0), AtomTrie.variablePattern(1)};
+        final AtomTrie trie = kb.getAtomTrie(FUNCTOR_EDGE, pattern);
+        assertSame(trie, kb.getAtomTrie(FUNCTOR_EDGE, pattern));
+        final int[] constant_pattern = new int[]{numeration_map.name2Num("c"), AtomTrie.variablePattern(0)};
+        assertNotSame(kb.getAtomTrie(FUNCTOR_EDGE, constant_pattern), kb.getAtomTrie(FUNCTOR_EDGE, constant_pattern));
+        assertEquals(2, kb.getAtomTrie(FUNCTOR_EDGE, constant_pattern).size());
+        final LeapfrogTriejoin join = new LeapfrogTriejoin(
+                3, new AtomTrie[]{trie, trie, trie}, new int[][]{{0, 1}, {1, 2}, {0, 2}}
+        );
+        final Set<List<String>> triangles = new HashSet<>();
+        join.enumerate(3, (binding, iterators) -> {
+            final List<String> triangle = new ArrayList<>();
+            for (int value: binding) {
+                triangle.add(numeration_map.num2Name(value));
+            }
+            triangles.add(triangle);
+        });
+        assertEquals(new HashSet<>(Arrays.asList(
+                Arrays.asList("a", "b", "c"),
+                Arrays.asList("c", "d", "d"),
+                Arrays.asList("d", "d", "d")
+        )), triangles);
+        assertEquals(3, join.count(3));
+        assertEquals(3, join.count(1));
+        assertEquals(1, join.count(0));
+    }
+
+    @Test
+    void testProjection() {
+        /* edge(X, Y), edge(Y, ?): 投影到X上 */
+        final EncodedMemKB kb = kbGraph();
+        final NumerationMap numeration_map = kb.getNumerationMap();
+        final LeapfrogTriejoin join = new LeapfrogTriejoin(
+                2,
+                new AtomTrie[]{
+                        kb.getAtomTrie(FUNCTOR_EDGE, new int[]{AtomTrie.variablePattern(0), AtomTrie.variablePattern(1)}),
+                        kb.getAtomTrie(FUNCTOR_EDGE, new int[]{AtomTrie.variablePattern(0), NumerationMap.NULL_NUM})
+                },
+                new int[][]{{0, 1}, {1}}
+        );
+        final List<String> sources = new ArrayList<>();
+        join.enumerate(1, (binding, iterators) -> sources.add(numeration_map.num2Name(binding[0])));
+        assertEquals(4, sources.size());
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "d")), new HashSet<>(sources));
+        assertEquals(6, join.count(2));
+    }
+
+    @Test
+    void testRuleJoin() {
+        /* edge(X, Z) :- edge(X, Y), edge(Y, Z) */
+        final EncodedMemKB kb = kbGraph();
+        final List<Predicate> structure = new ArrayList<>();
+        final Predicate head = new Predicate(FUNCTOR_EDGE, 2);
+        head.args[0] = new Variable(0);
+        head.args[1] = new Variable(1);
+        final Predicate body1 = new Predicate(FUNCTOR_EDGE, 2);
+        body1.args[0] = new Variable(0);
+        body1.args[1] = new Variable(2);
+        final Predicate body2 = new Predicate(FUNCTOR_EDGE, 2);
+        body2.args[0] = new Variable(2);
+        body2.args[1] = new Variable(1);
+        structure.add(head);
+        structure.add(body1);
+        structure.add(body2);
+
+        /* body entail: a->a, a->c, a->d, b->a, b->d, c->b, c->c, c->d, d->d */
+        final RuleJoin body_join = RuleJoin.bodyQuery(structure, kb);
+        assertEquals(2, body_join.projectionDepth());
+        assertEquals(9, body_join.countProjections());
+
+        /* 同时在KB中的：a->c, c->d, d->d */
+        final RuleJoin rule_join = RuleJoin.ruleQuery(structure, kb);
+        final Set<Predicate> heads = new HashSet<>();
+        rule_join.forEachProjection((binding, iterators) -> {
+            final Predicate h = rule_join.witness(iterators, 0);
+            final Predicate b1 = rule_join.witness(iterators, 1);
+            final Predicate b2 = rule_join.witness(iterators, 2);
+            assertEquals(h.args[0], b1.args[0]);
+            assertEquals(b1.args[1], b2.args[0]);
+            assertEquals(h.args[1], b2.args[1]);
+            heads.add(h);
+        });
+        assertEquals(new HashSet<>(Arrays.asList(
+                fact(FUNCTOR_EDGE, "a", "c"), fact(FUNCTOR_EDGE, "c", "d"), fact(FUNCTOR_EDGE, "d", "d")
+        )), heads);
+
+        /* 常量不在KB中时结果为空 */
+        body1.args[0] = new Constant(CONST_ID, "z");
+        assertEquals(0, RuleJoin.bodyQuery(structure, kb).countProjections());
+    }
+}
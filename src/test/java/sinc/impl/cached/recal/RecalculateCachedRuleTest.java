@@ -3,9 +3,11 @@ package sinc.impl.cached.recal;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import sinc.common.*;
+import sinc.impl.cached.EncodedMemKB;
 import sinc.impl.cached.MemKB;
 
 import java.util.*;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -1599,4 +1601,234 @@ class RecalculateCachedRuleTest {
         assertTrue(kb.hasProved(h2));
         assertFalse(kb.hasProved(h3));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testEstimation() {
+        /* h(X, ?) :- p(X, ?)，一半的X在h中出现1~3次 */
+        final MemKB kb = new MemKB();
+        for (int i = 0; i < 2000; i++) {
+            final Predicate p = new Predicate("p", 2);
+            p.args[0] = new Constant(Rule.CONSTANT_ARG_ID, "x" + i);
+            p.args[1] = new Constant(Rule.CONSTANT_ARG_ID, "y" + (i % 50));
+            kb.addFact(p);
+            if (0 == i % 2) {
+                for (int j = 0; j <= i % 3; j++) {
+                    final Predicate h = new Predicate("h", 2);
+                    h.args[0] = p.args[0];
+                    h.args[1] = new Constant(Rule.CONSTANT_ARG_ID, "y" + j);
+                    kb.addFact(h);
+                }
+            }
+        }
+
+        final RecalculateCachedRule exact_rule = new RecalculateCachedRule("h", new HashSet<>(), kb);
+        assertEquals(Rule.UpdateStatus.NORMAL, exact_rule.boundFreeVars2NewVar("p", 2, 0, 0, 0));
+        assertFalse(exact_rule.isEstimated());
+        final Eval exact_eval = exact_rule.getEval();
+        assertEquals(1999, exact_eval.getPosCnt());
+
+        final RecalculateCachedRule rule = new RecalculateCachedRule("h", new HashSet<>(), kb, false, 0.1);
+        assertFalse(rule.isEstimated());
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVars2NewVar("p", 2, 0, 0, 0));
+        assertTrue(rule.isEstimated());
+        final EstimatedEval estimated_eval = (EstimatedEval) rule.getEval();
+        assertTrue(0 < estimated_eval.getPosMargin());
+        for (Eval.EvalMetric metric: new Eval.EvalMetric[]{
+                Eval.EvalMetric.CompressionRate, Eval.EvalMetric.CompressionCapacity
+        }) {
+            assertTrue(estimated_eval.lowerValue(metric) <= exact_eval.value(metric));
+            assertTrue(estimated_eval.upperValue(metric) >= exact_eval.value(metric));
+        }
+
+        rule.evaluateExactly();
+        assertFalse(rule.isEstimated());
+        assertEquals(exact_eval, rule.getEval());
+    }
+
+    @Test
+    void testEstimationWithSharedHeads() {
+        /* h(X, ?) :- p(X, Y), q(Y, ?)，每个X对应5个Y，因此每个head(以及body中X的取值)被5个grounding共享 */
+        final MemKB kb = new MemKB();
+        for (int i = 0; i < 2000; i++) {
+            final Constant x = new Constant(Rule.CONSTANT_ARG_ID, "x" + i);
+            for (int k = 0; k < 5; k++) {
+                final Predicate p = new Predicate("p", 2);
+                p.args[0] = x;
+                p.args[1] = new Constant(Rule.CONSTANT_ARG_ID, "y" + ((i + k) % 50));
+                kb.addFact(p);
+            }
+            if (0 == i % 2) {
+                for (int j = 0; j <= i % 3; j++) {
+                    final Predicate h = new Predicate("h", 2);
+                    h.args[0] = x;
+                    h.args[1] = new Constant(Rule.CONSTANT_ARG_ID, "y" + j);
+                    kb.addFact(h);
+                }
+            }
+        }
+        for (int j = 0; j < 50; j++) {
+            final Predicate q = new Predicate("q", 2);
+            q.args[0] = new Constant(Rule.CONSTANT_ARG_ID, "y" + j);
+            q.args[1] = new Constant(Rule.CONSTANT_ARG_ID, "z" + j);
+            kb.addFact(q);
+        }
+
+        final RecalculateCachedRule exact_rule = new RecalculateCachedRule("h", new HashSet<>(), kb);
+        assertEquals(Rule.UpdateStatus.NORMAL, exact_rule.boundFreeVars2NewVar("p", 2, 0, 0, 0));
+        assertEquals(Rule.UpdateStatus.NORMAL, exact_rule.boundFreeVars2NewVar("q", 2, 0, 1, 1));
+        final Eval exact_eval = exact_rule.getEval();
+        assertEquals(1999, exact_eval.getPosCnt());
+
+        final RecalculateCachedRule rule = new RecalculateCachedRule("h", new HashSet<>(), kb, false, 0.1);
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVars2NewVar("p", 2, 0, 0, 0));
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVars2NewVar("q", 2, 0, 1, 1));
+        assertTrue(rule.isEstimated());
+        final EstimatedEval estimated_eval = (EstimatedEval) rule.getEval();
+
+        /* 按grounding采样会把共享的head重复放大，估计值接近5倍；按head分组采样的估计值在置信区间内接近精确值 */
+        assertTrue(Math.abs(estimated_eval.getPosCnt() - exact_eval.getPosCnt()) <= estimated_eval.getPosMargin());
+        assertTrue(Math.abs(estimated_eval.getPosCnt() - exact_eval.getPosCnt()) < exact_eval.getPosCnt() * 0.2);
+        assertTrue(Math.abs(estimated_eval.getAllCnt() - exact_eval.getAllCnt()) < exact_eval.getAllCnt() * 0.2);
+        for (Eval.EvalMetric metric: new Eval.EvalMetric[]{
+                Eval.EvalMetric.CompressionRate, Eval.EvalMetric.CompressionCapacity
+        }) {
+            assertTrue(estimated_eval.lowerValue(metric) <= exact_eval.value(metric));
+            assertTrue(estimated_eval.upperValue(metric) >= exact_eval.value(metric));
+        }
+
+        rule.evaluateExactly();
+        assertFalse(rule.isEstimated());
+        assertEquals(exact_eval, rule.getEval());
+    }
+
+    static EncodedMemKB encodedKbFamily() {
+        final MemKB kb = kbFamily();
+        final EncodedMemKB encoded_kb = new EncodedMemKB();
+        for (String functor: kb.getAllFunctors()) {
+            for (Predicate fact: kb.getAllFacts(functor)) {
+                encoded_kb.addFact(new Predicate(fact));
+            }
+        }
+        return encoded_kb;
+    }
+
+    /**
+     * 分别用groundings缓存与join计算同一条rule，检查结果一致
+     */
+    @SafeVarargs
+    private static void assertJoinConsistent(
+            String headFunctor, Function<RecalculateCachedRule, Rule.UpdateStatus>... updates
+    ) {
+        final EncodedMemKB cache_kb = encodedKbFamily();
+        final EncodedMemKB join_kb = encodedKbFamily();
+        final RecalculateCachedRule cache_rule = new RecalculateCachedRule(headFunctor, new HashSet<>(), cache_kb);
+        final RecalculateCachedRule join_rule = new RecalculateCachedRule(headFunctor, new HashSet<>(), join_kb, true, -1.0);
+        assertEquals(cache_rule.getEval(), join_rule.getEval());
+        for (Function<RecalculateCachedRule, Rule.UpdateStatus> update: updates) {
+            assertEquals(Rule.UpdateStatus.NORMAL, update.apply(cache_rule));
+            assertEquals(Rule.UpdateStatus.NORMAL, update.apply(join_rule));
+            assertEquals(cache_rule.toString(), join_rule.toString());
+            assertEquals(cache_rule.getEval(), join_rule.getEval());
+        }
+
+        final UpdateResult cache_result = cache_rule.updateInKb();
+        final UpdateResult join_result = join_rule.updateInKb();
+        assertEquals(cache_result.counterExamples, join_result.counterExamples);
+        final Set<Predicate> cache_heads = new HashSet<>();
+        for (Predicate[] grounding: cache_result.groundings) {
+            cache_heads.add(grounding[Rule.HEAD_PRED_IDX]);
+        }
+        final Set<Predicate> join_heads = new HashSet<>();
+        for (Predicate[] grounding: join_result.groundings) {
+            join_heads.add(grounding[Rule.HEAD_PRED_IDX]);
+            for (Predicate predicate: grounding) {
+                assertTrue(join_kb.containsFact(predicate));
+            }
+        }
+        assertEquals(cache_result.groundings.size(), join_result.groundings.size());
+        assertEquals(cache_heads, join_heads);
+    }
+
+    @Test
+    void testJoinEvaluation() {
+        /* parent(X, Y) :- father(X, Y) */
+        assertJoinConsistent(FUNCTOR_PARENT,
+                r -> r.boundFreeVars2NewVar(FUNCTOR_FATHER, ARITY_FATHER, 0, 0, 0),
+                r -> r.boundFreeVars2NewVar(0, 1, 1, 1)
+        );
+
+        /* grandParent(X, Y) :- parent(X, Z), parent(Z, Y) */
+        assertJoinConsistent(FUNCTOR_GRANDPARENT,
+                r -> r.boundFreeVars2NewVar(FUNCTOR_PARENT, ARITY_PARENT, 0, 0, 0),
+                r -> r.boundFreeVars2NewVar(FUNCTOR_PARENT, ARITY_PARENT, 1, 0, 1),
+                r -> r.boundFreeVars2NewVar(1, 1, 2, 0)
+        );
+
+        /* parent(X, ?) :- parent(?, X), father(X, ?) */
+        assertJoinConsistent(FUNCTOR_PARENT,
+                r -> r.boundFreeVars2NewVar(FUNCTOR_PARENT, ARITY_PARENT, 1, 0, 0),
+                r -> r.boundFreeVar2ExistingVar(FUNCTOR_FATHER, ARITY_FATHER, 0, 0)
+        );
+
+        /* parent(f2, X) :- father(?, X) */
+        assertJoinConsistent(FUNCTOR_PARENT,
+                r -> r.boundFreeVar2Constant(0, 0, "f2"),
+                r -> r.boundFreeVars2NewVar(FUNCTOR_FATHER, ARITY_FATHER, 1, 0, 1)
+        );
+
+        /* parent(X, X) :- father(X, ?)，第一步时X只在head中出现 */
+        assertJoinConsistent(FUNCTOR_PARENT,
+                r -> r.boundFreeVars2NewVar(0, 0, 0, 1),
+                r -> r.boundFreeVar2ExistingVar(FUNCTOR_FATHER, ARITY_FATHER, 0, 0)
+        );
+    }
+
+    static RecalculateCachedRule parentFatherRule(MemKB kb) {
+        /* parent(X, ?) :- father(X, ?) */
+        final RecalculateCachedRule rule = new RecalculateCachedRule(FUNCTOR_PARENT, new HashSet<>(), kb);
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVars2NewVar(FUNCTOR_FATHER, ARITY_FATHER, 0, 0, 0));
+        return rule;
+    }
+
+    static Set<List<Predicate>> groundingSet(UpdateResult updateResult) {
+        final Set<List<Predicate>> grounding_set = new HashSet<>();
+        for (Predicate[] grounding: updateResult.groundings) {
+            grounding_set.add(new ArrayList<>(Arrays.asList(grounding)));
+        }
+        return grounding_set;
+    }
+
+    @Test
+    void testCloneSharesCache() {
+        final List<Function<Rule, Rule.UpdateStatus>> extensions = Arrays.asList(
+                /* parent(X, Y) :- father(X, Y) */
+                r -> r.boundFreeVars2NewVar(0, 1, 1, 1),
+                /* parent(X, ?) :- father(X, s2) */
+                r -> r.boundFreeVar2Constant(1, 1, "s2"),
+                /* parent(X, ?) :- father(X, ?), parent(?, X) */
+                r -> r.boundFreeVar2ExistingVar(FUNCTOR_PARENT, ARITY_PARENT, 1, 0),
+                /* parent(X, Y) :- father(X, ?), father(?, Y) */
+                r -> r.boundFreeVars2NewVar(FUNCTOR_FATHER, ARITY_FATHER, 1, 0, 1)
+        );
+
+        /* 同一个rule的多个clone各自扩展，互不影响 */
+        final RecalculateCachedRule base = parentFatherRule(kbFamily());
+        final Eval base_eval = base.getEval();
+        for (Function<Rule, Rule.UpdateStatus> extension: extensions) {
+            final RecalculateCachedRule clone = (RecalculateCachedRule) base.clone();
+            final Rule.UpdateStatus status = extension.apply(clone);
+            final RecalculateCachedRule expected = parentFatherRule(kbFamily());
+            assertEquals(extension.apply(expected), status);
+            assertEquals(expected.toString(), clone.toString());
+            assertEquals(expected.getEval(), clone.getEval());
+            assertEquals(base_eval, base.getEval());
+        }
+
+        /* 原rule的cache没有被clone修改(updateInKb会修改KB，所以只在最后调用) */
+        final MemKB kb = kbFamily();
+        final RecalculateCachedRule fresh = parentFatherRule(kb);
+        final Rule base_clone = base.clone();
+        assertEquals(Rule.UpdateStatus.NORMAL, base_clone.boundFreeVar2Constant(0, 1, "d2"));
+        assertEquals(groundingSet(fresh.updateInKb()), groundingSet(base.updateInKb()));
+    }
+}
@@ -1,6 +1,8 @@
 package sinc.impl.pruned.tabu;
 
 import org.junit.jupiter.api.Test;
+import sinc.Checkpoint;
+import sinc.SInC;
 import sinc.SincConfig;
 import sinc.common.*;
 import sinc.util.datagen.FamilyRelationGenerator;
@@ -249,6 +251,358 @@ class SincWithTabuPruningTest {
         deleteFile(tmp_bk_file_path);
     }
 
+    @Test
+    void testParallelEvaluation() {
+        /* 多线程搜索的结果应当与单线程完全一致 */
+        final String tmp_bk_file_path = generateSimpleKb();
+
+        final List<SincWithTabuPruning> sincs = new ArrayList<>();
+        for (int threads: new int[]{1, 4}) {
+            final SincConfig config = simpleConfig(threads, 5, -1.0, false, true);
+            SincWithTabuPruning sinc = new SincWithTabuPruning(
+                    config,
+                    tmp_bk_file_path,
+                    null,
+                    null
+            );
+            sinc.run();
+            assertTrue(sinc.recover());
+            sincs.add(sinc);
+        }
+
+        final SincWithTabuPruning serial = sincs.get(0);
+        final SincWithTabuPruning parallel = sincs.get(1);
+        final List<String> serial_hypothesis = new ArrayList<>();
+        for (Rule r: serial.getHypothesis()) {
+            serial_hypothesis.add(r.toDumpString());
+        }
+        final List<String> parallel_hypothesis = new ArrayList<>();
+        for (Rule r: parallel.getHypothesis()) {
+            parallel_hypothesis.add(r.toDumpString());
+        }
+        assertEquals(serial_hypothesis, parallel_hypothesis);
+        assertEquals(serial.getCounterExamples(), parallel.getCounterExamples());
+
+        final PerformanceMonitor serial_monitor = serial.getPerformanceMonitor();
+        final PerformanceMonitor parallel_monitor = parallel.getPerformanceMonitor();
+        assertEquals(serial_monitor.branchProgress, parallel_monitor.branchProgress);
+        assertEquals(serial_monitor.invalidSearches, parallel_monitor.invalidSearches);
+        assertEquals(serial_monitor.duplications, parallel_monitor.duplications);
+        assertEquals(serial_monitor.fcFilteredRules, parallel_monitor.fcFilteredRules);
+        assertEquals(serial_monitor.tabuPruned, parallel_monitor.tabuPruned);
+
+        /* 多线程时各个SCC的FVS并行求解 */
+        assertEquals(serial_monitor.sccNumber, parallel_monitor.sccNumber);
+        assertEquals(serial_monitor.sccVertices, parallel_monitor.sccVertices);
+        assertEquals(serial_monitor.fvsVertices, parallel_monitor.fvsVertices);
+        assertEquals(serial_monitor.startSetSize, parallel_monitor.startSetSize);
+
+        deleteFile(tmp_bk_file_path);
+    }
+
+    @Test
+    void testBoundPruning() {
+        /* 上界剪枝只跳过不可能进入beams的extension，找到的rule与不剪枝时完全一致 */
+        final String tmp_bk_file_path = generateSimpleKb();
+
+        final List<SincWithTabuPruning> sincs = new ArrayList<>();
+        for (boolean bound_pruning: new boolean[]{false, true}) {
+            final SincConfig config = simpleConfig(1, 2, -1.0, false, bound_pruning);
+            SincWithTabuPruning sinc = new SincWithTabuPruning(
+                    config,
+                    tmp_bk_file_path,
+                    null,
+                    null
+            );
+            sinc.run();
+            assertTrue(sinc.recover());
+            sincs.add(sinc);
+        }
+
+        final List<String> unpruned_hypothesis = new ArrayList<>();
+        for (Rule r: sincs.get(0).getHypothesis()) {
+            unpruned_hypothesis.add(r.toDumpString());
+        }
+        final List<String> pruned_hypothesis = new ArrayList<>();
+        for (Rule r: sincs.get(1).getHypothesis()) {
+            pruned_hypothesis.add(r.toDumpString());
+        }
+        assertEquals(unpruned_hypothesis, pruned_hypothesis);
+        assertEquals(sincs.get(0).getCounterExamples(), sincs.get(1).getCounterExamples());
+        assertEquals(0, sincs.get(0).getPerformanceMonitor().boundPruned);
+        assertTrue(0 < sincs.get(1).getPerformanceMonitor().boundPruned);
+
+        deleteFile(tmp_bk_file_path);
+    }
+
+    @Test
+    void testBoundPruningKeepsTabus() {
+        /* 上界剪枝在检查coverage之后进行，coverage不足的extension仍然加入tabu */
+        final String tmp_bk_file_path = generateSimpleKb();
+        for (int beam_width: new int[]{1, 2, 3}) {
+            for (double fact_coverage: new double[]{0.05, 0.2}) {
+                final List<SincWithTabuPruning> sincs = new ArrayList<>();
+                for (boolean bound_pruning: new boolean[]{false, true}) {
+                    final SincConfig config = new SincConfig.Builder(simpleConfig(1, beam_width, -1.0, false, bound_pruning))
+                            .minFactCoverage(fact_coverage)
+                            .build();
+                    SincWithTabuPruning sinc = new SincWithTabuPruning(config, tmp_bk_file_path, null, null);
+                    sinc.run();
+                    sincs.add(sinc);
+                }
+                assertEquals(sincs.get(0).tabuMonitor.totalTabus, sincs.get(1).tabuMonitor.totalTabus);
+                assertEquals(
+                        sincs.get(0).getPerformanceMonitor().fcFilteredRules,
+                        sincs.get(1).getPerformanceMonitor().fcFilteredRules
+                );
+            }
+        }
+
+        deleteFile(tmp_bk_file_path);
+    }
+
+    @Test
+    void testResumeFromCheckpoint() throws IOException {
+        /* 中途失败之后从检查点继续，得到的结果与不中断时完全一致 */
+        final String tmp_bk_file_path = generateSimpleKb();
+        final String full_checkpoint_path = tmp_bk_file_path + "_full.ckpt";
+        final String crashed_checkpoint_path = tmp_bk_file_path + "_crashed.ckpt";
+        checkFile(full_checkpoint_path);
+        checkFile(crashed_checkpoint_path);
+        final SincConfig config = simpleConfig(1, 2, -1.0, false, true);
+
+        final SincWithTabuPruning full_sinc = new SincWithTabuPruning(config, tmp_bk_file_path, null, null);
+        full_sinc.enableCheckpoint(full_checkpoint_path);
+        full_sinc.run();
+        final int crash_point = full_sinc.getHypothesis().size() / 2;
+        assertTrue(0 < crash_point);
+        final Checkpoint full_checkpoint = Checkpoint.read(full_checkpoint_path);
+        assertEquals(full_sinc.getHypothesis().size(), full_checkpoint.hypothesis.size());
+        assertTrue(full_checkpoint.remainingTargets.isEmpty());
+
+        /* 提交第crash_point个rule时失败 */
+        final SincWithTabuPruning crashed_sinc = new SincWithTabuPruning(config, tmp_bk_file_path, null, null) {
+            int committed = 0;
+
+            @Override
+            protected UpdateResult updateKb(Rule rule) {
+                if (crash_point <= committed++) {
+                    throw new RuntimeException("Crash for test");
+                }
+                return super.updateKb(rule);
+            }
+        };
+        crashed_sinc.enableCheckpoint(crashed_checkpoint_path);
+        crashed_sinc.run();
+        final Checkpoint crashed_checkpoint = Checkpoint.read(crashed_checkpoint_path);
+        assertEquals(crash_point, crashed_checkpoint.hypothesis.size());
+        assertFalse(crashed_checkpoint.remainingTargets.isEmpty());
+
+        final SincWithTabuPruning resumed_sinc = new SincWithTabuPruning(config, tmp_bk_file_path, null, null);
+        resumed_sinc.resumeFrom(crashed_checkpoint_path);
+        resumed_sinc.enableCheckpoint(crashed_checkpoint_path);
+        resumed_sinc.run();
+        assertTrue(resumed_sinc.recover());
+
+        final List<String> full_hypothesis = new ArrayList<>();
+        for (Rule r: full_sinc.getHypothesis()) {
+            full_hypothesis.add(r.toDumpString());
+        }
+        final List<String> resumed_hypothesis = new ArrayList<>();
+        for (Rule r: resumed_sinc.getHypothesis()) {
+            resumed_hypothesis.add(r.toDumpString());
+        }
+        assertEquals(full_hypothesis, resumed_hypothesis);
+        assertEquals(full_sinc.getCounterExamples(), resumed_sinc.getCounterExamples());
+        assertEquals(full_sinc.getStartSet(), resumed_sinc.getStartSet());
+        assertTrue(Checkpoint.read(crashed_checkpoint_path).remainingTargets.isEmpty());
+
+        deleteFile(tmp_bk_file_path);
+        deleteFile(full_checkpoint_path);
+        deleteFile(full_checkpoint_path + Checkpoint.JOURNAL_SUFFIX);
+        deleteFile(crashed_checkpoint_path);
+        deleteFile(crashed_checkpoint_path + Checkpoint.JOURNAL_SUFFIX);
+    }
+
+    @Test
+    void testCancel() {
+        /* 提交第一个rule之后取消，run()正常返回，已经找到的rule被保留 */
+        final String tmp_bk_file_path = generateSimpleKb();
+        final SincConfig config = simpleConfig(1, 2, -1.0, false, true);
+        final SincWithTabuPruning sinc = new SincWithTabuPruning(config, tmp_bk_file_path, null, null) {
+            @Override
+            protected UpdateResult updateKb(Rule rule) {
+                cancel();
+                return super.updateKb(rule);
+            }
+        };
+        sinc.run();
+        assertTrue(sinc.isCancelled());
+        assertEquals(SInC.ExitStatus.CANCELLED, sinc.getExitStatus());
+        assertEquals(1, sinc.getHypothesis().size());
+        assertTrue(sinc.recover());
+
+        deleteFile(tmp_bk_file_path);
+    }
+
+    @Test
+    void testTimeBudget() throws IOException {
+        final String tmp_bk_file_path = generateSimpleKb();
+        final SincConfig config = simpleConfig(1, 2, -1.0, false, true);
+
+        /* 预算在加载KB时就已用完，每个head functor都只剩start rule，且都没有搜索完，检查点中仍然保留 */
+        final String checkpoint_path = tmp_bk_file_path + ".ckpt";
+        checkFile(checkpoint_path);
+        final SincWithTabuPruning expired_sinc = new SincWithTabuPruning(config, tmp_bk_file_path, null, null);
+        expired_sinc.setTimeBudget(1);
+        expired_sinc.enableCheckpoint(checkpoint_path);
+        expired_sinc.run();
+        assertFalse(expired_sinc.isCancelled());
+        assertEquals(SInC.ExitStatus.BUDGET_EXPIRED, expired_sinc.getExitStatus());
+        assertTrue(expired_sinc.getHypothesis().isEmpty());
+        assertTrue(0 < expired_sinc.getPerformanceMonitor().budgetExpirations);
+        assertTrue(expired_sinc.recover());
+        assertFalse(Checkpoint.read(checkpoint_path).remainingTargets.isEmpty());
+
+        /* 从检查点恢复时重新搜索没有完成的head functor */
+        final SincWithTabuPruning resumed_sinc = new SincWithTabuPruning(config, tmp_bk_file_path, null, null);
+        resumed_sinc.resumeFrom(checkpoint_path);
+        resumed_sinc.enableCheckpoint(checkpoint_path);
+        resumed_sinc.run();
+        assertEquals(SInC.ExitStatus.COMPLETED, resumed_sinc.getExitStatus());
+        assertFalse(resumed_sinc.getHypothesis().isEmpty());
+        assertTrue(resumed_sinc.recover());
+        assertTrue(Checkpoint.read(checkpoint_path).remainingTargets.isEmpty());
+
+        /* 某一次搜索中途用完预算，返回已经找到的最好的rule，之后的搜索不受影响 */
+        final SincWithTabuPruning anytime_sinc = new SincWithTabuPruning(config, tmp_bk_file_path, null, null) {
+            int checks = 0;
+
+            @Override
+            protected void checkSignals() throws InterruptedSignal {
+                super.checkSignals();
+                if (1000 == ++checks) {
+                    throw new BudgetExpiredSignal("Budget expired");
+                }
+            }
+        };
+        anytime_sinc.run();
+        assertEquals(1, anytime_sinc.getPerformanceMonitor().budgetExpirations);
+        assertFalse(anytime_sinc.getHypothesis().isEmpty());
+        for (Rule rule: anytime_sinc.getHypothesis()) {
+            assertTrue(rule.getEval().useful(Eval.EvalMetric.CompressionCapacity));
+        }
+        assertTrue(anytime_sinc.recover());
+
+        deleteFile(checkpoint_path);
+        deleteFile(checkpoint_path + Checkpoint.JOURNAL_SUFFIX);
+        deleteFile(tmp_bk_file_path);
+    }
+
+    @Test
+    void testEncodedKb() {
+        /* 默认的MemKB与EncodedMemKB上的压缩结果相同 */
+        final String tmp_bk_file_path = generateSimpleKb();
+
+        final List<SincWithTabuPruning> sincs = new ArrayList<>();
+        for (boolean encoded_kb: new boolean[]{false, true}) {
+            final SincConfig config = new SincConfig.Builder(simpleConfig(1, 2, -1.0, false, true))
+                    .encodedKb(encoded_kb)
+                    .build();
+            SincWithTabuPruning sinc = new SincWithTabuPruning(
+                    config,
+                    tmp_bk_file_path,
+                    null,
+                    null
+            );
+            sinc.run();
+            assertTrue(sinc.recover());
+            sincs.add(sinc);
+        }
+
+        final List<String> plain_hypothesis = new ArrayList<>();
+        for (Rule r: sincs.get(0).getHypothesis()) {
+            plain_hypothesis.add(r.toDumpString());
+        }
+        final List<String> encoded_hypothesis = new ArrayList<>();
+        for (Rule r: sincs.get(1).getHypothesis()) {
+            encoded_hypothesis.add(r.toDumpString());
+        }
+        assertEquals(plain_hypothesis, encoded_hypothesis);
+        assertEquals(sincs.get(0).getCounterExamples(), sincs.get(1).getCounterExamples());
+
+        deleteFile(tmp_bk_file_path);
+    }
+
+    @Test
+    void testEstimation() {
+        /* 采样估计只影响搜索过程，压缩的结果仍然可以完全恢复。不开启估计时没有candidate的Eval是估计值 */
+        final String tmp_bk_file_path = generateSimpleKb(30);
+
+        for (boolean estimation: new boolean[]{true, false}) {
+            final SincConfig config = simpleConfig(1, 2, 0.1, estimation, true);
+            SincWithTabuPruning sinc = new SincWithTabuPruning(
+                    config,
+                    tmp_bk_file_path,
+                    null,
+                    null
+            );
+            sinc.run();
+            assertFalse(sinc.getHypothesis().isEmpty());
+            for (Rule r: sinc.getHypothesis()) {
+                assertFalse(r.isEstimated());
+            }
+            assertTrue(sinc.recover());
+
+            final PerformanceMonitor monitor = sinc.getPerformanceMonitor();
+            if (estimation) {
+                assertTrue(0 < monitor.reevaluatedCandidates);
+                assertTrue(monitor.reevaluatedCandidates <= monitor.estimatedCandidates);
+            } else {
+                assertEquals(0, monitor.estimatedCandidates);
+                assertEquals(0, monitor.reevaluatedCandidates);
+            }
+        }
+
+        deleteFile(tmp_bk_file_path);
+    }
+
+    /**
+     * 生成10个家庭、10%噪声的简单家族关系数据，返回临时文件的路径
+     */
+    private String generateSimpleKb() {
+        return generateSimpleKb(10);
+    }
+
+    /**
+     * 生成families个家庭、10%噪声的简单家族关系数据，返回临时文件的路径
+     */
+    private String generateSimpleKb(int families) {
+        final String tmp_bk_file_path = UUID.randomUUID() + "_bk";
+        checkFile(tmp_bk_file_path);
+        try {
+            FamilyRelationGenerator.generateSimple(tmp_bk_file_path, families, 0.1);
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail();
+        }
+        return tmp_bk_file_path;
+    }
+
+    private SincConfig simpleConfig(
+            int threads, int beamWidth, double samplingRate, boolean estimation, boolean boundPruning
+    ) {
+        return new SincConfig.Builder()
+                .threads(threads)
+                .beamWidth(beamWidth)
+                .minColumnSimilarity(0)
+                .stopCompressionRate(1)
+                .sampling(samplingRate)
+                .estimation(estimation)
+                .boundPruning(boundPruning)
+                .build();
+    }
+
     private void checkFile(String filePath) {
         File file = new File(filePath);
         if (file.exists()) {
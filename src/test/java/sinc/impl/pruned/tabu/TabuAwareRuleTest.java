@@ -4,8 +4,8 @@ import org.junit.jupiter.api.Test;
 import sinc.common.Constant;
 import sinc.common.Predicate;
 import sinc.common.Rule;
+import sinc.common.RuleFingerPrint;
 import sinc.impl.cached.MemKB;
-import sinc.util.MultiSet;
 
 import java.util.*;
 
@@ -38,88 +38,98 @@ class TabuAwareRuleTest {
         KB.addFact(r);
     }
 
+    /**
+     * h(X0,?) :- f1(X0,?), f2(X0,?), ...
+     */
+    static TabuAwareRule chain(String... functors) {
+        final TabuAwareRule rule = new TabuAwareRule(HEAD_FUNC, new HashSet<>(), KB, new TabuStore());
+        for (int i = 0; i < functors.length; i++) {
+            assertEquals(Rule.UpdateStatus.NORMAL, (0 == i) ?
+                    rule.boundFreeVars2NewVar(functors[i], ARITY, 0, 0, 0) :
+                    rule.boundFreeVar2ExistingVar(functors[i], ARITY, 0, 0)
+            );
+        }
+        return rule;
+    }
+
+    /**
+     * 只有一个tabu rule时，查找rule的一般化形式
+     */
+    static RuleFingerPrint search(String[] tabuFunctors, Rule rule) {
+        final TabuStore store = new TabuStore();
+        store.add(chain(tabuFunctors));
+        final RuleFingerPrint finger_print = rule.getFingerPrint();
+        return store.search(
+                store.root, TabuStore.sortedBodyFunctors(rule), 0, finger_print, TabuStore.signature(finger_print),
+                new int[]{0}
+        );
+    }
+
+    static void assertFound(Rule rule, String... tabuFunctors) {
+        final RuleFingerPrint predecessor = search(tabuFunctors, rule);
+        assertNotNull(predecessor, Arrays.toString(tabuFunctors));
+        assertEquals(chain(tabuFunctors).getFingerPrint(), predecessor);
+    }
+
+    static void assertNotFound(Rule rule, String... tabuFunctors) {
+        assertNull(search(tabuFunctors, rule), Arrays.toString(tabuFunctors));
+    }
+
     @Test
-    void testSubsets1() {
+    void testSearch1() {
         /* {p, q, r} */
-        final TabuAwareRule rule = new TabuAwareRule(HEAD_FUNC, new HashSet<>(), KB, new HashMap<>());
-        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVars2NewVar("p", ARITY, 0, 0, 0));
-        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVar2ExistingVar("q", ARITY, 0, 0));
-        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVar2ExistingVar("r", ARITY, 0, 0));
+        final TabuAwareRule rule = chain("p", "q", "r");
         assertTrue(rule.toString().contains("h(X0,?):-p(X0,?),q(X0,?),r(X0,?)"));
 
-        final Set<MultiSet<String>> expected_subset0 = new HashSet<>(Collections.singletonList(new MultiSet<>()));
-        final Set<MultiSet<String>> actual_subset0 = rule.categorySubsets(0);
-        assertEquals(expected_subset0, actual_subset0);
-
-        final Set<MultiSet<String>> expected_subset1 = new HashSet<>();
-        expected_subset1.add(new MultiSet<>(new String[]{"p"}));
-        expected_subset1.add(new MultiSet<>(new String[]{"q"}));
-        expected_subset1.add(new MultiSet<>(new String[]{"r"}));
-        final Set<MultiSet<String>> actual_subset1 = rule.categorySubsets(1);
-        assertEquals(expected_subset1, actual_subset1);
-
-        final Set<MultiSet<String>> expected_subset2 = new HashSet<>();
-        expected_subset2.add(new MultiSet<>(new String[]{"p", "q"}));
-        expected_subset2.add(new MultiSet<>(new String[]{"p", "r"}));
-        expected_subset2.add(new MultiSet<>(new String[]{"q", "r"}));
-        final Set<MultiSet<String>> actual_subset2 = rule.categorySubsets(2);
-        assertEquals(expected_subset2, actual_subset2);
-
-        final Set<MultiSet<String>> expected_subset3 = new HashSet<>();
-        expected_subset3.add(new MultiSet<>(new String[]{"p", "q", "r"}));
-        final Set<MultiSet<String>> actual_subset3 = rule.categorySubsets(3);
-        assertEquals(expected_subset3, actual_subset3);
+        /* category为子multiset的一般化形式都能找到 */
+        assertFound(rule);
+        assertFound(rule, "p");
+        assertFound(rule, "q");
+        assertFound(rule, "r");
+        assertFound(rule, "p", "q");
+        assertFound(rule, "p", "r");
+        assertFound(rule, "q", "r");
+        assertFound(rule, "p", "q", "r");
+        assertFound(rule, "r", "q", "p");
+
+        assertNotFound(rule, "q", "q");
+        assertNotFound(rule, "p", "q", "r", "r");
     }
 
     @Test
-    void testSubsets2() {
+    void testSearch2() {
         /* {p, q, q, r, r} */
-        final TabuAwareRule rule = new TabuAwareRule(HEAD_FUNC, new HashSet<>(), KB, new HashMap<>());
-        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVars2NewVar("p", ARITY, 0, 0, 0));
-        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVar2ExistingVar("q", ARITY, 0, 0));
-        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVar2ExistingVar("r", ARITY, 0, 0));
-        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVar2ExistingVar("q", ARITY, 0, 0));
-        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVar2ExistingVar("r", ARITY, 0, 0));
+        final TabuAwareRule rule = chain("p", "q", "r", "q", "r");
         assertTrue(rule.toString().contains("h(X0,?):-p(X0,?),q(X0,?),r(X0,?),q(X0,?),r(X0,?)"));
 
-        final Set<MultiSet<String>> expected_subset0 = new HashSet<>(Collections.singletonList(new MultiSet<>()));
-        final Set<MultiSet<String>> actual_subset0 = rule.categorySubsets(0);
-        assertEquals(expected_subset0, actual_subset0);
-
-        final Set<MultiSet<String>> expected_subset1 = new HashSet<>();
-        expected_subset1.add(new MultiSet<>(new String[]{"p"}));
-        expected_subset1.add(new MultiSet<>(new String[]{"q"}));
-        expected_subset1.add(new MultiSet<>(new String[]{"r"}));
-        final Set<MultiSet<String>> actual_subset1 = rule.categorySubsets(1);
-        assertEquals(expected_subset1, actual_subset1);
-
-        final Set<MultiSet<String>> expected_subset2 = new HashSet<>();
-        expected_subset2.add(new MultiSet<>(new String[]{"p", "q"}));
-        expected_subset2.add(new MultiSet<>(new String[]{"p", "r"}));
-        expected_subset2.add(new MultiSet<>(new String[]{"q", "q"}));
-        expected_subset2.add(new MultiSet<>(new String[]{"q", "r"}));
-        expected_subset2.add(new MultiSet<>(new String[]{"r", "r"}));
-        final Set<MultiSet<String>> actual_subset2 = rule.categorySubsets(2);
-        assertEquals(expected_subset2, actual_subset2);
-
-        final Set<MultiSet<String>> expected_subset3 = new HashSet<>();
-        expected_subset3.add(new MultiSet<>(new String[]{"p", "q", "q"}));
-        expected_subset3.add(new MultiSet<>(new String[]{"p", "q", "r"}));
-        expected_subset3.add(new MultiSet<>(new String[]{"p", "r", "r"}));
-        expected_subset3.add(new MultiSet<>(new String[]{"q", "q", "r"}));
-        expected_subset3.add(new MultiSet<>(new String[]{"q", "r", "r"}));
-        final Set<MultiSet<String>> actual_subset3 = rule.categorySubsets(3);
-        assertEquals(expected_subset3, actual_subset3);
+        assertFound(rule);
+        assertFound(rule, "q", "q");
+        assertFound(rule, "r", "r");
+        assertFound(rule, "p", "q", "q");
+        assertFound(rule, "q", "q", "r");
+        assertFound(rule, "q", "r", "r");
+        assertFound(rule, "p", "q", "r", "q", "r");
+
+        assertNotFound(rule, "p", "p");
+        assertNotFound(rule, "q", "q", "q");
     }
 
     @Test
-    void testSubsets3() {
+    void testSearch3() {
         /* {} */
-        final TabuAwareRule rule = new TabuAwareRule(HEAD_FUNC, new HashSet<>(), KB, new HashMap<>());
+        final TabuAwareRule rule = chain();
         assertTrue(rule.toString().contains("h(?,?):-"));
 
-        final Set<MultiSet<String>> expected_subset0 = new HashSet<>(Collections.singletonList(new MultiSet<>()));
-        final Set<MultiSet<String>> actual_subset0 = rule.categorySubsets(0);
-        assertEquals(expected_subset0, actual_subset0);
+        assertFound(rule);
+        assertNotFound(rule, "p");
+    }
+
+    @Test
+    void testTabuPruned() {
+        final TabuStore store = new TabuStore();
+        store.add(chain("p"));
+        final TabuAwareRule rule = new TabuAwareRule(HEAD_FUNC, new HashSet<>(), KB, store);
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVars2NewVar("q", ARITY, 0, 0, 0));
+        assertEquals(Rule.UpdateStatus.TABU_PRUNED, rule.boundFreeVar2ExistingVar("p", ARITY, 0, 0));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,138 @@
+package sinc.impl.pruned.tabu;
+
+import org.junit.jupiter.api.Test;
+import sinc.common.BareRule;
+import sinc.common.Predicate;
+import sinc.common.Rule;
+import sinc.common.RuleFingerPrint;
+import sinc.util.MultiSet;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TabuStoreTest {
+
+    static final String[] FUNCTORS = new String[]{"p", "q"};
+    static final int[] ARITIES = new int[]{2, 1};
+
+    @Test
+    void testCategories() {
+        final TabuStore store = new TabuStore();
+        final BareRule rule = new BareRule("h", 2, new HashSet<>());
+        rule.boundFreeVars2NewVar("p", 2, 0, 0, 0);
+        store.add(rule);
+        assertEquals(1, store.size());
+        assertEquals(1, store.categories());
+
+        /* h(X,?):-p(X,?),p(?,X)的category为{p,p}，被h(X,?):-p(X,?)一般化 */
+        final BareRule specialized = new BareRule(rule);
+        specialized.boundFreeVar2ExistingVar("p", 2, 1, 0);
+        assertSame(rule.getFingerPrint(), store.findPredecessor(specialized).predecessor);
+
+        /* h(X,Y):-q(X),q(Y)的category中没有p */
+        final BareRule other = new BareRule("h", 2, new HashSet<>());
+        other.boundFreeVars2NewVar("q", 1, 0, 0, 0);
+        other.boundFreeVars2NewVar("q", 1, 0, 0, 1);
+        final TabuStore.Lookup lookup = store.findPredecessor(other);
+        assertNull(lookup.predecessor);
+        assertEquals(0, lookup.compares);
+
+        store.add(other);
+        store.add(new BareRule(other));
+        assertEquals(2, store.size());
+        assertEquals(2, store.categories());
+    }
+
+    @Test
+    void testRandomRules() {
+        /* 与枚举所有tabu rules的结果比较 */
+        final Random random = new Random(0);
+        final List<BareRule> rules = new ArrayList<>();
+        for (int round = 0; round < 300; round++) {
+            randomWalk(random, rules);
+        }
+        final TabuStore store = new TabuStore();
+        final List<BareRule> tabus = new ArrayList<>();
+        int hits = 0;
+        int store_compares = 0;
+        int brute_force_compares = 0;
+        for (BareRule rule: rules) {
+            boolean expected = false;
+            for (BareRule tabu: tabus) {
+                if (category(tabu).subsetOf(category(rule))) {
+                    brute_force_compares++;
+                    if (tabu.getFingerPrint().predecessorOf(rule.getFingerPrint())) {
+                        expected = true;
+                        break;
+                    }
+                }
+            }
+            final TabuStore.Lookup lookup = store.findPredecessor(rule);
+            assertEquals(expected, null != lookup.predecessor, rule.toDumpString());
+            if (expected) {
+                hits++;
+                assertTrue(lookup.predecessor.predecessorOf(rule.getFingerPrint()));
+            }
+            store_compares += lookup.compares;
+            if (random.nextInt(3) == 0) {
+                store.add(rule);
+                tabus.add(rule);
+            }
+        }
+        assertTrue(0 < hits);
+        assertTrue(store_compares <= brute_force_compares);
+    }
+
+    static MultiSet<String> category(Rule rule) {
+        final MultiSet<String> category = new MultiSet<>();
+        for (int pred_idx = Rule.FIRST_BODY_PRED_IDX; pred_idx < rule.length(); pred_idx++) {
+            category.add(rule.getPredicate(pred_idx).functor);
+        }
+        return category;
+    }
+
+    static void randomWalk(Random random, List<BareRule> rules) {
+        final BareRule rule = new BareRule("h", 2, new HashSet<>());
+        for (int step = 0; step < 6 && rule.length() <= 4; step++) {
+            final List<int[]> vacant_list = new ArrayList<>();
+            for (int pred_idx = 0; pred_idx < rule.length(); pred_idx++) {
+                final Predicate predicate = rule.getPredicate(pred_idx);
+                for (int arg_idx = 0; arg_idx < predicate.arity(); arg_idx++) {
+                    if (null == predicate.args[arg_idx]) {
+                        vacant_list.add(new int[]{pred_idx, arg_idx});
+                    }
+                }
+            }
+            if (vacant_list.isEmpty()) {
+                break;
+            }
+            final int[] vacant = vacant_list.get(random.nextInt(vacant_list.size()));
+            final int functor_idx = random.nextInt(FUNCTORS.length);
+            final int new_arg_idx = random.nextInt(ARITIES[functor_idx]);
+            switch (random.nextInt(4)) {
+                case 0:
+                    if (0 < rule.usedBoundedVars()) {
+                        rule.boundFreeVar2ExistingVar(vacant[0], vacant[1], random.nextInt(rule.usedBoundedVars()));
+                    }
+                    break;
+                case 1:
+                    if (0 < rule.usedBoundedVars()) {
+                        rule.boundFreeVar2ExistingVar(
+                                FUNCTORS[functor_idx], ARITIES[functor_idx], new_arg_idx,
+                                random.nextInt(rule.usedBoundedVars())
+                        );
+                    }
+                    break;
+                case 2:
+                    rule.boundFreeVars2NewVar(
+                            FUNCTORS[functor_idx], ARITIES[functor_idx], new_arg_idx, vacant[0], vacant[1]
+                    );
+                    break;
+                default:
+                    rule.boundFreeVar2Constant(vacant[0], vacant[1], "c");
+            }
+            rules.add(new BareRule(rule));
+        }
+    }
+}
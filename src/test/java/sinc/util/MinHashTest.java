@@ -0,0 +1,62 @@
+package sinc.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MinHashTest {
+
+    @Test
+    void testSignature() {
+        /* 签名中相同位置的比例接近Jaccard相似度 */
+        final MultiSet<String> set1 = new MultiSet<>();
+        final MultiSet<String> set2 = new MultiSet<>();
+        for (int i = 0; i < 1000; i++) {
+            set1.add("c" + i);
+            set2.add("c" + (i + 500));
+        }
+        set1.add("c0");
+        set2.add("c600");
+        final int size = 512;
+        final long[] signature1 = MinHash.signature(set1, size);
+        final long[] signature2 = MinHash.signature(set2, size);
+        int same = 0;
+        for (int i = 0; i < size; i++) {
+            if (signature1[i] == signature2[i]) {
+                same++;
+            }
+        }
+        assertEquals(set1.jaccardSimilarity(set2), (double) same / size, 0.06);
+        assertArrayEquals(signature1, MinHash.signature(new MultiSet<>(set1), size));
+    }
+
+    @Test
+    void testBandRows() {
+        assertEquals(1, MinHash.bandRows(128, 0.1));
+        final int rows = MinHash.bandRows(128, 0.8);
+        assertTrue(1 < rows);
+        assertEquals(0, 128 % rows);
+        assertTrue(1 - Math.pow(1 - Math.pow(0.8, rows), 128.0 / rows) >= MinHash.MIN_RECALL);
+    }
+
+    @Test
+    void testCandidatePairs() {
+        final MultiSet<String> set1 = new MultiSet<>(new String[]{"a", "b", "c", "d"});
+        final MultiSet<String> set2 = new MultiSet<>(new String[]{"a", "b", "c", "e"});
+        final MultiSet<String> set3 = new MultiSet<>(new String[]{"x", "y", "z"});
+        final long[][] signatures = new long[][]{
+                MinHash.signature(set1, 128), MinHash.signature(set2, 128), MinHash.signature(set3, 128)
+        };
+        final Set<List<Integer>> pairs = new HashSet<>();
+        for (int[] pair: MinHash.candidatePairs(signatures, 0.5)) {
+            pairs.add(List.of(pair[0], pair[1]));
+        }
+        assertTrue(pairs.contains(List.of(0, 0)));
+        assertTrue(pairs.contains(List.of(2, 2)));
+        assertTrue(pairs.contains(List.of(0, 1)));
+        assertFalse(pairs.contains(List.of(0, 2)));
+        assertFalse(pairs.contains(List.of(1, 2)));
+    }
+}
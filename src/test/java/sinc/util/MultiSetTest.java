@@ -4,9 +4,7 @@ import org.junit.jupiter.api.Test;
 import sinc.common.ArgIndicator;
 import sinc.common.VarIndicator;
 
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -24,6 +22,8 @@ class MultiSetTest {
 
         assertEquals(3, s1.size());
         assertEquals(2, s2.size());
+        assertEquals(2, s1.itemCount("a"));
+        assertEquals(0, s2.itemCount("c"));
         assertNotEquals(s2, s1);
         assertNotEquals(s1, s2);
     }
@@ -177,4 +177,55 @@ class MultiSetTest {
 
         assertEquals(wrapper_set1, wrapper_set2);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testJaccardSimilarity() {
+        final Random random = new Random(0);
+        for (int round = 0; round < 100; round++) {
+            final MultiSet<Integer> set1 = new MultiSet<>();
+            final MultiSet<Integer> set2 = new MultiSet<>();
+            for (int i = random.nextInt(20); i > 0; i--) {
+                set1.add(random.nextInt(8));
+            }
+            for (int i = 1 + random.nextInt(20); i > 0; i--) {
+                set2.add(random.nextInt(8));
+            }
+            assertEquals(set1.intersection(set2).size(), set1.intersectionSize(set2));
+            assertEquals(set1.union(set2).size(), set2.unionSize(set1));
+            final double expected = (double) set1.intersection(set2).size() / set1.union(set2).size();
+            assertEquals(expected, set1.jaccardSimilarity(set2));
+            assertEquals(expected, set2.jaccardSimilarity(set1));
+        }
+    }
+
+    @Test
+    void testRandomOperations() {
+        /* 大量增删之后与HashMap计数的结果相同 */
+        final Random random = new Random(0);
+        final MultiSet<Integer> set = new MultiSet<>();
+        final Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            final int element = random.nextInt(300);
+            if (random.nextBoolean()) {
+                set.add(element);
+                expected.merge(element, 1, Integer::sum);
+            } else {
+                set.remove(element);
+                expected.computeIfPresent(element, (k, v) -> (1 < v) ? v - 1 : null);
+            }
+        }
+        assertEquals(expected.values().stream().mapToInt(Integer::intValue).sum(), set.size());
+        assertEquals(expected.size(), set.differentValues());
+        assertEquals(expected.keySet(), set.distinctValues());
+        final MultiSet<Integer> rebuilt = new MultiSet<>();
+        for (Map.Entry<Integer, Integer> entry: expected.entrySet()) {
+            assertEquals(entry.getValue(), set.itemCount(entry.getKey()));
+            for (int i = 0; i < entry.getValue(); i++) {
+                rebuilt.add(entry.getKey());
+            }
+        }
+        assertEquals(rebuilt, set);
+        assertEquals(rebuilt.hashCode(), set.hashCode());
+        assertTrue(set.subsetOf(rebuilt));
+    }
+}
@@ -0,0 +1,27 @@
+package sinc.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NumerationMapTest {
+
+    @Test
+    void test() {
+        NumerationMap map = new NumerationMap();
+        assertEquals(0, map.totalMappings());
+        assertEquals(NumerationMap.NULL_NUM, map.name2Num("a"));
+        assertNull(map.num2Name(NumerationMap.NULL_NUM));
+
+        assertEquals(1, map.mapName("a"));
+        assertEquals(2, map.mapName("b"));
+        assertEquals(1, map.mapName(new String("a")));
+        assertEquals(3, map.mapName("c"));
+        assertEquals(3, map.totalMappings());
+
+        assertEquals(2, map.name2Num("b"));
+        assertEquals("c", map.num2Name(3));
+        assertSame(map.num2Name(1), map.num2Name(map.name2Num(new String("a"))));
+        assertNull(map.num2Name(4));
+    }
+}
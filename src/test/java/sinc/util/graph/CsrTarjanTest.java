@@ -0,0 +1,91 @@
+package sinc.util.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsrTarjanTest {
+
+    @Test
+    void testCsrGraph() {
+        final Map<String, Set<String>> graph = new LinkedHashMap<>();
+        graph.put("a", new LinkedHashSet<>(List.of("b", "c")));
+        graph.put("b", new LinkedHashSet<>(List.of("a")));
+        final List<String> nodes = new ArrayList<>();
+        final CsrGraph csr_graph = CsrGraph.of(graph, nodes);
+        assertEquals(List.of("a", "b", "c"), nodes);
+        assertEquals(3, csr_graph.nodes());
+        assertEquals(3, csr_graph.edges());
+        assertEquals(2, csr_graph.outDegree(0));
+        assertEquals(0, csr_graph.outDegree(2));
+        assertEquals(2, csr_graph.successor(0, 1));
+        assertTrue(csr_graph.hasEdge(1, 0));
+        assertFalse(csr_graph.hasEdge(2, 0));
+
+        final CsrGraph edge_graph = CsrGraph.fromEdges(3, new int[]{1, 0, 0}, new int[]{0, 1, 2});
+        assertEquals(2, edge_graph.outDegree(0));
+        assertEquals(1, edge_graph.successor(0, 0));
+        assertEquals(2, edge_graph.successor(0, 1));
+        assertEquals(0, edge_graph.successor(1, 0));
+    }
+
+    @Test
+    void testRun() {
+        final Map<String, Set<String>> graph = new HashMap<>();
+        graph.put("n1", new HashSet<>(List.of("n2", "n4")));
+        graph.put("n2", new HashSet<>(List.of("n3", "n5")));
+        graph.put("n3", new HashSet<>(List.of("n1")));
+        graph.put("n4", new HashSet<>(List.of("n3")));
+        graph.put("n5", new HashSet<>(List.of("n6", "n7")));
+        graph.put("n6", new HashSet<>(List.of("n5")));
+        graph.put("n7", new HashSet<>(List.of("n5")));
+        graph.put("n8", new HashSet<>(List.of("n8", "n1")));
+        graph.put("n9", new HashSet<>(List.of("n1")));
+        assertEquals(
+                new HashSet<>(List.of(Set.of("n1", "n2", "n3", "n4"), Set.of("n5", "n6", "n7"), Set.of("n8"))),
+                new HashSet<>(CsrTarjan.run(graph))
+        );
+    }
+
+    @Test
+    void testRandomGraphs() {
+        /* 与递归的Tarjan比较 */
+        final Random random = new Random(0);
+        for (int round = 0; round < 200; round++) {
+            final int nodes = 1 + random.nextInt(30);
+            final Map<BaseGraphNode<Integer>, Set<BaseGraphNode<Integer>>> graph = new HashMap<>();
+            final List<BaseGraphNode<Integer>> node_list = new ArrayList<>();
+            for (int i = 0; i < nodes; i++) {
+                node_list.add(new BaseGraphNode<>(i));
+            }
+            final int edges = random.nextInt(nodes * 2);
+            for (int i = 0; i < edges; i++) {
+                graph.computeIfAbsent(node_list.get(random.nextInt(nodes)), k -> new HashSet<>())
+                        .add(node_list.get(random.nextInt(nodes)));
+            }
+            final Set<Set<BaseGraphNode<Integer>>> expected = new HashSet<>(new Tarjan<>(graph).run());
+            assertEquals(expected, new HashSet<>(CsrTarjan.run(graph)));
+        }
+    }
+
+    @Test
+    void testLongChain() {
+        /* 递归的实现在这种规模的链上会StackOverflowError：0->1->...->n-1->0 以及 n个点之后的一条无环链 */
+        final int n = 1000000;
+        final int[] sources = new int[n * 2 - 1];
+        final int[] targets = new int[n * 2 - 1];
+        for (int i = 0; i < n; i++) {
+            sources[i] = i;
+            targets[i] = (i + 1) % n;
+        }
+        for (int i = 0; i < n - 1; i++) {
+            sources[n + i] = n + i;
+            targets[n + i] = n + i + 1;
+        }
+        final List<int[]> sccs = new CsrTarjan(CsrGraph.fromEdges(n * 2, sources, targets)).run();
+        assertEquals(1, sccs.size());
+        assertEquals(n, sccs.get(0).length);
+    }
+}
@@ -4,8 +4,7 @@ import org.junit.jupiter.api.Test;
 
 import java.util.*;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 class FeedbackVertexSetSolverTest {
 
@@ -174,4 +173,156 @@ class FeedbackVertexSetSolverTest {
         assertEquals(1, cover2.size());
         assertTrue(cover2.contains(n4) || cover2.contains(n5));
     }
-}
\ No newline at end of file
+
+    /**
+     * 原来基于邻接矩阵的实现，用于比较贪心的结果
+     */
+    static class DenseSolver<T> {
+        final List<T> nodes;
+        final int[][] matrix;
+        final int size;
+
+        DenseSolver(Map<T, Set<T>> graph, Set<T> scc) {
+            size = scc.size();
+            matrix = new int[size + 1][size + 1];
+            nodes = new ArrayList<>(scc);
+            for (int i = 0; i < size; i++) {
+                for (T successor: graph.getOrDefault(nodes.get(i), Collections.emptySet())) {
+                    final int j = nodes.indexOf(successor);
+                    if (0 <= j) {
+                        matrix[i][j] = 1;
+                        matrix[i][size]++;
+                        matrix[size][j]++;
+                    }
+                }
+            }
+        }
+
+        Set<T> run() {
+            int edges = 0;
+            for (int i: matrix[size]) {
+                edges += i;
+            }
+            Set<T> result = new HashSet<>();
+            while (0 < edges) {
+                int max_score = 0;
+                int max_idx = -1;
+                for (int i = 0; i < size; i++) {
+                    int score = matrix[i][size] * matrix[size][i];
+                    if (score > max_score) {
+                        max_score = score;
+                        max_idx = i;
+                    }
+                }
+                result.add(nodes.get(max_idx));
+                edges -= removeNode(max_idx);
+                boolean updated = true;
+                while (updated) {
+                    updated = false;
+                    for (int i = 0; i < size; i++) {
+                        if (0 == matrix[i][size] ^ 0 == matrix[size][i]) {
+                            edges -= removeNode(i);
+                            updated = true;
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        int removeNode(int idx) {
+            int removed_edges = matrix[idx][size] + matrix[size][idx] - matrix[idx][idx];
+            for (int i = 0; i < size; i++) {
+                if (1 == matrix[idx][i]) {
+                    matrix[idx][i] = 0;
+                    matrix[size][i]--;
+                }
+                if (1 == matrix[i][idx]) {
+                    matrix[i][idx] = 0;
+                    matrix[i][size]--;
+                }
+            }
+            matrix[idx][size] = 0;
+            matrix[size][idx] = 0;
+            return removed_edges;
+        }
+    }
+
+    @Test
+    void testSameAsDense() {
+        final Random random = new Random(0);
+        for (int round = 0; round < 300; round++) {
+            final int nodes = 2 + random.nextInt(40);
+            final Map<Integer, Set<Integer>> graph = new HashMap<>();
+            final int edges = nodes + random.nextInt(nodes * 3);
+            for (int i = 0; i < edges; i++) {
+                graph.computeIfAbsent(random.nextInt(nodes), k -> new HashSet<>()).add(random.nextInt(nodes));
+            }
+            final List<Integer> node_list = new ArrayList<>();
+            final CsrGraph csr_graph = CsrGraph.of(graph, node_list);
+            for (int[] scc: new CsrTarjan(csr_graph).run()) {
+                final Set<Integer> scc_set = new HashSet<>();
+                for (int v: scc) {
+                    scc_set.add(node_list.get(v));
+                }
+                final Set<Integer> expected = new DenseSolver<>(graph, scc_set).run();
+                assertEquals(expected, new FeedbackVertexSetSolver<>(graph, scc_set).run());
+                assertAcyclicWithout(graph, scc_set, expected);
+
+                /* CSR形式的SCC中的点按照编号排序 */
+                final int[] sorted_scc = scc.clone();
+                Arrays.sort(sorted_scc);
+                final Set<Integer> sorted_scc_set = new LinkedHashSet<>();
+                for (int v: sorted_scc) {
+                    sorted_scc_set.add(node_list.get(v));
+                }
+                assertEquals(
+                        new DenseSolver<>(graph, sorted_scc_set).run(),
+                        new FeedbackVertexSetSolver<>(csr_graph, scc, node_list).run()
+                );
+            }
+        }
+    }
+
+    @Test
+    void testLargeScc() {
+        /* 100k个点的环，每个点还有一条指向随机点的边；邻接矩阵需要40GB */
+        final int n = 100000;
+        final Random random = new Random(0);
+        final int[] sources = new int[n * 2];
+        final int[] targets = new int[n * 2];
+        for (int i = 0; i < n; i++) {
+            sources[i * 2] = i;
+            targets[i * 2] = (i + 1) % n;
+            sources[i * 2 + 1] = i;
+            targets[i * 2 + 1] = random.nextInt(n);
+        }
+        final CsrGraph graph = CsrGraph.fromEdges(n, sources, targets);
+        final List<Integer> node_list = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            node_list.add(i);
+        }
+        final List<int[]> sccs = new CsrTarjan(graph).run();
+        assertEquals(1, sccs.size());
+        final Set<Integer> fvs = new FeedbackVertexSetSolver<>(graph, sccs.get(0), node_list).run();
+        assertTrue(0 < fvs.size() && fvs.size() < n);
+        final Map<Integer, Set<Integer>> map_graph = new HashMap<>();
+        for (int i = 0; i < sources.length; i++) {
+            map_graph.computeIfAbsent(sources[i], k -> new HashSet<>()).add(targets[i]);
+        }
+        assertAcyclicWithout(map_graph, new HashSet<>(node_list), fvs);
+    }
+
+    static <T> void assertAcyclicWithout(Map<T, Set<T>> graph, Set<T> scc, Set<T> fvs) {
+        final Map<T, Set<T>> remaining = new HashMap<>();
+        for (T node: scc) {
+            if (!fvs.contains(node)) {
+                final Set<T> successors = new HashSet<>(graph.getOrDefault(node, Collections.emptySet()));
+                successors.retainAll(scc);
+                successors.removeAll(fvs);
+                remaining.put(node, successors);
+            }
+        }
+        assertTrue(CsrTarjan.run(remaining).isEmpty());
+    }
+}